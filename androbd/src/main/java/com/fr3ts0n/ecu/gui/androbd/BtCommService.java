@@ -172,7 +172,7 @@ public class BtCommService extends CommService
 		mBtWorkerThread.start();
 
         // we are connected -> signal connection established
-        connectionEstablished(device.getName());
+        connectionEstablished(device.getName(), device.getAddress());
     }
 
 	/**
@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu.gui.androbd;
+
+import com.fr3ts0n.ecu.TimeSeriesBuffer;
+
+import org.achartengine.model.XYSeries;
+import org.achartengine.util.MathHelper;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Chart data series which reads from a bounded time series buffer
+ *
+ * The samples are kept in a primitive ring buffer (@see TimeSeriesBuffer)
+ * instead of the unbounded map of XYSeries. When the chart is drawn,
+ * only a decimated view of the visible range is converted into a map,
+ * so drawing a long recording costs the same as a short one.
+ *
+ * @author erwin
+ */
+class BufferedXYSeries extends XYSeries
+{
+	private static final long serialVersionUID = -2958421787307651420L;
+
+	/** max. number of points to be drawn per series */
+	static final int MAX_CHART_POINTS = 1000;
+
+	/** buffer of samples */
+	private final TimeSeriesBuffer buffer;
+
+	/**
+	 * Create data series with default capacity and duration
+	 *
+	 * @param title title of series
+	 */
+	BufferedXYSeries(String title)
+	{
+		this(new TimeSeriesBuffer(title));
+	}
+
+	/**
+	 * Create data series for a buffer
+	 *
+	 * @param buffer buffer of samples
+	 */
+	BufferedXYSeries(TimeSeriesBuffer buffer)
+	{
+		super(buffer.getTitle());
+		this.buffer = buffer;
+	}
+
+	TimeSeriesBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+	@Override
+	public synchronized void add(double x, double y)
+	{
+		buffer.add((long) x, y);
+	}
+
+	@Override
+	public synchronized void add(int index, double x, double y)
+	{
+		// samples are kept in time order
+		buffer.add((long) x, y);
+	}
+
+	@Override
+	public synchronized void clearSeriesValues()
+	{
+		super.clearSeriesValues();
+		buffer.clear();
+	}
+
+	@Override
+	public synchronized int getItemCount()
+	{
+		// called by super constructor before buffer is assigned
+		return buffer != null ? buffer.size() : 0;
+	}
+
+	@Override
+	public synchronized double getX(int index)
+	{
+		return buffer.getTime(index);
+	}
+
+	@Override
+	public synchronized double getY(int index)
+	{
+		return buffer.getValue(index);
+	}
+
+	@Override
+	public int getIndexForKey(double key)
+	{
+		return buffer.ceilingIndex((long) key);
+	}
+
+	@Override
+	public double getMinX()
+	{
+		// includes range of rollup tiers
+		return buffer.size() > 0 ? buffer.getStartTime() : MathHelper.NULL_VALUE;
+	}
+
+	@Override
+	public double getMaxX()
+	{
+		return buffer.size() > 0 ? buffer.getMaxTime() : -MathHelper.NULL_VALUE;
+	}
+
+	@Override
+	public double getMinY()
+	{
+		return buffer.size() > 0 ? buffer.getMinValue() : MathHelper.NULL_VALUE;
+	}
+
+	@Override
+	public double getMaxY()
+	{
+		return buffer.size() > 0 ? buffer.getMaxValue() : -MathHelper.NULL_VALUE;
+	}
+
+	/**
+	 * get decimated samples of a range
+	 *
+	 * @param start              start of range (inclusive)
+	 * @param stop               end of range (inclusive)
+	 * @param beforeAfterPoints  include one sample before and after the range
+	 * @return max. MAX_CHART_POINTS samples within range
+	 */
+	@Override
+	public synchronized SortedMap<Double, Double> getRange(double start,
+	                                                       double stop,
+	                                                       boolean beforeAfterPoints)
+	{
+		SortedMap<Double, Double> result = new TreeMap<>();
+		long[] times = new long[MAX_CHART_POINTS];
+		double[] values = new double[MAX_CHART_POINTS];
+		int count;
+		synchronized (buffer)
+		{
+			long from = (long) Math.ceil(start);
+			long to = (long) Math.floor(stop);
+			if (beforeAfterPoints)
+			{
+				int index = buffer.floorIndex(from - 1);
+				if (index >= 0) from = buffer.getTime(index);
+				index = buffer.ceilingIndex(to + 1);
+				if (index < buffer.size()) to = buffer.getTime(index);
+			}
+			count = buffer.decimate(from, to, MAX_CHART_POINTS, times, values);
+		}
+		for (int i = 0; i < count; i++)
+		{
+			result.put((double) times[i], values[i]);
+		}
+		return result;
+	}
+}
@@ -33,8 +33,8 @@ import android.view.WindowManager;
 import android.widget.EditText;
 import android.widget.ListAdapter;
 
+import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 
 import org.achartengine.ChartFactory;
 import org.achartengine.GraphicalView;
@@ -69,8 +69,8 @@ public class ChartActivity extends Activity
 	 */
 	public static final String POSITIONS = "POSITIONS";
 
-	/** Map to uniquely collect PID numbers */
-	private final TreeSet<Integer> pidNumbers = new TreeSet<>();
+	/** Set to uniquely collect mnemonics of displayed items */
+	private final TreeSet<String> itemMnemonics = new TreeSet<>();
 
 	/**
 	 * list of colors to be used for series
@@ -186,7 +186,7 @@ public class ChartActivity extends Activity
 		// make chart visible
 		setContentView(chartView);
 		// limit selected PIDs to selection
-		MainActivity.setFixedPids(pidNumbers);
+		MainActivity.subscribeItems(this, itemMnemonics);
 		// if auto hiding selected ...
 		if(MainActivity.prefs.getBoolean(MainActivity.PREF_AUTOHIDE,false))
 		{
@@ -274,7 +274,7 @@ public class ChartActivity extends Activity
 			// forget about it
 			toolBarHider = null;
 		}
-		ObdProt.resetFixedPid();
+		EcuDataItems.subscriptions.unsubscribe(this);
 		// allow sleeping again
 		wakeLock.release();
 		super.onDestroy();
@@ -336,7 +336,7 @@ public class ChartActivity extends Activity
 		EcuDataPv currPv;
 		XYSeries currSeries;
 
-		pidNumbers.clear();
+		itemMnemonics.clear();
 
 		// loop through all PIDs
 		for (int position : positions)
@@ -345,8 +345,8 @@ public class ChartActivity extends Activity
 			currPv = (EcuDataPv) mAdapter.getItem(position);
 			if (currPv == null) continue;
 			int pid = currPv.getAsInt(EcuDataPv.FID_PID);
-			// add PID to unique list of PIDs
-			pidNumbers.add(pid);
+			// add item to unique list of polled items
+			itemMnemonics.add(String.valueOf(currPv.get(EcuDataPv.FID_MNEMONIC)));
 
 			// Get display color ...
 			int pidColor = ColorAdapter.getItemColor(currPv);
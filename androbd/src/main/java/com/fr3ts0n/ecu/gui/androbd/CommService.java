@@ -25,6 +25,7 @@ import android.os.Handler;
 import android.os.Message;
 
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
+import com.fr3ts0n.ecu.prot.obd.StnProt;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -60,7 +61,8 @@ public abstract class CommService
 
 	static final Logger log = Logger.getLogger(TAG);
 
-	public static final ElmProt elm = new ElmProt();
+	// ELM protocol, with STN extensions if an STN adapter is detected
+	public static final ElmProt elm = new StnProt();
 
 	Context mContext;
 	private Handler mHandler = null;
@@ -74,6 +76,8 @@ public abstract class CommService
 		super();
 		// mAdapter = MainActivity.mBluetoothAdapter;
 		mState = STATE.NONE;
+		// new session starts at default baud rate of adapter
+		elm.setBaudRateNegotiated(false);
 	}
 
 	/**
@@ -176,6 +180,20 @@ public abstract class CommService
 	 */
 	void connectionEstablished(String deviceName)
 	{
+		connectionEstablished(deviceName, deviceName);
+	}
+
+	/**
+	 * Indicate that the connection was established and notify the UI Activity.
+	 *
+	 * @param deviceName name of connected device
+	 * @param adapterKey unique key of connected adapter (for vehicle profile cache)
+	 */
+	void connectionEstablished(String deviceName, String adapterKey)
+	{
+		// known vehicles of this adapter may skip discovery
+		elm.setAdapterKey(getClass().getSimpleName() + ":" + adapterKey);
+
 		// Send the name of the connectionEstablished device back to the UI Activity
 		Message msg = mHandler.obtainMessage(MainActivity.MESSAGE_DEVICE_NAME);
 		Bundle bundle = new Bundle();
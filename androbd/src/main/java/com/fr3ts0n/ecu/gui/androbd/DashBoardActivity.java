@@ -36,7 +36,6 @@ import android.widget.ListAdapter;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.EcuDataItems;
 import com.fr3ts0n.ecu.EcuDataPv;
-import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 import com.github.anastr.speedviewlib.Gauge;
@@ -73,8 +72,8 @@ public class DashBoardActivity extends Activity
 	private transient ObdGaugeAdapter adapter;
 	private transient GridView grid;
 
-	/** Map to uniquely collect PID numbers */
-	private final HashSet<Integer> pidNumbers = new HashSet<>();
+	/** Set to uniquely collect mnemonics of displayed items */
+	private final HashSet<String> itemMnemonics = new HashSet<>();
 
 	protected static final int MESSAGE_UPDATE_VIEW = 1;
 
@@ -165,14 +164,14 @@ public class DashBoardActivity extends Activity
 		grid.setNumColumns(numColumns);
 
 		adapter.clear();
-		pidNumbers.clear();
+		itemMnemonics.clear();
 		for (int position : positions)
 		{
 			// get corresponding Process variable
 			EcuDataPv currPv = (EcuDataPv) mAdapter.getItem(position);
 			if (currPv != null)
 			{
-				pidNumbers.add(currPv.getAsInt(EcuDataPv.FID_PID));
+				itemMnemonics.add(String.valueOf(currPv.get(EcuDataPv.FID_MNEMONIC)));
 				adapter.add(currPv);
 				currPv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 			}
@@ -224,7 +223,7 @@ public class DashBoardActivity extends Activity
 	protected void onDestroy()
 	{
 		// reset PID limiting
-		ObdProt.resetFixedPid();
+		EcuDataItems.subscriptions.unsubscribe(this);
 		adapter.clear();
 		// allow sleeping again
 		wakeLock.release();
@@ -241,7 +240,7 @@ public class DashBoardActivity extends Activity
 		// set scaling of dashboard items
 		updateDashboardScaling();
 		// limit selected PIDs to selection
-		MainActivity.setFixedPids(pidNumbers);
+		MainActivity.subscribeItems(this, itemMnemonics);
 	}
 
 	@Override
@@ -27,6 +27,10 @@ import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.widget.Toast;
 
+import com.fr3ts0n.ecu.CsvExporter;
+import com.fr3ts0n.ecu.Resampler;
+import com.fr3ts0n.ecu.SampleIterator;
+
 import org.achartengine.model.XYMultipleSeriesDataset;
 import org.achartengine.model.XYSeries;
 
@@ -35,8 +39,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.SortedMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,10 +58,14 @@ class ExportTask extends AsyncTask<XYMultipleSeriesDataset, Integer, String>
 	private static final String OPT_RECORD_DELIM	= "csv_record_delimiter";
 	private static final String OPT_TEXT_QUOTED 	= "csv_text_quoted";
 	private static final String OPT_SEND_EXPORT 	= "send_after_export";
+	private static final String OPT_ALIGNMENT 	= "csv_alignment";
+	private static final String OPT_INTERVAL 	= "csv_interval";
 
 	private static String CSV_FIELD_DELIMITER = ",";
 	private static String CSV_LINE_DELIMITER = "\n";
 	private static boolean CSV_TEXT_QUOTED = false;
+	private static Resampler.Alignment CSV_ALIGNMENT = Resampler.Alignment.SAMPLE_AND_HOLD;
+	private static long CSV_INTERVAL = 0;
 
 	private static final String TAG = ExportTask.class.getSimpleName();
 	private static final Logger log = Logger.getLogger(TAG);
@@ -82,77 +88,106 @@ class ExportTask extends AsyncTask<XYMultipleSeriesDataset, Integer, String>
 		CSV_FIELD_DELIMITER = prefs.getString(OPT_FIELD_DELIM,",");
 		CSV_LINE_DELIMITER  = prefs.getString(OPT_RECORD_DELIM,"\n");
 		CSV_TEXT_QUOTED     = prefs.getBoolean(OPT_TEXT_QUOTED,false);
+		try
+		{
+			CSV_ALIGNMENT = Resampler.Alignment.valueOf(
+				prefs.getString(OPT_ALIGNMENT, Resampler.Alignment.SAMPLE_AND_HOLD.name()));
+		} catch (IllegalArgumentException e)
+		{
+			CSV_ALIGNMENT = Resampler.Alignment.SAMPLE_AND_HOLD;
+		}
+		try
+		{
+			CSV_INTERVAL = Long.parseLong(prefs.getString(OPT_INTERVAL, "0"));
+		} catch (NumberFormatException e)
+		{
+			CSV_INTERVAL = 0;
+		}
 	}
 
-	private static String quoteStringIfNeeded(String string)
+	/**
+	 * get samples of chart series
+	 *
+	 * @param series chart series
+	 * @return time ordered samples
+	 */
+	private static SampleIterator getSamples(final XYSeries series)
 	{
-		return String.format( CSV_TEXT_QUOTED ? "\"%s\"" : "%s", string);
+		if (series instanceof BufferedXYSeries)
+		{
+			return ((BufferedXYSeries) series).getBuffer().iterator();
+		}
+		return new SampleIterator()
+		{
+			final int count = series.getItemCount();
+			int index = -1;
+
+			@Override
+			public boolean next()
+			{
+				return ++index < count;
+			}
+
+			@Override
+			public long getTime()
+			{
+				return (long) series.getX(index);
+			}
+
+			@Override
+			public double getValue()
+			{
+				return series.getY(index);
+			}
+		};
 	}
 
 	@Override
 	protected String doInBackground(XYMultipleSeriesDataset... params)
 	{
-		double currX;
-		double currY;
-		int maxCounts = 0;
-		int highestResChannel = 0;	/* channel id with highest x-resolution */
-
-		XYSeries series[] = params[0].getSeries();
+		XYSeries[] series = params[0].getSeries();
+
+		final CsvExporter exporter = new CsvExporter();
+		exporter.setFieldDelimiter(CSV_FIELD_DELIMITER);
+		exporter.setLineDelimiter(CSV_LINE_DELIMITER);
+		exporter.setTextQuoted(CSV_TEXT_QUOTED);
+		exporter.setTimeTitle(activity.getString(R.string.time));
+		exporter.setTimeFormat(dateFormat);
+		exporter.setAlignment(CSV_ALIGNMENT);
+		exporter.setInterval(CSV_INTERVAL);
+		exporter.setProgressListener(progress ->
+		{
+			if (isCancelled()) exporter.cancel();
+			publishProgress(progress);
+		});
 
-		// find channel with highest x-resolution
-		for (int i = 0; i < series.length; i++)
+		long endTime = 0;
+		for (XYSeries sery : series)
 		{
-			if (maxCounts < series[i].getItemCount())
+			exporter.addChannel(sery.getTitle(), getSamples(sery));
+			if (sery.getItemCount() > 0)
 			{
-				maxCounts = series[i].getItemCount();
-				highestResChannel = i;
+				endTime = Math.max(endTime, (long) sery.getMaxX());
 			}
 		}
-		
+
 		//noinspection ResultOfMethodCallIgnored
 		new File(path).mkdirs();
-		FileWriter writer;
-		try
+		File file = new File(fileName);
+		try (FileWriter writer = new FileWriter(file))
 		{
-			writer = new FileWriter(new File(fileName));
-
-			// create header line
-			writer.append(quoteStringIfNeeded(activity.getString(R.string.time)));
-			writer.append(CSV_FIELD_DELIMITER);
-			for (XYSeries sery : series)
-			{
-				writer.append(quoteStringIfNeeded(sery.getTitle()));
-				writer.append(CSV_FIELD_DELIMITER);
-			}
-			writer.append(CSV_LINE_DELIMITER);
-
-			// generate data
-			for (int i = 0; i < maxCounts; i++)
-			{
-				currX = series[highestResChannel].getX(i);
-				writer.append(dateFormat.format(new Date((long)currX)));
-				writer.append(CSV_FIELD_DELIMITER);
-				for (XYSeries sery : series)
-				{
-					try
-					{
-						SortedMap<Double, Double> map = sery.getRange(currX, currX, true);
-						currY = map.get(map.firstKey());
-						writer.append(String.valueOf(currY));
-						writer.append(CSV_FIELD_DELIMITER);
-					} catch (Exception ex)
-					{
-						// do nothing, just catch the error
-					}
-				}
-				writer.append(CSV_LINE_DELIMITER);
-				publishProgress(10000 * i / maxCounts);
-			}
-			writer.close();
+			long rows = exporter.export(writer, endTime);
+			log.log(Level.FINE, String.format("%d rows exported", rows));
 		}
 		catch (IOException e)
 		{
-			e.printStackTrace();
+			log.log(Level.SEVERE, fileName, e);
+		}
+
+		if (exporter.isCancelled())
+		{
+			//noinspection ResultOfMethodCallIgnored
+			file.delete();
 		}
 		return fileName;
 	}
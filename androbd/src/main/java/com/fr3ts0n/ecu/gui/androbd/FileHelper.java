@@ -19,27 +19,29 @@
 package com.fr3ts0n.ecu.gui.androbd;
 
 import static com.fr3ts0n.ecu.gui.androbd.CommService.log;
-import static com.fr3ts0n.ecu.prot.obd.ObdProt.lastRxMsg;
 
 import android.annotation.SuppressLint;
 import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.net.Uri;
-import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.DataRecorder;
+import com.fr3ts0n.ecu.PvSnapshot;
+import com.fr3ts0n.ecu.PvSnapshotReader;
+import com.fr3ts0n.ecu.TripStatistics;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
 import com.fr3ts0n.pvs.IndexedProcessVar;
+import com.fr3ts0n.pvs.ProcessVar;
 import com.fr3ts0n.pvs.PvList;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -57,14 +59,17 @@ public class FileHelper {
 	@SuppressLint("SimpleDateFormat")
 	private static final SimpleDateFormat dateFmt = new SimpleDateFormat("yyyy.MM.dd-HH.mm.ss");
 	private static final String TAG = "FileHelper";
+	/** sub directory of recordings */
+	private static final String RECORDING_DIR = "recordings";
+	/** snapshot list of plugin data */
+	private static final String LIST_PLUGIN_PVS = "PluginPvs";
 
 	private final Context context;
 	private final ElmProt elm;
 	private Map<String, IndexedProcessVar> pvs = new HashMap<>();
 
-	private boolean isSaving = false;
-	private boolean isPaused = false;
-	private final Handler handler = new Handler();
+	/** active data recorder, null if not recording */
+	private DataRecorder recorder = null;
 	private ProgressDialog progress;
 
 	/** Date Formatter used to generate file name */
@@ -87,312 +92,94 @@ public class FileHelper {
 	}
 
 	public void pauseSaving() {
-		isPaused = true;
+		if (recorder != null) {
+			recorder.setPaused(true);
+		}
 	}
 
 	public void resumeSaving() {
-		if (isPaused) {
-			isPaused = false;
-			saveDataThreaded();
+		if (recorder != null) {
+			recorder.setPaused(false);
 		}
 	}
 
-	public void saveDataThreaded() {
-		if (isSaving) return;
-
-		isSaving = true;
-		final String mFileName = getFileName() + ".csv";
-
-		progress = new ProgressDialog(context);
-		progress.setMessage("Saving data to: " + mFileName);
-		progress.setCancelable(false);
-		progress.setButton(DialogInterface.BUTTON_NEGATIVE, "Stop", (dialog, which) -> stopSaving());
-		progress.show();
-
-		handler.post(new Runnable() {
-			@Override
-			public void run() {
-				if (!isPaused && isSaving) {
-					saveData(mFileName);
-					handler.postDelayed(this, 1500);
-				} else {
-					progress.dismiss();
-				}
-			}
-		});
+	/**
+	 * @return true if recording is active
+	 */
+	public boolean isSaving() {
+		return recorder != null;
 	}
 
-	public void stopSaving() {
-		isSaving = false;
-		handler.removeCallbacksAndMessages(null);
-		if (progress != null && progress.isShowing()) {
-			progress.dismiss();
-		}
+	/**
+	 * @return true if active recording is paused
+	 */
+	public boolean isPaused() {
+		return recorder != null && recorder.isPaused();
 	}
 
-	void saveData(String fileName) {
-		if (!isSaving) {
-			Log.e(TAG, "Data saving is not active.");
-			return;
-		}
+	/**
+	 * Start recording of all data items which are polled
+	 * (values are recorded in background at the rate they are received)
+	 */
+	public void saveDataThreaded() {
+		if (recorder != null) return;
 
-		// Directory setup
-		File saveDir = new File(Environment.getExternalStorageDirectory(), "Documents");
-		if (!saveDir.exists() && !saveDir.mkdirs()) {
-			Log.e(TAG, "Failed to create save directory.");
-			Toast.makeText(context, "Error: Cannot create save directory.", Toast.LENGTH_SHORT).show();
+		File dir = new File(getPath(context), RECORDING_DIR);
+		if (!dir.exists() && !dir.mkdirs()) {
+			Log.e(TAG, "Failed to create recording directory: " + dir);
+			Toast.makeText(context, "Error: Cannot create recording directory.", Toast.LENGTH_SHORT).show();
 			return;
 		}
-
-		String fullPath = saveDir.getAbsolutePath() + File.separator + fileName;
-
-		try (FileWriter writer = new FileWriter(fullPath, true)) {
-			File file = new File(fullPath);
-			if (file.length() == 0) {
-				// Write headers if file is empty
-				writer.write("Timestamp,Vehicle Speed (km/h),RPM,Fuel Consumption (L/100km),Gear Position,Brake Status,Steering Wheel Angle (degrees)\n");
-			}
-
-			// Fetch data
-			String timestamp = dateFmt.format(System.currentTimeMillis());
-			String speed = getData("010D"); // Vehicle Speed
-			String rpm = getData("010C"); // Engine RPM
-			String engineLoad = getData("0104"); // Engine Load (%)
-			/*String throttlePosition = getData("0111");*/ // Throttle Position (%)
-			String maf = getData("0110"); // MAF (g/s)
-
-			// Derived data
-			String fuelConsumption = calculateFuelConsumption(maf, speed);
-			String gearPosition = calculateGearPosition(speed, rpm);// Use MAF for better accuracy
-			/*String gearPosition = calculateGearPosition(speed, rpm, throttlePosition); */// Refined with throttle position
-			String brakeStatus = calculateBrakeStatus(speed); // Derived from speed
-			String steeringAngle = calculateSteeringAngle(speed, rpm, engineLoad); // Refined with engine load
-
-			// Write data row
-			writer.write(String.format("%s,%s,%s,%s,%s,%s,%s\n",
-					timestamp,
-					speed != null ? speed : "N/A",
-					rpm != null ? rpm : "N/A",
-					fuelConsumption != null ? fuelConsumption : "N/A",
-					gearPosition != null ? gearPosition : "N/A",
-					brakeStatus != null ? brakeStatus : "N/A",
-					steeringAngle != null ? steeringAngle : "N/A"));
-
-			writer.flush();
-			Log.d(TAG, "Data saved successfully to: " + fullPath);
-			Toast.makeText(context, "Data saved to: " + fullPath, Toast.LENGTH_SHORT).show();
-		} catch (IOException e) {
-			Log.e(TAG, "Error saving data", e);
-			Toast.makeText(context, "Error saving data: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-		}
-	}
-
-// Helper methods for derived calculations
-
-	private String calculateFuelConsumption(String maf, String speed) {
-		try {
-			double mafValue = Double.parseDouble(maf); // MAF in g/s
-			double speedValue = Double.parseDouble(speed); // Speed in km/h
-
-			// Convert MAF to fuel consumption (L/100km)
-			// Assuming stoichiometric ratio for gasoline (14.7:1 air to fuel) and gasoline density (720 g/L)
-			double fuelRate = (mafValue / 14.7) / 720.0 * 3600.0; // Fuel rate in L/h
-			double fuelConsumption = fuelRate / Math.max(1, speedValue) * 100.0; // Convert to L/100km
-
-			return String.format("%.2f", fuelConsumption);
-		} catch (NumberFormatException e) {
-			Log.e(TAG, "Error calculating fuel consumption", e);
-			return "Error";
+		// repair recordings which were interrupted (e.g. app was killed)
+		int recovered = DataRecorder.recover(dir);
+		if (recovered > 0) {
+			Log.i(TAG, "Recovered interrupted recordings: " + recovered);
 		}
-	}
-	private String calculateGearPosition(String speed, String rpm) {
-		try {
-			int speedValue = Integer.parseInt(speed);
-			int rpmValue = Integer.parseInt(rpm);
-
-			// Approximate gear ratio calculation (values can vary by car model)
-			double gearRatio = (rpmValue / 1000.0) / Math.max(1, speedValue);
-
-			if (gearRatio < 0.5) return "5"; // Example thresholds for gear ratios
-			else if (gearRatio < 1.0) return "4";
-			else if (gearRatio < 1.5) return "3";
-			else if (gearRatio < 2.0) return "2";
-			else return "1";
-		} catch (NumberFormatException e) {
-			Log.e(TAG, "Error calculating gear position", e);
-			return "Error";
-		}
-	}
+		File file = new File(dir, getFileName() + DataRecorder.EXTENSION);
 
-
-	/*private String calculateGearPosition(String speed, String rpm, String throttlePosition) {
+		recorder = new DataRecorder(file);
 		try {
-			double speedValue = Double.parseDouble(speed);
-			double rpmValue = Double.parseDouble(rpm);
-			double throttleValue = Double.parseDouble(throttlePosition);
-
-			// Approximate gear ratio calculation
-			double gearRatio = rpmValue / Math.max(1, speedValue);
-
-			// Adjust thresholds based on throttle position (aggressive driving implies lower gear)
-			if (throttleValue > 70) gearRatio *= 1.2;
-
-			if (gearRatio < 0.5) return "5"; // Example thresholds for gear ratios
-			else if (gearRatio < 1.0) return "4";
-			else if (gearRatio < 1.5) return "3";
-			else if (gearRatio < 2.0) return "2";
-			else return "1";
-		} catch (NumberFormatException e) {
-			Log.e(TAG, "Error calculating gear position", e);
-			return "Error";
-		}
-	}*/
-
-	private String calculateBrakeStatus(String speed) {
-		try {
-			double speedValue = Double.parseDouble(speed);
-
-			// Assumption: brake engaged when speed is close to 0
-			return (speedValue < 1) ? "Engaged" : "Not Engaged";
-		} catch (NumberFormatException e) {
-			Log.e(TAG, "Error calculating brake status", e);
-			return "Error";
+			recorder.start(ObdProt.PidPvs, null);
+		} catch (IOException e) {
+			Log.e(TAG, "Error starting recording", e);
+			Toast.makeText(context, "Error saving data: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+			recorder = null;
+			return;
 		}
-	}
 
-	private String calculateSteeringAngle(String speed, String rpm, String engineLoad) {
-		try {
-			double speedValue = Double.parseDouble(speed);
-			double rpmValue = Double.parseDouble(rpm);
-			double engineLoadValue = Double.parseDouble(engineLoad);
-
-			// Simulate steering angle using speed, RPM, and engine load
-			double angle = (Math.sin(speedValue / 100.0) + engineLoadValue / 100.0) * (rpmValue / 1000.0);
-			return String.format("%.1f", angle);
-		} catch (NumberFormatException e) {
-			Log.e(TAG, "Error calculating steering angle", e);
-			return "Error";
-		}
+		progress = new ProgressDialog(context);
+		progress.setMessage("Saving data to: " + file.getName());
+		progress.setCancelable(false);
+		progress.setButton(DialogInterface.BUTTON_NEGATIVE, "Stop", (dialog, which) -> stopSaving());
+		progress.show();
 	}
 
-	private String getData(String pid) {
-		try {
-			// Send the command for the PID
-			sendPidRequest(pid);
-
-			// Wait for the response
-			Thread.sleep(500); // Adjust delay as needed for your device
-
-			// Process the response
-			String response = processResponse(pid);
-			return response != null ? response : "Error";
-		} catch (InterruptedException e) {
-			Log.e(TAG, "Interrupted while waiting for PID response: " + pid, e);
-			return "Error";
-		} catch (Exception e) {
-			Log.e(TAG, "Error while getting data for PID: " + pid, e);
-			return "Error";
+	/**
+	 * Stop recording
+	 * (remaining samples are written in background)
+	 */
+	public void stopSaving() {
+		if (recorder != null) {
+			recorder.stop();
+			Toast.makeText(context,
+			               String.format("Data saved to: %s", recorder.getFile()),
+			               Toast.LENGTH_SHORT).show();
+			recorder = null;
 		}
-	}
-
-	private void sendPidRequest(String pid) {
-		try {
-			String command = "01" + pid.substring(2); // Format PID for ELM327
-			elm.sendTelegram(command.toCharArray());
-			Log.d(TAG, "Sent PID request: " + command);
-		} catch (Exception e) {
-			Log.e(TAG, "Failed to send PID request: " + pid, e);
+		if (progress != null && progress.isShowing()) {
+			progress.dismiss();
 		}
 	}
 
-	@SuppressLint("DefaultLocale")
-    private String processResponse(String pid) {
-		String response = lastRxMsg.trim(); // Get the last received message
-
-		// Ensure that the response is valid
-		if (response == null || response.length() < 5) {
-			Log.e(TAG, "Invalid response received: " + response);
-			return "Error";
-		}
-
-		// Example for Vehicle Speed (PID 010D)
-		if (pid.equals("010D")) {  // Vehicle speed
-			if (response.length() >= 6) {
-				String speedHex = response.substring(4, 6);  // Extract "1A"
-				try {
-					int speed = Integer.parseInt(speedHex, 16);  // Convert to decimal (26 km/h)
-					return String.valueOf(speed);
-				} catch (NumberFormatException e) {
-					Log.e(TAG, "Error parsing speed: " + speedHex, e);
-				}
-			}
-		}
-
-		// Example for Engine RPM (PID 010C)
-		if (pid.equals("010C")) {  // RPM
-			if (response.length() >= 6) {
-				String rpmHex = response.substring(4, 8);  // Extract "1234"
-				try {
-					int rpm = Integer.parseInt(rpmHex, 16);  // Convert to decimal
-					return String.valueOf(rpm);
-				} catch (NumberFormatException e) {
-					Log.e(TAG, "Error parsing RPM: " + rpmHex, e);
-				}
-			}
-		}
-
-		/*if (pid.equals("0111")) {  // Throttle Position
-			if (response.length() >= 6) {
-				String throttleHex = response.substring(4, 6);  // Extract byte
-				try {
-					int throttle = Integer.parseInt(throttleHex, 16) * 100 / 255;  // Scale to percentage
-					return String.format("%d%%", throttle);  // Return throttle position
-				} catch (NumberFormatException e) {
-					Log.e(TAG, "Error parsing Throttle Position: " + throttleHex, e);
-				}
-			}
-		}*/
-
-		if (pid.equals("0110")) {  // MAF (Mass Air Flow)
-			if (response.length() >= 8) {  // Ensure we have enough bytes
-				String mafHex = response.substring(4, 8);  // Extract "AABB"
-				try {
-					int maf = Integer.parseInt(mafHex.substring(0, 2), 16) * 256
-							+ Integer.parseInt(mafHex.substring(2, 4), 16);  // Combine A and B
-					double mafValue = maf / 100.0;  // Scale to g/s
-					return String.format("%.2f", mafValue);  // Return MAF in g/s
-				} catch (NumberFormatException e) {
-					Log.e(TAG, "Error parsing MAF: " + mafHex, e);
-				}
-			}
-		}
-
-		if (pid.equals("0104")) {  // Engine Load
-			if (response.length() >= 6) {  // Ensure we have enough bytes
-				String loadHex = response.substring(4, 6);  // Extract "A"
-				try {
-					int loadValue = Integer.parseInt(loadHex, 16);  // Convert "A" from hex to decimal
-					double engineLoad = (loadValue * 100.0) / 255.0;  // Scale to percentage
-					return String.format("%.2f", engineLoad);  // Return Engine Load as a percentage
-				} catch (NumberFormatException e) {
-					Log.e(TAG, "Error parsing Engine Load: " + loadHex, e);
-				}
-			}
-		}
-
-
-
-		// Add more PIDs as needed (Fuel, Gear Position, Brake Status, Steering Angle, etc.)
-
-		Log.e(TAG, "Unsupported PID or invalid response: " + pid);
-		return "Error";  // Return error if the PID is unsupported or the response is invalid
+	/**
+	 * Get statistics of running recording
+	 *
+	 * @return trip statistics, null if not recording
+	 */
+	public TripStatistics getTripStatistics() {
+		return (recorder != null) ? recorder.getStatistics() : null;
 	}
 
-
-
-
-
-
 	/**
 	 * Load all data in a independent thread
 	 * @param uri Uri of ile to be loaded
@@ -438,19 +225,15 @@ public class FileHelper {
 			inStr = context.getContentResolver().openInputStream(uri);
 			numBytesLoaded = inStr != null ? inStr.available() : 0;
 			msg = context.getString(R.string.loaded).concat(String.format(" %d Bytes", numBytesLoaded));
-			ObjectInputStream oIn = new ObjectInputStream(inStr);
-			/* ensure that measurement page is activated
-			   to avoid deletion of loaded data afterwards */
-			int currService = oIn.readInt();
-			/* if data was saved in mode 0, keep current mode */
-			if(currService != 0) elm.setService(currService, false);
-			/* read in the data */
-			ObdProt.PidPvs = (PvList) oIn.readObject();
-			ObdProt.VidPvs = (PvList) oIn.readObject();
-			ObdProt.tCodes = (PvList) oIn.readObject();
-			MainActivity.mPluginPvs = (PvList) oIn.readObject();
-
-			oIn.close();
+			InputStream in = new BufferedInputStream(inStr);
+			if (PvSnapshotReader.isSnapshot(in))
+			{
+				loadSnapshot(in);
+			}
+			else
+			{
+				loadSerialized(in);
+			}
 
 			log.log(Level.INFO, msg);
 			Toast.makeText(context, msg, Toast.LENGTH_SHORT).show();
@@ -461,6 +244,71 @@ public class FileHelper {
 		}
 		return numBytesLoaded;
 	}
+
+	/**
+	 * Load data from versioned snapshot
+	 *
+	 * @param in stream to read snapshot from
+	 * @throws IOException on read error
+	 */
+	private void loadSnapshot(InputStream in) throws IOException
+	{
+		PvSnapshotReader rdr = new PvSnapshotReader(in);
+		rdr.setPvFactory(new PvSnapshotReader.PvFactory()
+		{
+			@Override
+			public ProcessVar createPv(String list, int kind)
+			{
+				return LIST_PLUGIN_PVS.equals(list) ? new PluginDataPv() : null;
+			}
+		});
+		while (rdr.next())
+		{
+			String name = rdr.getName();
+			if (rdr.getType() == PvSnapshot.SEC_PROPERTY
+			    && PvSnapshot.PROP_SERVICE.equals(name))
+			{
+				/* ensure that measurement page is activated
+				   to avoid deletion of loaded data afterwards */
+				int currService = ((Number) rdr.getProperty()).intValue();
+				/* if data was saved in mode 0, keep current mode */
+				if (currService != 0) elm.setService(currService, false);
+			}
+			else if (rdr.getType() == PvSnapshot.SEC_LIST)
+			{
+				if (PvSnapshot.LIST_PID_PVS.equals(name)) ObdProt.PidPvs = rdr.getList();
+				else if (PvSnapshot.LIST_VID_PVS.equals(name)) ObdProt.VidPvs = rdr.getList();
+				else if (PvSnapshot.LIST_CODES.equals(name)) ObdProt.tCodes = rdr.getList();
+				else if (LIST_PLUGIN_PVS.equals(name)) MainActivity.mPluginPvs = rdr.getList();
+			}
+		}
+		rdr.close();
+	}
+
+	/**
+	 * Load data from serialized java objects (files of previous versions)
+	 *
+	 * @param in stream to read objects from
+	 * @throws IOException on read error
+	 * @throws ClassNotFoundException if stream contains unknown classes
+	 */
+	private void loadSerialized(InputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream oIn = new ObjectInputStream(in);
+		/* ensure that measurement page is activated
+		   to avoid deletion of loaded data afterwards */
+		int currService = oIn.readInt();
+		/* if data was saved in mode 0, keep current mode */
+		if(currService != 0) elm.setService(currService, false);
+		/* read in the data */
+		ObdProt.PidPvs = (PvList) oIn.readObject();
+		ObdProt.VidPvs = (PvList) oIn.readObject();
+		ObdProt.tCodes = (PvList) oIn.readObject();
+		MainActivity.mPluginPvs = (PvList) oIn.readObject();
+
+		oIn.close();
+	}
+
 	// Getter for the PvList
 	public PvList getPvs() {
 		return (PvList) this.pvs;
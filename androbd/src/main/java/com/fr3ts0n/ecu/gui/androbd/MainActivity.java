@@ -58,12 +58,16 @@ import androidx.core.content.FileProvider;
 
 import com.fr3ts0n.androbd.plugin.Plugin;
 import com.fr3ts0n.androbd.plugin.mgr.PluginManager;
+import com.fr3ts0n.ecu.CsvSnapshotCache;
 import com.fr3ts0n.ecu.EcuCodeItem;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.EcuDataItems;
+import com.fr3ts0n.ecu.EcuDataProfiles;
 import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.EcuDataSubscriptions;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.ecu.prot.obd.VehicleProfileCache;
 import com.fr3ts0n.pvs.ProcessVar;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
@@ -490,21 +494,16 @@ public class MainActivity extends PluginManager
     };
 
     /**
-     * Set fixed PIDs for protocol to specified list of PIDs
+     * Subscribe data items for demand driven polling
+     * - replaces all previous subscriptions of the owner
      *
-     * @param pidNumbers List of PIDs
+     * @param owner     Owner of subscriptions
+     * @param mnemonics Mnemonics of data items to be polled
      */
-    public static void setFixedPids(Set<Integer> pidNumbers)
+    public static void subscribeItems(Object owner, Set<String> mnemonics)
     {
-        int[] pids = new int[pidNumbers.size()];
-        int i = 0;
-        for (Integer pidNum : pidNumbers)
-        {
-            pids[i++] = pidNum;
-        }
-        Arrays.sort(pids);
-        // set protocol fixed PIDs
-        ObdProt.setFixedPid(pids);
+        EcuDataItems.subscriptions.unsubscribe(owner);
+        EcuDataItems.subscriptions.subscribe(owner, mnemonics, EcuDataSubscriptions.PERIOD_FASTEST);
     }
 
     @Override
@@ -544,6 +543,11 @@ public class MainActivity extends PluginManager
             getWindow().requestFeature(Window.FEATURE_ACTION_BAR_OVERLAY);
         }
 
+        // cache parsed CSV tables to speed up creation of data items
+        CsvSnapshotCache.setCacheDir(getCacheDir(), getString(R.string.app_version));
+        // remember discovery results of connected vehicles for fast reconnect
+        VehicleProfileCache.setCacheDir(getCacheDir());
+
         // Set up all data adapters
         mPidAdapter = new ObdItemAdapter(this, R.layout.obd_item, ObdProt.PidPvs);
         mVidAdapter = new VidItemAdapter(this, R.layout.obd_item, ObdProt.VidPvs);
@@ -1178,7 +1182,7 @@ public class MainActivity extends PluginManager
             Integer color = prefs.getInt(key, Color.BLACK);
             if(Color.BLACK != color)
             {
-                itm.pv.put(EcuDataPv.FID_COLOR, color);
+                itm.setPvAttribute(EcuDataPv.FID_COLOR, color);
                 log.info(String.format("PID pref %s=#%08x", key, color));
             }
         }
@@ -1210,7 +1214,7 @@ public class MainActivity extends PluginManager
                     String mnemonic = key.substring(0, pos);
                     EcuDataItem itm = EcuDataItems.byMnemonic.get(mnemonic);
                     // update display range limit in data item
-                    itm.pv.put(field, value);
+                    itm.setPvAttribute(field, value);
 
                     log.info(String.format("PID pref %s=%f", key, value));
                 }
@@ -1832,38 +1836,41 @@ public class MainActivity extends PluginManager
     {
         String errors = "";
 
-        // custom conversions
+        // custom conversions + PIDs are swapped as one profile while connected
         try
         {
+            InputStream cnvStr = null;
+            InputStream pidStr = null;
             String filePath = prefs.getString(SettingsActivity.extKeys[0], null);
             if (filePath != null)
             {
                 log.info("Load ext. conversions: " + filePath);
-                Uri uri = Uri.parse(filePath);
-                InputStream inStr = getContentResolver().openInputStream(uri);
-                EcuDataItems.cnv.loadFromStream(inStr);
+                cnvStr = getContentResolver().openInputStream(Uri.parse(filePath));
             }
-        } catch (Exception e)
-        {
-            log.log(Level.SEVERE, "Load ext. conversions: ", e);
-            e.printStackTrace();
-            errors += e.getLocalizedMessage() + "\n";
-        }
-
-        // custom PIDs
-        try
-        {
-            String filePath = prefs.getString(SettingsActivity.extKeys[1], null);
+            filePath = prefs.getString(SettingsActivity.extKeys[1], null);
             if (filePath != null)
             {
-                log.info("Load ext. conversions: " + filePath);
-                Uri uri = Uri.parse(filePath);
-                InputStream inStr = getContentResolver().openInputStream(uri);
-                ObdProt.dataItems.loadFromStream(inStr);
+                log.info("Load ext. PIDs: " + filePath);
+                pidStr = getContentResolver().openInputStream(Uri.parse(filePath));
+            }
+
+            EcuDataProfiles.Profile profile = (cnvStr != null || pidStr != null)
+                                              ? ObdProt.profiles.load("preferences", cnvStr, pidStr)
+                                              : null;
+            if (profile != null && !profile.isValid())
+            {
+                for (String error : profile.getErrors())
+                {
+                    errors += error + "\n";
+                }
+            }
+            else
+            {
+                ObdProt.profiles.activate(profile);
             }
         } catch (Exception e)
         {
-            log.log(Level.SEVERE, "Load ext. PIDs: ", e);
+            log.log(Level.SEVERE, "Load ext. profile: ", e);
             e.printStackTrace();
             errors += e.getLocalizedMessage() + "\n";
         }
@@ -2083,21 +2090,22 @@ public class MainActivity extends PluginManager
     {
         if (filtered)
         {
-            TreeSet<Integer> selPids = new TreeSet<>();
+            TreeSet<String> selItems = new TreeSet<>();
             int[] selectedPositions = getSelectedPositions();
             for (int pos : selectedPositions)
             {
                 EcuDataPv pv = (EcuDataPv) currDataAdapter.getItem(pos);
-                selPids.add(pv != null ? pv.getAsInt(EcuDataPv.FID_PID) : 0);
+                if (pv != null && pv.get(EcuDataPv.FID_MNEMONIC) != null)
+                    selItems.add(pv.get(EcuDataPv.FID_MNEMONIC).toString());
             }
             currDataAdapter.filterPositions(selectedPositions);
 
             if (currDataAdapter == mPidAdapter)
-                setFixedPids(selPids);
+                subscribeItems(this, selItems);
         } else
         {
             if (currDataAdapter == mPidAdapter)
-                ObdProt.resetFixedPid();
+                EcuDataItems.subscriptions.unsubscribe(this);
 
             /* Return to original PV list */
             if (currDataAdapter == mPidAdapter)
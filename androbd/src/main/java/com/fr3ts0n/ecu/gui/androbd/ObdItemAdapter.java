@@ -272,6 +272,7 @@ class ObdItemAdapter extends ArrayAdapter<Object>
 
     /**
      * Add data series to all process variables
+     * (bounded in size and duration, @see BufferedXYSeries)
      */
     protected synchronized void addAllDataSeries()
     {
@@ -282,7 +283,7 @@ class ObdItemAdapter extends ArrayAdapter<Object>
             XYSeries series = (XYSeries) pv.get(FID_DATA_SERIES);
             if (series == null)
             {
-                series = new XYSeries(String.valueOf(pv.get(EcuDataPv.FID_DESCRIPT)));
+                series = new BufferedXYSeries(String.valueOf(pv.get(EcuDataPv.FID_DESCRIPT)));
                 pv.put(FID_DATA_SERIES, series);
                 pv.addPvChangeListener(dataChangeHandler, PvChangeEvent.PV_MODIFIED);
             }
@@ -30,7 +30,9 @@ import android.hardware.usb.UsbManager;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 
+import com.fr3ts0n.ecu.prot.obd.BaudRateNegotiator;
 import com.fr3ts0n.prot.ProtUtils;
+import com.fr3ts0n.prot.SerialLine;
 import com.fr3ts0n.prot.TelegramWriter;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
 import com.hoho.android.usbserial.util.SerialInputOutputManager;
@@ -52,11 +54,17 @@ public class UsbCommService extends CommService
 
 	public static final String PREF_KEY_BAUDRATE = "comm_baudrate";
 	public static final int DEFAULT_BAUDRATE = 38400;
+	public static final String PREF_KEY_BAUDRATE_NEGOTIATE = "comm_baudrate_negotiate";
+
+	/** monotonic transmit time of last message [ns] */
+	private volatile long txTime = 0;
 
 	private final SerialInputOutputManager.Listener mListener =
 		new SerialInputOutputManager.Listener()
 		{
 			String message = "";
+			/** monotonic receive time of current message [ns] */
+			long rxTime = 0;
 
 			@Override
 			public void onRunError(Exception e)
@@ -68,6 +76,8 @@ public class UsbCommService extends CommService
 			@Override
 			public void onNewData(final byte[] data)
 			{
+				// all data of this chunk has been received at the same time
+				long chunkTime = System.nanoTime();
 				log.finer("RX: " +ProtUtils.hexDumpBuffer(new String(data).toCharArray()));
 				for(byte chr : data)
 				{
@@ -79,6 +89,7 @@ public class UsbCommService extends CommService
 
 						// trigger message handling for new request
 						case '>':
+							if (message.isEmpty()) rxTime = chunkTime;
 							//noinspection StringConcatenationInLoop
 							message += (char) chr;
 							// trigger message handling
@@ -87,7 +98,7 @@ public class UsbCommService extends CommService
 							try
 							{
 								if(!message.isEmpty())
-								{ elm.handleTelegram(message.toCharArray()); }
+								{ elm.handleTelegram(message.toCharArray(), rxTime, txTime); }
 							}
 							catch (Exception ex)
 							{
@@ -97,6 +108,7 @@ public class UsbCommService extends CommService
 							break;
 
 						default:
+							if (message.isEmpty()) rxTime = chunkTime;
 							//noinspection StringConcatenationInLoop
 							message += (char) chr;
 					}
@@ -159,6 +171,59 @@ public class UsbCommService extends CommService
 		return getPrefsInt(PREF_KEY_BAUDRATE, DEFAULT_BAUDRATE);
 	}
 
+	/**
+	 * Negotiate highest possible baud rate with adapter
+	 * (needs to be done before io manager is started)
+	 *
+	 * @param baudRate current baud rate
+	 * @return baud rate after negotiation
+	 * @throws IOException on communication error
+	 */
+	private int negotiateBaudRate(final int baudRate) throws IOException
+	{
+		SerialLine line = new SerialLine()
+		{
+			int currentRate = baudRate;
+
+			@Override
+			public int getBaudRate()
+			{
+				return currentRate;
+			}
+
+			@Override
+			public void setBaudRate(int newRate) throws IOException
+			{
+				try
+				{
+					sPort.setParameters(newRate, 8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+				}
+				catch (IllegalArgumentException | UnsupportedOperationException ex)
+				{
+					// rate not supported by USB serial chip
+					throw new IOException(ex);
+				}
+				currentRate = newRate;
+			}
+
+			@Override
+			public void write(byte[] data) throws IOException
+			{
+				sPort.write(data, 0);
+			}
+
+			@Override
+			public int read(byte[] buffer, int timeout) throws IOException
+			{
+				return sPort.read(buffer, timeout);
+			}
+		};
+		BaudRateNegotiator negotiator = new BaudRateNegotiator(line);
+		int result = negotiator.negotiate(BaudRateNegotiator.BAUD_RATES[0]);
+		negotiator.measureThroughput(BaudRateNegotiator.THROUGHPUT_ROUNDS);
+		return result;
+	}
+
 	@Override
 	public void start()
 	{
@@ -202,6 +267,13 @@ public class UsbCommService extends CommService
 				sPort.setDTR(true);
 				sPort.setRTS(true);
 
+				// negotiate higher baud rate if enabled
+				SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+				if (prefs.getBoolean(PREF_KEY_BAUDRATE_NEGOTIATE, false))
+				{
+					elm.setBaudRateNegotiated(negotiateBaudRate(getBaudRate()) != getBaudRate());
+				}
+
 				// start communication thread
 				log.info("Starting io manager ..");
 				Executors.newSingleThreadExecutor().submit(mSerialIoManager);
@@ -253,6 +325,7 @@ public class UsbCommService extends CommService
 		try
 		{
 			sPort.write(out,0);
+			txTime = System.nanoTime();
 		}
 		catch(Exception ex)
 		{
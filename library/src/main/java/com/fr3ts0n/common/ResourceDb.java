@@ -0,0 +1,419 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Binary database of resource bundles for all locales
+ *
+ * The database is compiled at build time by {@link ResourceDbCompiler}
+ * and is memory mapped (or read into a direct buffer) as a whole.
+ * Strings are only decoded when they are requested, so opening the
+ * database and switching locales does not parse any resources.
+ * <pre>
+ * header:  magic, version
+ * locales: count, [name]
+ * bundles: count, [name, numKeys, keyTablePos, valueTablePos]
+ * keys:    [key]                    sorted by UTF-8 bytes
+ * values:  [locale][key] -- value   (-1 = not defined in locale)
+ * pool:    [length(u16), UTF-8 bytes]
+ * </pre>
+ * All strings are positions within the string pool.
+ * Fallback chains of a locale follow the candidate locales of
+ * {@link ResourceBundle.Control}, so lookups behave like ResourceBundles.
+ *
+ * @author erwin
+ */
+public class ResourceDb
+{
+	/** database file format identification */
+	static final int MAGIC = 0x41524442; // "ARDB"
+	static final int VERSION = 1;
+	/** string encoding */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	/** class path of default database */
+	public static final String DEFAULT_RESOURCE = "/com/fr3ts0n/common/resources.db";
+
+	/** the logger */
+	private static final Logger log = Logger.getLogger("resources");
+	/** control to determine locale candidates */
+	private static final ResourceBundle.Control control =
+		ResourceBundle.Control.getControl(ResourceBundle.Control.FORMAT_DEFAULT);
+
+	/** default database, null if not available */
+	private static ResourceDb defaultDb;
+	private static boolean defaultLoaded = false;
+
+	/** database content */
+	private final ByteBuffer buffer;
+	/** locale index by locale name ("" = base bundle) */
+	private final HashMap<String, Integer> locales = new HashMap<>();
+	/** number of locales */
+	private final int numLocales;
+	/** bundles by bundle name */
+	private final HashMap<String, Bundle> bundles = new HashMap<>();
+	/** fallback chains by locale */
+	private final Map<Locale, int[]> chains = new ConcurrentHashMap<>();
+
+	/**
+	 * Bundle table entry
+	 */
+	private static final class Bundle
+	{
+		final String name;
+		final int numKeys;
+		final int keyTablePos;
+		final int valueTablePos;
+
+		Bundle(String name, int numKeys, int keyTablePos, int valueTablePos)
+		{
+			this.name = name;
+			this.numKeys = numKeys;
+			this.keyTablePos = keyTablePos;
+			this.valueTablePos = valueTablePos;
+		}
+	}
+
+	/**
+	 * Create database from buffer content
+	 *
+	 * @param buffer buffer with compiled database
+	 * @throws IOException if buffer does not contain a valid database
+	 */
+	public ResourceDb(ByteBuffer buffer) throws IOException
+	{
+		this.buffer = buffer;
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException("Invalid resource database");
+
+		int pos = 8;
+		numLocales = buffer.getInt(pos);
+		pos += 4;
+		for (int i = 0; i < numLocales; i++, pos += 4)
+		{
+			locales.put(stringAt(buffer.getInt(pos)), i);
+		}
+		int numBundles = buffer.getInt(pos);
+		pos += 4;
+		for (int i = 0; i < numBundles; i++, pos += 16)
+		{
+			Bundle bundle = new Bundle(stringAt(buffer.getInt(pos)),
+			                           buffer.getInt(pos + 4),
+			                           buffer.getInt(pos + 8),
+			                           buffer.getInt(pos + 12));
+			bundles.put(bundle.name, bundle);
+		}
+	}
+
+	/**
+	 * Open database file (memory mapped)
+	 *
+	 * @param file database file
+	 * @return opened database
+	 * @throws IOException on errors opening file or invalid content
+	 */
+	public static ResourceDb open(File file) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+		     FileChannel channel = raf.getChannel())
+		{
+			return new ResourceDb(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Read database from stream into a direct buffer
+	 *
+	 * @param stream stream to read database from
+	 * @return opened database
+	 * @throws IOException on errors reading stream or invalid content
+	 */
+	public static ResourceDb read(InputStream stream) throws IOException
+	{
+		return read(stream, -1);
+	}
+
+	/**
+	 * Read database from stream into a direct buffer
+	 *
+	 * If the length is known, the buffer is allocated once with the exact size,
+	 * otherwise it grows while reading.
+	 *
+	 * @param stream stream to read database from
+	 * @param length number of bytes within stream, negative if unknown
+	 * @return opened database
+	 * @throws IOException on errors reading stream or invalid content
+	 */
+	public static ResourceDb read(InputStream stream, long length) throws IOException
+	{
+		byte[] chunk = new byte[0x10000];
+		ByteBuffer result = ByteBuffer.allocateDirect(length >= 0 ? (int) length : chunk.length);
+		int len;
+		while ((len = stream.read(chunk)) > 0)
+		{
+			if (result.remaining() < len)
+			{
+				ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(2 * result.capacity(),
+				                                                       result.position() + len));
+				result.flip();
+				larger.put(result);
+				result = larger;
+			}
+			result.put(chunk, 0, len);
+		}
+		result.flip();
+		return new ResourceDb(result);
+	}
+
+	/**
+	 * get default database from class path
+	 * (database is opened on first use)
+	 *
+	 * @return default database, or null if not available
+	 */
+	public static synchronized ResourceDb getDefault()
+	{
+		if (!defaultLoaded)
+		{
+			defaultLoaded = true;
+			URL url = ResourceDb.class.getResource(DEFAULT_RESOURCE);
+			if (url != null)
+			{
+				try
+				{
+					if ("file".equals(url.getProtocol()))
+					{
+						defaultDb = open(new File(url.toURI()));
+					}
+					else
+					{
+						// size of packaged resource is known from jar/apk entry
+						URLConnection conn = url.openConnection();
+						try (InputStream stream = conn.getInputStream())
+						{
+							defaultDb = read(stream, conn.getContentLengthLong());
+						}
+					}
+				}
+				catch (Exception ex)
+				{
+					log.warning("Resource database: " + ex);
+				}
+			}
+		}
+		return defaultDb;
+	}
+
+	/**
+	 * Does database contain specified bundle?
+	 *
+	 * @param bundleName name of resource bundle
+	 * @return true if bundle is contained
+	 */
+	public boolean contains(String bundleName)
+	{
+		return bundles.containsKey(bundleName);
+	}
+
+	/**
+	 * get resource bundle for locale
+	 * The bundle is a view on the database, so creating it is cheap.
+	 *
+	 * @param bundleName name of resource bundle
+	 * @param locale     locale to get bundle for
+	 * @return resource bundle, or null if bundle is not contained
+	 */
+	public ResourceBundle getBundle(String bundleName, Locale locale)
+	{
+		Bundle bundle = bundles.get(bundleName);
+		return (bundle != null) ? new DbBundle(bundle, getChain(bundleName, locale)) : null;
+	}
+
+	/**
+	 * get fallback chain of a locale
+	 *
+	 * @param bundleName name of resource bundle
+	 * @param locale     requested locale
+	 * @return database locale indices in order of precedence
+	 */
+	private int[] getChain(String bundleName, Locale locale)
+	{
+		int[] result = chains.get(locale);
+		if (result == null)
+		{
+			List<Integer> chain = new ArrayList<>();
+			for (Locale candidate : control.getCandidateLocales(bundleName, locale))
+			{
+				String name = control.toBundleName(bundleName, candidate);
+				name = name.substring(Math.min(name.length(), bundleName.length() + 1));
+				Integer idx = locales.get(name);
+				if (idx != null && !chain.contains(idx)) chain.add(idx);
+			}
+			result = new int[chain.size()];
+			for (int i = 0; i < result.length; i++) result[i] = chain.get(i);
+			chains.put(locale, result);
+		}
+		return result;
+	}
+
+	/**
+	 * get string from string pool
+	 *
+	 * @param pos position of string within pool
+	 * @return decoded string
+	 */
+	private String stringAt(int pos)
+	{
+		int len = buffer.getShort(pos) & 0xFFFF;
+		byte[] bytes = new byte[len];
+		ByteBuffer src = buffer.duplicate();
+		src.position(pos + 2);
+		src.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * compare string in pool with key bytes
+	 *
+	 * @param pos position of string within pool
+	 * @param key UTF-8 bytes of key
+	 * @return comparison result of unsigned bytes
+	 */
+	private int compare(int pos, byte[] key)
+	{
+		int len = buffer.getShort(pos) & 0xFFFF;
+		int n = Math.min(len, key.length);
+		for (int i = 0; i < n; i++)
+		{
+			int diff = (buffer.get(pos + 2 + i) & 0xFF) - (key[i] & 0xFF);
+			if (diff != 0) return diff;
+		}
+		return len - key.length;
+	}
+
+	/**
+	 * find position of key within bundle key table
+	 *
+	 * @param bundle bundle to search
+	 * @param key    key to search
+	 * @return index of key, or negative value if not found
+	 */
+	private int indexOf(Bundle bundle, String key)
+	{
+		byte[] keyBytes = key.getBytes(UTF8);
+		int lo = 0;
+		int hi = bundle.numKeys - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int cmp = compare(buffer.getInt(bundle.keyTablePos + 4 * mid), keyBytes);
+			if (cmp < 0) lo = mid + 1;
+			else if (cmp > 0) hi = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * get value of key following fallback chain
+	 *
+	 * @param bundle bundle of key
+	 * @param index  index of key within bundle
+	 * @param chain  fallback chain
+	 * @return string pool position of value, or -1 if not defined
+	 */
+	private int valuePos(Bundle bundle, int index, int[] chain)
+	{
+		for (int locale : chain)
+		{
+			int pos = buffer.getInt(bundle.valueTablePos + 4 * (locale * bundle.numKeys + index));
+			if (pos >= 0) return pos;
+		}
+		return -1;
+	}
+
+	/**
+	 * Resource bundle view on database for one fallback chain
+	 */
+	private final class DbBundle extends ResourceBundle
+	{
+		final Bundle bundle;
+		final int[] chain;
+		/** keys defined within fallback chain, determined on first use */
+		Set<String> keys;
+
+		DbBundle(Bundle bundle, int[] chain)
+		{
+			this.bundle = bundle;
+			this.chain = chain;
+		}
+
+		@Override
+		protected Object handleGetObject(String key)
+		{
+			int index = indexOf(bundle, key);
+			if (index < 0) return null;
+			int pos = valuePos(bundle, index, chain);
+			return (pos >= 0) ? stringAt(pos) : null;
+		}
+
+		@Override
+		protected synchronized Set<String> handleKeySet()
+		{
+			if (keys == null)
+			{
+				Set<String> result = new HashSet<>();
+				for (int i = 0; i < bundle.numKeys; i++)
+				{
+					if (valuePos(bundle, i, chain) >= 0)
+						result.add(stringAt(buffer.getInt(bundle.keyTablePos + 4 * i)));
+				}
+				keys = Collections.unmodifiableSet(result);
+			}
+			return keys;
+		}
+
+		@Override
+		public Enumeration<String> getKeys()
+		{
+			return Collections.enumeration(handleKeySet());
+		}
+	}
+}
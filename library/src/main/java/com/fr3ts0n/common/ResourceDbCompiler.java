@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Build time compiler of UTF-8 properties resource bundles
+ * into a binary resource database (@see ResourceDb)
+ *
+ * Usage:
+ * <pre>
+ * ResourceDbCompiler &lt;output file&gt; &lt;source root&gt; &lt;bundle name&gt; ...
+ * </pre>
+ *
+ * @author erwin
+ */
+public class ResourceDbCompiler
+{
+	/** unsigned byte order of UTF-8 encoded strings */
+	private static final Comparator<String> UTF8_ORDER = new Comparator<String>()
+	{
+		@Override
+		public int compare(String o1, String o2)
+		{
+			byte[] b1 = o1.getBytes(ResourceDb.UTF8);
+			byte[] b2 = o2.getBytes(ResourceDb.UTF8);
+			int n = Math.min(b1.length, b2.length);
+			for (int i = 0; i < n; i++)
+			{
+				int diff = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+				if (diff != 0) return diff;
+			}
+			return b1.length - b2.length;
+		}
+	};
+
+	/** bundle properties by bundle name and locale name */
+	private final Map<String, Map<String, Properties>> bundles = new LinkedHashMap<>();
+	/** all locale names */
+	private final TreeSet<String> locales = new TreeSet<>();
+
+	/**
+	 * Compile resource bundles into database file
+	 *
+	 * @param args output file, source root, bundle names
+	 * @throws IOException on errors reading or writing files
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 3)
+		{
+			System.err.println("Usage: ResourceDbCompiler <output file> <source root> <bundle name> ...");
+			System.exit(1);
+		}
+		ResourceDbCompiler compiler = new ResourceDbCompiler();
+		File srcRoot = new File(args[1]);
+		for (String bundleName : Arrays.asList(args).subList(2, args.length))
+		{
+			compiler.addBundle(srcRoot, bundleName);
+		}
+		File outFile = new File(args[0]);
+		if (outFile.getParentFile() != null) outFile.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(outFile))
+		{
+			compiler.write(out);
+		}
+	}
+
+	/**
+	 * Add all locales of a resource bundle
+	 *
+	 * @param srcRoot    source root directory
+	 * @param bundleName name of resource bundle (e.g. com.fr3ts0n.ecu.prot.obd.res.codes)
+	 * @throws IOException on errors reading properties
+	 */
+	public void addBundle(File srcRoot, String bundleName) throws IOException
+	{
+		int lastDot = bundleName.lastIndexOf('.');
+		File dir = new File(srcRoot, bundleName.substring(0, lastDot + 1).replace('.', '/'));
+		String prefix = bundleName.substring(lastDot + 1);
+		File[] files = dir.listFiles();
+		if (files == null) throw new IOException("Bundle not found: " + bundleName);
+
+		Map<String, Properties> bundle = new HashMap<>();
+		for (File file : files)
+		{
+			String name = file.getName();
+			if (!name.startsWith(prefix) || !name.endsWith(".properties")) continue;
+			String suffix = name.substring(prefix.length(), name.length() - ".properties".length());
+			if (!suffix.isEmpty() && !suffix.startsWith("_")) continue;
+			String locale = suffix.isEmpty() ? "" : suffix.substring(1);
+
+			Properties props = new Properties();
+			try (Reader rdr = new InputStreamReader(new FileInputStream(file), ResourceDb.UTF8))
+			{
+				props.load(rdr);
+			}
+			bundle.put(locale, props);
+			locales.add(locale);
+		}
+		bundles.put(bundleName, bundle);
+	}
+
+	/**
+	 * Write database of all added bundles
+	 *
+	 * @param out stream to write database to
+	 * @throws IOException on errors writing to stream
+	 */
+	public void write(OutputStream out) throws IOException
+	{
+		// string pool with relative positions
+		ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+		DataOutputStream pool = new DataOutputStream(poolBytes);
+		HashMap<String, Integer> poolPos = new HashMap<>();
+
+		List<String> localeList = new ArrayList<>(locales);
+		int[] localeNames = new int[localeList.size()];
+		for (int i = 0; i < localeNames.length; i++)
+		{
+			localeNames[i] = intern(localeList.get(i), pool, poolPos);
+		}
+
+		// key and value tables with relative pool positions
+		int numBundles = bundles.size();
+		int[] bundleNames = new int[numBundles];
+		int[][] keyTables = new int[numBundles][];
+		int[][] valueTables = new int[numBundles][];
+		int b = 0;
+		for (Map.Entry<String, Map<String, Properties>> bundle : bundles.entrySet())
+		{
+			bundleNames[b] = intern(bundle.getKey(), pool, poolPos);
+			TreeSet<String> keys = new TreeSet<>(UTF8_ORDER);
+			for (Properties props : bundle.getValue().values())
+			{
+				keys.addAll(props.stringPropertyNames());
+			}
+			List<String> keyList = new ArrayList<>(keys);
+			keyTables[b] = new int[keyList.size()];
+			valueTables[b] = new int[localeList.size() * keyList.size()];
+			Arrays.fill(valueTables[b], -1);
+			for (int k = 0; k < keyList.size(); k++)
+			{
+				keyTables[b][k] = intern(keyList.get(k), pool, poolPos);
+				for (int l = 0; l < localeList.size(); l++)
+				{
+					Properties props = bundle.getValue().get(localeList.get(l));
+					String value = (props != null) ? props.getProperty(keyList.get(k)) : null;
+					if (value != null)
+						valueTables[b][l * keyList.size() + k] = intern(value, pool, poolPos);
+				}
+			}
+			b++;
+		}
+
+		// determine absolute positions
+		int headerSize = 4 + 4 + 4 + 4 * localeNames.length + 4 + 16 * numBundles;
+		int[] keyTablePos = new int[numBundles];
+		int[] valueTablePos = new int[numBundles];
+		int pos = headerSize;
+		for (b = 0; b < numBundles; b++)
+		{
+			keyTablePos[b] = pos;
+			pos += 4 * keyTables[b].length;
+			valueTablePos[b] = pos;
+			pos += 4 * valueTables[b].length;
+		}
+		int poolStart = pos;
+
+		// write database
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(ResourceDb.MAGIC);
+		dos.writeInt(ResourceDb.VERSION);
+		dos.writeInt(localeNames.length);
+		for (int name : localeNames) dos.writeInt(poolStart + name);
+		dos.writeInt(numBundles);
+		for (b = 0; b < numBundles; b++)
+		{
+			dos.writeInt(poolStart + bundleNames[b]);
+			dos.writeInt(keyTables[b].length);
+			dos.writeInt(keyTablePos[b]);
+			dos.writeInt(valueTablePos[b]);
+		}
+		for (b = 0; b < numBundles; b++)
+		{
+			for (int key : keyTables[b]) dos.writeInt(poolStart + key);
+			for (int value : valueTables[b]) dos.writeInt(value < 0 ? -1 : poolStart + value);
+		}
+		pool.flush();
+		poolBytes.writeTo(dos);
+		dos.flush();
+	}
+
+	/**
+	 * add string to string pool (if not already contained)
+	 *
+	 * @param value   string to be added
+	 * @param pool    string pool stream
+	 * @param poolPos positions of strings already contained
+	 * @return relative position of string within pool
+	 * @throws IOException on errors writing to pool
+	 */
+	private static int intern(String value, DataOutputStream pool, HashMap<String, Integer> poolPos)
+		throws IOException
+	{
+		Integer result = poolPos.get(value);
+		if (result == null)
+		{
+			byte[] bytes = value.getBytes(ResourceDb.UTF8);
+			if (bytes.length > 0xFFFF) throw new IOException("String too long: " + value.substring(0, 40));
+			result = pool.size();
+			pool.writeShort(bytes.length);
+			pool.write(bytes);
+			poolPos.put(value, result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.common;
+
+import java.util.ArrayList;
+
+/**
+ * Single pass tokenizer for tab separated CSV content
+ *
+ * Lines are split into fields at TAB characters, optional quotes
+ * are removed and empty lines are skipped. Like String.split,
+ * trailing empty fields of a line are dropped.
+ * Parse functions return a default value for empty or invalid fields
+ * instead of throwing exceptions.
+ *
+ * @author erwin
+ */
+public class TsvTokenizer
+{
+	private final String content;
+	private int pos = 0;
+	private int lineNumber = 0;
+	private final StringBuilder field = new StringBuilder();
+	private final ArrayList<String> fields = new ArrayList<>();
+
+	/**
+	 * Create tokenizer for CSV content
+	 *
+	 * @param content complete CSV content
+	 */
+	public TsvTokenizer(String content)
+	{
+		this.content = content;
+	}
+
+	/**
+	 * get fields of next non-empty line
+	 *
+	 * @return fields of line, or null at end of content
+	 */
+	public String[] next()
+	{
+		int len = content.length();
+		while (pos < len)
+		{
+			fields.clear();
+			field.setLength(0);
+			lineNumber++;
+			// scan one line
+			while (pos < len)
+			{
+				char chr = content.charAt(pos++);
+				if (chr == '\n') break;
+				switch (chr)
+				{
+					case '\t':
+						fields.add(field.toString());
+						field.setLength(0);
+						break;
+					case '"':
+					case '\r':
+						break;
+					default:
+						field.append(chr);
+				}
+			}
+			fields.add(field.toString());
+			// drop trailing empty fields
+			int n = fields.size();
+			while (n > 0 && fields.get(n - 1).isEmpty()) n--;
+			if (n > 0) return fields.subList(0, n).toArray(new String[n]);
+		}
+		return null;
+	}
+
+	/**
+	 * get number of current line
+	 *
+	 * @return number of line (starting with 1)
+	 */
+	public int getLineNumber()
+	{
+		return lineNumber;
+	}
+
+	/**
+	 * parse decimal or hex (0x) integer field
+	 *
+	 * @param value field value
+	 * @param dflt  default value for empty/invalid field
+	 * @return parsed value or default
+	 */
+	public static long parseLong(String value, long dflt)
+	{
+		int len = value.length();
+		if (len == 0) return dflt;
+		int i = 0;
+		boolean negative = value.charAt(0) == '-';
+		if (negative || value.charAt(0) == '+') i++;
+		int radix = 10;
+		if (len > i + 1 && value.charAt(i) == '0' && (value.charAt(i + 1) | 0x20) == 'x')
+		{
+			radix = 16;
+			i += 2;
+		}
+		if (i >= len) return dflt;
+		long result = 0;
+		for (; i < len; i++)
+		{
+			int digit = Character.digit(value.charAt(i), radix);
+			if (digit < 0) return dflt;
+			result = result * radix + digit;
+		}
+		return negative ? -result : result;
+	}
+
+	/**
+	 * parse decimal or hex (0x) integer field
+	 *
+	 * @param value field value
+	 * @param dflt  default value for empty/invalid field
+	 * @return parsed value or default
+	 */
+	public static int parseInt(String value, int dflt)
+	{
+		return (int) parseLong(value, dflt);
+	}
+
+	/**
+	 * parse floating point field
+	 *
+	 * @param value field value
+	 * @return parsed value, or null for empty/invalid field
+	 */
+	public static Float parseFloat(String value)
+	{
+		int len = value.length();
+		if (len == 0) return null;
+		// reject obviously non-numeric content without exception
+		for (int i = 0; i < len; i++)
+		{
+			char chr = value.charAt(i);
+			if ((chr < '0' || chr > '9') && "+-.eE ".indexOf(chr) < 0) return null;
+		}
+		try
+		{
+			return Float.parseFloat(value);
+		}
+		catch (NumberFormatException ex)
+		{
+			return null;
+		}
+	}
+}
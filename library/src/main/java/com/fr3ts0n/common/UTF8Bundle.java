@@ -1,10 +1,14 @@
 package com.fr3ts0n.common;
 
+import java.util.Locale;
 import java.util.ResourceBundle;
 
 /**
  * Wrapper class to ensure UTF8 encoding for resource bundle reading
  *
+ * Bundles contained in the compiled resource database (@see ResourceDb)
+ * are served from the database, all others are loaded as ResourceBundle.
+ *
  * @author fr3ts0n
  */
 
@@ -19,7 +23,12 @@ public class UTF8Bundle
 
     public static ResourceBundle getBundle(String bundleName)
     {
-        if (ctrl != null)
+        ResourceDb db = ResourceDb.getDefault();
+        if (db != null && db.contains(bundleName))
+        {
+            return db.getBundle(bundleName, Locale.getDefault());
+        }
+        else if (ctrl != null)
         {
             return ResourceBundle.getBundle(bundleName, ctrl);
         }
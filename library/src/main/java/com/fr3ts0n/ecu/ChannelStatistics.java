@@ -0,0 +1,266 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Incremental statistics of the samples of one channel
+ *
+ * Every sample is processed in O(1) with constant memory:
+ * - count, min, max
+ * - mean and variance (Welford's online algorithm)
+ * - time integral (trapezoidal rule) and time weighted average
+ * - approximate percentiles (@see QuantileSketch)
+ *
+ * Time intervals which exceed the max. gap time (e.g. no data while
+ * the item was not polled) are not integrated.
+ *
+ * @author erwin
+ */
+public class ChannelStatistics
+{
+	/** default max. time between samples to be integrated [us] */
+	public static final long DEFAULT_MAX_GAP = 5000000L;
+
+	private final String mnemonic;
+	private final String units;
+	private long maxGap = DEFAULT_MAX_GAP;
+
+	private long count = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private double mean = 0;
+	/** sum of squared differences from mean (Welford) */
+	private double m2 = 0;
+	/** time integral of values [value * s] */
+	private double integral = 0;
+	/** integrated time [us] */
+	private long integratedTime = 0;
+	private final QuantileSketch sketch = new QuantileSketch();
+
+	/** previous sample for integration */
+	private boolean hasLast = false;
+	private long lastTime;
+	private double lastValue;
+
+	/**
+	 * Create statistics of a channel
+	 *
+	 * @param mnemonic mnemonic of channel
+	 * @param units    units of channel values
+	 */
+	public ChannelStatistics(String mnemonic, String units)
+	{
+		this.mnemonic = mnemonic;
+		this.units = units;
+	}
+
+	public String getMnemonic()
+	{
+		return mnemonic;
+	}
+
+	public String getUnits()
+	{
+		return units;
+	}
+
+	/**
+	 * set max. time between samples to be integrated
+	 *
+	 * @param maxGap max. gap time [us]
+	 */
+	public synchronized void setMaxGap(long maxGap)
+	{
+		this.maxGap = maxGap;
+	}
+
+	/**
+	 * add sample
+	 * (NaN values are not counted, and interrupt the integration)
+	 *
+	 * @param time  time of sample [us]
+	 * @param value value of sample
+	 */
+	public synchronized void add(long time, double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+		{
+			hasLast = false;
+			return;
+		}
+
+		count++;
+		if (count == 1)
+		{
+			min = value;
+			max = value;
+		}
+		else
+		{
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		sketch.add(value);
+
+		if (hasLast)
+		{
+			long dt = time - lastTime;
+			if (dt > 0 && dt <= maxGap)
+			{
+				integral += (lastValue + value) / 2 * dt / 1e6;
+				integratedTime += dt;
+			}
+		}
+		if (!hasLast || time >= lastTime)
+		{
+			hasLast = true;
+			lastTime = time;
+			lastValue = value;
+		}
+	}
+
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * @return min. value, NaN if there are no samples
+	 */
+	public synchronized double getMin()
+	{
+		return min;
+	}
+
+	/**
+	 * @return max. value, NaN if there are no samples
+	 */
+	public synchronized double getMax()
+	{
+		return max;
+	}
+
+	/**
+	 * @return mean of sample values, NaN if there are no samples
+	 */
+	public synchronized double getMean()
+	{
+		return count > 0 ? mean : Double.NaN;
+	}
+
+	/**
+	 * @return sample variance, NaN if there are less than 2 samples
+	 */
+	public synchronized double getVariance()
+	{
+		return count > 1 ? m2 / (count - 1) : Double.NaN;
+	}
+
+	/**
+	 * @return sample standard deviation, NaN if there are less than 2 samples
+	 */
+	public double getStdDev()
+	{
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * get time integral of values
+	 * (e.g. distance [km] = integral of speed [km/h] / 3600)
+	 *
+	 * @return integral [value * s]
+	 */
+	public synchronized double getIntegral()
+	{
+		return integral;
+	}
+
+	/**
+	 * @return integrated time [us]
+	 */
+	public synchronized long getIntegratedTime()
+	{
+		return integratedTime;
+	}
+
+	/**
+	 * @return time weighted average, NaN if no time is integrated
+	 */
+	public synchronized double getTimeWeightedMean()
+	{
+		return integratedTime > 0 ? integral * 1e6 / integratedTime : Double.NaN;
+	}
+
+	/**
+	 * get approximate percentile
+	 *
+	 * @param percentile percentile [0..100]
+	 * @return value at percentile, NaN if there are no samples
+	 */
+	public synchronized double getPercentile(double percentile)
+	{
+		double value = sketch.getQuantile(percentile / 100);
+		return Double.isNaN(value) ? value : Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * write statistics
+	 *
+	 * @param out output to write to
+	 * @throws IOException on write error
+	 */
+	public synchronized void write(DataOutput out) throws IOException
+	{
+		out.writeLong(count);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		out.writeDouble(mean);
+		out.writeDouble(m2);
+		out.writeDouble(integral);
+		out.writeLong(integratedTime);
+		sketch.write(out);
+	}
+
+	/**
+	 * read statistics which were written with #write
+	 *
+	 * @param in input to read from
+	 * @throws IOException on read error
+	 */
+	public synchronized void read(DataInput in) throws IOException
+	{
+		count = in.readLong();
+		min = in.readDouble();
+		max = in.readDouble();
+		mean = in.readDouble();
+		m2 = in.readDouble();
+		integral = in.readDouble();
+		integratedTime = in.readLong();
+		sketch.read(in);
+		hasLast = false;
+	}
+}
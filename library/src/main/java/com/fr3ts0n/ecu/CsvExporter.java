@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Export of multiple channels into a CSV table
+ *
+ * The time ordered samples of all channels are merged in a single pass
+ * (@see Resampler). By default each distinct sample time of any channel
+ * creates one row, and the values of the other channels at this time are
+ * aligned according to the selected alignment. So channels with different
+ * sample rates are exported completely. Alternatively rows are created
+ * at a fixed interval.
+ *
+ * Output is streamed through a buffered writer, numbers and times are
+ * formatted with reused formatters.
+ *
+ * @author erwin
+ */
+public class CsvExporter
+{
+	/**
+	 * Listener to export progress
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * export progress has changed
+		 *
+		 * @param progress progress [0..PROGRESS_MAX]
+		 */
+		void onProgress(int progress);
+	}
+
+	/** max. progress value */
+	public static final int PROGRESS_MAX = 10000;
+	/** size of output buffer [chars] */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/** channel titles */
+	private final List<String> titles = new ArrayList<>();
+	/** alignment of channel samples to rows */
+	private final Resampler resampler = new Resampler();
+
+	private String fieldDelimiter = ",";
+	private String lineDelimiter = "\n";
+	private boolean textQuoted = false;
+	private String timeTitle = "Time";
+	private DateFormat timeFormat = null;
+	private ProgressListener progressListener = null;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * add channel to be exported
+	 *
+	 * @param title   column title
+	 * @param samples time ordered samples of channel
+	 */
+	public void addChannel(String title, SampleIterator samples)
+	{
+		titles.add(title);
+		resampler.addChannel(samples);
+	}
+
+	public void setAlignment(Resampler.Alignment alignment)
+	{
+		resampler.setAlignment(alignment);
+	}
+
+	/**
+	 * set interval of exported rows
+	 *
+	 * @param interval row interval [ms], 0 = row at every sample time of any channel
+	 */
+	public void setInterval(long interval)
+	{
+		resampler.setInterval(interval);
+	}
+
+	/**
+	 * set max. gap time to be bridged by alignment (@see Resampler#setMaxGap)
+	 *
+	 * @param maxGap max. gap time [ms], 0 = unlimited
+	 */
+	public void setMaxGap(long maxGap)
+	{
+		resampler.setMaxGap(maxGap);
+	}
+
+	public void setFieldDelimiter(String fieldDelimiter)
+	{
+		this.fieldDelimiter = fieldDelimiter;
+	}
+
+	public void setLineDelimiter(String lineDelimiter)
+	{
+		this.lineDelimiter = lineDelimiter;
+	}
+
+	public void setTextQuoted(boolean textQuoted)
+	{
+		this.textQuoted = textQuoted;
+	}
+
+	public void setTimeTitle(String timeTitle)
+	{
+		this.timeTitle = timeTitle;
+	}
+
+	/**
+	 * set format of time column
+	 *
+	 * @param timeFormat time format, null = time in ms since epoch
+	 */
+	public void setTimeFormat(DateFormat timeFormat)
+	{
+		this.timeFormat = timeFormat;
+	}
+
+	public void setProgressListener(ProgressListener progressListener)
+	{
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * cancel running export
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	private String quoteIfNeeded(String text)
+	{
+		return textQuoted ? "\"" + text + "\"" : text;
+	}
+
+	/**
+	 * export all channels
+	 *
+	 * @param out     output to write to (is not closed)
+	 * @param endTime time of latest sample (for progress), 0 = unknown
+	 * @return number of exported rows
+	 * @throws IOException on write error
+	 */
+	public long export(Writer out, long endTime) throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(out, BUFFER_SIZE);
+		// reused formatters
+		DecimalFormat numberFormat = new DecimalFormat("0.######", DecimalFormatSymbols.getInstance(Locale.US));
+		StringBuffer timeBuffer = new StringBuffer();
+		FieldPosition fieldPos = new FieldPosition(0);
+		Date date = new Date();
+
+		// header line
+		writer.write(quoteIfNeeded(timeTitle));
+		for (String title : titles)
+		{
+			writer.write(fieldDelimiter);
+			writer.write(quoteIfNeeded(title));
+		}
+		writer.write(lineDelimiter);
+
+		long startTime = 0;
+		int progress = -1;
+		long rows = 0;
+		while (!cancelled && resampler.next())
+		{
+			long time = resampler.getTime();
+			if (rows == 0) startTime = time;
+
+			// write row
+			if (timeFormat != null)
+			{
+				date.setTime(time);
+				timeBuffer.setLength(0);
+				writer.append(timeFormat.format(date, timeBuffer, fieldPos));
+			}
+			else
+			{
+				writer.write(Long.toString(time));
+			}
+			for (int i = 0; i < titles.size(); i++)
+			{
+				writer.write(fieldDelimiter);
+				double value = resampler.getValue(i);
+				if (!Double.isNaN(value))
+				{
+					writer.write(numberFormat.format(value));
+				}
+			}
+			writer.write(lineDelimiter);
+			rows++;
+
+			// notify progress
+			if (progressListener != null && endTime > startTime)
+			{
+				int curr = (int) (PROGRESS_MAX * (time - startTime) / (endTime - startTime));
+				if (curr != progress)
+				{
+					progress = curr;
+					progressListener.onProgress(Math.min(PROGRESS_MAX, progress));
+				}
+			}
+		}
+		writer.flush();
+		return rows;
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot cache of parsed CSV tables
+ *
+ * The tokenized (and translated) rows of a CSV file are stored
+ * in a binary snapshot file. The snapshot is identified by a key
+ * which is built from the CSV content and a variant (e.g. locale),
+ * so any change of content, locale or application version results
+ * in a new snapshot.
+ * Caching is disabled until a cache directory is set.
+ *
+ * @author erwin
+ */
+public class CsvSnapshotCache
+{
+	/** snapshot file format identification */
+	static final int MAGIC = 0x43535653; // "CSVS"
+	static final int VERSION = 1;
+	/** file name prefix of snapshot files */
+	static final String PREFIX = "csv-";
+	/** max. number of snapshot files to keep */
+	static final int MAX_FILES = 8;
+
+	/** the logger */
+	private static final Logger log = Logger.getLogger("data.cache");
+
+	/** cache directory, null = caching disabled */
+	private static File cacheDir = null;
+	/** application version (invalidates snapshots on update) */
+	private static String appVersion = "";
+
+	/**
+	 * Set cache directory
+	 *
+	 * @param dir     directory to store snapshots, null to disable caching
+	 * @param version application version, snapshots of other versions are not used
+	 */
+	public static synchronized void setCacheDir(File dir, String version)
+	{
+		cacheDir = dir;
+		appVersion = String.valueOf(version);
+	}
+
+	/**
+	 * Is caching enabled?
+	 *
+	 * @return true if cache directory is set
+	 */
+	public static synchronized boolean isEnabled()
+	{
+		return cacheDir != null;
+	}
+
+	/**
+	 * read complete stream content
+	 *
+	 * @param inStr stream to be read
+	 * @return content of stream
+	 * @throws IOException on read errors
+	 */
+	static byte[] readAll(InputStream inStr) throws IOException
+	{
+		ByteArrayOutputStream result = new ByteArrayOutputStream(0x10000);
+		byte[] buffer = new byte[0x4000];
+		int len;
+		while ((len = inStr.read(buffer)) > 0)
+		{
+			result.write(buffer, 0, len);
+		}
+		inStr.close();
+		return result.toByteArray();
+	}
+
+	/**
+	 * get snapshot key for content
+	 *
+	 * @param content CSV content
+	 * @param variant variant of parsed content (e.g. locale)
+	 * @return snapshot key
+	 */
+	static synchronized long getKey(byte[] content, String variant)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		crc.update((variant + "/" + appVersion + "/" + VERSION).getBytes());
+		return (crc.getValue() << 32) | (content.length & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * get snapshot file for key
+	 *
+	 * @param key snapshot key
+	 * @return snapshot file, or null if caching is disabled
+	 */
+	private static synchronized File getFile(long key)
+	{
+		return (cacheDir != null)
+		       ? new File(cacheDir, PREFIX + Long.toHexString(key) + ".bin")
+		       : null;
+	}
+
+	/**
+	 * load rows from snapshot
+	 *
+	 * @param key snapshot key
+	 * @return rows of snapshot, or null if no valid snapshot is available
+	 */
+	static List<String[]> load(long key)
+	{
+		File file = getFile(key);
+		if (file == null || !file.exists()) return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != key)
+				return null;
+			int numRows = in.readInt();
+			List<String[]> result = new ArrayList<>(numRows);
+			for (int i = 0; i < numRows; i++)
+			{
+				String[] row = new String[in.readUnsignedShort()];
+				for (int j = 0; j < row.length; j++)
+				{
+					row[j] = in.readUTF();
+				}
+				result.add(row);
+			}
+			// keep recently used snapshots when pruning
+			file.setLastModified(System.currentTimeMillis());
+			log.fine("Snapshot loaded: " + file);
+			return result;
+		}
+		catch (IOException ex)
+		{
+			log.warning("Snapshot invalid: " + file + " " + ex);
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * store rows as snapshot
+	 *
+	 * @param key  snapshot key
+	 * @param rows rows to be stored
+	 */
+	static void store(long key, List<String[]> rows)
+	{
+		File file = getFile(key);
+		if (file == null) return;
+
+		// write to temporary file and rename to avoid partial snapshots
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(key);
+			out.writeInt(rows.size());
+			for (String[] row : rows)
+			{
+				out.writeShort(row.length);
+				for (String field : row)
+				{
+					out.writeUTF(field);
+				}
+			}
+		}
+		catch (IOException ex)
+		{
+			log.warning("Snapshot not stored: " + file + " " + ex);
+			tmpFile.delete();
+			return;
+		}
+		if (tmpFile.renameTo(file))
+		{
+			log.fine("Snapshot stored: " + file);
+			prune(file.getParentFile());
+		}
+		else
+		{
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * remove oldest snapshots if there are too many
+	 *
+	 * @param dir cache directory
+	 */
+	private static void prune(File dir)
+	{
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		List<File> snapshots = new ArrayList<>();
+		for (File file : files)
+		{
+			if (file.getName().startsWith(PREFIX)) snapshots.add(file);
+		}
+		if (snapshots.size() <= MAX_FILES) return;
+
+		File[] sorted = snapshots.toArray(new File[0]);
+		Arrays.sort(sorted, new Comparator<File>()
+		{
+			@Override
+			public int compare(File o1, File o2)
+			{
+				return Long.compare(o2.lastModified(), o1.lastModified());
+			}
+		});
+		for (int i = MAX_FILES; i < sorted.length; i++)
+		{
+			sorted[i].delete();
+		}
+	}
+}
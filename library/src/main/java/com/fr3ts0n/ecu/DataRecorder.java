@@ -0,0 +1,422 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.log.ChannelLog;
+import com.fr3ts0n.ecu.log.SegmentedLogWriter;
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+import com.fr3ts0n.pvs.PvList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background recorder of data item values
+ *
+ * The recorder listens to value changes of the data item process vars
+ * within a list (e.g. ObdProt.PidPvs) and appends each numeric value
+ * to an append-only binary channel log. It does not send any requests,
+ * so every item is recorded at the rate it is actually polled.
+ * Items to be recorded may be subscribed for polling with the recorder
+ * as owner (@see EcuDataSubscriptions).
+ *
+ * Samples are queued by the protocol thread and written in batches
+ * by a dedicated writer thread into compressed channel log segments
+ * (@see SegmentedLogWriter) with sample times in [us since epoch].
+ * Recordings which were interrupted (e.g. app was killed) are repaired
+ * with #recover before the next recording is started.
+ *
+ * Statistics of all recorded samples are kept while recording
+ * (@see #getStatistics), and saved with the recording on stop.
+ * Stopping does not block the caller (e.g. UI thread), the writer
+ * thread finishes the recording in background (@see #awaitStopped).
+ *
+ * @author erwin
+ */
+public class DataRecorder
+	implements PvChangeListener, Runnable
+{
+	/** file extension of recordings */
+	public static final String EXTENSION = ".rec";
+	/** default max. time span of a segment [us] */
+	public static final long DEFAULT_SEGMENT_DURATION = 15 * 60 * 1000000L;
+	/** max. time to wait for queued samples [ms] */
+	static final int POLL_INTERVAL = 1000;
+	/** max. number of queued samples (further samples are dropped) */
+	static final int QUEUE_SIZE = 10000;
+
+	/** the logger */
+	private static final Logger log = Logger.getLogger("data.recorder");
+
+	/**
+	 * Recorded sample of a channel
+	 */
+	private static class Sample
+	{
+		final ChannelLog.Channel channel;
+		/** time of acquisition [us since epoch] */
+		final long time;
+		final double value;
+
+		Sample(ChannelLog.Channel channel, long time, double value)
+		{
+			this.channel = channel;
+			this.time = time;
+			this.value = value;
+		}
+	}
+
+	/** base file of recorded segments */
+	private final File file;
+	/** queue of samples to be written */
+	private final BlockingQueue<Sample> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	/** recorded channels by mnemonic */
+	private final HashMap<String, ChannelLog.Channel> channels = new HashMap<>();
+	/** observer of recorded process vars */
+	private PvListObserver observer = null;
+	/** mnemonics to be recorded, null = all items */
+	private Set<String> mnemonics = null;
+	/** output log (writer thread only) */
+	private SegmentedLogWriter out = null;
+	/** segmentation and sync settings */
+	private long maxSegmentSize = SegmentedLogWriter.DEFAULT_SEGMENT_SIZE;
+	private long maxSegmentDuration = DEFAULT_SEGMENT_DURATION;
+	private long syncInterval = SegmentedLogWriter.DEFAULT_SYNC_INTERVAL;
+	/** writer thread */
+	private volatile Thread writer = null;
+	private volatile boolean running = false;
+	private volatile boolean paused = false;
+	/** number of written samples */
+	private volatile long numSamples = 0;
+	/** number of samples dropped because of queue overflow */
+	private volatile long numDropped = 0;
+	/** statistics of recorded samples */
+	private final TripStatistics statistics = new TripStatistics();
+
+	/**
+	 * Create recorder for a file
+	 *
+	 * @param file base file of segments to record to
+	 *             (@see SegmentedLogWriter#getSegmentFile)
+	 */
+	public DataRecorder(File file)
+	{
+		this.file = file;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @return recorded segment files
+	 */
+	public List<File> getSegments()
+	{
+		return SegmentedLogWriter.listSegments(file);
+	}
+
+	/**
+	 * set max. size of a segment (applies to next start)
+	 *
+	 * @param maxSegmentSize max. segment size [bytes]
+	 */
+	public void setMaxSegmentSize(long maxSegmentSize)
+	{
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/**
+	 * set max. time span of a segment (applies to next start)
+	 *
+	 * @param maxSegmentDuration max. time span of a segment [us]
+	 */
+	public void setMaxSegmentDuration(long maxSegmentDuration)
+	{
+		this.maxSegmentDuration = maxSegmentDuration;
+	}
+
+	/**
+	 * set interval of syncing recorded data to storage (applies to next start)
+	 *
+	 * @param syncInterval sync interval [ms]
+	 */
+	public void setSyncInterval(long syncInterval)
+	{
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * recover interrupted recordings
+	 *
+	 * @param dir directory of recordings
+	 * @return number of recovered segments
+	 */
+	public static int recover(File dir)
+	{
+		return SegmentedLogWriter.recoverAll(dir, EXTENSION);
+	}
+
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	public long getNumSamples()
+	{
+		return numSamples;
+	}
+
+	public long getNumDropped()
+	{
+		return numDropped;
+	}
+
+	/**
+	 * @return statistics of recorded samples (updated while recording)
+	 */
+	public TripStatistics getStatistics()
+	{
+		return statistics;
+	}
+
+	/**
+	 * @return file of statistics which are saved with the recording
+	 */
+	public File getStatisticsFile()
+	{
+		return TripStatistics.getFile(file);
+	}
+
+	/**
+	 * pause/resume recording (samples are discarded while paused)
+	 *
+	 * @param paused true to pause recording
+	 */
+	public void setPaused(boolean paused)
+	{
+		this.paused = paused;
+	}
+
+	public boolean isPaused()
+	{
+		return paused;
+	}
+
+	/**
+	 * Start recording
+	 *
+	 * @param pvs       list of data item process vars to record
+	 * @param mnemonics mnemonics of items to record and subscribe,
+	 *                  null = record all items of list without subscribing
+	 * @throws IOException if file can't be created
+	 */
+	public synchronized void start(PvList pvs, Collection<String> mnemonics)
+		throws IOException
+	{
+		if (running) return;
+		// previous recording has to be completely written
+		awaitStopped(0);
+
+		out = new SegmentedLogWriter(file);
+		out.setMaxSegmentSize(maxSegmentSize);
+		out.setMaxSegmentDuration(maxSegmentDuration);
+		out.setSyncInterval(syncInterval);
+
+		this.mnemonics = (mnemonics != null) ? new HashSet<>(mnemonics) : null;
+		channels.clear();
+		numSamples = 0;
+		numDropped = 0;
+		statistics.reset();
+		paused = false;
+		running = true;
+
+		if (mnemonics != null)
+		{
+			EcuDataItems.subscriptions.subscribe(this, mnemonics, EcuDataSubscriptions.PERIOD_FASTEST);
+		}
+		observer = new PvListObserver(pvs, this);
+		observer.attach();
+
+		writer = new Thread(this, "DataRecorder");
+		writer.start();
+		log.info("Recording started: " + file);
+	}
+
+	/**
+	 * Stop recording
+	 * (returns immediately, queued samples and statistics are written
+	 *  by the writer thread, @see #awaitStopped)
+	 */
+	public synchronized void stop()
+	{
+		if (!running) return;
+
+		observer.detach();
+		observer = null;
+		EcuDataItems.subscriptions.unsubscribe(this);
+
+		running = false;
+		log.info("Recording stopping: " + file);
+	}
+
+	/**
+	 * wait until writer thread has written all queued samples
+	 * after recording was stopped
+	 *
+	 * @param timeout max. time to wait [ms], 0 = wait forever
+	 * @return true if writer thread is finished
+	 */
+	public boolean awaitStopped(long timeout)
+	{
+		Thread thread = writer;
+		if (thread == null) return true;
+		try
+		{
+			thread.join(timeout);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return !thread.isAlive();
+	}
+
+	/**
+	 * get channel of process var
+	 *
+	 * @param pv data item process var
+	 * @return channel, null if item is not recorded
+	 */
+	private ChannelLog.Channel getChannel(EcuDataPv pv)
+	{
+		String mnemonic = String.valueOf(pv.get(EcuDataPv.FID_MNEMONIC));
+		synchronized (channels)
+		{
+			ChannelLog.Channel result = channels.get(mnemonic);
+			if (result == null && (mnemonics == null || mnemonics.contains(mnemonic)))
+			{
+				result = new ChannelLog.Channel(channels.size(),
+				                     mnemonic,
+				                     String.valueOf(pv.get(EcuDataPv.FID_DESCRIPT)),
+				                     pv.getUnits());
+				channels.put(mnemonic, result);
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		if (paused
+		    || !(event.getValue() instanceof Number)
+		    || !EcuDataPv.FIELDS[EcuDataPv.FID_VALUE].equals(event.getKey()))
+		{
+			return;
+		}
+
+		ChannelLog.Channel channel = getChannel((EcuDataPv) event.getSource());
+		if (channel != null
+		    && !queue.offer(new Sample(channel,
+		                               PvChangeEvent.toMicros(event.getNanoTime()),
+		                               ((Number) event.getValue()).doubleValue())))
+		{
+			numDropped++;
+		}
+	}
+
+	/**
+	 * Writer thread: write queued samples in batches
+	 * (compressed blocks are written when they are full,
+	 * at the sync interval, and on stop)
+	 */
+	@Override
+	public void run()
+	{
+		Set<ChannelLog.Channel> defined = new HashSet<>();
+		List<Sample> batch = new ArrayList<>();
+		try
+		{
+			while (running || !queue.isEmpty())
+			{
+				Sample sample = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (sample != null)
+				{
+					batch.add(sample);
+					queue.drainTo(batch);
+					for (Sample curr : batch)
+					{
+						if (defined.add(curr.channel))
+						{
+							out.addChannel(curr.channel.id, curr.channel.mnemonic,
+							               curr.channel.label, curr.channel.units);
+						}
+						out.add(curr.channel.id, curr.time, curr.value);
+						statistics.add(curr.channel.mnemonic, curr.channel.units,
+						               curr.time, curr.value);
+					}
+					numSamples += batch.size();
+					batch.clear();
+				}
+				else
+				{
+					out.syncIfDue();
+				}
+			}
+		} catch (InterruptedException e)
+		{
+			log.warning("Recording interrupted: " + file);
+		} catch (IOException e)
+		{
+			log.log(Level.SEVERE, "Recording failed: " + file, e);
+			running = false;
+		} finally
+		{
+			try
+			{
+				out.close();
+			} catch (IOException e)
+			{
+				log.log(Level.WARNING, "close", e);
+			}
+			try
+			{
+				statistics.write(getStatisticsFile());
+			} catch (IOException e)
+			{
+				log.log(Level.WARNING, "Saving statistics failed: " + file, e);
+			}
+			log.info(String.format("Recording stopped: %s (%d samples, %d dropped)",
+			                       file, numSamples, numDropped));
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Index of fault code descriptions:
+ * <pre>
+ * numeric code -- description
+ * </pre>
+ * Codes are kept in a sorted int array, so a lookup is a binary
+ * search without any boxing, string conversion or exceptions.
+ * Equal descriptions share one String instance.
+ *
+ * @author erwin
+ */
+final class EcuCodeIndex
+{
+	/** locale this index was built for */
+	final Locale locale;
+	/** sorted numeric codes */
+	private final int[] codes;
+	/** descriptions in order of codes */
+	private final String[] descriptions;
+	/** all known descriptions */
+	private final Set<String> values;
+
+	private EcuCodeIndex(Locale locale, int[] codes, String[] descriptions)
+	{
+		this.locale = locale;
+		this.codes = codes;
+		this.descriptions = descriptions;
+		this.values = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(descriptions)));
+	}
+
+	/**
+	 * Build index from resource bundle
+	 *
+	 * @param locale locale of resource bundle
+	 * @param bundle resource bundle with code descriptions
+	 * @param list   code list to parse and format code keys
+	 * @return new index of all keys which represent a valid code
+	 */
+	static EcuCodeIndex of(Locale locale, ResourceBundle bundle, EcuCodeList list)
+	{
+		HashMap<Integer, String> entries = new HashMap<>();
+		HashMap<String, String> shared = new HashMap<>();
+
+		for (String key : bundle.keySet())
+		{
+			int code;
+			try
+			{
+				code = list.getNumericCode(key);
+			}
+			catch (RuntimeException ex)
+			{
+				// key does not represent a code
+				continue;
+			}
+			// prefer canonical key if multiple keys represent the same code
+			if (entries.containsKey(code) && !key.equals(list.getCode(code))) continue;
+
+			String description = bundle.getString(key);
+			String sharedDescription = shared.get(description);
+			if (sharedDescription == null)
+			{
+				shared.put(description, description);
+				sharedDescription = description;
+			}
+			entries.put(code, sharedDescription);
+		}
+
+		int[] codes = new int[entries.size()];
+		int i = 0;
+		for (Integer code : entries.keySet()) codes[i++] = code;
+		Arrays.sort(codes);
+		String[] descriptions = new String[codes.length];
+		for (i = 0; i < codes.length; i++) descriptions[i] = entries.get(codes[i]);
+
+		return new EcuCodeIndex(locale, codes, descriptions);
+	}
+
+	/**
+	 * get position of code within index
+	 *
+	 * @param code numeric code
+	 * @return position of code, or negative value if code is unknown
+	 */
+	int indexOf(int code)
+	{
+		return Arrays.binarySearch(codes, code);
+	}
+
+	/**
+	 * get numeric code at position
+	 *
+	 * @param index position within index
+	 * @return numeric code
+	 */
+	int codeAt(int index)
+	{
+		return codes[index];
+	}
+
+	/**
+	 * get description at position
+	 *
+	 * @param index position within index
+	 * @return description of code
+	 */
+	String descriptionAt(int index)
+	{
+		return descriptions[index];
+	}
+
+	/**
+	 * get number of codes within index
+	 *
+	 * @return number of codes
+	 */
+	int size()
+	{
+		return codes.length;
+	}
+
+	/**
+	 * get all known descriptions
+	 *
+	 * @return unmodifiable set of descriptions
+	 */
+	Set<String> values()
+	{
+		return values;
+	}
+}
@@ -21,22 +21,26 @@ package com.fr3ts0n.ecu;
 import com.fr3ts0n.common.UTF8Bundle;
 import com.fr3ts0n.ecu.prot.obd.Messages;
 
-import java.util.HashSet;
-import java.util.MissingResourceException;
-import java.util.ResourceBundle;
+import java.util.Locale;
 import java.util.Set;
 
 /**
  * Vehicle fault code list
  *
+ * Code descriptions are kept in an integer keyed index which is built
+ * on first use for the current locale and re-built if the locale changes.
+ *
  * @author erwin
  */
 public class EcuCodeList
 	implements Conversion
 {
 	private static final long serialVersionUID = 219865459629423028L;
-	private final transient ResourceBundle codes;
+	/** name of resource bundle with code descriptions */
+	private final String resourceBundleName;
 	private transient int radix = 10;
+	/** code index for current locale */
+	private transient volatile EcuCodeIndex index;
 
 	/**
 	 * construct a new code list
@@ -53,7 +57,7 @@ public class EcuCodeList
 	 */
 	public EcuCodeList(String resourceBundleName)
 	{
-		codes = UTF8Bundle.getBundle(resourceBundleName);
+		this.resourceBundleName = resourceBundleName;
 	}
 
 	/**
@@ -73,37 +77,72 @@ public class EcuCodeList
 		return(Long.toString(value.longValue(),radix));
 	}
 
-	public EcuCodeItem get(Number value)
+	/**
+	 * get numeric code from code string (inverse of getCode)
+	 *
+	 * @param code code string
+	 * @return numeric code
+	 * @throws NumberFormatException if string does not represent a code
+	 */
+	int getNumericCode(String code)
+	{
+		return (int) Long.parseLong(code, radix);
+	}
+
+	/**
+	 * get code index for current locale
+	 * (index is built on first use)
+	 *
+	 * @return code index
+	 */
+	private EcuCodeIndex getIndex()
 	{
-		EcuCodeItem result = null;
-		if (codes != null)
+		Locale locale = Locale.getDefault();
+		EcuCodeIndex result = index;
+		if (result == null || !result.locale.equals(locale))
 		{
-			String key = getCode(value);
-			try
-			{
-				result = new EcuCodeItem(key, codes.getString(key));
-			} catch (MissingResourceException e)
+			synchronized (this)
 			{
-				result = new EcuCodeItem(key,
-				                         Messages.getString(
-					                         "customer.specific.trouble.code.see.manual"));
+				result = index;
+				if (result == null || !result.locale.equals(locale))
+				{
+					result = EcuCodeIndex.of(locale,
+					                         UTF8Bundle.getBundle(resourceBundleName),
+					                         this);
+					index = result;
+				}
 			}
 		}
 		return result;
 	}
 
+	public EcuCodeItem get(Number value)
+	{
+		EcuCodeItem result;
+		int code = value.intValue();
+		EcuCodeIndex idx = getIndex();
+		int pos = idx.indexOf(code);
+		if (pos >= 0)
+		{
+			// new item per lookup, callers update the status of returned items
+			result = new EcuCodeItem(getCode(code), idx.descriptionAt(pos));
+		}
+		else
+		{
+			result = new EcuCodeItem(getCode(code),
+			                         Messages.getString(
+				                         "customer.specific.trouble.code.see.manual"));
+		}
+		return result;
+	}
+
 	/**
 	 * return all known values
 	 * @return all known ressource values
 	 */
 	public Set<String> values()
 	{
-		Set<String> values = new HashSet<String>();
-		for( String key : codes.keySet())
-		{
-			values.add(codes.getString(key));
-		}
-		return values;
+		return getIndex().values();
 	}
 
 	@Override
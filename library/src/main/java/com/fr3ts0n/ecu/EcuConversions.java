@@ -18,11 +18,13 @@
 
 package com.fr3ts0n.ecu;
 
-import java.io.BufferedReader;
+import com.fr3ts0n.common.TsvTokenizer;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -44,6 +46,7 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 	private static final String CNV_TYPE_VAG         = "VAG";
 	private static final String CNV_TYPE_INT         = "INTEGER";
 	private static final String CNV_TYPE_ASCII       = "ASCII";
+	private static final String CNV_TYPE_EXPR        = "EXPR";
 
 	/** CSV field positions */
 	private static final int FLD_NAME = 0;
@@ -76,6 +79,20 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 		this("prot/res/obd/conversions.csv");
 	}
 
+	/**
+	 * Create conversion list from parsed CSV rows
+	 * (no static conversions are added)
+	 *
+	 * @param rows fields of CSV rows
+	 */
+	EcuConversions(List<String[]> rows)
+	{
+		for (String[] params : rows)
+		{
+			addRow(params);
+		}
+	}
+
 	/**
 	 * Create conversion list from resource file (tab delimited csv)
 	 *
@@ -89,129 +106,178 @@ public class EcuConversions extends HashMap<String, Conversion[]>
 		loadFromResource(resource);
 	}
 
+	/**
+	 * load conversions from input stream (tab delimited csv)
+	 *
+	 * Parsed rows are taken from snapshot cache if available
+	 * (@see CsvSnapshotCache)
+	 *
+	 * @param inStr the csv input stream
+	 */
 	public void loadFromStream(InputStream inStr)
 	{
-		BufferedReader rdr;
-		String currLine;
-		String[] params;
+		try
+		{
+			byte[] content = CsvSnapshotCache.readAll(inStr);
+			long key = CsvSnapshotCache.getKey(content, "");
+			List<String[]> rows = CsvSnapshotCache.load(key);
+			if (rows == null)
+			{
+				rows = parseRows(new String(content));
+				CsvSnapshotCache.store(key, rows);
+			}
+
+			// loop through all conversions of the file ...
+			for (String[] params : rows)
+			{
+				addRow(params);
+			}
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * create conversion from CSV row and enter it into conversion list
+	 *
+	 * @param params fields of CSV row
+	 */
+	void addRow(String[] params)
+	{
 		Conversion[] currCnvSet;
 		Conversion newCnv;
-		int line = 0;
 
-		try
+		if (params[FLD_TYPE].equals(CNV_TYPE_LINEAR))
 		{
-			rdr = new BufferedReader(new InputStreamReader(inStr));
-			// loop through all lines of the file ...
-			while ((currLine = rdr.readLine()) != null)
+			if(params.length > FLD_PARAMETERS)
 			{
-				// ignore line 1
-				if (++line == 1)
-				{
-					continue;
-				}
-
-				// replace all optional quotes from CSV code list
-				currLine = currLine.replaceAll("\"", "");
-				// split CSV line into parameters
-				params = currLine.split("\t");
-				if (params[FLD_TYPE].equals(CNV_TYPE_LINEAR))
-				{
-					if(params.length > FLD_PARAMETERS)
-					{
-						// create linear conversion (w/ dynamic parameters)
-						newCnv = new LinearConversion(Integer.parseInt(params[FLD_FACTOR]),
-													  Integer.parseInt(params[FLD_DIVIDER]),
-													  Integer.parseInt(params[FLD_OFFSET]),
-													  Integer.parseInt(params[FLD_PHOFFSET]),
-													  params[FLD_UNITS],
-													  params[FLD_PARAMETERS]);
-					}
-					else
-					{
-						// create linear conversion (w/o dynamic parameter)
-						newCnv = new LinearConversion(Integer.parseInt(params[FLD_FACTOR]),
-													  Integer.parseInt(params[FLD_DIVIDER]),
-													  Integer.parseInt(params[FLD_OFFSET]),
-													  Integer.parseInt(params[FLD_PHOFFSET]),
-													  params[FLD_UNITS]);
-					}
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_HASH))
-				{
-					// create HashConversion based on CSV data
-					newCnv = new HashConversion( String.valueOf(params[FLD_PARAMETERS]).split(";") );
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_BITMAP))
-				{
-					// create BitmapConversion based on CSV parameters
-					newCnv = new BitmapConversion( String.valueOf(params[FLD_PARAMETERS]).split(";") );
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_CODELIST))
-				{
-					// create ECU code list based on ResourceBundle
-					codeList = new EcuCodeList( String.valueOf(params[FLD_PARAMETERS]));
-					newCnv = codeList;
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_PCODELIST))
-				{
-					// create OBD code list based on ResourceBundle
-					codeList = new ObdCodeList( String.valueOf(params[FLD_PARAMETERS]));
-					newCnv = codeList;
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_VAG))
-				{
-					// create VAG conversion
-					newCnv = new VagConversion(Integer.parseInt(params[FLD_VARIANT]),
-						Double.parseDouble(params[FLD_FACTOR]) / Integer.parseInt(params[FLD_DIVIDER]),
-						Double.parseDouble(params[FLD_OFFSET]),
-						params[FLD_UNITS]);
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_ASCII))
-				{
-					newCnv = null;
-				}
-				else if (params[FLD_TYPE].equals(CNV_TYPE_INT))
-				{
-					newCnv = dfltCnv;
-				}
-				else
-				{
-					newCnv = dfltCnv;
-				}
+				// create linear conversion (w/ dynamic parameters)
+				newCnv = new LinearConversion(Integer.parseInt(params[FLD_FACTOR]),
+											  Integer.parseInt(params[FLD_DIVIDER]),
+											  Integer.parseInt(params[FLD_OFFSET]),
+											  Integer.parseInt(params[FLD_PHOFFSET]),
+											  params[FLD_UNITS],
+											  params[FLD_PARAMETERS]);
+			}
+			else
+			{
+				// create linear conversion (w/o dynamic parameter)
+				newCnv = new LinearConversion(Integer.parseInt(params[FLD_FACTOR]),
+											  Integer.parseInt(params[FLD_DIVIDER]),
+											  Integer.parseInt(params[FLD_OFFSET]),
+											  Integer.parseInt(params[FLD_PHOFFSET]),
+											  params[FLD_UNITS]);
+			}
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_HASH))
+		{
+			// create HashConversion based on CSV data
+			newCnv = new HashConversion( String.valueOf(params[FLD_PARAMETERS]).split(";") );
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_BITMAP))
+		{
+			// create BitmapConversion based on CSV parameters
+			newCnv = new BitmapConversion( String.valueOf(params[FLD_PARAMETERS]).split(";") );
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_CODELIST))
+		{
+			// create ECU code list based on ResourceBundle
+			codeList = new EcuCodeList( String.valueOf(params[FLD_PARAMETERS]));
+			newCnv = codeList;
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_PCODELIST))
+		{
+			// create OBD code list based on ResourceBundle
+			codeList = new ObdCodeList( String.valueOf(params[FLD_PARAMETERS]));
+			newCnv = codeList;
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_VAG))
+		{
+			// create VAG conversion
+			newCnv = new VagConversion(Integer.parseInt(params[FLD_VARIANT]),
+				Double.parseDouble(params[FLD_FACTOR]) / Integer.parseInt(params[FLD_DIVIDER]),
+				Double.parseDouble(params[FLD_OFFSET]),
+				params[FLD_UNITS]);
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_ASCII))
+		{
+			newCnv = null;
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_EXPR))
+		{
+			try
+			{
+				// create expression conversion from formula in parameters
+				newCnv = new ExprConversion(String.valueOf(params[FLD_PARAMETERS]),
+											params[FLD_UNITS]);
+			}
+			catch (IllegalArgumentException ex)
+			{
+				log.severe(params[FLD_NAME] + ": " + ex.getMessage());
+				newCnv = dfltCnv;
+			}
+		}
+		else if (params[FLD_TYPE].equals(CNV_TYPE_INT))
+		{
+			newCnv = dfltCnv;
+		}
+		else
+		{
+			newCnv = dfltCnv;
+		}
 
-				// insert fault code element
-				currCnvSet = get(params[FLD_NAME]);
-				// if this conversion does not exist yet ...
-				if (currCnvSet == null)
-				{
-					// create new set for metric and imperial
-					currCnvSet = new Conversion[EcuDataItem.SYSTEM_TYPES];
-					// and initialize both systems with this data
-					for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
-					{
-						currCnvSet[i] = newCnv;
-						log.finer("+" + params[FLD_NAME] + "/" + params[FLD_SYSTEM] + " - " + String.valueOf(newCnv));
-					}
-				} else
+		// insert fault code element
+		currCnvSet = get(params[FLD_NAME]);
+		// if this conversion does not exist yet ...
+		if (currCnvSet == null)
+		{
+			// create new set for metric and imperial
+			currCnvSet = new Conversion[EcuDataItem.SYSTEM_TYPES];
+			// and initialize both systems with this data
+			for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
+			{
+				currCnvSet[i] = newCnv;
+				log.finer("+" + params[FLD_NAME] + "/" + params[FLD_SYSTEM] + " - " + String.valueOf(newCnv));
+			}
+		} else
+		{
+			// if it is known already, then only update the matching system
+			for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
+			{
+				if (EcuDataItem.cnvSystems[i].equals(params[FLD_SYSTEM]))
 				{
-					// if it is known already, then only update the matching system
-					for (int i = 0; i < EcuDataItem.SYSTEM_TYPES; i++)
-					{
-						if (EcuDataItem.cnvSystems[i].equals(params[FLD_SYSTEM]))
-						{
-							currCnvSet[i] = newCnv;
-							log.finer("+" + params[FLD_NAME] + "/" + params[FLD_SYSTEM] + " - " + newCnv.toString());
-						}
-					}
+					currCnvSet[i] = newCnv;
+					log.finer("+" + params[FLD_NAME] + "/" + params[FLD_SYSTEM] + " - " + newCnv.toString());
 				}
-				// (re-)enter the updated conversion set into map
-				put(params[FLD_NAME], currCnvSet);
 			}
-			rdr.close();
-		} catch (IOException e)
+		}
+		// (re-)enter the updated conversion set into map
+		put(params[FLD_NAME], currCnvSet);
+	}
+
+	/**
+	 * parse CSV content into rows of fields
+	 * (header line is skipped)
+	 *
+	 * @param content CSV content
+	 * @return list of conversion rows
+	 */
+	static List<String[]> parseRows(String content)
+	{
+		List<String[]> result = new ArrayList<>();
+		TsvTokenizer tokenizer = new TsvTokenizer(content);
+		String[] params;
+		while ((params = tokenizer.next()) != null)
 		{
-			e.printStackTrace();
+			// ignore line 1
+			if (tokenizer.getLineNumber() == 1)
+			{
+				continue;
+			}
+			result.add(params);
 		}
+		return result;
 	}
 
 	/**
@@ -20,12 +20,21 @@ package com.fr3ts0n.ecu;
 
 import com.fr3ts0n.prot.ProtUtils;
 import com.fr3ts0n.prot.ProtoHeader;
+import com.fr3ts0n.pvs.PvChangeEvent;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
  * Definition of a single ECU Data item (EcuDataItem)
  *
+ * The process variable for displaying the item is created on demand
+ * ({@link #getPv()}) and may be released if the item is not in use
+ * anymore ({@link #releasePv()}), so unused definitions stay small.
+ *
  * @author erwin
  */
 public class EcuDataItem
@@ -56,9 +65,19 @@ public class EcuDataItem
 	private String fmt;                 ///< Format for text output
 	public String label;        ///< text label
 	private String mnemonic;     ///< unique textual mnemonic
-	public EcuDataPv pv;        ///< the process variable for displaying
+	private Number minValue;            ///< specified MIN value (null = from conversion)
+	private Number maxValue;            ///< specified MAX value (null = from conversion)
+	private EcuDataPv pv;               ///< the process variable for displaying (null = not in use)
+	private Map<String, Object> pvAttributes; ///< customized PV attributes (null = none)
 	private int currErrorCount = 0;     ///< current number of consecutive conversion errors
 	public long updatePeriod_ms = 0; ///< Minimum update period in ms
+	private float deadband = 0;         ///< change threshold (absolute, or % of MIN/MAX range)
+	private boolean deadbandPercent = false; ///< is deadband specified in % of MIN/MAX range?
+	private long maxSilence_ms = 0;     ///< max. time without publishing a value (0 = unlimited)
+	private double lastPublished = Double.NaN; ///< last published numeric value
+	private long lastPublish_ms = 0;    ///< time of last publishing
+	private LinearConversion[] factorBindings = NO_BINDINGS; ///< conversions using this item as dynamic factor
+	private static final LinearConversion[] NO_BINDINGS = new LinearConversion[0];
 
 	// Logger object
 	private static final Logger log = Logger.getLogger("data.ecu");
@@ -119,22 +138,189 @@ public class EcuDataItem
 		updatePeriod_ms = minUpdatePeriod;
 		label = labelText;
 		mnemonic = _mnemonic;
-		pv = new EcuDataPv();
-
-		// initialize new PID with current data
-		pv.put(EcuDataPv.FID_PID, Integer.valueOf(pid));
-		pv.put(EcuDataPv.FID_OFS, Integer.valueOf(ofs));
-		pv.put(EcuDataPv.FID_BIT_OFS, Integer.valueOf(bitOffset));
-		pv.put(EcuDataPv.FID_DESCRIPT, label);
-		pv.put(EcuDataPv.FID_MNEMONIC, mnemonic);
-		pv.put(EcuDataPv.FID_UNITS,
-		       (cnv != null && cnv[cnvSystem] != null)
-		       ? cnv[cnvSystem].getUnits()
-		       : "");
-		pv.put(EcuDataPv.FID_VALUE, Float.valueOf(0));
-		pv.put(EcuDataPv.FID_FORMAT, fmt);
-		pv.put(EcuDataPv.FID_CNVID, cnv);
-		updateLimits(minValue, maxValue);
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+	}
+
+	/**
+	 * get process variable of this item
+	 * (the process variable is created on first use)
+	 *
+	 * @return process variable for displaying
+	 */
+	public synchronized EcuDataPv getPv()
+	{
+		if (pv == null)
+		{
+			pv = createPv();
+			lastPublished = Double.NaN;
+		}
+		return pv;
+	}
+
+	/**
+	 * create new process variable with current item definition
+	 * (not connected to this item, e.g. to restore a snapshot)
+	 *
+	 * @return new process variable
+	 */
+	public synchronized EcuDataPv createPv()
+	{
+		// collect all fields to initialize the PV with a single change
+		Map<String, Object> fields = new HashMap<>();
+		fields.put(EcuDataPv.FIELDS[EcuDataPv.FID_PID], Integer.valueOf(pid));
+		fields.put(EcuDataPv.FIELDS[EcuDataPv.FID_OFS], Integer.valueOf(ofs));
+		fields.put(EcuDataPv.FID_BIT_OFS, Integer.valueOf(bitOffset));
+		fields.put(EcuDataPv.FIELDS[EcuDataPv.FID_DESCRIPT], label);
+		fields.put(EcuDataPv.FID_MNEMONIC, mnemonic);
+		fields.put(EcuDataPv.FIELDS[EcuDataPv.FID_UNITS],
+		           (cnv != null && cnv[cnvSystem] != null)
+		           ? cnv[cnvSystem].getUnits()
+		           : "");
+		fields.put(EcuDataPv.FIELDS[EcuDataPv.FID_VALUE], Float.valueOf(0));
+		fields.put(EcuDataPv.FID_FORMAT, fmt);
+		fields.put(EcuDataPv.FID_CNVID, cnv);
+		putLimits(fields, minValue, maxValue);
+		// re-apply customized attributes
+		if (pvAttributes != null)
+		{
+			fields.putAll(pvAttributes);
+		}
+		EcuDataPv newPv = new EcuDataPv();
+		newPv.putAll(fields);
+		return newPv;
+	}
+
+	/**
+	 * Is process variable of this item in use?
+	 *
+	 * @return true if process variable is created
+	 */
+	public synchronized boolean hasPv()
+	{
+		return pv != null;
+	}
+
+	/**
+	 * get process variable of this item if it is in use
+	 *
+	 * @return process variable, or null if not created
+	 */
+	synchronized EcuDataPv currentPv()
+	{
+		return pv;
+	}
+
+	/**
+	 * Release process variable of this item
+	 * (customized attributes are kept and re-applied on next use)
+	 */
+	public synchronized void releasePv()
+	{
+		pv = null;
+	}
+
+	/**
+	 * Set customized attribute of process variable
+	 *
+	 * The attribute is kept with the item definition and applied
+	 * to the process variable whenever it is created.
+	 *
+	 * @param field attribute field id (e.g. EcuDataPv.FID_COLOR)
+	 * @param value attribute value, null to remove customization
+	 */
+	public synchronized void setPvAttribute(String field, Object value)
+	{
+		if (value != null)
+		{
+			if (pvAttributes == null) pvAttributes = new HashMap<>();
+			pvAttributes.put(field, value);
+			if (pv != null) pv.put(field, value);
+		}
+		else
+		{
+			if (pvAttributes != null) pvAttributes.remove(field);
+			if (pv != null) pv.remove(field);
+		}
+	}
+
+	/**
+	 * get unique textual mnemonic
+	 *
+	 * @return mnemonic of this item
+	 */
+	public String getMnemonic()
+	{
+		return mnemonic;
+	}
+
+	/**
+	 * Clear all conversions which use this item as dynamic conversion factor
+	 */
+	void clearFactorBindings()
+	{
+		factorBindings = NO_BINDINGS;
+	}
+
+	/**
+	 * Bind conversion which uses this item as dynamic conversion factor
+	 * (conversion gets updated with every new value of this item)
+	 *
+	 * @param conversion conversion to be bound
+	 */
+	void addFactorBinding(LinearConversion conversion)
+	{
+		for (LinearConversion currCnv : factorBindings)
+		{
+			if (currCnv == conversion) return;
+		}
+		LinearConversion[] newBindings = Arrays.copyOf(factorBindings, factorBindings.length + 1);
+		newBindings[newBindings.length - 1] = conversion;
+		factorBindings = newBindings;
+	}
+
+	/**
+	 * Set change filter for numeric values
+	 *
+	 * Values which differ less than the deadband from the last published value
+	 * are not published to the process var, unless the max. silence interval
+	 * has been exceeded (heartbeat).
+	 *
+	 * @param deadband deadband for value changes (0 = publish every change)
+	 * @param percent  deadband is specified in % of the MIN/MAX range
+	 * @param maxSilence_ms max. time [ms] without publishing a value (0 = unlimited)
+	 */
+	public void setChangeFilter(float deadband, boolean percent, long maxSilence_ms)
+	{
+		this.deadband = Math.abs(deadband);
+		this.deadbandPercent = percent;
+		this.maxSilence_ms = Math.max(0, maxSilence_ms);
+		lastPublished = Double.NaN;
+	}
+
+	/**
+	 * Check if new value is within deadband of last published value
+	 *
+	 * @param pv    process variable to be updated
+	 * @param value new physical value
+	 * @return true if value change is within deadband and may be suppressed
+	 */
+	private boolean isWithinDeadband(EcuDataPv pv, Object value)
+	{
+		// non-numeric values and unfiltered items are always published
+		if (deadband == 0 || !(value instanceof Number) || Double.isNaN(lastPublished))
+			return false;
+
+		double band = deadband;
+		if (deadbandPercent)
+		{
+			Object min = pv.get(EcuDataPv.FID_MIN);
+			Object max = pv.get(EcuDataPv.FID_MAX);
+			if (!(min instanceof Number && max instanceof Number))
+				return false;
+			band = Math.abs(((Number) max).doubleValue() - ((Number) min).doubleValue()) * deadband / 100;
+		}
+		return Math.abs(((Number) value).doubleValue() - lastPublished) <= band;
 	}
 
 	/**
@@ -151,6 +337,27 @@ public class EcuDataItem
 	 * @param maxValue	Specific MAX value or NULL if not specified
 	 */
 	protected void updateLimits(Number minValue, Number maxValue)
+	{
+		// limits are set when process variable is created
+		EcuDataPv pv = currentPv();
+		if (pv == null) return;
+		Map<String, Object> limits = new LinkedHashMap<>();
+		putLimits(limits, minValue, maxValue);
+		// put fields one by one to keep the individual field notifications
+		for (Map.Entry<String, Object> limit : limits.entrySet())
+		{
+			pv.put(limit.getKey(), limit.getValue());
+		}
+	}
+
+	/**
+	 * Set MIN/MAX limit values of a process variable
+	 *
+	 * @param pv       process variable to be updated
+	 * @param minValue Specific MIN value or NULL if not specified
+	 * @param maxValue Specific MAX value or NULL if not specified
+	 */
+	private void putLimits(Map<String, Object> pv, Number minValue, Number maxValue)
 	{
 		// set specified values
 		Number minVal = minValue;
@@ -198,6 +405,9 @@ public class EcuDataItem
 	 */
 	public Number physVal(long rawVal)
 	{
+		// formula byte operands are bound to the data length of this item
+		if(cnv[cnvSystem] instanceof ExprConversion)
+			return ((ExprConversion)cnv[cnvSystem]).memToPhys(rawVal, bytes);
 		return( cnv[cnvSystem].memToPhys( rawVal ));
 	}
 
@@ -210,6 +420,8 @@ public class EcuDataItem
 	 */
 	public long rawVal(Number physVal)
 	{
+		if(cnv[cnvSystem] instanceof ExprConversion)
+			return ((ExprConversion)cnv[cnvSystem]).physToMem(physVal, bytes).longValue();
 		return cnv[cnvSystem].physToMem(physVal).longValue();
 	}
 
@@ -293,8 +505,21 @@ public class EcuDataItem
 	 * @param buffer communication buffer content
 	 * @return Next expected update period
 	 */
-	@SuppressWarnings("DefaultLocale")
 	public long updatePvFomBuffer(char[] buffer)
+	{
+		return updatePvFomBuffer(buffer, 0, 0);
+	}
+
+	/**
+	 * Update process var from Buffer value with time of acquisition
+	 *
+	 * @param buffer        communication buffer content
+	 * @param rxTime        monotonic receive time of buffer [ns] (@see System#nanoTime), 0 = now
+	 * @param roundTripTime round trip time of request which delivered the buffer [ns], 0 = unknown
+	 * @return Next expected update period
+	 */
+	@SuppressWarnings("DefaultLocale")
+	public long updatePvFomBuffer(char[] buffer, long rxTime, long roundTripTime)
 	{
 		// process data item
 		try
@@ -304,13 +529,37 @@ public class EcuDataItem
 			// if consecutive conversion error counter not exceeded
 			if(currErrorCount < MAX_ERROR_COUNT)
 			{
-				pv.put(EcuDataPv.FID_VALUE, result);
-				pv.put(EcuDataPv.FID_UNITS, pv.getUnits());
-				log.fine(String.format("%02X %-30s %16s %s",
-										pid,
-										label,
-										pv.get(EcuDataPv.FID_VALUE),
-										pv.get(EcuDataPv.FID_UNITS)));
+				// push new value to bound dynamic conversion factors
+				if (result instanceof Number)
+				{
+					for (LinearConversion currCnv : factorBindings)
+					{
+						currCnv.setDynamicFactor((Number) result);
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				// heartbeat: publish (even unchanged) value after max. silence
+				boolean heartbeat = maxSilence_ms > 0 && now - lastPublish_ms >= maxSilence_ms;
+				EcuDataPv pv = getPv();
+				if (heartbeat || !isWithinDeadband(pv, result))
+				{
+					// unchanged values are only published as heartbeat
+					pv.put(EcuDataPv.FID_VALUE,
+					       result,
+					       heartbeat ? PvChangeEvent.PV_MODIFIED : PvChangeEvent.PV_NOACTION,
+					       rxTime,
+					       roundTripTime);
+					pv.put(EcuDataPv.FID_UNITS, pv.getUnits());
+					if (result instanceof Number)
+						lastPublished = ((Number) result).doubleValue();
+					lastPublish_ms = now;
+					log.fine(String.format("%02X %-30s %16s %s",
+											pid,
+											label,
+											pv.get(EcuDataPv.FID_VALUE),
+											pv.get(EcuDataPv.FID_UNITS)));
+				}
 			}
 			else
 			{
@@ -336,7 +585,11 @@ public class EcuDataItem
 		try
 		{
 			result = (EcuDataItem) super.clone();
-			result.pv = (EcuDataPv) pv.clone();
+			synchronized (this)
+			{
+				if (pv != null) result.pv = (EcuDataPv) pv.clone();
+				if (pvAttributes != null) result.pvAttributes = new HashMap<>(pvAttributes);
+			}
 		} catch (CloneNotSupportedException ex)
 		{
 			ex.printStackTrace();
@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Immutable, dense lookup index of data items:
+ * <pre>
+ * [service][pid] -- EcuDataItem[]
+ * </pre>
+ * Service and PID are both limited to one byte (0x00..0xFF),
+ * so a lookup is two array accesses without any boxing or hashing.
+ * Rows for unused services are not allocated.
+ *
+ * Instances are never modified after publishing, changes create
+ * a new index (copy-on-write) which shares all unchanged rows.
+ * The index also keeps a snapshot of the service/PID map it was built
+ * from, so all lookups of a reader see the same set of items.
+ *
+ * @author erwin
+ */
+final class EcuDataItemIndex
+{
+	/** number of possible services / PIDs per service */
+	static final int SIZE = 0x100;
+
+	/** empty item list (shared) */
+	static final EcuDataItem[] NO_ITEMS = new EcuDataItem[0];
+
+	/** empty index */
+	static final EcuDataItemIndex EMPTY = new EcuDataItemIndex(new EcuDataItem[SIZE][][],
+	                                                           new EcuDataItem[SIZE][],
+	                                                           Collections.<Integer, HashMap<Integer, Vector<EcuDataItem>>>emptyMap());
+
+	/** items by [service][pid] */
+	private final EcuDataItem[][][] items;
+	/** all items of a service ordered by PID */
+	private final EcuDataItem[][] svcItems;
+	/** snapshot of service/PID map (PID maps and item lists are not modified anymore) */
+	private final Map<Integer, HashMap<Integer, Vector<EcuDataItem>>> services;
+
+	private EcuDataItemIndex(EcuDataItem[][][] items,
+	                         EcuDataItem[][] svcItems,
+	                         Map<Integer, HashMap<Integer, Vector<EcuDataItem>>> services)
+	{
+		this.items = items;
+		this.svcItems = svcItems;
+		this.services = services;
+	}
+
+	/**
+	 * Check if service/PID can be stored within dense index
+	 *
+	 * @param service OBD service
+	 * @param pid     PID
+	 * @return true if index covers service/pid
+	 */
+	static boolean covers(int service, int pid)
+	{
+		return (service & ~0xFF) == 0 && (pid & ~0xFF) == 0;
+	}
+
+	/**
+	 * get all data items for selected service and PID
+	 *
+	 * @param service service to search data items for
+	 * @param pid     pid to search data items for
+	 * @return array of data items, or NO_ITEMS if none exist
+	 */
+	EcuDataItem[] get(int service, int pid)
+	{
+		if (!covers(service, pid)) return NO_ITEMS;
+		EcuDataItem[][] svc = items[service];
+		EcuDataItem[] result = (svc != null) ? svc[pid] : null;
+		return (result != null) ? result : NO_ITEMS;
+	}
+
+	/**
+	 * get all data items for selected service ordered by PID
+	 *
+	 * @param service service to search data items for
+	 * @return array of data items, or NO_ITEMS if none exist
+	 */
+	EcuDataItem[] get(int service)
+	{
+		if (!covers(service, 0)) return NO_ITEMS;
+		EcuDataItem[] result = svcItems[service];
+		return (result != null) ? result : NO_ITEMS;
+	}
+
+	/**
+	 * get PID map of selected service from snapshot
+	 *
+	 * @param service service to get PID map for
+	 * @return PID map of service (must not be modified), or null if service does not exist
+	 */
+	HashMap<Integer, Vector<EcuDataItem>> getPidMap(int service)
+	{
+		return services.get(service);
+	}
+
+	/**
+	 * Build index from service/PID map of data items
+	 *
+	 * The PID maps and item lists of the service map are shared with the
+	 * index, so they must not be modified after the index is built.
+	 *
+	 * @param itemMap map of data items [service][pid]
+	 * @return new index for all items within index range
+	 */
+	static EcuDataItemIndex of(Map<Integer, HashMap<Integer, Vector<EcuDataItem>>> itemMap)
+	{
+		EcuDataItem[][][] newItems = new EcuDataItem[SIZE][][];
+		EcuDataItem[][] newSvcItems = new EcuDataItem[SIZE][];
+
+		for (Map.Entry<Integer, HashMap<Integer, Vector<EcuDataItem>>> svcEntry : itemMap.entrySet())
+		{
+			int service = svcEntry.getKey();
+			if (!covers(service, 0)) continue;
+
+			EcuDataItem[][] svc = new EcuDataItem[SIZE][];
+			for (Map.Entry<Integer, Vector<EcuDataItem>> pidEntry : svcEntry.getValue().entrySet())
+			{
+				int pid = pidEntry.getKey();
+				if (!covers(service, pid)) continue;
+				svc[pid] = pidEntry.getValue().toArray(NO_ITEMS);
+			}
+			newItems[service] = svc;
+			newSvcItems[service] = flatten(svc);
+		}
+		return new EcuDataItemIndex(newItems, newSvcItems, snapshot(itemMap));
+	}
+
+	/**
+	 * Create a new index with specified item appended
+	 *
+	 * @param service service to add item to
+	 * @param newItem EcuDataItem to be added
+	 * @param itemMap map of data items [service][pid] which contains the new item
+	 * @return new index
+	 */
+	EcuDataItemIndex with(int service,
+	                      EcuDataItem newItem,
+	                      Map<Integer, HashMap<Integer, Vector<EcuDataItem>>> itemMap)
+	{
+		if (!covers(service, newItem.pid))
+		{
+			return new EcuDataItemIndex(items, svcItems, snapshot(itemMap));
+		}
+
+		// copy outer tables, unchanged service rows are shared
+		EcuDataItem[][][] newItems = items.clone();
+		EcuDataItem[][] newSvcItems = svcItems.clone();
+
+		// copy affected service row
+		EcuDataItem[][] svc = newItems[service];
+		svc = (svc != null) ? svc.clone() : new EcuDataItem[SIZE][];
+		newItems[service] = svc;
+
+		// append item to PID list
+		EcuDataItem[] pidItems = (svc[newItem.pid] != null) ? svc[newItem.pid] : NO_ITEMS;
+		pidItems = Arrays.copyOf(pidItems, pidItems.length + 1);
+		pidItems[pidItems.length - 1] = newItem;
+		svc[newItem.pid] = pidItems;
+
+		// re-build list of all service items
+		newSvcItems[service] = flatten(svc);
+
+		return new EcuDataItemIndex(newItems, newSvcItems, snapshot(itemMap));
+	}
+
+	/**
+	 * Create snapshot of service map
+	 * (PID maps are shared)
+	 *
+	 * @param itemMap map of data items [service][pid]
+	 * @return unmodifiable copy of service map
+	 */
+	private static Map<Integer, HashMap<Integer, Vector<EcuDataItem>>> snapshot(
+		Map<Integer, HashMap<Integer, Vector<EcuDataItem>>> itemMap)
+	{
+		return Collections.unmodifiableMap(new HashMap<>(itemMap));
+	}
+
+	/**
+	 * Collect all items of a service row ordered by PID
+	 *
+	 * @param svc service row [pid] -- EcuDataItem[]
+	 * @return all items of service row
+	 */
+	private static EcuDataItem[] flatten(EcuDataItem[][] svc)
+	{
+		int count = 0;
+		for (EcuDataItem[] currItems : svc)
+		{
+			if (currItems != null) count += currItems.length;
+		}
+		EcuDataItem[] result = new EcuDataItem[count];
+		count = 0;
+		for (EcuDataItem[] currItems : svc)
+		{
+			if (currItems == null) continue;
+			System.arraycopy(currItems, 0, result, count, currItems.length);
+			count += currItems.length;
+		}
+		return result;
+	}
+}
@@ -18,13 +18,21 @@
 
 package com.fr3ts0n.ecu;
 
+import com.fr3ts0n.common.TsvTokenizer;
 import com.fr3ts0n.ecu.prot.obd.Messages;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 import java.util.logging.Logger;
 
@@ -40,6 +48,11 @@ import java.util.logging.Logger;
  *         |- ... -- ...
  * Service ...
  * </pre>
+ * Lookups are served from an immutable dense index {@link EcuDataItemIndex}
+ * with a snapshot of the service/PID map. Changes never modify published
+ * PID maps or item lists, the index is re-built (copy-on-write) and
+ * published as a whole whenever items are added or swapped.
+ * The map of items by MNEMONIC is published the same way.
  *
  * @author erwin
  */
@@ -70,15 +83,50 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		MNEMONIC,
 		LABEL,
 		DESCRIPTION,
+		FORMULA_REMARK,
+		OPTIONS,
 		NUMBEROFFIELDS
 	}
 
+	/**
+	 * Item options (OPTIONS field "key=value[;key=value[...]]")
+	 */
+	static final String OPT_DEADBAND = "deadband";             ///< change threshold (absolute or %)
+	static final String OPT_MAX_SILENCE = "max_silence_ms";    ///< heartbeat interval [ms]
+
 	// set of all conversions
 	public static EcuConversions cnv;
 	// the data logger
 	private static final Logger log = Logger.getLogger("data.items");
-	// map of MNEMONIC data item
-	public static final HashMap<String, EcuDataItem> byMnemonic = new HashMap<>();
+	// published map of MNEMONIC data item (copy-on-write)
+	private static volatile Map<String, EcuDataItem> mnemonics = Collections.emptyMap();
+	// map of MNEMONIC data item (read only view of published map)
+	public static final Map<String, EcuDataItem> byMnemonic = new AbstractMap<String, EcuDataItem>()
+	{
+		@Override
+		public EcuDataItem get(Object key)
+		{
+			return mnemonics.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return mnemonics.containsKey(key);
+		}
+
+		@Override
+		public Set<Entry<String, EcuDataItem>> entrySet()
+		{
+			return mnemonics.entrySet();
+		}
+	};
+	// subscriptions of data items (by MNEMONIC)
+	public static final EcuDataSubscriptions subscriptions = new EcuDataSubscriptions();
+	// dense [service][pid] index of data items
+	private transient volatile EcuDataItemIndex index = EcuDataItemIndex.EMPTY;
+	// version of item definitions (incremented when items are swapped)
+	private transient volatile int version = 0;
 
 	/**
 	 * Create data items from default CSV pidResource files
@@ -124,82 +172,209 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	/**
 	 * read data from input stream (csv) into data structure
 	 *
+	 * Parsed rows are taken from snapshot cache if available
+	 * (@see CsvSnapshotCache)
+	 *
 	 * @param inStr the csv input stream
 	 */
-	public void loadFromStream(InputStream inStr)
+	public synchronized void loadFromStream(InputStream inStr)
 	{
-		BufferedReader rdr;
-		String currLine;
-		String[] params;
-		Conversion[] currCnvSet;
-		EcuDataItem newItm;
-		int line = 0;
 		try
 		{
-			rdr = new BufferedReader(new InputStreamReader(inStr));
-			// loop through all lines of the file ...
-			while ((currLine = rdr.readLine()) != null)
+			byte[] content = CsvSnapshotCache.readAll(inStr);
+			long key = getSnapshotKey(content);
+			List<String[]> rows = CsvSnapshotCache.load(key);
+			if (rows == null)
+			{
+				rows = parseRows(new String(content));
+				CsvSnapshotCache.store(key, rows);
+			}
+
+			List<EcuDataItem> newItems = new ArrayList<>(rows.size());
+			for (String[] params : rows)
+			{
+				newItems.add(createItem(params));
+			}
+			// re-build lookup index once for all loaded items
+			index = EcuDataItemIndex.of(this);
+			// publish items by mnemonic
+			updateMnemonics(Collections.<EcuDataItem>emptyList(),
+			                newItems,
+			                Collections.<EcuDataItem>emptyList());
+			// (re-)bind dynamic conversion factors
+			bindDynamicFactors();
+		} catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * get snapshot key of CSV content
+	 * - labels are translated, so snapshot depends on message bundle and locale
+	 *
+	 * @param content CSV content
+	 * @return snapshot key
+	 */
+	static long getSnapshotKey(byte[] content)
+	{
+		return CsvSnapshotCache.getKey(content,
+		                               Messages.getBundleName() + "/" + Locale.getDefault());
+	}
+
+	/**
+	 * parse CSV content into rows of fields
+	 * - header line and comments are skipped
+	 * - labels are translated
+	 *
+	 * @param content CSV content
+	 * @return list of data item rows
+	 */
+	static List<String[]> parseRows(String content)
+	{
+		List<String[]> result = new ArrayList<>();
+		TsvTokenizer tokenizer = new TsvTokenizer(content);
+		String[] params;
+		while ((params = tokenizer.next()) != null)
+		{
+			// ignore first line
+			if (tokenizer.getLineNumber() == 1 || params[0].startsWith("#")) //$NON-NLS-1$
+			{
+				continue;
+			}
+			params[FLD.LABEL.ordinal()] = Messages.getString(params[FLD.MNEMONIC.ordinal()],
+			                                                 params[FLD.LABEL.ordinal()]);
+			result.add(params);
+		}
+		return result;
+	}
+
+	/**
+	 * create data item from CSV row
+	 * (mnemonic map is NOT updated)
+	 *
+	 * @param params fields of CSV row
+	 * @return created data item
+	 */
+	private EcuDataItem createItem(String[] params)
+	{
+		EcuDataItem newItm = newItem(params, cnv);
+
+		// enter data item for all specified services
+		for (int svcId : getServices(params))
+		{
+			putItem(svcId, newItm);
+		}
+		return newItm;
+	}
+
+	/**
+	 * create new data item from CSV row
+	 * (item is not entered into any list)
+	 *
+	 * @param params      fields of CSV row
+	 * @param conversions conversions to look up item formula
+	 * @return new data item
+	 * @throws NumberFormatException on invalid numeric fields
+	 */
+	static EcuDataItem newItem(String[] params, Map<String, Conversion[]> conversions)
+	{
+		Conversion[] currCnvSet = conversions.get(params[FLD.FORMULA.ordinal()]);
+		if (currCnvSet == null)
+		{
+			log.warning("Conversion not found: " + params[FLD.FORMULA.ordinal()] + " " + Arrays.toString(params)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		// try to use MIN/MAX values from CSV
+		Float minVal = TsvTokenizer.parseFloat(params[FLD.MIN.ordinal()]);
+		Float maxVal = TsvTokenizer.parseFloat(params[FLD.MAX.ordinal()]);
+		long updateVal = TsvTokenizer.parseLong(params[FLD.UPDATE_MIN.ordinal()], 0);
+
+		// create linear conversion
+		EcuDataItem newItm = new EcuDataItem(Integer.decode(params[FLD.PID.ordinal()]),
+		                                     Integer.parseInt(params[FLD.OFS.ordinal()]),
+		                                     Integer.parseInt(params[FLD.LEN.ordinal()]),
+		                                     Integer.parseInt(params[FLD.BIT_OFS.ordinal()]),
+		                                     Integer.parseInt(params[FLD.BIT_LEN.ordinal()]),
+		                                     Long.decode(params[FLD.BIT_MASK.ordinal()]),
+		                                     currCnvSet,
+		                                     params[FLD.FORMAT.ordinal()],
+		                                     minVal,
+		                                     maxVal,
+		                                     updateVal,
+		                                     params[FLD.LABEL.ordinal()],
+		                                     params[FLD.MNEMONIC.ordinal()]);
+
+		// apply optional item options
+		if (params.length > FLD.OPTIONS.ordinal())
+		{
+			applyOptions(newItm, params[FLD.OPTIONS.ordinal()]);
+		}
+		return newItm;
+	}
+
+	/**
+	 * get services of CSV row
+	 *
+	 * @param params fields of CSV row
+	 * @return IDs of all specified services
+	 * @throws NumberFormatException on invalid service IDs
+	 */
+	static int[] getServices(String[] params)
+	{
+		String[] services = params[FLD.SVC.ordinal()].split(","); //$NON-NLS-1$
+		int[] result = new int[services.length];
+		for (int i = 0; i < services.length; i++)
+		{
+			result[i] = Integer.decode(services[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * apply item options from CSV field to data item
+	 *
+	 * Supported options:
+	 * - deadband=[value] | deadband=[value]%
+	 * - max_silence_ms=[ms]
+	 *
+	 * @param item    data item to apply options to
+	 * @param options option string in the format "key=value[;key=value[...]]"
+	 */
+	static void applyOptions(EcuDataItem item, String options)
+	{
+		float deadband = 0;
+		boolean percent = false;
+		long maxSilence = 0;
+
+		for (String option : options.split(";")) //$NON-NLS-1$
+		{
+			String[] words = option.split("=", 2); //$NON-NLS-1$
+			if (words.length < 2) continue;
+			String key = words[0].trim();
+			String value = words[1].trim();
+			try
 			{
-				// ignore first line
-				if (++line == 1 || currLine.startsWith("#")) //$NON-NLS-1$
+				if (OPT_DEADBAND.equals(key))
 				{
-					continue;
+					percent = value.endsWith("%"); //$NON-NLS-1$
+					if (percent) value = value.substring(0, value.length() - 1);
+					deadband = Float.parseFloat(value);
 				}
-				// repalce all optional quotes from CSV code list
-				currLine = currLine.replaceAll("\"", ""); //$NON-NLS-1$ //$NON-NLS-2$
-				// split CSV line into parameters
-				params = currLine.split("\t"); //$NON-NLS-1$
-
-				currCnvSet = cnv.get(params[FLD.FORMULA.ordinal()]);
-				if (currCnvSet == null)
+				else if (OPT_MAX_SILENCE.equals(key))
 				{
-					log.warning("Conversion not found: " + params[FLD.FORMULA.ordinal()] + " " + currLine); //$NON-NLS-1$ //$NON-NLS-2$
+					maxSilence = Long.parseLong(value);
 				}
-				// try to use MIN/MAX values from CSV
-				Float minVal = null;
-				Float maxVal = null;
-				try {	minVal = Float.parseFloat(params[FLD.MIN.ordinal()]);	}
-				catch(NumberFormatException ex) {	/* ignore */ }
-				try {	maxVal = Float.parseFloat(params[FLD.MAX.ordinal()]);	}
-				catch(NumberFormatException e) { /* ignore */	}
-
-				long updateVal = 0;
-				try {	updateVal = Long.parseLong(params[FLD.UPDATE_MIN.ordinal()]);	}
-				catch(NumberFormatException ex) { updateVal = 0; }
-
-				String label = Messages.getString(params[FLD.MNEMONIC.ordinal()],
-				                                  params[FLD.LABEL.ordinal()]);
-				// create linear conversion
-				newItm = new EcuDataItem(Integer.decode(params[FLD.PID.ordinal()]),
-										 Integer.parseInt(params[FLD.OFS.ordinal()]),
-										 Integer.parseInt(params[FLD.LEN.ordinal()]),
-									     Integer.parseInt(params[FLD.BIT_OFS.ordinal()]),
-									     Integer.parseInt(params[FLD.BIT_LEN.ordinal()]),
-										 Long.decode(params[FLD.BIT_MASK.ordinal()]),
-									     currCnvSet,
-										 params[FLD.FORMAT.ordinal()],
-										 minVal,
-										 maxVal,
-										 updateVal,
-										 label,
-					                     params[FLD.MNEMONIC.ordinal()]);
-
-				// Add item to mnemonic map
-				byMnemonic.put(params[FLD.MNEMONIC.ordinal()], newItm);
-
-				// enter data item for all specified services
-				String[] services = params[FLD.SVC.ordinal()].split(","); //$NON-NLS-1$
-				for (String service : services)
+				else
 				{
-					int svcId = Integer.decode(service);
-					appendItemToService(svcId, newItm);
+					log.warning("Unknown item option: " + item + " " + option); //$NON-NLS-1$ //$NON-NLS-2$
 				}
 			}
-			rdr.close();
-		} catch (IOException e)
-		{
-			e.printStackTrace();
+			catch (NumberFormatException ex)
+			{
+				log.warning("Invalid item option: " + item + " " + option); //$NON-NLS-1$ //$NON-NLS-2$
+			}
 		}
+		item.setChangeFilter(deadband, percent, maxSilence);
 	}
 
 	/**
@@ -212,7 +387,7 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	public Vector<EcuDataItem> getPidDataItems(int service, int pid)
 	{
 		Vector<EcuDataItem> currVec = null;
-		HashMap<Integer, Vector<EcuDataItem>> currSvc = get(service);
+		HashMap<Integer, Vector<EcuDataItem>> currSvc = getIndex().getPidMap(service);
 		if (currSvc != null)
 		{
 			currVec = currSvc.get(pid);
@@ -220,6 +395,28 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 		return (currVec);
 	}
 
+	/**
+	 * get all data items for selected service and PID from lookup index
+	 *
+	 * The returned array is shared and must not be modified.
+	 *
+	 * @param service service to search data items for
+	 * @param pid     pid to search data items for
+	 * @return array of data items - empty array if no data items exist
+	 */
+	public EcuDataItem[] getItems(int service, int pid)
+	{
+		if (EcuDataItemIndex.covers(service, pid))
+		{
+			return getIndex().get(service, pid);
+		}
+		// out of index range: fall back to map lookup
+		Vector<EcuDataItem> currVec = getPidDataItems(service, pid);
+		return (currVec != null)
+		       ? currVec.toArray(EcuDataItemIndex.NO_ITEMS)
+		       : EcuDataItemIndex.NO_ITEMS;
+	}
+
 	/**
 	 * get all data items for selected service
 	 *
@@ -228,35 +425,104 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	 */
 	public Vector<EcuDataItem> getSvcDataItems(int service)
 	{
-		Vector<EcuDataItem> result = new Vector<>();
-		HashMap<Integer, Vector<EcuDataItem>> currSvc = get(service);
-		if (currSvc != null)
+		Vector<EcuDataItem> result;
+		if (EcuDataItemIndex.covers(service, 0))
 		{
-			for (Vector<EcuDataItem> currVec : currSvc.values())
+			result = new Vector<>(Arrays.asList(getIndex().get(service)));
+		}
+		else
+		{
+			result = new Vector<>();
+			HashMap<Integer, Vector<EcuDataItem>> currSvc = getIndex().getPidMap(service);
+			if (currSvc != null)
 			{
-				result.addAll(currVec);
+				for (Vector<EcuDataItem> currVec : currSvc.values())
+				{
+					result.addAll(currVec);
+				}
 			}
 		}
 		return (result);
 	}
 
 	/**
-	 * Notify about a change of conversion factors
+	 * Release process variables of all data items of selected service
+	 * (process variables are re-created on next use)
+	 *
+	 * @param service service to release process variables for
+	 */
+	public void releasePvs(int service)
+	{
+		for (EcuDataItem item : getSvcDataItems(service))
+		{
+			item.releasePv();
+		}
+	}
+
+	/**
+	 * get current lookup index
+	 * (re-build if not available, e.g. after de-serialisation)
+	 *
+	 * @return current lookup index
+	 */
+	private EcuDataItemIndex getIndex()
+	{
+		EcuDataItemIndex result = index;
+		if (result == null)
+		{
+			result = EcuDataItemIndex.of(this);
+			index = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Bind dynamic conversion factors
 	 *
-	 * - Updates MIN/MAX range of all items using specified conversion
+	 * - Each data item which provides a dynamic conversion factor
+	 *   gets the list of conversions which depend on it
+	 * - Each conversion with a dynamic factor gets the list of
+	 *   data items which use it (to update MIN/MAX ranges on factor changes)
 	 *
-	 * @param conversion Conversion which notifies changes
+	 * This needs to be re-done whenever data items are added.
 	 */
-	protected static void notifyConversionChange(NumericConversion conversion)
+	static synchronized void bindDynamicFactors()
 	{
-		// Loop through all items ...
-		for (EcuDataItem item : byMnemonic.values())
+		Map<String, EcuDataItem> items = mnemonics;
+		// clear all existing bindings
+		for (EcuDataItem item : items.values())
 		{
-			// If item uses specified conversion ...
-			if(item.cnv[EcuDataItem.cnvSystem] == conversion)
+			item.clearFactorBindings();
+			if (item.cnv == null) continue;
+			for (Conversion currCnv : item.cnv)
 			{
-				// update MIN/MAX limits of item
-				item.updateLimits(null, null);
+				if (currCnv instanceof LinearConversion)
+				{
+					((LinearConversion) currCnv).clearUsers();
+				}
+			}
+		}
+		// create new bindings
+		for (EcuDataItem item : items.values())
+		{
+			if (item.cnv == null) continue;
+			for (Conversion currCnv : item.cnv)
+			{
+				if (!(currCnv instanceof LinearConversion)) continue;
+				LinearConversion linCnv = (LinearConversion) currCnv;
+				String factMnemonic = linCnv.getFactorMnemonic();
+				if (factMnemonic == null) continue;
+
+				EcuDataItem factItem = items.get(factMnemonic);
+				if (factItem != null)
+				{
+					factItem.addFactorBinding(linCnv);
+					linCnv.addUser(item);
+				}
+				else
+				{
+					log.warning("Dynamic factor not found: " + factMnemonic); //$NON-NLS-1$
+				}
 			}
 		}
 	}
@@ -267,8 +533,141 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	 * @param service service to add item to
 	 * @param newItem EcuDataItem to be added
 	 */
-	public void appendItemToService(int service, EcuDataItem newItem)
+	public synchronized void appendItemToService(int service, EcuDataItem newItem)
+	{
+		putItem(service, newItem);
+		// publish updated lookup index
+		index = getIndex().with(service, newItem, this);
+		// bind item to dynamic conversion factors
+		if (newItem.cnv != null)
+		{
+			for (Conversion currCnv : newItem.cnv)
+			{
+				if (currCnv instanceof LinearConversion
+				    && ((LinearConversion) currCnv).getFactorMnemonic() != null)
+				{
+					bindDynamicFactors();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Swap data item definitions
+	 *
+	 * Removed items are taken out of all services and their process vars
+	 * are released, added items are entered for the specified services.
+	 * PID maps and item lists are replaced (copy-on-write) and the lookup
+	 * index is published once for the complete swap, so the protocol path
+	 * either sees the old or the new set of items.
+	 *
+	 * @param removed items to be removed
+	 * @param added   items to be added with their services
+	 */
+	public synchronized void swapItems(Collection<EcuDataItem> removed,
+	                                   Map<EcuDataItem, int[]> added)
+	{
+		for (Map.Entry<Integer, HashMap<Integer, Vector<EcuDataItem>>> currSvc : entrySet())
+		{
+			HashMap<Integer, Vector<EcuDataItem>> newSvc = null;
+			for (Map.Entry<Integer, Vector<EcuDataItem>> currPid : currSvc.getValue().entrySet())
+			{
+				Vector<EcuDataItem> newVec = new Vector<>(currPid.getValue());
+				if (newVec.removeAll(removed))
+				{
+					if (newSvc == null) newSvc = new HashMap<>(currSvc.getValue());
+					newSvc.put(currPid.getKey(), newVec);
+				}
+			}
+			if (newSvc != null) currSvc.setValue(newSvc);
+		}
+		for (Map.Entry<EcuDataItem, int[]> entry : added.entrySet())
+		{
+			for (int service : entry.getValue())
+			{
+				putItem(service, entry.getKey());
+			}
+		}
+		// publish new lookup index
+		index = EcuDataItemIndex.of(this);
+		for (EcuDataItem item : removed)
+		{
+			item.releasePv();
+		}
+		// publish new mnemonics, re-map mnemonics which have been hidden by removed items
+		List<EcuDataItem> allItems = new ArrayList<>();
+		for (HashMap<Integer, Vector<EcuDataItem>> currSvc : values())
+		{
+			for (Vector<EcuDataItem> currVec : currSvc.values())
+			{
+				allItems.addAll(currVec);
+			}
+		}
+		updateMnemonics(removed, added.keySet(), allItems);
+		// and bindings
+		bindDynamicFactors();
+		version++;
+	}
+
+	/**
+	 * publish new map of data items by MNEMONIC
+	 *
+	 * @param removed    items to be removed
+	 * @param added      items to be entered (replacing other items)
+	 * @param candidates items to be entered if their MNEMONIC is not mapped
+	 */
+	private static synchronized void updateMnemonics(Collection<EcuDataItem> removed,
+	                                                 Collection<EcuDataItem> added,
+	                                                 Collection<EcuDataItem> candidates)
+	{
+		Map<String, EcuDataItem> newMap = new HashMap<>(mnemonics);
+		for (EcuDataItem item : removed)
+		{
+			if (newMap.get(item.getMnemonic()) == item)
+			{
+				newMap.remove(item.getMnemonic());
+			}
+		}
+		for (EcuDataItem item : added)
+		{
+			newMap.put(item.getMnemonic(), item);
+		}
+		for (EcuDataItem item : candidates)
+		{
+			if (!newMap.containsKey(item.getMnemonic()))
+			{
+				newMap.put(item.getMnemonic(), item);
+			}
+		}
+		mnemonics = Collections.unmodifiableMap(newMap);
+	}
+
+	/**
+	 * get version of item definitions
+	 * (incremented with every swap of items)
+	 *
+	 * @return current version
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * enter new data item into service/PID map
+	 * (PID map and item list are copied, lookup index is NOT updated)
+	 *
+	 * @param service service to add item to
+	 * @param newItem EcuDataItem to be added
+	 */
+	private void putItem(int service, EcuDataItem newItem)
 	{
+		// PID map and item list which are visible to readers
+		EcuDataItemIndex published = index;
+		HashMap<Integer, Vector<EcuDataItem>> pubSvc = (published != null) ? published.getPidMap(service) : null;
+		Vector<EcuDataItem> pubVec = (pubSvc != null) ? pubSvc.get(newItem.pid) : null;
+
 		// check if service existes already
 		HashMap<Integer, Vector<EcuDataItem>> currSvc = get(service);
 		// if not - create it
@@ -277,6 +676,11 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 			currSvc = new HashMap<>();
 			log.finer("+SVC: " + service + " - " + currSvc); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		else if (published == null || currSvc == pubSvc)
+		{
+			// copy-on-write: readers may still use published PID map
+			currSvc = new HashMap<>(currSvc);
+		}
 
 		// check if item list exists for current PID
 		Vector<EcuDataItem> currVec = currSvc.get(newItem.pid);
@@ -286,6 +690,11 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 			currVec = new Vector<>();
 			log.finer("+PID: " + newItem.pid + " - " + currVec); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		else if (published == null || currVec == pubVec)
+		{
+			// copy-on-write: readers may still iterate current list
+			currVec = new Vector<>(currVec);
+		}
 		// enter data item into list of items / PID
 		currVec.add(newItem);
 		// and update list in into the pid map for corresponding service
@@ -305,17 +714,28 @@ public class EcuDataItems extends HashMap<Integer, HashMap<Integer, Vector<EcuDa
 	 * @return Next expected update interval
 	 */
 	public long updateDataItems(int service, int pid, char[] buffer)
+	{
+		return updateDataItems(service, pid, buffer, 0, 0);
+	}
+
+	/**
+	 * Update all EcuDataItems with new data from buffer with time of acquisition
+	 *
+	 * @param service       service of current data
+	 * @param pid           pid of current data
+	 * @param buffer        data buffer to do conversions on
+	 * @param rxTime        monotonic receive time of buffer [ns] (@see System#nanoTime), 0 = now
+	 * @param roundTripTime round trip time of request which delivered the buffer [ns], 0 = unknown
+	 * @return Next expected update interval
+	 */
+	public long updateDataItems(int service, int pid, char[] buffer, long rxTime, long roundTripTime)
 	{
 		long nextUpdate = 0;
 
-		Vector<EcuDataItem> currItms = getPidDataItems(service, pid);
-		if(currItms != null)
+		for (EcuDataItem currItm : getItems(service, pid))
 		{
-			for (EcuDataItem currItm : currItms)
-			{
-				long currItmUpdate = currItm.updatePvFomBuffer(buffer);
-				nextUpdate = Math.max(nextUpdate, currItmUpdate);
-			}
+			long currItmUpdate = currItm.updatePvFomBuffer(buffer, rxTime, roundTripTime);
+			nextUpdate = Math.max(nextUpdate, currItmUpdate);
 		}
 		return nextUpdate;
 	}
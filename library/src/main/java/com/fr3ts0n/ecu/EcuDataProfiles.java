@@ -0,0 +1,317 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Registry of customisation profiles (custom conversions + PIDs)
+ *
+ * A profile is loaded and validated completely before it is used.
+ * Activating a profile atomically swaps the data items of the previously
+ * active profile against the new ones (@see EcuDataItems#swapItems),
+ * so the protocol keeps polling while custom PIDs are changed.
+ * Conversions of the profile are entered into the global conversion
+ * list, conversions which are hidden by the profile are restored
+ * when the profile is replaced.
+ *
+ * @author erwin
+ */
+public class EcuDataProfiles
+{
+	/** the logger */
+	private static final Logger log = Logger.getLogger("data.profiles");
+
+	/** data items to manage profiles for */
+	private final EcuDataItems dataItems;
+	/** currently active profile */
+	private Profile active = null;
+	/** conversions hidden by active profile (null value = not defined before) */
+	private final Map<String, Conversion[]> hiddenCnvs = new HashMap<>();
+
+	/**
+	 * Loaded customisation profile
+	 */
+	public static class Profile
+	{
+		/** profile name */
+		private final String name;
+		/** conversions of profile */
+		private final EcuConversions conversions;
+		/** CSV rows of data items by mnemonic */
+		private final Map<String, String[]> rows = new LinkedHashMap<>();
+		/** data items with their services */
+		private final Map<EcuDataItem, int[]> items = new LinkedHashMap<>();
+		/** validation errors */
+		private final List<String> errors = new ArrayList<>();
+
+		Profile(String name, EcuConversions conversions)
+		{
+			this.name = name;
+			this.conversions = conversions;
+		}
+
+		/**
+		 * get profile name
+		 *
+		 * @return name of profile
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * get mnemonics of all data items within profile
+		 *
+		 * @return mnemonics of data items
+		 */
+		public List<String> getMnemonics()
+		{
+			return new ArrayList<>(rows.keySet());
+		}
+
+		/**
+		 * get validation errors
+		 *
+		 * @return list of validation errors (empty if profile is valid)
+		 */
+		public List<String> getErrors()
+		{
+			return Collections.unmodifiableList(errors);
+		}
+
+		/**
+		 * Is profile valid?
+		 *
+		 * @return true if no validation errors have been detected
+		 */
+		public boolean isValid()
+		{
+			return errors.isEmpty();
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + " (" + rows.size() + " items, " + conversions.size() + " conversions)";
+		}
+	}
+
+	/**
+	 * Difference of data items between two profiles (by mnemonic)
+	 */
+	public static class Diff
+	{
+		public final List<String> added = new ArrayList<>();
+		public final List<String> removed = new ArrayList<>();
+		public final List<String> changed = new ArrayList<>();
+
+		/**
+		 * Are both profiles equal?
+		 *
+		 * @return true if no item was added, removed or changed
+		 */
+		public boolean isEmpty()
+		{
+			return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "+" + added + " -" + removed + " ~" + changed;
+		}
+	}
+
+	/**
+	 * Create profile registry for data items
+	 *
+	 * @param dataItems data items to manage profiles for
+	 */
+	public EcuDataProfiles(EcuDataItems dataItems)
+	{
+		this.dataItems = dataItems;
+	}
+
+	/**
+	 * Load and validate profile from CSV streams
+	 *
+	 * Rows with errors are skipped and reported in the profile errors.
+	 * The current data items and conversions are not changed.
+	 *
+	 * @param name           name of profile
+	 * @param cnvStream      stream of conversions (csv), null if none
+	 * @param pidStream      stream of data items (csv), null if none
+	 * @return loaded profile
+	 * @throws IOException on errors reading streams
+	 */
+	public Profile load(String name, InputStream cnvStream, InputStream pidStream)
+		throws IOException
+	{
+		EcuConversions conversions = new EcuConversions(Collections.<String[]>emptyList());
+		Profile result = new Profile(name, conversions);
+
+		if (cnvStream != null)
+		{
+			String content = new String(CsvSnapshotCache.readAll(cnvStream));
+			for (String[] params : EcuConversions.parseRows(content))
+			{
+				try
+				{
+					conversions.addRow(params);
+				}
+				catch (RuntimeException ex)
+				{
+					result.errors.add("Conversion " + Arrays.toString(params) + ": " + ex);
+				}
+			}
+		}
+
+		if (pidStream != null)
+		{
+			// formulas are looked up in profile first, then in global conversions
+			Map<String, Conversion[]> lookup = new HashMap<>(EcuDataItems.cnv);
+			lookup.putAll(conversions);
+
+			String content = new String(CsvSnapshotCache.readAll(pidStream));
+			for (String[] params : EcuDataItems.parseRows(content))
+			{
+				try
+				{
+					String mnemonic = params[EcuDataItems.FLD.MNEMONIC.ordinal()];
+					if (result.rows.containsKey(mnemonic))
+					{
+						result.errors.add("Duplicate item: " + mnemonic);
+						continue;
+					}
+					if (!lookup.containsKey(params[EcuDataItems.FLD.FORMULA.ordinal()]))
+					{
+						result.errors.add("Conversion not found: " + mnemonic
+						                  + " " + params[EcuDataItems.FLD.FORMULA.ordinal()]);
+						continue;
+					}
+					int[] services = EcuDataItems.getServices(params);
+					EcuDataItem item = EcuDataItems.newItem(params, lookup);
+					result.rows.put(mnemonic, params);
+					result.items.put(item, services);
+				}
+				catch (RuntimeException ex)
+				{
+					result.errors.add("Item " + Arrays.toString(params) + ": " + ex);
+				}
+			}
+		}
+		log.info("Profile loaded: " + result + " " + result.errors);
+		return result;
+	}
+
+	/**
+	 * get currently active profile
+	 *
+	 * @return active profile, or null if no profile is active
+	 */
+	public synchronized Profile getActive()
+	{
+		return active;
+	}
+
+	/**
+	 * get difference of data items between active and new profile
+	 *
+	 * @param profile new profile, null for no profile
+	 * @return difference of data items
+	 */
+	public synchronized Diff diff(Profile profile)
+	{
+		Map<String, String[]> oldRows = (active != null)
+		                                ? active.rows
+		                                : Collections.<String, String[]>emptyMap();
+		Map<String, String[]> newRows = (profile != null)
+		                                ? profile.rows
+		                                : Collections.<String, String[]>emptyMap();
+		Diff result = new Diff();
+		TreeSet<String> mnemonics = new TreeSet<>(oldRows.keySet());
+		mnemonics.addAll(newRows.keySet());
+		for (String mnemonic : mnemonics)
+		{
+			String[] oldRow = oldRows.get(mnemonic);
+			String[] newRow = newRows.get(mnemonic);
+			if (oldRow == null) result.added.add(mnemonic);
+			else if (newRow == null) result.removed.add(mnemonic);
+			else if (!Arrays.equals(oldRow, newRow)) result.changed.add(mnemonic);
+		}
+		return result;
+	}
+
+	/**
+	 * Activate profile
+	 * (replaces data items and conversions of previously active profile)
+	 *
+	 * @param profile profile to be activated, null to deactivate current profile
+	 * @return difference of data items to previously active profile
+	 * @throws IllegalArgumentException if profile is not valid
+	 */
+	public synchronized Diff activate(Profile profile)
+	{
+		if (profile != null && !profile.isValid())
+		{
+			throw new IllegalArgumentException("Invalid profile: " + profile.getErrors());
+		}
+		Diff result = diff(profile);
+
+		// restore conversions hidden by previous profile
+		for (Map.Entry<String, Conversion[]> entry : hiddenCnvs.entrySet())
+		{
+			if (entry.getValue() != null) EcuDataItems.cnv.put(entry.getKey(), entry.getValue());
+			else EcuDataItems.cnv.remove(entry.getKey());
+		}
+		hiddenCnvs.clear();
+		// enter conversions of new profile
+		if (profile != null)
+		{
+			for (Map.Entry<String, Conversion[]> entry : profile.conversions.entrySet())
+			{
+				hiddenCnvs.put(entry.getKey(), EcuDataItems.cnv.get(entry.getKey()));
+				EcuDataItems.cnv.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		// swap data items
+		dataItems.swapItems((active != null)
+		                    ? active.items.keySet()
+		                    : Collections.<EcuDataItem>emptySet(),
+		                    (profile != null)
+		                    ? profile.items
+		                    : Collections.<EcuDataItem, int[]>emptyMap());
+		active = profile;
+		log.info("Profile activated: " + profile + " " + result);
+		return result;
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Reference counted subscriptions of data items
+ *
+ * Consumers (views, recorders, plugins) subscribe data items by mnemonic
+ * with a desired update period. The protocol scheduler only polls
+ * subscribed items at the fastest requested period.
+ * If there are no subscriptions, all supported items are polled.
+ *
+ * @author erwin
+ */
+public class EcuDataSubscriptions
+{
+	/** update period for "as fast as possible" */
+	public static final long PERIOD_FASTEST = 0;
+
+	/** the logger */
+	private static final Logger log = Logger.getLogger("data.items");
+
+	/**
+	 * Single subscription of a data item
+	 */
+	public class Subscription
+	{
+		/** subscribing owner */
+		public final Object owner;
+		/** subscribed mnemonic */
+		public final String mnemonic;
+		/** requested update period [ms] */
+		private long period_ms;
+
+		private Subscription(Object owner, String mnemonic, long period_ms)
+		{
+			this.owner = owner;
+			this.mnemonic = mnemonic;
+			this.period_ms = Math.max(PERIOD_FASTEST, period_ms);
+		}
+
+		/**
+		 * get requested update period
+		 *
+		 * @return requested update period [ms]
+		 */
+		public long getPeriod()
+		{
+			return period_ms;
+		}
+
+		/**
+		 * change requested update period
+		 *
+		 * @param period_ms new update period [ms]
+		 */
+		public void setPeriod(long period_ms)
+		{
+			synchronized (EcuDataSubscriptions.this)
+			{
+				this.period_ms = Math.max(PERIOD_FASTEST, period_ms);
+				changed();
+			}
+		}
+
+		/**
+		 * release this subscription
+		 */
+		public void close()
+		{
+			unsubscribe(this);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s@%dms", mnemonic, period_ms);
+		}
+	}
+
+	/** active subscriptions by mnemonic */
+	private final HashMap<String, List<Subscription>> subscriptions = new HashMap<>();
+	/** modification counter */
+	private volatile int version = 0;
+
+	/**
+	 * subscribe data item
+	 *
+	 * @param owner     owner of subscription (to allow releasing all subscriptions of owner)
+	 * @param mnemonic  mnemonic of data item
+	 * @param period_ms requested update period [ms]
+	 * @return new subscription
+	 */
+	public synchronized Subscription subscribe(Object owner, String mnemonic, long period_ms)
+	{
+		Subscription result = new Subscription(owner, mnemonic, period_ms);
+		List<Subscription> subs = subscriptions.get(mnemonic);
+		if (subs == null)
+		{
+			subs = new ArrayList<>();
+			subscriptions.put(mnemonic, subs);
+		}
+		subs.add(result);
+		log.fine("+SUB: " + result + " (" + subs.size() + ")");
+		changed();
+		return result;
+	}
+
+	/**
+	 * subscribe multiple data items
+	 *
+	 * @param owner     owner of subscription (to allow releasing all subscriptions of owner)
+	 * @param mnemonics mnemonics of data items
+	 * @param period_ms requested update period [ms]
+	 */
+	public synchronized void subscribe(Object owner, Collection<String> mnemonics, long period_ms)
+	{
+		for (String mnemonic : mnemonics)
+		{
+			subscribe(owner, mnemonic, period_ms);
+		}
+	}
+
+	/**
+	 * release single subscription
+	 *
+	 * @param subscription subscription to be released
+	 */
+	public synchronized void unsubscribe(Subscription subscription)
+	{
+		List<Subscription> subs = subscriptions.get(subscription.mnemonic);
+		if (subs != null && subs.remove(subscription))
+		{
+			if (subs.isEmpty()) subscriptions.remove(subscription.mnemonic);
+			log.fine("-SUB: " + subscription + " (" + subs.size() + ")");
+			changed();
+		}
+	}
+
+	/**
+	 * release all subscriptions of an owner
+	 *
+	 * @param owner owner of subscriptions
+	 */
+	public synchronized void unsubscribe(Object owner)
+	{
+		boolean modified = false;
+		Iterator<List<Subscription>> itSubs = subscriptions.values().iterator();
+		while (itSubs.hasNext())
+		{
+			List<Subscription> subs = itSubs.next();
+			Iterator<Subscription> it = subs.iterator();
+			while (it.hasNext())
+			{
+				if (it.next().owner == owner)
+				{
+					it.remove();
+					modified = true;
+				}
+			}
+			if (subs.isEmpty()) itSubs.remove();
+		}
+		if (modified)
+		{
+			log.fine("-SUB: " + owner);
+			changed();
+		}
+	}
+
+	/**
+	 * release all subscriptions
+	 */
+	public synchronized void clear()
+	{
+		subscriptions.clear();
+		changed();
+	}
+
+	/**
+	 * Are there any active subscriptions?
+	 *
+	 * @return true if no subscriptions are active
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return subscriptions.isEmpty();
+	}
+
+	/**
+	 * get number of active subscriptions for a data item
+	 *
+	 * @param mnemonic mnemonic of data item
+	 * @return number of subscriptions
+	 */
+	public synchronized int getRefCount(String mnemonic)
+	{
+		List<Subscription> subs = subscriptions.get(mnemonic);
+		return subs != null ? subs.size() : 0;
+	}
+
+	/**
+	 * get fastest requested update period of a data item
+	 *
+	 * @param mnemonic mnemonic of data item
+	 * @return fastest requested update period [ms], or -1 if not subscribed
+	 */
+	public synchronized long getPeriod(String mnemonic)
+	{
+		long result = -1;
+		List<Subscription> subs = subscriptions.get(mnemonic);
+		if (subs != null)
+		{
+			for (Subscription sub : subs)
+			{
+				result = (result < 0) ? sub.period_ms : Math.min(result, sub.period_ms);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * get all subscribed mnemonics
+	 *
+	 * @return list of subscribed mnemonics
+	 */
+	public synchronized List<String> getMnemonics()
+	{
+		return new ArrayList<>(subscriptions.keySet());
+	}
+
+	/**
+	 * get modification counter
+	 * The counter is incremented with every change of subscriptions
+	 * to allow consumers to detect changes cheaply.
+	 *
+	 * @return modification counter
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/** mark subscriptions as changed */
+	private void changed()
+	{
+		version++;
+	}
+}
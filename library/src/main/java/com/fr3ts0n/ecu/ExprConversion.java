@@ -0,0 +1,675 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+/**
+ * Conversion of numeric values based on a formula expression
+ *
+ * The expression is parsed once, constant sub expressions are folded
+ * and the result is a tree of evaluation nodes which is evaluated
+ * on every conversion.
+ * <pre>
+ * Operands:
+ *   X            raw value of data item
+ *   A, B ... H   data bytes of raw value, A is the first (most significant)
+ *                data byte of the item, bytes beyond the item length are 0
+ *   [mnemonic]   current value of another data item
+ *   123, 1.5, 0x1F  numeric constants
+ * Operators (by increasing precedence):
+ *   |  &amp;  &lt;&lt; &gt;&gt;  + -  * / %  unary -  ^ (power)
+ * Functions:
+ *   abs(v) sqrt(v) min(a,b) max(a,b)
+ *   bit(v,n)       bit n of v (0/1)
+ *   s8(v) s16(v) s32(v)  signed interpretation of v
+ * Example:
+ *   (A*256+B)/32768*2
+ *   s16(X)/100
+ * </pre>
+ *
+ * @author erwin
+ */
+public class ExprConversion extends NumericConversion
+{
+	private static final long serialVersionUID = -3871522624153840862L;
+
+	/** original formula */
+	private final String formula;
+	/**
+	 * number of data bytes if data length is unknown
+	 * (raw value is a 32 bit value, A = bits 31..24, D = bits 7..0)
+	 */
+	public static final int DEFAULT_LENGTH = 4;
+
+	/** compiled evaluation tree */
+	private final Node root;
+
+	/**
+	 * Create new expression conversion
+	 *
+	 * @param formula formula expression
+	 * @param units   physical units for this conversion
+	 * @throws IllegalArgumentException if formula is invalid
+	 */
+	public ExprConversion(String formula, String units)
+	{
+		this.formula = formula;
+		this.units = units;
+		root = new Parser(formula).parse();
+	}
+
+	/**
+	 * get formula of this conversion
+	 *
+	 * @return formula expression
+	 */
+	public String getFormula()
+	{
+		return formula;
+	}
+
+	/**
+	 * Is the compiled formula a constant value?
+	 *
+	 * @return true if formula does not depend on any input
+	 */
+	public boolean isConstant()
+	{
+		return root instanceof Const;
+	}
+
+	/**
+	 * convert raw value to physical value
+	 *
+	 * The data length is assumed to be {@link #DEFAULT_LENGTH},
+	 * use {@link #memToPhys(long, int)} if the data length is known.
+	 *
+	 * @param value raw memory value to be converted
+	 */
+	@Override
+	public Number memToPhys(long value)
+	{
+		return memToPhys(value, DEFAULT_LENGTH);
+	}
+
+	/**
+	 * convert raw value of a data item to physical value
+	 *
+	 * @param value raw memory value to be converted
+	 * @param len   number of data bytes of data item (A = first data byte)
+	 * @return physical value
+	 */
+	public Number memToPhys(long value, int len)
+	{
+		return (float) root.eval(value, len);
+	}
+
+	/**
+	 * convert physical value to raw storage format
+	 *
+	 * The inverse is approximated by bisection within raw value range
+	 * assuming a monotonic formula. The data length is assumed to be
+	 * {@link #DEFAULT_LENGTH}, use {@link #physToMem(Number, int)} if the
+	 * data length is known.
+	 *
+	 * @param value physical value to be converted
+	 */
+	@Override
+	public Number physToMem(Number value)
+	{
+		return physToMem(value, DEFAULT_LENGTH);
+	}
+
+	/**
+	 * convert physical value to raw value of a data item
+	 *
+	 * @param value physical value to be converted
+	 * @param len   number of data bytes of data item
+	 * @return raw value
+	 */
+	public Number physToMem(Number value, int len)
+	{
+		double target = value.doubleValue();
+		long lo = 0;
+		long hi = (len > 0 && len < 8) ? (1L << (8 * len)) - 1 : 0xFFFFFFFFL;
+		boolean rising = root.eval(hi, len) >= root.eval(lo, len);
+		while (lo < hi)
+		{
+			long mid = lo + (hi - lo) / 2;
+			double midVal = root.eval(mid, len);
+			if (rising ? midVal < target : midVal > target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	@Override
+	public String toString()
+	{
+		return formula;
+	}
+
+	/**
+	 * Evaluation node
+	 */
+	abstract static class Node implements java.io.Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * evaluate node
+		 *
+		 * @param raw raw value of data item
+		 * @param len number of data bytes of raw value
+		 * @return evaluation result
+		 */
+		abstract double eval(long raw, int len);
+
+		/** @return true if node result does not depend on inputs */
+		boolean isConst()
+		{
+			return false;
+		}
+	}
+
+	/** constant value */
+	static final class Const extends Node
+	{
+		private static final long serialVersionUID = 1L;
+
+		final double value;
+
+		Const(double value) { this.value = value; }
+
+		double eval(long raw, int len) { return value; }
+
+		boolean isConst() { return true; }
+	}
+
+	/** raw value X */
+	static final class Raw extends Node
+	{
+		private static final long serialVersionUID = 1L;
+
+		double eval(long raw, int len) { return raw; }
+	}
+
+	/** single data byte of raw value (A = first data byte) */
+	static final class RawByte extends Node
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int index;
+
+		RawByte(int index) { this.index = index; }
+
+		double eval(long raw, int len)
+		{
+			return index < len ? (raw >>> (8 * (len - 1 - index))) & 0xFF : 0;
+		}
+	}
+
+	/** value of other data item */
+	static final class Ref extends Node
+	{
+		private static final long serialVersionUID = 1L;
+
+		final String mnemonic;
+		transient EcuDataItem item;
+
+		Ref(String mnemonic) { this.mnemonic = mnemonic; }
+
+		double eval(long raw, int len)
+		{
+			EcuDataItem itm = item;
+			if (itm == null)
+			{
+				// bind lazily, data items may be loaded after conversions
+				itm = EcuDataItems.byMnemonic.get(mnemonic);
+				if (itm == null) return Double.NaN;
+				item = itm;
+			}
+			// items without process variable have not been received yet
+			EcuDataPv pv = itm.currentPv();
+			if (pv == null) return Double.NaN;
+			Object value = pv.get(EcuDataPv.FID_VALUE);
+			return (value instanceof Number) ? ((Number) value).doubleValue() : Double.NaN;
+		}
+	}
+
+	/** unary nodes */
+	abstract static class Unary extends Node
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Node arg;
+
+		Unary(Node arg) { this.arg = arg; }
+
+		boolean isConst() { return arg.isConst(); }
+	}
+
+	static final class Neg extends Unary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Neg(Node arg) { super(arg); }
+
+		double eval(long raw, int len) { return -arg.eval(raw, len); }
+	}
+
+	static final class Abs extends Unary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Abs(Node arg) { super(arg); }
+
+		double eval(long raw, int len) { return Math.abs(arg.eval(raw, len)); }
+	}
+
+	static final class Sqrt extends Unary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Sqrt(Node arg) { super(arg); }
+
+		double eval(long raw, int len) { return Math.sqrt(arg.eval(raw, len)); }
+	}
+
+	/** signed interpretation of n bit value */
+	static final class Signed extends Unary
+	{
+		private static final long serialVersionUID = 1L;
+
+		final int shift;
+
+		Signed(Node arg, int bits)
+		{
+			super(arg);
+			shift = 64 - bits;
+		}
+
+		double eval(long raw, int len) { return ((long) arg.eval(raw, len) << shift) >> shift; }
+	}
+
+	/** binary nodes */
+	abstract static class Binary extends Node
+	{
+		private static final long serialVersionUID = 1L;
+
+		final Node left;
+		final Node right;
+
+		Binary(Node left, Node right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean isConst() { return left.isConst() && right.isConst(); }
+	}
+
+	static final class Add extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Add(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return left.eval(raw, len) + right.eval(raw, len); }
+	}
+
+	static final class Sub extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Sub(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return left.eval(raw, len) - right.eval(raw, len); }
+	}
+
+	static final class Mul extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Mul(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return left.eval(raw, len) * right.eval(raw, len); }
+	}
+
+	static final class Div extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Div(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return left.eval(raw, len) / right.eval(raw, len); }
+	}
+
+	static final class Mod extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Mod(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return left.eval(raw, len) % right.eval(raw, len); }
+	}
+
+	static final class Pow extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Pow(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return Math.pow(left.eval(raw, len), right.eval(raw, len)); }
+	}
+
+	static final class Min extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Min(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return Math.min(left.eval(raw, len), right.eval(raw, len)); }
+	}
+
+	static final class Max extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Max(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return Math.max(left.eval(raw, len), right.eval(raw, len)); }
+	}
+
+	static final class And extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		And(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return (long) left.eval(raw, len) & (long) right.eval(raw, len); }
+	}
+
+	static final class Or extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Or(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return (long) left.eval(raw, len) | (long) right.eval(raw, len); }
+	}
+
+	static final class Shl extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Shl(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return (long) left.eval(raw, len) << (long) right.eval(raw, len); }
+	}
+
+	static final class Shr extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Shr(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return (long) left.eval(raw, len) >> (long) right.eval(raw, len); }
+	}
+
+	static final class Bit extends Binary
+	{
+		private static final long serialVersionUID = 1L;
+
+		Bit(Node l, Node r) { super(l, r); }
+
+		double eval(long raw, int len) { return ((long) left.eval(raw, len) >> (long) right.eval(raw, len)) & 1; }
+	}
+
+	/**
+	 * Recursive descent parser for formula expressions
+	 */
+	private static final class Parser
+	{
+		private final String src;
+		private int pos = 0;
+
+		Parser(String src)
+		{
+			this.src = src;
+		}
+
+		/**
+		 * parse complete expression
+		 *
+		 * @return compiled evaluation tree
+		 */
+		Node parse()
+		{
+			Node result = parseOr();
+			skipBlanks();
+			if (pos < src.length())
+				throw error("Unexpected '" + src.charAt(pos) + "'");
+			return result;
+		}
+
+		private Node parseOr()
+		{
+			Node result = parseAnd();
+			while (accept("|")) result = fold(new Or(result, parseAnd()));
+			return result;
+		}
+
+		private Node parseAnd()
+		{
+			Node result = parseShift();
+			while (accept("&")) result = fold(new And(result, parseShift()));
+			return result;
+		}
+
+		private Node parseShift()
+		{
+			Node result = parseSum();
+			while (true)
+			{
+				if (accept("<<")) result = fold(new Shl(result, parseSum()));
+				else if (accept(">>")) result = fold(new Shr(result, parseSum()));
+				else return result;
+			}
+		}
+
+		private Node parseSum()
+		{
+			Node result = parseProduct();
+			while (true)
+			{
+				if (accept("+")) result = fold(new Add(result, parseProduct()));
+				else if (accept("-")) result = fold(new Sub(result, parseProduct()));
+				else return result;
+			}
+		}
+
+		private Node parseProduct()
+		{
+			Node result = parseUnary();
+			while (true)
+			{
+				if (accept("*")) result = fold(new Mul(result, parseUnary()));
+				else if (accept("/")) result = fold(new Div(result, parseUnary()));
+				else if (accept("%")) result = fold(new Mod(result, parseUnary()));
+				else return result;
+			}
+		}
+
+		private Node parseUnary()
+		{
+			if (accept("-")) return fold(new Neg(parseUnary()));
+			if (accept("+")) return parseUnary();
+			Node result = parsePrimary();
+			// power is right associative
+			if (accept("^")) result = fold(new Pow(result, parseUnary()));
+			return result;
+		}
+
+		private Node parsePrimary()
+		{
+			skipBlanks();
+			if (pos >= src.length()) throw error("Unexpected end of formula");
+			char chr = src.charAt(pos);
+
+			// parenthesis
+			if (accept("("))
+			{
+				Node result = parseOr();
+				expect(")");
+				return result;
+			}
+
+			// reference to other data item
+			if (accept("["))
+			{
+				int end = src.indexOf(']', pos);
+				if (end < 0) throw error("Missing ']'");
+				String mnemonic = src.substring(pos, end).trim();
+				pos = end + 1;
+				return new Ref(mnemonic);
+			}
+
+			// numeric constant
+			if (Character.isDigit(chr) || chr == '.')
+			{
+				int start = pos;
+				if (src.startsWith("0x", pos) || src.startsWith("0X", pos))
+				{
+					pos += 2;
+					while (pos < src.length() && Character.digit(src.charAt(pos), 16) >= 0) pos++;
+					return new Const(Long.parseLong(src.substring(start + 2, pos), 16));
+				}
+				while (pos < src.length()
+				       && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) pos++;
+				try
+				{
+					return new Const(Double.parseDouble(src.substring(start, pos)));
+				}
+				catch (NumberFormatException ex)
+				{
+					throw error("Invalid number");
+				}
+			}
+
+			// identifiers: operands and functions
+			if (Character.isLetter(chr))
+			{
+				int start = pos;
+				while (pos < src.length() && Character.isLetterOrDigit(src.charAt(pos))) pos++;
+				String name = src.substring(start, pos);
+
+				if (name.equals("X")) return new Raw();
+				if (name.length() == 1 && name.charAt(0) >= 'A' && name.charAt(0) <= 'H')
+				{
+					// byte index is bound to the data length on evaluation
+					return new RawByte(name.charAt(0) - 'A');
+				}
+				return parseFunction(name);
+			}
+			throw error("Unexpected '" + chr + "'");
+		}
+
+		private Node parseFunction(String name)
+		{
+			int start = pos;
+			expect("(");
+			Node arg = parseOr();
+			Node arg2 = null;
+			if (accept(",")) arg2 = parseOr();
+			expect(")");
+
+			Node result;
+			switch (name)
+			{
+				case "abs": result = new Abs(arg); break;
+				case "sqrt": result = new Sqrt(arg); break;
+				case "s8": result = new Signed(arg, 8); break;
+				case "s16": result = new Signed(arg, 16); break;
+				case "s32": result = new Signed(arg, 32); break;
+				case "min": result = new Min(arg, required(arg2, start)); break;
+				case "max": result = new Max(arg, required(arg2, start)); break;
+				case "bit": result = new Bit(arg, required(arg2, start)); break;
+				default:
+					pos = start;
+					throw error("Unknown function '" + name + "'");
+			}
+			if (arg2 != null && result instanceof Unary)
+			{
+				pos = start;
+				throw error("Too many arguments for '" + name + "'");
+			}
+			return fold(result);
+		}
+
+		private Node required(Node arg, int start)
+		{
+			if (arg == null)
+			{
+				pos = start;
+				throw error("Missing argument");
+			}
+			return arg;
+		}
+
+		/**
+		 * Fold constant sub expression into a single constant
+		 *
+		 * @param node node to be folded
+		 * @return constant node if node is constant, node otherwise
+		 */
+		private static Node fold(Node node)
+		{
+			return node.isConst() ? new Const(node.eval(0, 0)) : node;
+		}
+
+		private void skipBlanks()
+		{
+			while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+		}
+
+		private boolean accept(String token)
+		{
+			skipBlanks();
+			if (src.startsWith(token, pos))
+			{
+				pos += token.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String token)
+		{
+			if (!accept(token)) throw error("Expected '" + token + "'");
+		}
+
+		private IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException(
+				String.format("%s at position %d: %s", message, pos, src));
+		}
+	}
+}
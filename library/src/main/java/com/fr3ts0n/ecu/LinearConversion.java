@@ -20,6 +20,8 @@ package com.fr3ts0n.ecu;
 
 import com.fr3ts0n.pvs.PvLimits;
 
+import java.util.Arrays;
+
 /**
  * Definition of a single OBD data conversion
  *
@@ -39,6 +41,9 @@ public class LinearConversion extends NumericConversion
 	private PvLimits limits = null;
 	// mnemonic of dynamic factor
 	private String factMnemonic = null;
+	// data items which use this conversion (to be notified on factor changes)
+	private transient EcuDataItem[] users = NO_USERS;
+	private static final EcuDataItem[] NO_USERS = new EcuDataItem[0];
 
 	/**
 	 * Creates a new instance of Conversion
@@ -102,33 +107,71 @@ public class LinearConversion extends NumericConversion
 		this.limits = limits;
 	}
 
+	/**
+	 * get mnemonic of dynamic conversion factor
+	 *
+	 * @return mnemonic of dynamic factor item, or null if conversion is static
+	 */
+	public String getFactorMnemonic()
+	{
+		return factMnemonic;
+	}
+
+	/**
+	 * Clear all data items which are bound to this conversion
+	 */
+	void clearUsers()
+	{
+		users = NO_USERS;
+	}
+
+	/**
+	 * Register data item which uses this conversion
+	 * (to be notified about changes of the dynamic conversion factor)
+	 *
+	 * @param item data item which uses this conversion
+	 */
+	void addUser(EcuDataItem item)
+	{
+		EcuDataItem[] currUsers = (users != null) ? users : NO_USERS;
+		for (EcuDataItem user : currUsers)
+		{
+			if (user == item) return;
+		}
+		currUsers = Arrays.copyOf(currUsers, currUsers.length + 1);
+		currUsers[currUsers.length - 1] = item;
+		users = currUsers;
+	}
+
 	/**
 	 * Dynamic update of conversion factor from other measurement value
+	 * (pushed by the bound factor data item on value updates)
 	 *
 	 * The dynamic conversion factor overrides the initial, static factor if:
 	 * - Factor is reported by protocol
 	 * - Value > 0
+	 *
+	 * @param factVal new value of dynamic conversion factor
 	 */
-	private void updateCnvFromDynamicFactor()
+	void setDynamicFactor(Number factVal)
 	{
-		if (factMnemonic != null)
+		// If there is a valid value, update factor with dynamic factor
+		if (    factVal != null                 // Factor defined
+             && factVal.intValue() > 0          // and specified ...
+             && factVal.intValue() != factor    // and changed
+           )
 		{
-			// Get data item of dynamic conversion factor
-			EcuDataItem newFactItm = EcuDataItems.byMnemonic.get(factMnemonic);
-			if (newFactItm != null)
+			// update conversion factor from dynamic value
+			factor = factVal.intValue();
+			// Notify all users of this conversion to update the data ranges
+			if (users == null) return;
+			for (EcuDataItem item : users)
 			{
-				// Get value of dynamic conversion factor
-				Number factVal = (Number)newFactItm.pv.get(EcuDataPv.FID_VALUE);
-				// If there is a valid value, update factor with dynamic factor
-				if (    factVal != null                 // Factor defined
-                     && factVal.intValue() > 0          // and specified ...
-                     && factVal.intValue() != factor    // and changed
-                   )
+				// If item currently uses this conversion ...
+				if (item.cnv != null && item.cnv[EcuDataItem.cnvSystem] == this)
 				{
-					// update conversion factor from dynamic value
-					factor = factVal.intValue();
-					// Notify all users of this conversion to update the data ranges
-					EcuDataItems.notifyConversionChange(this);
+					// update MIN/MAX limits of item
+					item.updateLimits(null, null);
 				}
 			}
 		}
@@ -141,7 +184,6 @@ public class LinearConversion extends NumericConversion
 	 */
 	public Number memToPhys(long value)
 	{
-		updateCnvFromDynamicFactor();
 		float result = ((float) (value + offset) * factor / divider + offsetPhys);
 		if (limits != null)
 		{
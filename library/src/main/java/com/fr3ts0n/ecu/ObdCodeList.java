@@ -54,4 +54,12 @@ public class ObdCodeList
 	{
 		return ObdCodeItem.getPCode(value.intValue());
 	}
+
+	@Override
+	int getNumericCode(String code)
+	{
+		if (code.length() != 5 || "PCBU".indexOf(code.charAt(0)) < 0)
+			throw new NumberFormatException("Invalid code: " + code);
+		return ObdCodeItem.getNumericCode(code);
+	}
 }
@@ -0,0 +1,102 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+import com.fr3ts0n.pvs.PvList;
+
+/**
+ * Observer of all data item process vars within a list
+ *
+ * The listener is attached to all data item process vars of the list.
+ * Process vars which are added to the list later (e.g. on service change,
+ * where process vars are replaced) are attached as well.
+ *
+ * @author erwin
+ */
+class PvListObserver
+	implements PvChangeListener
+{
+	/** observed list of process vars */
+	private final PvList pvs;
+	/** listener for changes of process vars */
+	private final PvChangeListener listener;
+
+	/**
+	 * Create observer
+	 *
+	 * @param pvs      list of data item process vars
+	 * @param listener listener to be attached to process vars
+	 */
+	PvListObserver(PvList pvs, PvChangeListener listener)
+	{
+		this.pvs = pvs;
+		this.listener = listener;
+	}
+
+	/**
+	 * start listening to process vars of list
+	 */
+	void attach()
+	{
+		pvs.addPvChangeListener(this, PvChangeEvent.PV_ADDED);
+		attachPvs();
+	}
+
+	/**
+	 * stop listening to process vars of list
+	 */
+	void detach()
+	{
+		pvs.removePvChangeListener(this);
+		for (Object pv : pvs.values().toArray())
+		{
+			if (pv instanceof EcuDataPv)
+			{
+				((EcuDataPv) pv).removePvChangeListener(listener);
+			}
+		}
+	}
+
+	/**
+	 * listen to value changes of all process vars in list
+	 */
+	private void attachPvs()
+	{
+		for (Object pv : pvs.values().toArray())
+		{
+			if (pv instanceof EcuDataPv)
+			{
+				((EcuDataPv) pv).addPvChangeListener(listener,
+				                                     PvChangeEvent.PV_ADDED
+				                                     | PvChangeEvent.PV_MODIFIED);
+			}
+		}
+	}
+
+	/**
+	 * new process vars in list
+	 */
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		if (!event.isChildEvent()) attachPvs();
+	}
+}
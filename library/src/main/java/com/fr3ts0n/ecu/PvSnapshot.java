@@ -0,0 +1,253 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Binary snapshot format of process var lists
+ *
+ * A snapshot replaces Java serialization of whole PvList graphs.
+ * It is described by its own schema, so it does not depend on the
+ * implementation classes, and data item process vars are restored
+ * by their mnemonic against the current data item definitions.
+ *
+ * File layout (big endian, @see DataOutputStream):
+ * - header: MAGIC (int), VERSION (short)
+ * - sections: type (byte), name (UTF), body length (int), body
+ *   - SEC_PROPERTY: single value
+ *   - SEC_LIST: process var list
+ *     number of fields (short), field names (string),
+ *     number of strings (int), strings which are referenced by values (string),
+ *     number of rows (int), per row: kind (byte), index of key attribute
+ *     field (short, -1 = none), list key (value), value of each field
+ *   - SEC_SERIES: time series of a process var
+ *     key (value), number of samples (int), per sample: time (long), value (double)
+ * - end: SEC_END (byte)
+ *
+ * Strings are written as length (int) and UTF-8 bytes.
+ * Values are written as type tag (byte) and content. Strings within lists
+ * are written once, and referenced by their index (T_STRING_REF).
+ * Fields with other types (e.g. conversions) are not part of the snapshot.
+ * Sections of unknown type are skipped, and fields are matched by name,
+ * so snapshots stay readable when sections or fields are added.
+ *
+ * @author erwin
+ */
+public final class PvSnapshot
+{
+	/** file format identification */
+	static final int MAGIC = 0x414F5053; // "AOPS"
+	static final int VERSION = 1;
+
+	/** section types */
+	static final byte SEC_END = 0;
+	public static final byte SEC_PROPERTY = 1;
+	public static final byte SEC_LIST = 2;
+	public static final byte SEC_SERIES = 3;
+
+	/** kinds of process vars within lists */
+	public static final int KIND_OTHER = 0;
+	/** data item (@see EcuDataPv) */
+	public static final int KIND_DATA = 1;
+	/** trouble code (@see EcuCodeItem) */
+	public static final int KIND_CODE = 2;
+
+	/** common section names */
+	public static final String PROP_SERVICE = "service";
+	public static final String LIST_PID_PVS = "PidPvs";
+	public static final String LIST_VID_PVS = "VidPvs";
+	public static final String LIST_CODES = "tCodes";
+
+	/** value type tags */
+	static final byte T_NULL = 0;
+	static final byte T_BOOLEAN = 1;
+	static final byte T_INT = 2;
+	static final byte T_LONG = 3;
+	static final byte T_FLOAT = 4;
+	static final byte T_DOUBLE = 5;
+	static final byte T_STRING = 6;
+	static final byte T_STRING_REF = 7;
+
+	/** string encoding */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private PvSnapshot()
+	{
+	}
+
+	/**
+	 * Can value be written to a snapshot?
+	 *
+	 * @param value value to check
+	 * @return true if value type is supported
+	 */
+	public static boolean isSupported(Object value)
+	{
+		return value instanceof Boolean
+		       || value instanceof Integer
+		       || value instanceof Long
+		       || value instanceof Float
+		       || value instanceof Double
+		       || value instanceof String;
+	}
+
+	/**
+	 * write string
+	 *
+	 * @param out   stream to write to
+	 * @param value string to write
+	 * @throws IOException on write error
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * read string
+	 *
+	 * @param in buffer to read from
+	 * @return string
+	 * @throws IOException if string exceeds buffer
+	 */
+	static String readString(ByteBuffer in) throws IOException
+	{
+		int length = in.getInt();
+		if (length < 0 || length > in.remaining())
+		{
+			throw new IOException("Invalid string length: " + length);
+		}
+		String result = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+		in.position(in.position() + length);
+		return result;
+	}
+
+	/**
+	 * write value with type tag
+	 * (values of unsupported types are written as null)
+	 *
+	 * @param out     stream to write to
+	 * @param value   value to write
+	 * @param strings index of referenced strings, null to write strings inline
+	 * @throws IOException on write error
+	 */
+	static void writeValue(DataOutputStream out, Object value, Map<String, Integer> strings)
+		throws IOException
+	{
+		if (value instanceof Boolean)
+		{
+			out.writeByte(T_BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Integer)
+		{
+			out.writeByte(T_INT);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long)
+		{
+			out.writeByte(T_LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float)
+		{
+			out.writeByte(T_FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double)
+		{
+			out.writeByte(T_DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof String && strings != null)
+		{
+			Integer index = strings.get(value);
+			if (index == null)
+			{
+				index = strings.size();
+				strings.put((String) value, index);
+			}
+			out.writeByte(T_STRING_REF);
+			out.writeInt(index);
+		}
+		else if (value instanceof String)
+		{
+			out.writeByte(T_STRING);
+			writeString(out, (String) value);
+		}
+		else
+		{
+			out.writeByte(T_NULL);
+		}
+	}
+
+	/**
+	 * read value with type tag
+	 *
+	 * @param in      buffer to read from
+	 * @param strings referenced strings, null if there are none
+	 * @return value, null for null value
+	 * @throws IOException on unknown type tag or invalid content
+	 */
+	static Object readValue(ByteBuffer in, String[] strings) throws IOException
+	{
+		try
+		{
+			byte type = in.get();
+			switch (type)
+			{
+				case T_NULL:
+					return null;
+				case T_BOOLEAN:
+					return in.get() != 0;
+				case T_INT:
+					return in.getInt();
+				case T_LONG:
+					return in.getLong();
+				case T_FLOAT:
+					return in.getFloat();
+				case T_DOUBLE:
+					return in.getDouble();
+				case T_STRING:
+					return readString(in);
+				case T_STRING_REF:
+					int index = in.getInt();
+					if (strings == null || index < 0 || index >= strings.length)
+					{
+						throw new IOException("Invalid string reference: " + index);
+					}
+					return strings[index];
+				default:
+					throw new IOException("Unknown value type: " + type);
+			}
+		} catch (BufferUnderflowException e)
+		{
+			throw new IOException("Incomplete value");
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvList;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming reader of process var snapshots (@see PvSnapshot)
+ *
+ * Sections are read one by one with #next. Data items are restored into
+ * the process var of the current data item with the same mnemonic
+ * (@see EcuDataItems#byMnemonic), so conversions, formats and limits are
+ * up to date, and only the recorded state (e.g. the value) is taken from
+ * the snapshot. Unknown data items are restored with all fields of the
+ * snapshot.
+ *
+ * @author erwin
+ */
+public class PvSnapshotReader
+	implements Closeable
+{
+	/**
+	 * Factory of process vars within restored lists
+	 */
+	public interface PvFactory
+	{
+		/**
+		 * create empty process var
+		 *
+		 * @param list name of list
+		 * @param kind kind of process var (@see PvSnapshot#KIND_DATA)
+		 * @return new process var, null to create default process var
+		 */
+		ProcessVar createPv(String list, int kind);
+	}
+
+	/**
+	 * Time series of a process var
+	 */
+	public static class Series
+	{
+		/** key of process var */
+		public final Object key;
+		/** number of samples */
+		public final int count;
+		public final long[] times;
+		public final double[] values;
+
+		Series(Object key, int count)
+		{
+			this.key = key;
+			this.count = count;
+			times = new long[count];
+			values = new double[count];
+		}
+	}
+
+	private final DataInputStream in;
+	/** factory of process vars, null = default process vars */
+	private PvFactory factory = null;
+	/** current section */
+	private byte type;
+	private String name;
+	private byte[] body;
+	/** snapshot end has been reached */
+	private boolean done = false;
+
+	/**
+	 * Open snapshot
+	 *
+	 * @param in stream to read from
+	 * @throws IOException on read error, or if stream is not a
+	 *                     snapshot of a supported version
+	 */
+	public PvSnapshotReader(InputStream in) throws IOException
+	{
+		this.in = new DataInputStream(new BufferedInputStream(in));
+		if (this.in.readInt() != PvSnapshot.MAGIC)
+		{
+			throw new IOException("Not a snapshot");
+		}
+		int version = this.in.readShort();
+		if (version > PvSnapshot.VERSION)
+		{
+			throw new IOException("Unsupported snapshot version: " + version);
+		}
+	}
+
+	/**
+	 * Does stream contain a snapshot?
+	 * (stream position is kept)
+	 *
+	 * @param in stream to check, which supports mark/reset
+	 * @return true if stream starts with snapshot header
+	 * @throws IOException on read error
+	 */
+	public static boolean isSnapshot(InputStream in) throws IOException
+	{
+		in.mark(4);
+		try
+		{
+			int magic = 0;
+			for (int i = 0; i < 4; i++)
+			{
+				int b = in.read();
+				if (b < 0) return false;
+				magic = (magic << 8) | b;
+			}
+			return magic == PvSnapshot.MAGIC;
+		} finally
+		{
+			in.reset();
+		}
+	}
+
+	/**
+	 * set factory of restored process vars
+	 *
+	 * @param factory process var factory, null for default process vars
+	 */
+	public void setPvFactory(PvFactory factory)
+	{
+		this.factory = factory;
+	}
+
+	/**
+	 * read next section
+	 *
+	 * @return true if section was read, false at end of snapshot
+	 * @throws IOException on read error
+	 */
+	public boolean next() throws IOException
+	{
+		if (done) return false;
+		type = in.readByte();
+		if (type == PvSnapshot.SEC_END)
+		{
+			done = true;
+			return false;
+		}
+		name = in.readUTF();
+		int length = in.readInt();
+		if (length < 0)
+		{
+			throw new IOException("Invalid section: " + name);
+		}
+		body = new byte[length];
+		in.readFully(body);
+		return true;
+	}
+
+	/**
+	 * @return type of current section (@see PvSnapshot#SEC_LIST)
+	 */
+	public byte getType()
+	{
+		return type;
+	}
+
+	/**
+	 * @return name of current section
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * get value of current property section
+	 *
+	 * @return property value
+	 * @throws IOException if section is not a valid property
+	 */
+	public Object getProperty() throws IOException
+	{
+		return PvSnapshot.readValue(open(PvSnapshot.SEC_PROPERTY), null);
+	}
+
+	/**
+	 * get time series of current series section
+	 *
+	 * @return time series
+	 * @throws IOException if section is not a valid series
+	 */
+	public Series getSeries() throws IOException
+	{
+		ByteBuffer data = open(PvSnapshot.SEC_SERIES);
+		Object key = PvSnapshot.readValue(data, null);
+		int count = (data.remaining() >= 4) ? data.getInt() : -1;
+		if (count < 0 || count > data.remaining() / 16)
+		{
+			throw new IOException("Invalid series: " + name);
+		}
+		Series result = new Series(key, count);
+		for (int i = 0; i < count; i++)
+		{
+			result.times[i] = data.getLong();
+			result.values[i] = data.getDouble();
+		}
+		return result;
+	}
+
+	/**
+	 * restore process var list of current list section
+	 *
+	 * @return restored list
+	 * @throws IOException if section is not a valid list
+	 */
+	public PvList getList() throws IOException
+	{
+		ByteBuffer data = open(PvSnapshot.SEC_LIST);
+		Map<Object, Object> pvs = new HashMap<>();
+		try
+		{
+			String[] fields = new String[data.getShort() & 0xFFFF];
+			for (int i = 0; i < fields.length; i++)
+			{
+				fields[i] = PvSnapshot.readString(data);
+			}
+			int numStrings = data.getInt();
+			if (numStrings < 0 || numStrings > data.remaining() / 4)
+			{
+				throw new IOException("Invalid list: " + name);
+			}
+			String[] strings = new String[numStrings];
+			for (int i = 0; i < strings.length; i++)
+			{
+				strings[i] = PvSnapshot.readString(data);
+			}
+
+			Map<String, Object> values = new HashMap<>();
+			for (int rows = data.getInt(); rows > 0; rows--)
+			{
+				int kind = data.get();
+				int keyField = data.getShort();
+				Object key = PvSnapshot.readValue(data, strings);
+				values.clear();
+				for (String field : fields)
+				{
+					Object value = PvSnapshot.readValue(data, strings);
+					if (value != null) values.put(field, value);
+				}
+				ProcessVar pv = restorePv(kind, values);
+				if (keyField >= 0 && keyField < fields.length)
+				{
+					pv.setKeyAttribute(fields[keyField]);
+				}
+				pvs.put(key, pv);
+			}
+		} catch (BufferUnderflowException e)
+		{
+			throw new IOException("Incomplete list: " + name);
+		}
+		PvList result = new PvList();
+		result.putAll(pvs);
+		return result;
+	}
+
+	/**
+	 * restore process var of list
+	 *
+	 * @param kind   kind of process var
+	 * @param values field values of snapshot
+	 * @return restored process var
+	 */
+	@SuppressWarnings("unchecked")
+	private ProcessVar restorePv(int kind, Map<String, Object> values)
+	{
+		Object mnemonic = values.get(EcuDataPv.FID_MNEMONIC);
+		EcuDataItem item = (kind == PvSnapshot.KIND_DATA && mnemonic != null)
+		                   ? EcuDataItems.byMnemonic.get(mnemonic)
+		                   : null;
+		ProcessVar result = (factory != null) ? factory.createPv(name, kind) : null;
+		if (result == null)
+		{
+			if (item != null)
+			{
+				result = item.getPv();
+			}
+			else
+			{
+				result = (kind == PvSnapshot.KIND_DATA) ? new EcuDataPv()
+				         : (kind == PvSnapshot.KIND_CODE) ? new ObdCodeItem()
+				         : new ProcessVar();
+				result.putAll(values);
+				return result;
+			}
+		}
+		else if (item != null)
+		{
+			result.putAll(item.createPv());
+		}
+		else
+		{
+			result.putAll(values);
+			return result;
+		}
+
+		// keep current definition, restore state only
+		for (Map.Entry<String, Object> field : values.entrySet())
+		{
+			if (!result.containsKey(field.getKey())
+			    || EcuDataPv.FIELDS[EcuDataPv.FID_VALUE].equals(field.getKey()))
+			{
+				result.put(field.getKey(), field.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * open body of current section
+	 *
+	 * @param expected expected section type
+	 * @return body buffer
+	 * @throws IOException if current section is of other type
+	 */
+	private ByteBuffer open(byte expected) throws IOException
+	{
+		if (body == null || type != expected)
+		{
+			throw new IOException("Invalid section type: " + name);
+		}
+		return ByteBuffer.wrap(body);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+}
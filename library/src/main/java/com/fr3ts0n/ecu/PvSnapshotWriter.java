@@ -0,0 +1,214 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvList;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of process var snapshots (@see PvSnapshot)
+ *
+ * @author erwin
+ */
+public class PvSnapshotWriter
+	implements Closeable
+{
+	private final DataOutputStream out;
+	/** body of current section */
+	private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+	private final DataOutputStream body = new DataOutputStream(bodyBytes);
+	/** rows of current list */
+	private final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+	private final DataOutputStream row = new DataOutputStream(rowBytes);
+	private boolean closed = false;
+
+	/**
+	 * Create snapshot writer, and write header
+	 *
+	 * @param out stream to write to
+	 * @throws IOException on write error
+	 */
+	public PvSnapshotWriter(OutputStream out) throws IOException
+	{
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeInt(PvSnapshot.MAGIC);
+		this.out.writeShort(PvSnapshot.VERSION);
+	}
+
+	/**
+	 * write single value
+	 *
+	 * @param name  property name
+	 * @param value property value (Boolean, Integer, Long, Float, Double or String)
+	 * @throws IOException on write error
+	 */
+	public void putProperty(String name, Object value) throws IOException
+	{
+		if (!PvSnapshot.isSupported(value))
+		{
+			throw new IllegalArgumentException("Unsupported property type: " + name);
+		}
+		bodyBytes.reset();
+		PvSnapshot.writeValue(body, value, null);
+		writeSection(PvSnapshot.SEC_PROPERTY, name);
+	}
+
+	/**
+	 * write process var list
+	 *
+	 * @param name list name
+	 * @param list list to write
+	 * @throws IOException on write error
+	 */
+	public void putList(String name, PvList list) throws IOException
+	{
+		Object[] entries;
+		synchronized (list)
+		{
+			entries = list.entrySet().toArray();
+		}
+
+		// schema: all fields with supported values
+		Map<String, Integer> fieldIds = new LinkedHashMap<>();
+		List<Map<?, ?>> rows = new ArrayList<>(entries.length);
+		for (Object entry : entries)
+		{
+			Object pv = ((Map.Entry<?, ?>) entry).getValue();
+			Map<?, ?> fields;
+			synchronized (pv)
+			{
+				fields = new LinkedHashMap<>((Map<?, ?>) pv);
+			}
+			rows.add(fields);
+			for (Map.Entry<?, ?> field : fields.entrySet())
+			{
+				if (field.getKey() instanceof String
+				    && PvSnapshot.isSupported(field.getValue())
+				    && !fieldIds.containsKey(field.getKey()))
+				{
+					fieldIds.put((String) field.getKey(), fieldIds.size());
+				}
+			}
+		}
+
+		// rows, with index of referenced strings
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		rowBytes.reset();
+		row.writeInt(entries.length);
+		for (int i = 0; i < entries.length; i++)
+		{
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entries[i];
+			Object pv = entry.getValue();
+			Map<?, ?> fields = rows.get(i);
+			row.writeByte(pv instanceof EcuDataPv ? PvSnapshot.KIND_DATA
+			              : pv instanceof EcuCodeItem ? PvSnapshot.KIND_CODE
+			              : PvSnapshot.KIND_OTHER);
+			Integer keyField = (pv instanceof ProcessVar)
+			                   ? fieldIds.get(((ProcessVar) pv).getKeyAttribute())
+			                   : null;
+			row.writeShort(keyField != null ? keyField : -1);
+			PvSnapshot.writeValue(row, entry.getKey(), strings);
+			for (String field : fieldIds.keySet())
+			{
+				PvSnapshot.writeValue(row, fields.get(field), strings);
+			}
+		}
+
+		bodyBytes.reset();
+		body.writeShort(fieldIds.size());
+		for (String field : fieldIds.keySet())
+		{
+			PvSnapshot.writeString(body, field);
+		}
+		body.writeInt(strings.size());
+		for (String string : strings.keySet())
+		{
+			PvSnapshot.writeString(body, string);
+		}
+		rowBytes.writeTo(body);
+		writeSection(PvSnapshot.SEC_LIST, name);
+	}
+
+	/**
+	 * write time series of a process var
+	 *
+	 * @param name   series name
+	 * @param key    key of process var
+	 * @param times  sample times
+	 * @param values sample values
+	 * @param count  number of samples
+	 * @throws IOException on write error
+	 */
+	public void putSeries(String name, Object key, long[] times, double[] values, int count)
+		throws IOException
+	{
+		bodyBytes.reset();
+		PvSnapshot.writeValue(body, key, null);
+		body.writeInt(count);
+		for (int i = 0; i < count; i++)
+		{
+			body.writeLong(times[i]);
+			body.writeDouble(values[i]);
+		}
+		writeSection(PvSnapshot.SEC_SERIES, name);
+	}
+
+	/**
+	 * write end of snapshot, and close output
+	 *
+	 * @throws IOException on write error
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed) return;
+		closed = true;
+		try
+		{
+			out.writeByte(PvSnapshot.SEC_END);
+			out.flush();
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * write section with current body
+	 */
+	private void writeSection(byte type, String name) throws IOException
+	{
+		out.writeByte(type);
+		out.writeUTF(name);
+		out.writeInt(bodyBytes.size());
+		bodyBytes.writeTo(out);
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Approximate quantiles of a stream of values
+ *
+ * Values are counted in logarithmic buckets (each bucket covers values
+ * within a relative accuracy of the bucket value), so every quantile is
+ * returned with a relative error of max. ACCURACY, independent of the
+ * value distribution. Adding a value is O(1), memory is bounded by the
+ * dynamic range of the values (about 2000 buckets for 1e-9 .. 1e9).
+ *
+ * @author erwin
+ */
+public class QuantileSketch
+{
+	/** relative accuracy of quantiles */
+	public static final double ACCURACY = 0.01;
+	/** smallest absolute value which is distinguished from zero */
+	static final double MIN_VALUE = 1e-9;
+
+	private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+
+	/**
+	 * dense range of bucket counters
+	 */
+	private static class Buckets
+	{
+		/** bucket index of first counter */
+		int offset = 0;
+		int[] counts = new int[0];
+		long total = 0;
+
+		void add(int index)
+		{
+			if (counts.length == 0)
+			{
+				offset = index;
+				counts = new int[8];
+			}
+			else if (index < offset)
+			{
+				int grow = Math.max(offset - index, counts.length / 2);
+				int[] newCounts = new int[counts.length + grow];
+				System.arraycopy(counts, 0, newCounts, grow, counts.length);
+				counts = newCounts;
+				offset -= grow;
+			}
+			else if (index - offset >= counts.length)
+			{
+				int size = Math.max(index - offset + 1, counts.length * 3 / 2);
+				int[] newCounts = new int[size];
+				System.arraycopy(counts, 0, newCounts, 0, counts.length);
+				counts = newCounts;
+			}
+			counts[index - offset]++;
+			total++;
+		}
+
+		void write(DataOutput out) throws IOException
+		{
+			// write used range only
+			int first = 0;
+			int last = counts.length - 1;
+			while (first <= last && counts[first] == 0) first++;
+			while (last >= first && counts[last] == 0) last--;
+			out.writeInt(offset + first);
+			out.writeInt(last - first + 1);
+			for (int i = first; i <= last; i++)
+			{
+				out.writeInt(counts[i]);
+			}
+		}
+
+		void read(DataInput in) throws IOException
+		{
+			offset = in.readInt();
+			int size = in.readInt();
+			if (size < 0)
+			{
+				throw new IOException("Invalid bucket count: " + size);
+			}
+			counts = new int[size];
+			total = 0;
+			for (int i = 0; i < size; i++)
+			{
+				counts[i] = in.readInt();
+				total += counts[i];
+			}
+		}
+	}
+
+	/** buckets of positive values */
+	private final Buckets positive = new Buckets();
+	/** buckets of absolute negative values */
+	private final Buckets negative = new Buckets();
+	/** number of values close to zero */
+	private long zeroCount = 0;
+
+	/**
+	 * get bucket index of a (positive) value
+	 */
+	private static int index(double value)
+	{
+		return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+	}
+
+	/**
+	 * get representative value of a bucket
+	 */
+	private static double value(int index)
+	{
+		return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+	}
+
+	/**
+	 * add value (NaN and infinite values are ignored)
+	 *
+	 * @param value value to add
+	 */
+	public void add(double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value)) return;
+
+		if (value > MIN_VALUE)
+		{
+			positive.add(index(value));
+		}
+		else if (value < -MIN_VALUE)
+		{
+			negative.add(index(-value));
+		}
+		else
+		{
+			zeroCount++;
+		}
+	}
+
+	public long getCount()
+	{
+		return positive.total + negative.total + zeroCount;
+	}
+
+	/**
+	 * get approximate quantile
+	 *
+	 * @param quantile quantile [0..1] (e.g. 0.5 for median)
+	 * @return value at quantile, NaN if there are no values
+	 */
+	public double getQuantile(double quantile)
+	{
+		long count = getCount();
+		if (count == 0) return Double.NaN;
+
+		long rank = (long) (Math.max(0, Math.min(1, quantile)) * (count - 1));
+		// negative values in ascending order (descending absolute value)
+		if (rank < negative.total)
+		{
+			for (int i = negative.counts.length - 1; i >= 0; i--)
+			{
+				rank -= negative.counts[i];
+				if (rank < 0) return -value(negative.offset + i);
+			}
+		}
+		rank -= negative.total;
+		if (rank < zeroCount) return 0;
+		rank -= zeroCount;
+		for (int i = 0; i < positive.counts.length; i++)
+		{
+			rank -= positive.counts[i];
+			if (rank < 0) return value(positive.offset + i);
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * write sketch
+	 *
+	 * @param out output to write to
+	 * @throws IOException on write error
+	 */
+	public void write(DataOutput out) throws IOException
+	{
+		out.writeLong(zeroCount);
+		positive.write(out);
+		negative.write(out);
+	}
+
+	/**
+	 * read sketch which was written with #write
+	 *
+	 * @param in input to read from
+	 * @throws IOException on read error
+	 */
+	public void read(DataInput in) throws IOException
+	{
+		zeroCount = in.readLong();
+		positive.read(in);
+		negative.read(in);
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Alignment of multiple channels onto a common timebase
+ *
+ * Channels are sampled at different and jittery rates. The resampler
+ * reads the time ordered samples of all channels in a single pass, and
+ * provides rows of aligned channel values either
+ * - at a fixed interval (@see #setInterval), or
+ * - at every distinct sample time of any channel (union of timestamps)
+ *
+ * Values which are not sampled at the row time are aligned according to
+ * the selected alignment. Values which would bridge a gap of more than
+ * the max. gap time (@see #setMaxGap) are not valid (NaN), and rows
+ * of a fixed timebase without any valid value are skipped.
+ *
+ * Only the neighbour samples of each channel are kept, so memory is
+ * bounded by the number of channels, regardless of the sample count.
+ *
+ * @author erwin
+ */
+public class Resampler
+{
+	/**
+	 * alignment of channel values to row times
+	 */
+	public enum Alignment
+	{
+		/** last value at or before row time */
+		SAMPLE_AND_HOLD,
+		/** value closest to row time */
+		NEAREST,
+		/** linear interpolation between neighbour samples */
+		INTERPOLATE
+	}
+
+	/**
+	 * resampling state of one channel
+	 */
+	private static class Cursor
+	{
+		final SampleIterator samples;
+		boolean hasPrev = false;
+		long prevTime;
+		double prevValue;
+		boolean hasNext;
+		long nextTime;
+		double nextValue;
+
+		Cursor(SampleIterator samples)
+		{
+			this.samples = samples;
+			fetch();
+		}
+
+		/**
+		 * read next sample from iterator
+		 */
+		private void fetch()
+		{
+			hasNext = samples.next();
+			if (hasNext)
+			{
+				nextTime = samples.getTime();
+				nextValue = samples.getValue();
+			}
+		}
+
+		/**
+		 * advance to next sample
+		 */
+		void advance()
+		{
+			hasPrev = true;
+			prevTime = nextTime;
+			prevValue = nextValue;
+			fetch();
+		}
+
+		/**
+		 * Is there no sample within max. gap around a time?
+		 *
+		 * @param time   row time
+		 * @param maxGap max. gap time
+		 * @return true if no sample is within max. gap
+		 */
+		boolean isGap(long time, long maxGap)
+		{
+			return (!hasPrev || time - prevTime > maxGap)
+			       && (!hasNext || nextTime - time > maxGap);
+		}
+
+		/**
+		 * get aligned value at a time
+		 * (all samples at or before time have been consumed)
+		 *
+		 * @param time      row time
+		 * @param alignment alignment mode
+		 * @param maxGap    max. gap time, 0 = unlimited
+		 * @return aligned value, NaN if there is none
+		 */
+		double getValue(long time, Alignment alignment, long maxGap)
+		{
+			if (hasPrev && prevTime == time)
+			{
+				return prevValue;
+			}
+			long limit = maxGap > 0 ? maxGap : Long.MAX_VALUE;
+			switch (alignment)
+			{
+				case NEAREST:
+					boolean prevValid = hasPrev && time - prevTime <= limit;
+					boolean nextValid = hasNext && nextTime - time <= limit;
+					if (prevValid && nextValid)
+					{
+						return (nextTime - time < time - prevTime) ? nextValue : prevValue;
+					}
+					if (prevValid) return prevValue;
+					if (nextValid) return nextValue;
+					return Double.NaN;
+
+				case INTERPOLATE:
+					if (!hasPrev || !hasNext || nextTime - prevTime > limit) return Double.NaN;
+					return prevValue + (nextValue - prevValue)
+					                   * (time - prevTime) / (nextTime - prevTime);
+
+				default:
+					return (hasPrev && time - prevTime <= limit) ? prevValue : Double.NaN;
+			}
+		}
+	}
+
+	/** channel samples */
+	private final List<SampleIterator> channels = new ArrayList<>();
+
+	private Alignment alignment = Alignment.SAMPLE_AND_HOLD;
+	/** interval of fixed timebase [ms], 0 = union of sample times */
+	private long interval = 0;
+	/** max. gap time to be bridged [ms], 0 = unlimited */
+	private long maxGap = 0;
+
+	/** channel cursors, null until first row */
+	private Cursor[] cursors = null;
+	/** cursors ordered by time of next sample */
+	private PriorityQueue<Cursor> queue;
+	/** time of current row */
+	private long time;
+	/** time of next row of fixed timebase */
+	private long nextRowTime;
+	/** time of latest consumed sample */
+	private long lastSampleTime = Long.MIN_VALUE;
+
+	/**
+	 * add channel to be resampled
+	 *
+	 * @param samples time ordered samples of channel
+	 * @return index of channel within rows
+	 */
+	public int addChannel(SampleIterator samples)
+	{
+		if (cursors != null)
+		{
+			throw new IllegalStateException("Resampling already started");
+		}
+		channels.add(samples);
+		return channels.size() - 1;
+	}
+
+	public int getChannelCount()
+	{
+		return channels.size();
+	}
+
+	public void setAlignment(Alignment alignment)
+	{
+		this.alignment = alignment;
+	}
+
+	/**
+	 * set interval of fixed timebase
+	 * (rows are created at multiples of the interval)
+	 *
+	 * @param interval row interval [ms], 0 = row at every sample time of any channel
+	 */
+	public void setInterval(long interval)
+	{
+		if (interval < 0)
+		{
+			throw new IllegalArgumentException("Invalid interval: " + interval);
+		}
+		this.interval = interval;
+	}
+
+	/**
+	 * set max. gap time to be bridged by alignment
+	 * - sample and hold: max. age of held value
+	 * - nearest: max. distance to nearest sample
+	 * - interpolate: max. distance between interpolated samples
+	 *
+	 * @param maxGap max. gap time [ms], 0 = unlimited
+	 */
+	public void setMaxGap(long maxGap)
+	{
+		if (maxGap < 0)
+		{
+			throw new IllegalArgumentException("Invalid max. gap: " + maxGap);
+		}
+		this.maxGap = maxGap;
+	}
+
+	/**
+	 * initialize cursors of all channels
+	 */
+	private void start()
+	{
+		cursors = new Cursor[channels.size()];
+		queue = new PriorityQueue<>(Math.max(1, cursors.length),
+			(a, b) -> Long.compare(a.nextTime, b.nextTime));
+		for (int i = 0; i < cursors.length; i++)
+		{
+			cursors[i] = new Cursor(channels.get(i));
+			if (cursors[i].hasNext) queue.add(cursors[i]);
+		}
+		if (interval > 0 && !queue.isEmpty())
+		{
+			nextRowTime = ceil(queue.peek().nextTime);
+		}
+	}
+
+	/**
+	 * round up to multiple of interval
+	 */
+	private long ceil(long t)
+	{
+		return Math.floorDiv(t + interval - 1, interval) * interval;
+	}
+
+	/**
+	 * consume all samples at or before a time
+	 *
+	 * @param t time
+	 */
+	private void consume(long t)
+	{
+		while (!queue.isEmpty() && queue.peek().nextTime <= t)
+		{
+			Cursor cursor = queue.poll();
+			lastSampleTime = Math.max(lastSampleTime, cursor.nextTime);
+			cursor.advance();
+			if (cursor.hasNext) queue.add(cursor);
+		}
+	}
+
+	/**
+	 * Is there no sample of any channel within max. gap around a time?
+	 */
+	private boolean isGap(long t)
+	{
+		for (Cursor cursor : cursors)
+		{
+			if (!cursor.isGap(t, maxGap)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * advance to next row
+	 *
+	 * @return true if there is a next row, false at end of samples
+	 */
+	public boolean next()
+	{
+		if (cursors == null)
+		{
+			start();
+		}
+
+		if (interval == 0)
+		{
+			// row at next sample time of any channel
+			if (queue.isEmpty()) return false;
+			time = queue.peek().nextTime;
+			consume(time);
+			return true;
+		}
+
+		// row at next multiple of interval
+		while (true)
+		{
+			long t = nextRowTime;
+			consume(t);
+			if (queue.isEmpty() && t > lastSampleTime) return false;
+			if (maxGap > 0 && isGap(t))
+			{
+				if (queue.isEmpty()) return false;
+				// skip rows without any valid value
+				nextRowTime = Math.max(t + interval, ceil(queue.peek().nextTime - maxGap));
+				continue;
+			}
+			time = t;
+			nextRowTime = t + interval;
+			return true;
+		}
+	}
+
+	/**
+	 * @return time of current row [ms]
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+
+	/**
+	 * get aligned value of a channel at current row
+	 *
+	 * @param channel index of channel
+	 * @return aligned value, NaN if there is no valid value
+	 */
+	public double getValue(int channel)
+	{
+		return cursors[channel].getValue(time, alignment, maxGap);
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+
+/**
+ * Ring buffer of time stamped entries
+ *
+ * Entries are kept in ascending time order within primitive arrays.
+ * The arrays grow on demand up to the capacity, then the oldest entries
+ * are overwritten. Subclasses keep their entry data in parallel arrays
+ * at the positions returned by append (@see #pos).
+ *
+ * @author erwin
+ */
+public abstract class TimeRingBuffer
+	implements Serializable
+{
+	private static final long serialVersionUID = -6431508310851462275L;
+
+	/** initial length of buffer arrays */
+	static final int INITIAL_LENGTH = 64;
+
+	/** max. number of entries */
+	private final int capacity;
+	/** entry times (ascending) */
+	long[] times;
+	/** buffer position of oldest entry */
+	int head = 0;
+	/** number of entries */
+	int size = 0;
+	/** total number of appended entries (sequence number of next entry) */
+	long appended = 0;
+	/** oldest entry was removed, so data is complete since time of head only */
+	private boolean truncated = false;
+
+	/**
+	 * Create ring buffer
+	 *
+	 * @param capacity max. number of entries
+	 */
+	TimeRingBuffer(int capacity)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		}
+		this.capacity = capacity;
+		this.times = new long[Math.min(capacity, INITIAL_LENGTH)];
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * buffer position of entry index
+	 *
+	 * @param index entry index (0 = oldest)
+	 * @return position within buffer arrays
+	 */
+	int pos(int index)
+	{
+		int result = head + index;
+		return result < times.length ? result : result - times.length;
+	}
+
+	void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	/**
+	 * append new entry
+	 * (oldest entry is removed if capacity is exhausted)
+	 *
+	 * @param time entry time
+	 * @return buffer position of new entry
+	 */
+	int append(long time)
+	{
+		if (size == times.length)
+		{
+			if (size < capacity)
+			{
+				int length = (int) Math.min(capacity, 2L * times.length);
+				times = grow(times, length);
+				growArrays(length);
+				head = 0;
+			}
+			else
+			{
+				removeOldest();
+			}
+		}
+		int pos = pos(size);
+		times[pos] = time;
+		size++;
+		appended++;
+		return pos;
+	}
+
+	/**
+	 * remove oldest entry
+	 */
+	void removeOldest()
+	{
+		head = pos(1);
+		size--;
+		truncated = true;
+	}
+
+	/**
+	 * replace all entry data arrays with grown copies
+	 * (@see #grow(Object, int))
+	 *
+	 * @param length new array length
+	 */
+	abstract void growArrays(int length);
+
+	/**
+	 * create grown copy of a buffer array with oldest entry at position 0
+	 *
+	 * @param array  buffer array
+	 * @param length new array length
+	 * @param <T>    array type
+	 * @return grown array
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T grow(T array, int length)
+	{
+		Object result = Array.newInstance(array.getClass().getComponentType(), length);
+		int first = Math.min(size, Array.getLength(array) - head);
+		System.arraycopy(array, head, result, 0, first);
+		System.arraycopy(array, 0, result, first, size - first);
+		return (T) result;
+	}
+
+	/**
+	 * remove all entries
+	 */
+	public synchronized void clear()
+	{
+		head = 0;
+		size = 0;
+		appended = 0;
+		truncated = false;
+	}
+
+	/**
+	 * get time of entry
+	 *
+	 * @param index entry index (0 = oldest)
+	 * @return entry time [ms]
+	 */
+	public synchronized long getTime(int index)
+	{
+		checkIndex(index);
+		return times[pos(index)];
+	}
+
+	/**
+	 * @return time of oldest entry, Long.MAX_VALUE if empty
+	 */
+	public synchronized long getMinTime()
+	{
+		return size > 0 ? times[head] : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @return time of latest entry, Long.MIN_VALUE if empty
+	 */
+	public synchronized long getMaxTime()
+	{
+		return size > 0 ? times[pos(size - 1)] : Long.MIN_VALUE;
+	}
+
+	/**
+	 * get start of time range which is completely contained
+	 *
+	 * @return time of oldest entry if older entries have been removed,
+	 *         Long.MIN_VALUE otherwise
+	 */
+	public synchronized long getCompleteSince()
+	{
+		return truncated ? times[head] : Long.MIN_VALUE;
+	}
+
+	/**
+	 * find first entry at or after a time
+	 *
+	 * @param time time to search for [ms]
+	 * @return index of first entry with time >= specified time,
+	 *         size() if there is none
+	 */
+	public synchronized int ceilingIndex(long time)
+	{
+		int low = 0;
+		int high = size;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (times[pos(mid)] < time)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * find last entry at or before a time
+	 *
+	 * @param time time to search for [ms]
+	 * @return index of last entry with time <= specified time,
+	 *         -1 if there is none
+	 */
+	public synchronized int floorIndex(long time)
+	{
+		int low = 0;
+		int high = size;
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (times[pos(mid)] <= time)
+			{
+				low = mid + 1;
+			}
+			else
+			{
+				high = mid;
+			}
+		}
+		return low - 1;
+	}
+}
@@ -0,0 +1,530 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+/**
+ * Bounded time series of numeric values
+ *
+ * Samples are kept in a ring buffer of primitive arrays, so appending
+ * is O(1). If the capacity is exhausted, or samples are older than the
+ * max. duration, the oldest samples are overwritten.
+ * Samples are kept in ascending time order, so ranges are found by
+ * binary search.
+ *
+ * Additionally samples are aggregated into rollup tiers of increasing
+ * bucket width as they arrive (@see TimeSeriesTier). Tiers keep much
+ * longer time ranges than the raw samples, so decimated views of long
+ * recordings are served from the finest tier which is small enough
+ * (@see #decimate).
+ *
+ * @author erwin
+ */
+public class TimeSeriesBuffer
+	extends TimeRingBuffer
+{
+	private static final long serialVersionUID = 4012760526470523349L;
+
+	/** default capacity [samples] */
+	public static final int DEFAULT_CAPACITY = 36000;
+	/** default max. duration [ms] (1 hour) */
+	public static final long DEFAULT_DURATION = 3600000;
+	/** default bucket widths of rollup tiers [ms] */
+	static final long[] DEFAULT_TIER_WIDTHS = {1000, 10000, 60000};
+	/** default capacity of rollup tiers [buckets] */
+	public static final int DEFAULT_TIER_CAPACITY = 3600;
+	/**
+	 * max. ratio of source points to requested points for decimation
+	 * (a coarser source is used for larger ratios)
+	 */
+	static final int OVERSAMPLING = 4;
+	/** number of samples which are copied at once by iterators */
+	static final int ITERATOR_CHUNK = 1024;
+
+	/** title of series */
+	private String title;
+	/** sample values */
+	private double[] values;
+	/** max. time span of kept samples [ms], 0 = unlimited */
+	private final long maxDuration;
+	/** rollup tiers with ascending bucket width */
+	private final TimeSeriesTier[] tiers;
+	/** value range of samples */
+	private double minValue = Double.NaN;
+	private double maxValue = Double.NaN;
+	/** value range needs to be re-calculated (extreme value was removed) */
+	private boolean rangeInvalid = false;
+
+	/**
+	 * Create time series with default capacity, duration and tiers
+	 *
+	 * @param title title of series
+	 */
+	public TimeSeriesBuffer(String title)
+	{
+		this(title, DEFAULT_CAPACITY, DEFAULT_DURATION);
+	}
+
+	/**
+	 * Create time series with default tiers
+	 *
+	 * @param title       title of series
+	 * @param capacity    max. number of samples
+	 * @param maxDuration max. time span of samples [ms], 0 = unlimited
+	 */
+	public TimeSeriesBuffer(String title, int capacity, long maxDuration)
+	{
+		this(title, capacity, maxDuration, DEFAULT_TIER_WIDTHS, DEFAULT_TIER_CAPACITY);
+	}
+
+	/**
+	 * Create time series
+	 *
+	 * @param title        title of series
+	 * @param capacity     max. number of samples
+	 * @param maxDuration  max. time span of samples [ms], 0 = unlimited
+	 * @param tierWidths   bucket widths of rollup tiers [ms] (ascending)
+	 * @param tierCapacity max. number of buckets per tier
+	 */
+	public TimeSeriesBuffer(String title, int capacity, long maxDuration,
+	                        long[] tierWidths, int tierCapacity)
+	{
+		super(capacity);
+		this.title = title;
+		this.values = new double[times.length];
+		this.maxDuration = maxDuration;
+		this.tiers = new TimeSeriesTier[tierWidths.length];
+		for (int i = 0; i < tierWidths.length; i++)
+		{
+			tiers[i] = new TimeSeriesTier(tierWidths[i], tierCapacity);
+		}
+	}
+
+	public String getTitle()
+	{
+		return title;
+	}
+
+	public void setTitle(String title)
+	{
+		this.title = title;
+	}
+
+	public long getMaxDuration()
+	{
+		return maxDuration;
+	}
+
+	/**
+	 * @return rollup tiers with ascending bucket width
+	 */
+	public TimeSeriesTier[] getTiers()
+	{
+		return tiers;
+	}
+
+	@Override
+	void growArrays(int length)
+	{
+		values = grow(values, length);
+	}
+
+	/**
+	 * append sample
+	 * (a sample older than the latest one is stored with the latest time)
+	 *
+	 * @param time  sample time [ms]
+	 * @param value sample value
+	 */
+	public synchronized void add(long time, double value)
+	{
+		if (size > 0)
+		{
+			time = Math.max(time, times[pos(size - 1)]);
+		}
+		// remove samples which are out of time range
+		while (size > 0 && maxDuration > 0 && times[head] < time - maxDuration)
+		{
+			removeOldest();
+		}
+
+		int pos = append(time);
+		values[pos] = value;
+
+		if (!rangeInvalid)
+		{
+			if (size == 1 || value < minValue) minValue = value;
+			if (size == 1 || value > maxValue) maxValue = value;
+		}
+
+		for (TimeSeriesTier tier : tiers)
+		{
+			tier.add(time, value);
+		}
+	}
+
+	@Override
+	void removeOldest()
+	{
+		double value = values[head];
+		if (value <= minValue || value >= maxValue)
+		{
+			rangeInvalid = true;
+		}
+		super.removeOldest();
+	}
+
+	/**
+	 * remove all samples
+	 */
+	@Override
+	public synchronized void clear()
+	{
+		super.clear();
+		minValue = Double.NaN;
+		maxValue = Double.NaN;
+		rangeInvalid = false;
+		for (TimeSeriesTier tier : tiers)
+		{
+			tier.clear();
+		}
+	}
+
+	/**
+	 * get value of sample
+	 *
+	 * @param index sample index (0 = oldest)
+	 * @return sample value
+	 */
+	public synchronized double getValue(int index)
+	{
+		checkIndex(index);
+		return values[pos(index)];
+	}
+
+	/**
+	 * @return start time of oldest data in samples or tiers, Long.MAX_VALUE if empty
+	 */
+	public synchronized long getStartTime()
+	{
+		long result = getMinTime();
+		for (TimeSeriesTier tier : tiers)
+		{
+			result = Math.min(result, tier.getMinTime());
+		}
+		return result;
+	}
+
+	/**
+	 * @return min. sample value, NaN if empty
+	 */
+	public synchronized double getMinValue()
+	{
+		updateRange();
+		return minValue;
+	}
+
+	/**
+	 * @return max. sample value, NaN if empty
+	 */
+	public synchronized double getMaxValue()
+	{
+		updateRange();
+		return maxValue;
+	}
+
+	/**
+	 * re-calculate value range after extreme values have been removed
+	 */
+	private void updateRange()
+	{
+		if (!rangeInvalid) return;
+
+		minValue = Double.NaN;
+		maxValue = Double.NaN;
+		for (int i = 0; i < size; i++)
+		{
+			double value = values[pos(i)];
+			if (i == 0 || value < minValue) minValue = value;
+			if (i == 0 || value > maxValue) maxValue = value;
+		}
+		rangeInvalid = false;
+	}
+
+	/**
+	 * get value which was valid at a time
+	 *
+	 * @param time time [ms]
+	 * @return value of last sample at or before time, NaN if there is none
+	 */
+	public synchronized double getValueAt(long time)
+	{
+		int index = floorIndex(time);
+		return index >= 0 ? values[pos(index)] : Double.NaN;
+	}
+
+	/**
+	 * copy samples of a time range
+	 *
+	 * @param from   start time [ms] (inclusive)
+	 * @param to     end time [ms] (inclusive)
+	 * @param times  destination of sample times, or null
+	 * @param values destination of sample values, or null
+	 * @return number of samples in range (copied up to length of destination)
+	 */
+	public synchronized int getRange(long from, long to, long[] times, double[] values)
+	{
+		int start = ceilingIndex(from);
+		int count = Math.max(0, floorIndex(to) + 1 - start);
+		for (int i = 0; i < count; i++)
+		{
+			int pos = pos(start + i);
+			if (times != null && i < times.length) times[i] = this.times[pos];
+			if (values != null && i < values.length) values[i] = this.values[pos];
+		}
+		return count;
+	}
+
+	/**
+	 * get iterator over samples which are currently in buffer
+	 *
+	 * Samples are copied in chunks, so the buffer is locked only briefly
+	 * and may be appended while iterating. Samples which are removed
+	 * before they are read are skipped. Samples which are appended after
+	 * creation of the iterator are not returned.
+	 *
+	 * @return sample iterator
+	 */
+	public synchronized SampleIterator iterator()
+	{
+		final long first = appended - size;
+		final long end = appended;
+		return new SampleIterator()
+		{
+			final long[] chunkTimes = new long[ITERATOR_CHUNK];
+			final double[] chunkValues = new double[ITERATOR_CHUNK];
+			/** sequence number of next sample to be copied */
+			long seq = first;
+			int chunkPos = 0;
+			int chunkSize = 0;
+
+			@Override
+			public boolean next()
+			{
+				if (++chunkPos >= chunkSize)
+				{
+					synchronized (TimeSeriesBuffer.this)
+					{
+						long oldest = appended - size;
+						seq = Math.max(seq, oldest);
+						chunkSize = (int) Math.max(0, Math.min(ITERATOR_CHUNK, Math.min(end, appended) - seq));
+						for (int i = 0; i < chunkSize; i++)
+						{
+							int pos = pos((int) (seq - oldest) + i);
+							chunkTimes[i] = times[pos];
+							chunkValues[i] = values[pos];
+						}
+						seq += chunkSize;
+					}
+					chunkPos = 0;
+				}
+				return chunkPos < chunkSize;
+			}
+
+			@Override
+			public long getTime()
+			{
+				return chunkTimes[chunkPos];
+			}
+
+			@Override
+			public double getValue()
+			{
+				return chunkValues[chunkPos];
+			}
+		};
+	}
+
+	/**
+	 * get decimated view of a time range
+	 *
+	 * The view is taken from the raw samples, or from the finest rollup
+	 * tier which completely contains the range with at most
+	 * OVERSAMPLING * maxPoints points. Each bucket of a tier provides
+	 * its min. and max. sample (min/max decimation).
+	 * If this source has more than maxPoints points, it is reduced by
+	 * Largest-Triangle-Three-Buckets, which keeps peaks and the visual
+	 * shape. So the effort is independent of the length of the range.
+	 *
+	 * @param from      start time [ms] (inclusive)
+	 * @param to        end time [ms] (inclusive)
+	 * @param maxPoints max. number of points (>= 3)
+	 * @param times     destination of point times (length >= maxPoints)
+	 * @param values    destination of point values (length >= maxPoints)
+	 * @return number of points
+	 */
+	public synchronized int decimate(long from, long to, int maxPoints,
+	                                 long[] times, double[] values)
+	{
+		if (maxPoints < 3)
+		{
+			throw new IllegalArgumentException("Invalid number of points: " + maxPoints);
+		}
+		int limit = OVERSAMPLING * maxPoints;
+
+		// find source
+		TimeSeriesTier source = null;
+		int first = ceilingIndex(from);
+		int count = floorIndex(to) + 1 - first;
+		if (count > limit || getCompleteSince() > from)
+		{
+			for (TimeSeriesTier tier : tiers)
+			{
+				source = tier;
+				// include bucket which contains start time
+				first = tier.ceilingIndex(from - Math.floorMod(from, tier.getWidth()));
+				count = tier.floorIndex(to) + 1 - first;
+				if (2 * count <= limit && tier.getCompleteSince() <= from) break;
+			}
+		}
+		count = Math.max(0, count);
+
+		// get source points
+		long[] srcTimes;
+		double[] srcValues;
+		if (source == null)
+		{
+			srcTimes = new long[count];
+			srcValues = new double[count];
+			for (int i = 0; i < count; i++)
+			{
+				int pos = pos(first + i);
+				srcTimes[i] = this.times[pos];
+				srcValues[i] = this.values[pos];
+			}
+		}
+		else
+		{
+			// min and max of each bucket in time order
+			srcTimes = new long[2 * count];
+			srcValues = new double[2 * count];
+			int points = 0;
+			for (int i = first; i < first + count; i++)
+			{
+				long minTime = source.getMinTime(i);
+				long maxTime = source.getMaxTime(i);
+				if (minTime <= maxTime)
+				{
+					srcTimes[points] = minTime;
+					srcValues[points++] = source.getMin(i);
+				}
+				if (maxTime != minTime)
+				{
+					srcTimes[points] = maxTime;
+					srcValues[points++] = source.getMax(i);
+				}
+				if (minTime > maxTime)
+				{
+					srcTimes[points] = minTime;
+					srcValues[points++] = source.getMin(i);
+				}
+			}
+			count = points;
+		}
+
+		if (count <= maxPoints)
+		{
+			System.arraycopy(srcTimes, 0, times, 0, count);
+			System.arraycopy(srcValues, 0, values, 0, count);
+			return count;
+		}
+		return lttb(srcTimes, srcValues, count, maxPoints, times, values);
+	}
+
+	/**
+	 * Largest-Triangle-Three-Buckets downsampling
+	 *
+	 * First and last point are kept. The points in between are split into
+	 * (threshold - 2) buckets, and from each bucket the point is selected
+	 * which forms the largest triangle with the previously selected point
+	 * and the average of the next bucket.
+	 *
+	 * @param srcTimes  source point times
+	 * @param srcValues source point values
+	 * @param count     number of source points (> threshold)
+	 * @param threshold number of points to select (>= 3)
+	 * @param times     destination of selected times
+	 * @param values    destination of selected values
+	 * @return number of selected points (= threshold)
+	 */
+	static int lttb(long[] srcTimes, double[] srcValues, int count, int threshold,
+	                long[] times, double[] values)
+	{
+		double every = (double) (count - 2) / (threshold - 2);
+		int selected = 0;
+		times[0] = srcTimes[0];
+		values[0] = srcValues[0];
+
+		for (int i = 0; i < threshold - 2; i++)
+		{
+			// average of next bucket
+			int avgStart = (int) ((i + 1) * every) + 1;
+			int avgEnd = Math.min((int) ((i + 2) * every) + 1, count);
+			double avgTime = 0;
+			double avgValue = 0;
+			for (int j = avgStart; j < avgEnd; j++)
+			{
+				avgTime += srcTimes[j];
+				avgValue += srcValues[j];
+			}
+			avgTime /= (avgEnd - avgStart);
+			avgValue /= (avgEnd - avgStart);
+
+			// point of current bucket with largest triangle
+			int rangeStart = (int) (i * every) + 1;
+			int rangeEnd = (int) ((i + 1) * every) + 1;
+			double selTime = srcTimes[selected];
+			double selValue = srcValues[selected];
+			double maxArea = -1;
+			int next = rangeStart;
+			for (int j = rangeStart; j < rangeEnd; j++)
+			{
+				double area = Math.abs((selTime - avgTime) * (srcValues[j] - selValue)
+				                       - (selTime - srcTimes[j]) * (avgValue - selValue));
+				if (area > maxArea)
+				{
+					maxArea = area;
+					next = j;
+				}
+			}
+			selected = next;
+			times[i + 1] = srcTimes[selected];
+			values[i + 1] = srcValues[selected];
+		}
+
+		times[threshold - 1] = srcTimes[count - 1];
+		values[threshold - 1] = srcValues[count - 1];
+		return threshold;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s (%d samples)", title, size());
+	}
+}
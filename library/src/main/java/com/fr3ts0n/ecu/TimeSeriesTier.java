@@ -0,0 +1,190 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu;
+
+/**
+ * Rollup tier of a time series
+ *
+ * Samples are aggregated into buckets of fixed width as they arrive.
+ * Each bucket keeps min, max (with their sample times), sum and count
+ * of its samples, and is identified by its start time (multiple of the width).
+ * The latest bucket is updated in place until a sample of a later
+ * bucket arrives.
+ *
+ * @author erwin
+ */
+public class TimeSeriesTier
+	extends TimeRingBuffer
+{
+	private static final long serialVersionUID = 2241356040155311527L;
+
+	/** bucket width [ms] */
+	private final long width;
+	/** bucket aggregates */
+	private double[] mins;
+	private long[] minTimes;
+	private double[] maxs;
+	private long[] maxTimes;
+	private double[] sums;
+	private int[] counts;
+
+	/**
+	 * Create rollup tier
+	 *
+	 * @param width    bucket width [ms]
+	 * @param capacity max. number of buckets
+	 */
+	public TimeSeriesTier(long width, int capacity)
+	{
+		super(capacity);
+		if (width <= 0)
+		{
+			throw new IllegalArgumentException("Invalid bucket width: " + width);
+		}
+		this.width = width;
+		mins = new double[times.length];
+		minTimes = new long[times.length];
+		maxs = new double[times.length];
+		maxTimes = new long[times.length];
+		sums = new double[times.length];
+		counts = new int[times.length];
+	}
+
+	public long getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	void growArrays(int length)
+	{
+		mins = grow(mins, length);
+		minTimes = grow(minTimes, length);
+		maxs = grow(maxs, length);
+		maxTimes = grow(maxTimes, length);
+		sums = grow(sums, length);
+		counts = grow(counts, length);
+	}
+
+	/**
+	 * add sample to corresponding bucket
+	 * (a sample older than the latest bucket is added to the latest bucket)
+	 *
+	 * @param time  sample time [ms]
+	 * @param value sample value
+	 */
+	public synchronized void add(long time, double value)
+	{
+		long start = time - Math.floorMod(time, width);
+		if (size > 0)
+		{
+			int pos = pos(size - 1);
+			if (start <= times[pos])
+			{
+				if (value < mins[pos])
+				{
+					mins[pos] = value;
+					minTimes[pos] = time;
+				}
+				if (value > maxs[pos])
+				{
+					maxs[pos] = value;
+					maxTimes[pos] = time;
+				}
+				sums[pos] += value;
+				counts[pos]++;
+				return;
+			}
+		}
+		int pos = append(start);
+		mins[pos] = value;
+		minTimes[pos] = time;
+		maxs[pos] = value;
+		maxTimes[pos] = time;
+		sums[pos] = value;
+		counts[pos] = 1;
+	}
+
+	/**
+	 * @param index bucket index (0 = oldest)
+	 * @return min. value of bucket
+	 */
+	public synchronized double getMin(int index)
+	{
+		checkIndex(index);
+		return mins[pos(index)];
+	}
+
+	/**
+	 * @param index bucket index (0 = oldest)
+	 * @return time of min. value of bucket
+	 */
+	public synchronized long getMinTime(int index)
+	{
+		checkIndex(index);
+		return minTimes[pos(index)];
+	}
+
+	/**
+	 * @param index bucket index (0 = oldest)
+	 * @return max. value of bucket
+	 */
+	public synchronized double getMax(int index)
+	{
+		checkIndex(index);
+		return maxs[pos(index)];
+	}
+
+	/**
+	 * @param index bucket index (0 = oldest)
+	 * @return time of max. value of bucket
+	 */
+	public synchronized long getMaxTime(int index)
+	{
+		checkIndex(index);
+		return maxTimes[pos(index)];
+	}
+
+	/**
+	 * @param index bucket index (0 = oldest)
+	 * @return average value of bucket
+	 */
+	public synchronized double getAverage(int index)
+	{
+		checkIndex(index);
+		int pos = pos(index);
+		return sums[pos] / counts[pos];
+	}
+
+	/**
+	 * @param index bucket index (0 = oldest)
+	 * @return number of samples in bucket
+	 */
+	public synchronized int getCount(int index)
+	{
+		checkIndex(index);
+		return counts[pos(index)];
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d ms (%d buckets)", width, size());
+	}
+}
@@ -0,0 +1,334 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvChangeEvent;
+import com.fr3ts0n.pvs.PvChangeListener;
+import com.fr3ts0n.pvs.PvList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregate statistics of a drive
+ *
+ * Statistics are kept incrementally for each data item (@see ChannelStatistics),
+ * either from the value changes of the data item process vars within a list
+ * (@see #start), or from samples which are added explicitly (e.g. by the
+ * DataRecorder). All values can be queried while the trip is running,
+ * and statistics can be saved with the recording.
+ *
+ * Derived trip values:
+ * - distance from vehicle speed
+ * - fuel used from engine fuel rate, or from air flow (MAF)
+ *
+ * @author erwin
+ */
+public class TripStatistics
+	implements PvChangeListener
+{
+	/** file extension of trip statistics */
+	public static final String EXTENSION = ".stats";
+	/** mnemonics of items for derived values */
+	public static final String MNEMONIC_SPEED = "vehicle_speed";
+	public static final String MNEMONIC_FUEL_RATE = "engine_fuel_rate";
+	public static final String MNEMONIC_AIRFLOW = "mass_airflow";
+	/** stoichiometric air/fuel ratio of gasoline */
+	static final double AIR_FUEL_RATIO = 14.7;
+	/** density of gasoline [g/l] */
+	static final double FUEL_DENSITY = 745;
+	/** mass of pound [g] */
+	static final double GRAMS_PER_POUND = 453.592;
+
+	/** file format */
+	static final int MAGIC = 0x414F5453; // "AOTS"
+	static final short VERSION = 1;
+
+	/** statistics by mnemonic */
+	private final Map<String, ChannelStatistics> channels = new LinkedHashMap<>();
+	/** time of first and last sample [us] */
+	private long startTime = Long.MAX_VALUE;
+	private long endTime = Long.MIN_VALUE;
+	/** observer of process vars, null if not started */
+	private PvListObserver observer = null;
+
+	/**
+	 * Start collecting statistics of all data items within a list
+	 *
+	 * @param pvs list of data item process vars
+	 */
+	public synchronized void start(PvList pvs)
+	{
+		if (observer != null) return;
+
+		observer = new PvListObserver(pvs, this);
+		observer.attach();
+	}
+
+	/**
+	 * Stop collecting statistics (statistics are kept)
+	 */
+	public synchronized void stop()
+	{
+		if (observer == null) return;
+
+		observer.detach();
+		observer = null;
+	}
+
+	@Override
+	public void pvChanged(PvChangeEvent event)
+	{
+		if (!(event.getValue() instanceof Number)
+		    || !EcuDataPv.FIELDS[EcuDataPv.FID_VALUE].equals(event.getKey()))
+		{
+			return;
+		}
+
+		EcuDataPv pv = (EcuDataPv) event.getSource();
+		add(String.valueOf(pv.get(EcuDataPv.FID_MNEMONIC)),
+		    pv.getUnits(),
+		    PvChangeEvent.toMicros(event.getNanoTime()),
+		    ((Number) event.getValue()).doubleValue());
+	}
+
+	/**
+	 * add sample of a data item
+	 *
+	 * @param mnemonic mnemonic of data item
+	 * @param units    units of data item
+	 * @param time     time of sample [us since epoch]
+	 * @param value    value of sample
+	 */
+	public void add(String mnemonic, String units, long time, double value)
+	{
+		ChannelStatistics stats;
+		synchronized (channels)
+		{
+			stats = channels.get(mnemonic);
+			if (stats == null)
+			{
+				stats = new ChannelStatistics(mnemonic, units);
+				channels.put(mnemonic, stats);
+			}
+			startTime = Math.min(startTime, time);
+			endTime = Math.max(endTime, time);
+		}
+		stats.add(time, value);
+	}
+
+	/**
+	 * clear all statistics
+	 */
+	public void reset()
+	{
+		synchronized (channels)
+		{
+			channels.clear();
+			startTime = Long.MAX_VALUE;
+			endTime = Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * get statistics of a data item
+	 *
+	 * @param mnemonic mnemonic of data item
+	 * @return statistics, null if there are no samples of this item
+	 */
+	public ChannelStatistics get(String mnemonic)
+	{
+		synchronized (channels)
+		{
+			return channels.get(mnemonic);
+		}
+	}
+
+	/**
+	 * @return statistics of all data items
+	 */
+	public List<ChannelStatistics> getChannels()
+	{
+		synchronized (channels)
+		{
+			return new ArrayList<>(channels.values());
+		}
+	}
+
+	/**
+	 * @return time of first sample [us since epoch], 0 if there are no samples
+	 */
+	public long getStartTime()
+	{
+		synchronized (channels)
+		{
+			return channels.isEmpty() ? 0 : startTime;
+		}
+	}
+
+	/**
+	 * @return time of last sample [us since epoch], 0 if there are no samples
+	 */
+	public long getEndTime()
+	{
+		synchronized (channels)
+		{
+			return channels.isEmpty() ? 0 : endTime;
+		}
+	}
+
+	/**
+	 * @return duration of trip [us]
+	 */
+	public long getDuration()
+	{
+		return getEndTime() - getStartTime();
+	}
+
+	/**
+	 * get driven distance
+	 *
+	 * @return distance in units of vehicle speed per hour (km or mi),
+	 *         NaN if vehicle speed is not available
+	 */
+	public double getDistance()
+	{
+		ChannelStatistics speed = get(MNEMONIC_SPEED);
+		return speed != null ? speed.getIntegral() / 3600 : Double.NaN;
+	}
+
+	/**
+	 * get used fuel
+	 * (from engine fuel rate, or estimated from air flow)
+	 * Engine fuel rate is converted to l/h in all conversion systems.
+	 *
+	 * @return used fuel [l], NaN if fuel rate and air flow are not available
+	 */
+	public double getFuelUsed()
+	{
+		ChannelStatistics fuelRate = get(MNEMONIC_FUEL_RATE);
+		if (fuelRate != null)
+		{
+			// l/h
+			return fuelRate.getIntegral() / 3600;
+		}
+
+		ChannelStatistics airflow = get(MNEMONIC_AIRFLOW);
+		if (airflow != null)
+		{
+			// g/s or lb/min
+			double airMass = "lb/min".equals(airflow.getUnits())
+			                 ? airflow.getIntegral() / 60 * GRAMS_PER_POUND
+			                 : airflow.getIntegral();
+			return airMass / AIR_FUEL_RATIO / FUEL_DENSITY;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * get statistics file of a recording
+	 *
+	 * @param recording base file of recording (@see DataRecorder#getFile)
+	 * @return statistics file
+	 */
+	public static File getFile(File recording)
+	{
+		String name = recording.getName();
+		int extPos = name.lastIndexOf('.');
+		if (extPos > 0) name = name.substring(0, extPos);
+		return new File(recording.getParentFile(), name + EXTENSION);
+	}
+
+	/**
+	 * save statistics
+	 *
+	 * @param file file to write to
+	 * @throws IOException on write error
+	 */
+	public void write(File file) throws IOException
+	{
+		List<ChannelStatistics> stats = getChannels();
+		try (DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeLong(getStartTime());
+			out.writeLong(getEndTime());
+			out.writeInt(stats.size());
+			for (ChannelStatistics curr : stats)
+			{
+				out.writeUTF(curr.getMnemonic());
+				out.writeUTF(String.valueOf(curr.getUnits()));
+				curr.write(out);
+			}
+		}
+	}
+
+	/**
+	 * load statistics which were saved with #write
+	 *
+	 * @param file file to read from
+	 * @return loaded statistics
+	 * @throws IOException on read error, or if file is not a valid statistics file
+	 */
+	public static TripStatistics read(File file) throws IOException
+	{
+		TripStatistics result = new TripStatistics();
+		try (DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC)
+			{
+				throw new IOException("Not a statistics file: " + file);
+			}
+			short version = in.readShort();
+			if (version > VERSION)
+			{
+				throw new IOException("Unsupported version " + version + ": " + file);
+			}
+			long start = in.readLong();
+			long end = in.readLong();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				ChannelStatistics stats = new ChannelStatistics(in.readUTF(), in.readUTF());
+				stats.read(in);
+				result.channels.put(stats.getMnemonic(), stats);
+			}
+			if (count > 0)
+			{
+				result.startTime = start;
+				result.endTime = end;
+			}
+		}
+		return result;
+	}
+}
@@ -19,6 +19,9 @@
 package com.fr3ts0n.ecu.gui.application;
 
 import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.PvSnapshot;
+import com.fr3ts0n.ecu.PvSnapshotReader;
+import com.fr3ts0n.ecu.PvSnapshotWriter;
 import com.fr3ts0n.pvs.ProcessVar;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
@@ -27,8 +30,11 @@ import com.fr3ts0n.pvs.PvList;
 import org.jfree.data.time.Second;
 import org.jfree.data.time.TimeSeries;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.logging.Level;
 
 import javax.swing.JPanel;
@@ -342,6 +348,50 @@ public class ObdDataPanel extends JPanel
 	}
 
 
+	/**
+	 * save measurement history of all PIDs to snapshot
+	 *
+	 * @param snapshot snapshot to write to
+	 * @param name     section name of history series
+	 * @throws IOException on write error
+	 */
+	public void saveHistory(PvSnapshotWriter snapshot, String name) throws IOException
+	{
+		for (Map.Entry<Object, TimeSeries> entry : selPids.entrySet())
+		{
+			if (!PvSnapshot.isSupported(entry.getKey())) continue;
+			TimeSeries ts = entry.getValue();
+			int count = ts.getItemCount();
+			long[] times = new long[count];
+			double[] values = new double[count];
+			for (int i = 0; i < count; i++)
+			{
+				Number value = ts.getValue(i);
+				times[i] = ts.getTimePeriod(i).getFirstMillisecond();
+				values[i] = value != null ? value.doubleValue() : Double.NaN;
+			}
+			snapshot.putSeries(name, entry.getKey(), times, values, count);
+		}
+	}
+
+	/**
+	 * load measurement history of one PID from snapshot
+	 *
+	 * @param series history series of snapshot
+	 */
+	public void loadHistory(PvSnapshotReader.Series series)
+	{
+		TimeSeries ts = selPids.get(series.key);
+		if (ts == null) return;
+		for (int i = 0; i < series.count; i++)
+		{
+			if (!Double.isNaN(series.values[i]))
+			{
+				ts.addOrUpdate(new Second(new Date(series.times[i])), series.values[i]);
+			}
+		}
+	}
+
 	private void addDataSeries(ProcessVar pv)
 	{
 		TimeSeries ts;
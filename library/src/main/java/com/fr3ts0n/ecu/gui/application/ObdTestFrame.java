@@ -22,8 +22,12 @@ import com.fr3ts0n.common.UTF8Bundle;
 import com.fr3ts0n.common.UTF8Control;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.EcuDataPv;
+import com.fr3ts0n.ecu.PvSnapshot;
+import com.fr3ts0n.ecu.PvSnapshotReader;
+import com.fr3ts0n.ecu.PvSnapshotWriter;
 import com.fr3ts0n.ecu.prot.obd.ElmProt;
 import com.fr3ts0n.ecu.prot.obd.ObdProt;
+import com.fr3ts0n.prot.SerialExt;
 import com.fr3ts0n.prot.gui.SerialHandler;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
@@ -33,12 +37,13 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.HashMap;
 
 import javax.swing.ImageIcon;
@@ -61,6 +66,11 @@ public class ObdTestFrame extends javax.swing.JFrame
 	/** Program version string */
 	private static final String version = "Version 0.9.7";
 	private static final String copyright = "Copyright (C) 2007-2009 Erwin Scheuch-Heilig";
+	/** snapshot sections of saved measurements */
+	private static final String PROP_PAGE = "page";
+	private static final String LIST_CAN_PVS = "CanPvs";
+	private static final String HISTORY_PID_PVS = "PidHistory";
+	private static final String HISTORY_CAN_PVS = "CanHistory";
 
     /** Initialize UTF8 resource bundle */
     static UTF8Bundle res = new UTF8Bundle(new UTF8Control());
@@ -394,17 +404,15 @@ public class ObdTestFrame extends javax.swing.JFrame
 				try
 				{
 
-					FileOutputStream out = new FileOutputStream(file);
-					ObjectOutputStream oOut = new ObjectOutputStream(out);
+					PvSnapshotWriter snapshot = new PvSnapshotWriter(new FileOutputStream(file));
         /* remember current measurement page for loading again */
-					Integer currPage = Integer.valueOf(tabMain.getSelectedIndex());
-					oOut.writeObject(currPage);
+					snapshot.putProperty(PROP_PAGE, tabMain.getSelectedIndex());
         /* save the data */
-					oOut.writeObject(ObdProt.PidPvs);
-					oOut.writeObject(ElmProt.canProt.CanPvs);
-					oOut.writeObject(panObdData.selPids);
-					oOut.writeObject(panCanData.selPids);
-					oOut.close();
+					snapshot.putList(PvSnapshot.LIST_PID_PVS, ObdProt.PidPvs);
+					snapshot.putList(LIST_CAN_PVS, ElmProt.canProt.CanPvs);
+					panObdData.saveHistory(snapshot, HISTORY_PID_PVS);
+					panCanData.saveHistory(snapshot, HISTORY_CAN_PVS);
+					snapshot.close();
 				} catch (IOException ex)
 				{
 					ex.printStackTrace();
@@ -416,7 +424,6 @@ public class ObdTestFrame extends javax.swing.JFrame
 		}
 	}//GEN-LAST:event_miSaveActionPerformed
 
-	@SuppressWarnings({"unchecked", "rawtypes"})
 	private void miLoadActionPerformed()//GEN-FIRST:event_miLoadActionPerformed
 	{//GEN-HEADEREND:event_miLoadActionPerformed
 		if (fChoose.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
@@ -424,22 +431,15 @@ public class ObdTestFrame extends javax.swing.JFrame
 			File file = fChoose.getSelectedFile();
 			try
 			{
-				FileInputStream in = new FileInputStream(file);
-				ObjectInputStream oIn = new ObjectInputStream(in);
-        /* ensure that measurement page is activated
-           to avoid deletion of loaded data afterwards */
-				Integer currPage = (Integer) oIn.readObject();
-				tabMain.setSelectedIndex(currPage);
-        /* read in the data */
-				ObdProt.PidPvs = (PvList) oIn.readObject();
-				ElmProt.canProt.CanPvs = (PvList) oIn.readObject();
-				// re-setup data connection
-				panObdData.setPidPvs(ObdProt.PidPvs);
-				panCanData.setPidPvs(ElmProt.canProt.CanPvs);
-				// read measurement history
-				panObdData.selPids = (HashMap) oIn.readObject();
-				panCanData.selPids = (HashMap) oIn.readObject();
-				oIn.close();
+				InputStream in = new BufferedInputStream(new FileInputStream(file));
+				if (PvSnapshotReader.isSnapshot(in))
+				{
+					loadSnapshot(in);
+				}
+				else
+				{
+					loadSerialized(in);
+				}
 			} catch (Exception ex)
 			{
 				ex.printStackTrace();
@@ -451,6 +451,80 @@ public class ObdTestFrame extends javax.swing.JFrame
 		}
 	}//GEN-LAST:event_miLoadActionPerformed
 
+	/**
+	 * load measurement data from versioned snapshot
+	 *
+	 * @param in stream to read snapshot from
+	 * @throws IOException on read error
+	 */
+	private void loadSnapshot(InputStream in) throws IOException
+	{
+		PvSnapshotReader snapshot = new PvSnapshotReader(in);
+		while (snapshot.next())
+		{
+			String name = snapshot.getName();
+			switch (snapshot.getType())
+			{
+				case PvSnapshot.SEC_PROPERTY:
+					/* ensure that measurement page is activated
+					   to avoid deletion of loaded data afterwards */
+					if (PROP_PAGE.equals(name))
+						tabMain.setSelectedIndex(((Number) snapshot.getProperty()).intValue());
+					break;
+
+				case PvSnapshot.SEC_LIST:
+					/* read in the data, and re-setup data connection */
+					if (PvSnapshot.LIST_PID_PVS.equals(name))
+					{
+						ObdProt.PidPvs = snapshot.getList();
+						panObdData.setPidPvs(ObdProt.PidPvs);
+					}
+					else if (LIST_CAN_PVS.equals(name))
+					{
+						ElmProt.canProt.CanPvs = snapshot.getList();
+						panCanData.setPidPvs(ElmProt.canProt.CanPvs);
+					}
+					break;
+
+				case PvSnapshot.SEC_SERIES:
+					/* read measurement history */
+					if (HISTORY_PID_PVS.equals(name))
+						panObdData.loadHistory(snapshot.getSeries());
+					else if (HISTORY_CAN_PVS.equals(name))
+						panCanData.loadHistory(snapshot.getSeries());
+					break;
+			}
+		}
+		snapshot.close();
+	}
+
+	/**
+	 * load measurement data from serialized java objects (files of previous versions)
+	 *
+	 * @param in stream to read objects from
+	 * @throws IOException on read error
+	 * @throws ClassNotFoundException if stream contains unknown classes
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void loadSerialized(InputStream in) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream oIn = new ObjectInputStream(in);
+        /* ensure that measurement page is activated
+           to avoid deletion of loaded data afterwards */
+		Integer currPage = (Integer) oIn.readObject();
+		tabMain.setSelectedIndex(currPage);
+        /* read in the data */
+		ObdProt.PidPvs = (PvList) oIn.readObject();
+		ElmProt.canProt.CanPvs = (PvList) oIn.readObject();
+		// re-setup data connection
+		panObdData.setPidPvs(ObdProt.PidPvs);
+		panCanData.setPidPvs(ElmProt.canProt.CanPvs);
+		// read measurement history
+		panObdData.selPids = (HashMap) oIn.readObject();
+		panCanData.selPids = (HashMap) oIn.readObject();
+		oIn.close();
+	}
+
 	private void cbProtocolActionPerformed()//GEN-FIRST:event_cbProtocolActionPerformed
 	{//GEN-HEADEREND:event_cbProtocolActionPerformed
 		prt.sendCommand(ElmProt.CMD.SETPROTAUTO, cbProtocol.getSelectedIndex());
@@ -544,12 +618,17 @@ public class ObdTestFrame extends javax.swing.JFrame
 	{
 		ObdTestFrame frm = new ObdTestFrame();
 		frm.setVisible(true);
-		// command line argument is the com port
+		// command line argument is the com port (and optional max. baud rate)
 		if (args.length > 0)
 		{
 			try
 			{
 				ser.setDeviceName(args[0]);
+				if (args.length > 1)
+				{
+					int baudRate = SerialExt.getCustomBaudrate();
+					prt.setBaudRateNegotiated(ser.negotiateBaudRate(Integer.parseInt(args[1])) != baudRate);
+				}
 			} catch (Exception ex)
 			{
 				JOptionPane.showMessageDialog(frm,
@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.log;
+
+import java.io.IOException;
+
+/**
+ * Reader of a bit stream from a byte array
+ * (bits are read MSB first)
+ *
+ * @author erwin
+ */
+final class BitReader
+{
+	private final byte[] data;
+	private int offset;
+	private final int end;
+	/** pending bits */
+	private long acc = 0;
+	private int accBits = 0;
+
+	/**
+	 * Create reader
+	 *
+	 * @param data   data buffer
+	 * @param offset start offset within buffer
+	 * @param length number of bytes to read
+	 */
+	BitReader(byte[] data, int offset, int length)
+	{
+		this.data = data;
+		this.offset = offset;
+		this.end = offset + length;
+	}
+
+	/**
+	 * read bits
+	 *
+	 * @param count number of bits [0..64]
+	 * @return bits read (lowest count bits)
+	 * @throws IOException if end of data is reached
+	 */
+	long read(int count) throws IOException
+	{
+		if (count > 32)
+		{
+			long high = read(count - 32);
+			return (high << 32) | read(32);
+		}
+		while (accBits < count)
+		{
+			if (offset >= end)
+			{
+				throw new IOException("Unexpected end of block data");
+			}
+			acc = (acc << 8) | (data[offset++] & 0xFF);
+			accBits += 8;
+		}
+		accBits -= count;
+		long result = (acc >>> accBits) & ((1L << count) - 1);
+		acc &= (1L << accBits) - 1;
+		return result;
+	}
+
+	/**
+	 * read single bit
+	 *
+	 * @return bit value
+	 * @throws IOException if end of data is reached
+	 */
+	boolean readBit() throws IOException
+	{
+		return read(1) != 0;
+	}
+}
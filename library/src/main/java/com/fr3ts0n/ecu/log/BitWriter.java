@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.log;
+
+import java.util.Arrays;
+
+/**
+ * Writer of a bit stream into a growing byte array
+ * (bits are written MSB first)
+ *
+ * @author erwin
+ */
+final class BitWriter
+{
+	private byte[] buffer = new byte[4096];
+	/** number of completed bytes */
+	private int length = 0;
+	/** pending bits (less than 8) */
+	private long acc = 0;
+	private int accBits = 0;
+
+	/**
+	 * write bits
+	 *
+	 * @param bits  bits to write (lowest count bits)
+	 * @param count number of bits [0..64]
+	 */
+	void write(long bits, int count)
+	{
+		if (count > 32)
+		{
+			write(bits >>> 32, count - 32);
+			count = 32;
+		}
+		if (count == 0) return;
+
+		acc = (acc << count) | (bits & ((1L << count) - 1));
+		accBits += count;
+		while (accBits >= 8)
+		{
+			accBits -= 8;
+			if (length == buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			}
+			buffer[length++] = (byte) (acc >>> accBits);
+		}
+		acc &= (1L << accBits) - 1;
+	}
+
+	/**
+	 * write single bit
+	 *
+	 * @param bit bit value
+	 */
+	void writeBit(boolean bit)
+	{
+		write(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * pad pending bits with zeros to complete the last byte
+	 */
+	void alignToByte()
+	{
+		if (accBits > 0)
+		{
+			write(0, 8 - accBits);
+		}
+	}
+
+	/**
+	 * @return number of completed bytes
+	 */
+	int length()
+	{
+		return length;
+	}
+
+	/**
+	 * @return buffer of completed bytes (valid up to length())
+	 */
+	byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	/**
+	 * discard all written bits
+	 */
+	void reset()
+	{
+		length = 0;
+		acc = 0;
+		accBits = 0;
+	}
+}
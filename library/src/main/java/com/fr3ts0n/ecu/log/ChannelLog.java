@@ -0,0 +1,354 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.log;
+
+import java.io.IOException;
+
+/**
+ * Compressed columnar log of numeric channels
+ *
+ * File layout:
+ * - header: MAGIC (int), VERSION (short)
+ * - records: type (byte), body length (int), body, CRC32 of type, length and body (int)
+ *   - REC_CHANNEL: id (short), mnemonic, label, units (UTF)
+ *   - REC_BLOCK: samples of one channel (@see #encodeTimes, #encodeValues)
+ *     channel (short), count (int), first time (long), last time (long),
+ *     min. value (double), max. value (double),
+ *     length of time section (int), time section, value section
+ *   - REC_INDEX (last record): number of channels (int), channel definitions,
+ *     number of blocks (int), per block: channel (short), count (int),
+ *     first time (long), last time (long), min. value (double),
+ *     max. value (double), record offset (long)
+ * - trailer: offset of index record (long), TRAILER_MAGIC (int)
+ *
+ * Files without index and trailer (e.g. writer was not closed) are read
+ * by scanning the records up to the first incomplete or corrupted record.
+ *
+ * Files of VERSION_1 are read as well. They have no min./max. value
+ * within block header and index entries, so their blocks are not
+ * limited by a value summary.
+ *
+ * The blocks of each channel are in ascending time order. So the block
+ * list serves as sparse time index, and together with the value summary
+ * of each block, queries only need to read the relevant blocks.
+ *
+ * Timestamps are encoded as delta-of-delta, values by XOR with the previous
+ * value (as described for Facebook's Gorilla time series database).
+ *
+ * @author erwin
+ */
+public final class ChannelLog
+{
+	/** file format identification */
+	static final int MAGIC = 0x414F424C; // "AOBL"
+	static final int VERSION = 2;
+	/** previous version without value summary of blocks */
+	static final int VERSION_1 = 1;
+	static final int TRAILER_MAGIC = 0x454E4421; // "END!"
+	/** size of file header [bytes] */
+	static final int HEADER_SIZE = 6;
+	/** size of file trailer [bytes] */
+	static final int TRAILER_SIZE = 12;
+
+	/** record types */
+	static final byte REC_CHANNEL = 1;
+	static final byte REC_BLOCK = 2;
+	static final byte REC_INDEX = 3;
+	/** size of record framing (type, length, CRC) [bytes] */
+	static final int RECORD_OVERHEAD = 9;
+	/** size of block header within block record body [bytes] */
+	static final int BLOCK_HEADER_SIZE = 42;
+	/** size of block header of VERSION_1 [bytes] */
+	static final int BLOCK_HEADER_SIZE_V1 = 26;
+
+	/** default max. number of samples per block */
+	public static final int BLOCK_SAMPLES = 1024;
+
+	private ChannelLog()
+	{
+	}
+
+	/**
+	 * Logged channel
+	 */
+	public static class Channel
+	{
+		public final int id;
+		public final String mnemonic;
+		public final String label;
+		public final String units;
+
+		public Channel(int id, String mnemonic, String label, String units)
+		{
+			this.id = id;
+			this.mnemonic = mnemonic;
+			this.label = label;
+			this.units = units;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%d:%s [%s]", id, mnemonic, units);
+		}
+	}
+
+	/**
+	 * Block of samples of one channel
+	 */
+	public static class Block
+	{
+		/** channel id */
+		public final int channel;
+		/** number of samples */
+		public final int count;
+		/** time of first and last sample */
+		public final long firstTime;
+		public final long lastTime;
+		/**
+		 * min. and max. value of samples (NaN values are ignored)
+		 * (-/+ infinity for logs of VERSION_1 without value summary)
+		 */
+		public final double min;
+		public final double max;
+		/** file offset of block record */
+		public final long offset;
+
+		Block(int channel, int count, long firstTime, long lastTime,
+		      double min, double max, long offset)
+		{
+			this.channel = channel;
+			this.count = count;
+			this.firstTime = firstTime;
+			this.lastTime = lastTime;
+			this.min = min;
+			this.max = max;
+			this.offset = offset;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("ch %d: %d samples %d..%d [%s..%s] @%d",
+			                     channel, count, firstTime, lastTime, min, max, offset);
+		}
+	}
+
+	/**
+	 * Filter of blocks by their summary
+	 */
+	public interface BlockFilter
+	{
+		/**
+		 * @param block block to check
+		 * @return true if block shall be read
+		 */
+		boolean accept(Block block);
+	}
+
+	/**
+	 * encode times of samples as delta-of-delta
+	 * (first time is stored in block header)
+	 *
+	 * Delta-of-delta D:
+	 * - D = 0: '0'
+	 * - D in [-63, 64]: '10' + 7 bits
+	 * - D in [-255, 256]: '110' + 9 bits
+	 * - D in [-2047, 2048]: '1110' + 12 bits
+	 * - D in int range: '11110' + 32 bits
+	 * - otherwise: '11111' + 64 bits
+	 *
+	 * @param times sample times
+	 * @param count number of samples
+	 * @param out   bit stream to write to
+	 */
+	static void encodeTimes(long[] times, int count, BitWriter out)
+	{
+		long prevDelta = 0;
+		for (int i = 1; i < count; i++)
+		{
+			long delta = times[i] - times[i - 1];
+			long dod = delta - prevDelta;
+			prevDelta = delta;
+
+			if (dod == 0)
+			{
+				out.write(0b0, 1);
+			}
+			else if (dod >= -63 && dod <= 64)
+			{
+				out.write(0b10, 2);
+				out.write(dod + 63, 7);
+			}
+			else if (dod >= -255 && dod <= 256)
+			{
+				out.write(0b110, 3);
+				out.write(dod + 255, 9);
+			}
+			else if (dod >= -2047 && dod <= 2048)
+			{
+				out.write(0b1110, 4);
+				out.write(dod + 2047, 12);
+			}
+			else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE)
+			{
+				out.write(0b11110, 5);
+				out.write(dod, 32);
+			}
+			else
+			{
+				out.write(0b11111, 5);
+				out.write(dod, 64);
+			}
+		}
+	}
+
+	/**
+	 * decode times of samples
+	 *
+	 * @param firstTime time of first sample
+	 * @param count     number of samples
+	 * @param in        bit stream to read from
+	 * @param times     destination of sample times
+	 * @throws IOException on invalid data
+	 */
+	static void decodeTimes(long firstTime, int count, BitReader in, long[] times)
+		throws IOException
+	{
+		long prevDelta = 0;
+		long time = firstTime;
+		times[0] = time;
+		for (int i = 1; i < count; i++)
+		{
+			long dod;
+			if (!in.readBit())
+			{
+				dod = 0;
+			}
+			else if (!in.readBit())
+			{
+				dod = in.read(7) - 63;
+			}
+			else if (!in.readBit())
+			{
+				dod = in.read(9) - 255;
+			}
+			else if (!in.readBit())
+			{
+				dod = in.read(12) - 2047;
+			}
+			else if (!in.readBit())
+			{
+				dod = (int) in.read(32);
+			}
+			else
+			{
+				dod = in.read(64);
+			}
+			prevDelta += dod;
+			time += prevDelta;
+			times[i] = time;
+		}
+	}
+
+	/**
+	 * encode values of samples by XOR with previous value
+	 *
+	 * - first value: 64 bits
+	 * - XOR = 0: '0'
+	 * - meaningful bits within previous window: '10' + meaningful bits
+	 * - otherwise: '11' + leading zeros (5 bits) + meaningful length - 1 (6 bits)
+	 *   + meaningful bits
+	 *
+	 * @param values sample values
+	 * @param count  number of samples
+	 * @param out    bit stream to write to
+	 */
+	static void encodeValues(double[] values, int count, BitWriter out)
+	{
+		long prev = Double.doubleToRawLongBits(values[0]);
+		out.write(prev, 64);
+		int prevLeading = -1;
+		int prevTrailing = 0;
+		for (int i = 1; i < count; i++)
+		{
+			long curr = Double.doubleToRawLongBits(values[i]);
+			long xor = curr ^ prev;
+			prev = curr;
+
+			if (xor == 0)
+			{
+				out.write(0b0, 1);
+				continue;
+			}
+			int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing)
+			{
+				out.write(0b10, 2);
+				out.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+			}
+			else
+			{
+				int meaningful = 64 - leading - trailing;
+				out.write(0b11, 2);
+				out.write(leading, 5);
+				out.write(meaningful - 1, 6);
+				out.write(xor >>> trailing, meaningful);
+				prevLeading = leading;
+				prevTrailing = trailing;
+			}
+		}
+	}
+
+	/**
+	 * decode values of samples
+	 *
+	 * @param count  number of samples
+	 * @param in     bit stream to read from
+	 * @param values destination of sample values
+	 * @throws IOException on invalid data
+	 */
+	static void decodeValues(int count, BitReader in, double[] values)
+		throws IOException
+	{
+		long prev = in.read(64);
+		values[0] = Double.longBitsToDouble(prev);
+		int prevLeading = 0;
+		int prevTrailing = 0;
+		for (int i = 1; i < count; i++)
+		{
+			if (in.readBit())
+			{
+				if (in.readBit())
+				{
+					prevLeading = (int) in.read(5);
+					int meaningful = (int) in.read(6) + 1;
+					prevTrailing = 64 - prevLeading - meaningful;
+					if (prevTrailing < 0)
+					{
+						throw new IOException("Invalid value encoding");
+					}
+				}
+				prev ^= in.read(64 - prevLeading - prevTrailing) << prevTrailing;
+			}
+			values[i] = Double.longBitsToDouble(prev);
+		}
+	}
+}
@@ -0,0 +1,526 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.log;
+
+import com.fr3ts0n.ecu.SampleIterator;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Reader of compressed channel logs (@see ChannelLog)
+ *
+ * Channels and blocks are taken from the index at the end of the file.
+ * If there is no valid index (writer was not closed), the records are
+ * scanned up to the first incomplete or corrupted record.
+ * Logs of the previous format version are read with an unlimited
+ * value summary of their blocks.
+ * Samples are decoded block by block on demand.
+ *
+ * Queries (@see #findBlocks, #iterator(int, long, long)) locate the blocks
+ * of a time range by binary search within the time ordered blocks of each
+ * channel, and only read and decode the matching blocks.
+ *
+ * @author erwin
+ */
+public class ChannelLogReader
+	implements Closeable
+{
+	/** the logger */
+	private static final Logger log = Logger.getLogger("channel.log");
+
+	private final RandomAccessFile file;
+	/** format version of file */
+	private int version;
+	/** channels by id */
+	private final Map<Integer, ChannelLog.Channel> channels = new LinkedHashMap<>();
+	/** blocks in file order */
+	private final List<ChannelLog.Block> blocks = new ArrayList<>();
+	/** blocks by channel id in time order */
+	private final Map<Integer, List<ChannelLog.Block>> channelBlocks = new HashMap<>();
+	/** index was available */
+	private boolean indexed = false;
+	/** file end of valid data */
+	private long validLength;
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * Open channel log
+	 *
+	 * @param file log file
+	 * @throws IOException if file can't be read or is not a channel log
+	 */
+	public ChannelLogReader(File file) throws IOException
+	{
+		this.file = new RandomAccessFile(file, "r");
+		try
+		{
+			if (this.file.length() < ChannelLog.HEADER_SIZE
+			    || this.file.readInt() != ChannelLog.MAGIC)
+			{
+				throw new IOException("Not a channel log: " + file);
+			}
+			version = this.file.readShort();
+			if (version != ChannelLog.VERSION && version != ChannelLog.VERSION_1)
+			{
+				throw new IOException("Unsupported channel log version " + version + ": " + file);
+			}
+			if (!readIndex())
+			{
+				scan();
+			}
+			for (ChannelLog.Block block : blocks)
+			{
+				List<ChannelLog.Block> list = channelBlocks.get(block.channel);
+				if (list == null)
+				{
+					list = new ArrayList<>();
+					channelBlocks.put(block.channel, list);
+				}
+				list.add(block);
+			}
+		} catch (IOException e)
+		{
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return channels by id
+	 */
+	public Map<Integer, ChannelLog.Channel> getChannels()
+	{
+		return Collections.unmodifiableMap(channels);
+	}
+
+	/**
+	 * @return all blocks in file order
+	 */
+	public List<ChannelLog.Block> getBlocks()
+	{
+		return Collections.unmodifiableList(blocks);
+	}
+
+	/**
+	 * @return format version of log
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return true if log was completely written (has valid index)
+	 */
+	public boolean isIndexed()
+	{
+		return indexed;
+	}
+
+	/**
+	 * @return length of valid data within file [bytes]
+	 */
+	public long getValidLength()
+	{
+		return validLength;
+	}
+
+	/**
+	 * get time of first sample in log
+	 *
+	 * @return time of first sample, Long.MAX_VALUE if log is empty
+	 */
+	public long getStartTime()
+	{
+		long result = Long.MAX_VALUE;
+		for (List<ChannelLog.Block> list : channelBlocks.values())
+		{
+			result = Math.min(result, list.get(0).firstTime);
+		}
+		return result;
+	}
+
+	/**
+	 * get time of last sample in log
+	 *
+	 * @return time of last sample, Long.MIN_VALUE if log is empty
+	 */
+	public long getEndTime()
+	{
+		long result = Long.MIN_VALUE;
+		for (List<ChannelLog.Block> list : channelBlocks.values())
+		{
+			result = Math.max(result, list.get(list.size() - 1).lastTime);
+		}
+		return result;
+	}
+
+	/**
+	 * find blocks of a channel which overlap a time range
+	 *
+	 * @param channel channel id
+	 * @param from    start time (inclusive)
+	 * @param to      end time (inclusive)
+	 * @return matching blocks in time order
+	 */
+	public List<ChannelLog.Block> findBlocks(int channel, long from, long to)
+	{
+		List<ChannelLog.Block> list = channelBlocks.get(channel);
+		if (list == null || from > to)
+		{
+			return Collections.emptyList();
+		}
+		// first block which ends at/after start of range
+		int lo = 0;
+		int hi = list.size();
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (list.get(mid).lastTime < from) lo = mid + 1;
+			else hi = mid;
+		}
+		int end = lo;
+		while (end < list.size() && list.get(end).firstTime <= to)
+		{
+			end++;
+		}
+		return list.subList(lo, end);
+	}
+
+	/**
+	 * find blocks by time range, channels and block summary
+	 *
+	 * @param from     start time (inclusive)
+	 * @param to       end time (inclusive)
+	 * @param channels ids of channels to search, null for all channels
+	 * @param filter   filter on block summary, null to accept all blocks
+	 * @return matching blocks in file order (to be read sequentially)
+	 */
+	public List<ChannelLog.Block> findBlocks(long from, long to,
+	                                         Collection<Integer> channels,
+	                                         ChannelLog.BlockFilter filter)
+	{
+		List<ChannelLog.Block> result = new ArrayList<>();
+		for (Integer channel : channels != null ? channels : channelBlocks.keySet())
+		{
+			for (ChannelLog.Block block : findBlocks(channel, from, to))
+			{
+				if (filter == null || filter.accept(block)) result.add(block);
+			}
+		}
+		Collections.sort(result, new Comparator<ChannelLog.Block>()
+		{
+			@Override
+			public int compare(ChannelLog.Block a, ChannelLog.Block b)
+			{
+				return Long.compare(a.offset, b.offset);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * read record with CRC check
+	 *
+	 * @param offset file offset of record
+	 * @param type   expected record type
+	 * @return record body
+	 * @throws IOException on read error, invalid type or CRC
+	 */
+	private byte[] readRecord(long offset, byte type) throws IOException
+	{
+		byte[] frame = new byte[5];
+		file.seek(offset);
+		file.readFully(frame);
+		int length = ((frame[1] & 0xFF) << 24) | ((frame[2] & 0xFF) << 16)
+		             | ((frame[3] & 0xFF) << 8) | (frame[4] & 0xFF);
+		if (frame[0] != type
+		    || length < 0
+		    || offset + ChannelLog.RECORD_OVERHEAD + length > file.length())
+		{
+			throw new IOException("Invalid record @" + offset);
+		}
+		byte[] body = new byte[length];
+		file.readFully(body);
+		int check = file.readInt();
+
+		crc.reset();
+		crc.update(frame, 0, frame.length);
+		crc.update(body, 0, length);
+		if (check != (int) crc.getValue())
+		{
+			throw new IOException("CRC error in record @" + offset);
+		}
+		return body;
+	}
+
+	private static ChannelLog.Channel readChannel(DataInputStream in) throws IOException
+	{
+		return new ChannelLog.Channel(in.readUnsignedShort(), in.readUTF(), in.readUTF(), in.readUTF());
+	}
+
+	/**
+	 * read block summary of block header or index entry
+	 *
+	 * @param in     stream to read from
+	 * @param offset file offset of block record, negative to read it from stream
+	 * @return block summary
+	 * @throws IOException on read error
+	 */
+	private ChannelLog.Block readBlockInfo(DataInputStream in, long offset) throws IOException
+	{
+		int channel = in.readUnsignedShort();
+		int count = in.readInt();
+		long firstTime = in.readLong();
+		long lastTime = in.readLong();
+		// blocks without value summary are accepted by any value range
+		double min = Double.NEGATIVE_INFINITY;
+		double max = Double.POSITIVE_INFINITY;
+		if (version != ChannelLog.VERSION_1)
+		{
+			min = in.readDouble();
+			max = in.readDouble();
+		}
+		return new ChannelLog.Block(channel, count, firstTime, lastTime, min, max,
+		                            offset < 0 ? in.readLong() : offset);
+	}
+
+	/**
+	 * @return size of block header within block record body [bytes]
+	 */
+	private int getBlockHeaderSize()
+	{
+		return version == ChannelLog.VERSION_1 ? ChannelLog.BLOCK_HEADER_SIZE_V1
+		                                       : ChannelLog.BLOCK_HEADER_SIZE;
+	}
+
+	/**
+	 * read index at end of file
+	 *
+	 * @return true if index was read
+	 */
+	private boolean readIndex()
+	{
+		try
+		{
+			long length = file.length();
+			if (length < ChannelLog.HEADER_SIZE + ChannelLog.TRAILER_SIZE) return false;
+			file.seek(length - ChannelLog.TRAILER_SIZE);
+			long indexOffset = file.readLong();
+			if (file.readInt() != ChannelLog.TRAILER_MAGIC
+			    || indexOffset < ChannelLog.HEADER_SIZE
+			    || indexOffset >= length)
+			{
+				return false;
+			}
+
+			DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(readRecord(indexOffset, ChannelLog.REC_INDEX)));
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				ChannelLog.Channel channel = readChannel(in);
+				channels.put(channel.id, channel);
+			}
+			for (int i = in.readInt(); i > 0; i--)
+			{
+				blocks.add(readBlockInfo(in, -1));
+			}
+			indexed = true;
+			validLength = length;
+			return true;
+		} catch (IOException e)
+		{
+			log.warning("Invalid index: " + e.getMessage());
+			channels.clear();
+			blocks.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * scan records up to first incomplete or corrupted record
+	 */
+	private void scan()
+	{
+		long offset = ChannelLog.HEADER_SIZE;
+		try
+		{
+			while (offset + ChannelLog.RECORD_OVERHEAD <= file.length())
+			{
+				file.seek(offset);
+				byte type = file.readByte();
+				byte[] body = readRecord(offset, type);
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+				if (type == ChannelLog.REC_CHANNEL)
+				{
+					ChannelLog.Channel channel = readChannel(in);
+					channels.put(channel.id, channel);
+				}
+				else if (type == ChannelLog.REC_BLOCK)
+				{
+					blocks.add(readBlockInfo(in, offset));
+				}
+				else
+				{
+					break;
+				}
+				offset += ChannelLog.RECORD_OVERHEAD + body.length;
+			}
+		} catch (IOException e)
+		{
+			log.warning(String.format("Log truncated @%d: %s", offset, e.getMessage()));
+		}
+		validLength = offset;
+	}
+
+	/**
+	 * read and decode samples of a block
+	 *
+	 * @param block  block to read
+	 * @param times  destination of sample times (length >= block.count)
+	 * @param values destination of sample values (length >= block.count), or null
+	 * @return number of samples
+	 * @throws IOException on read error or corrupted block
+	 */
+	public synchronized int readBlock(ChannelLog.Block block, long[] times, double[] values)
+		throws IOException
+	{
+		byte[] body = readRecord(block.offset, ChannelLog.REC_BLOCK);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		int dataStart = getBlockHeaderSize();
+		in.skipBytes(dataStart - 4);
+		int timeBytes = in.readInt();
+		if (timeBytes < 0 || dataStart + timeBytes > body.length)
+		{
+			throw new IOException("Invalid block @" + block.offset);
+		}
+		ChannelLog.decodeTimes(block.firstTime, block.count,
+		                       new BitReader(body, dataStart, timeBytes), times);
+		if (values != null)
+		{
+			ChannelLog.decodeValues(block.count,
+			                        new BitReader(body, dataStart + timeBytes,
+			                                      body.length - dataStart - timeBytes),
+			                        values);
+		}
+		return block.count;
+	}
+
+	/**
+	 * get iterator over all samples of a channel
+	 * (blocks are decoded when they are reached)
+	 *
+	 * @param channel channel id
+	 * @return sample iterator, which ends at first corrupted block
+	 */
+	public SampleIterator iterator(int channel)
+	{
+		return iterator(channel, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * get iterator over samples of a channel within a time range
+	 * (only blocks which overlap the range are read)
+	 *
+	 * @param channel channel id
+	 * @param from    start time (inclusive)
+	 * @param to      end time (inclusive)
+	 * @return sample iterator, which ends at first corrupted block
+	 */
+	public SampleIterator iterator(int channel, final long from, final long to)
+	{
+		final List<ChannelLog.Block> rangeBlocks = findBlocks(channel, from, to);
+		return new SampleIterator()
+		{
+			long[] times = new long[0];
+			double[] values = new double[0];
+			int nextBlock = 0;
+			int pos = 0;
+			int count = 0;
+
+			@Override
+			public boolean next()
+			{
+				do
+				{
+					while (++pos >= count)
+					{
+						if (nextBlock >= rangeBlocks.size()) return false;
+						ChannelLog.Block block = rangeBlocks.get(nextBlock++);
+						if (times.length < block.count)
+						{
+							times = new long[block.count];
+							values = new double[block.count];
+						}
+						try
+						{
+							count = readBlock(block, times, values);
+						} catch (IOException e)
+						{
+							log.warning(e.getMessage());
+							nextBlock = rangeBlocks.size();
+							count = 0;
+						}
+						pos = -1;
+					}
+					if (times[pos] > to)
+					{
+						nextBlock = rangeBlocks.size();
+						count = 0;
+						return false;
+					}
+				} while (times[pos] < from);
+				return true;
+			}
+
+			@Override
+			public long getTime()
+			{
+				return times[pos];
+			}
+
+			@Override
+			public double getValue()
+			{
+				return values[pos];
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
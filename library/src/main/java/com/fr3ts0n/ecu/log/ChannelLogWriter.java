@@ -0,0 +1,349 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writer of compressed channel logs (@see ChannelLog)
+ *
+ * Samples are collected per channel, and written as compressed block
+ * when the block is full, or when the writer is flushed or closed.
+ * Samples of each channel have to be added in ascending time order.
+ *
+ * @author erwin
+ */
+public class ChannelLogWriter
+	implements Closeable
+{
+	/**
+	 * samples of a channel which are not written yet
+	 */
+	private static class PendingBlock
+	{
+		final long[] times;
+		final double[] values;
+		int count = 0;
+
+		PendingBlock(int size)
+		{
+			times = new long[size];
+			values = new double[size];
+		}
+	}
+
+	/** output stream */
+	private final OutputStream out;
+	/** max. number of samples per block */
+	private final int blockSamples;
+	/** defined channels by id */
+	private final Map<Integer, ChannelLog.Channel> channels = new LinkedHashMap<>();
+	/** pending samples by channel id */
+	private final Map<Integer, PendingBlock> pending = new LinkedHashMap<>();
+	/** written blocks */
+	private final List<ChannelLog.Block> blocks = new ArrayList<>();
+	/** reused encoding buffers */
+	private final BitWriter bits = new BitWriter();
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+	private final CRC32 crc = new CRC32();
+	/** number of bytes written */
+	private long position = 0;
+	/** number of samples added */
+	private long numSamples = 0;
+	private boolean closed = false;
+
+	/**
+	 * Create log writer with default block size
+	 *
+	 * @param out output stream to write to
+	 * @throws IOException on write error
+	 */
+	public ChannelLogWriter(OutputStream out) throws IOException
+	{
+		this(out, ChannelLog.BLOCK_SAMPLES);
+	}
+
+	/**
+	 * Create log writer
+	 *
+	 * @param out          output stream to write to
+	 * @param blockSamples max. number of samples per block
+	 * @throws IOException on write error
+	 */
+	public ChannelLogWriter(OutputStream out, int blockSamples) throws IOException
+	{
+		if (blockSamples <= 0)
+		{
+			throw new IllegalArgumentException("Invalid block size: " + blockSamples);
+		}
+		this.out = out;
+		this.blockSamples = blockSamples;
+		DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(ChannelLog.MAGIC);
+		header.writeShort(ChannelLog.VERSION);
+		position = ChannelLog.HEADER_SIZE;
+	}
+
+	/**
+	 * Create writer which continues a log after its last valid record
+	 * (to write the index of a recovered log)
+	 *
+	 * @param out      output stream which appends to the log
+	 * @param position length of valid log data
+	 * @param channels defined channels
+	 * @param blocks   written blocks
+	 */
+	ChannelLogWriter(OutputStream out, long position,
+	                 Collection<ChannelLog.Channel> channels,
+	                 List<ChannelLog.Block> blocks)
+	{
+		this.out = out;
+		this.blockSamples = ChannelLog.BLOCK_SAMPLES;
+		this.position = position;
+		for (ChannelLog.Channel channel : channels)
+		{
+			this.channels.put(channel.id, channel);
+			pending.put(channel.id, new PendingBlock(blockSamples));
+		}
+		this.blocks.addAll(blocks);
+	}
+
+	/**
+	 * @return number of bytes written so far
+	 */
+	public long getPosition()
+	{
+		return position;
+	}
+
+	/**
+	 * @return number of samples added so far
+	 */
+	public long getNumSamples()
+	{
+		return numSamples;
+	}
+
+	/**
+	 * define channel
+	 *
+	 * @param id       channel id [0..65535]
+	 * @param mnemonic mnemonic of channel
+	 * @param label    label of channel
+	 * @param units    units of channel
+	 * @throws IOException on write error, or if channel id is already defined
+	 */
+	public void addChannel(int id, String mnemonic, String label, String units)
+		throws IOException
+	{
+		if (channels.containsKey(id))
+		{
+			throw new IOException("Channel already defined: " + id);
+		}
+		ChannelLog.Channel channel = new ChannelLog.Channel(id, mnemonic, label, units);
+		channels.put(id, channel);
+		pending.put(id, new PendingBlock(blockSamples));
+
+		recordBytes.reset();
+		writeChannel(channel);
+		writeRecord(ChannelLog.REC_CHANNEL);
+	}
+
+	/**
+	 * add sample of a channel
+	 *
+	 * @param channel channel id
+	 * @param time    sample time
+	 * @param value   sample value
+	 * @throws IOException on write error, or if channel is not defined
+	 */
+	public void add(int channel, long time, double value) throws IOException
+	{
+		PendingBlock block = pending.get(channel);
+		if (block == null)
+		{
+			throw new IOException("Channel not defined: " + channel);
+		}
+		block.times[block.count] = time;
+		block.values[block.count] = value;
+		block.count++;
+		numSamples++;
+		if (block.count == block.times.length)
+		{
+			writeBlock(channel, block);
+		}
+	}
+
+	/**
+	 * write pending samples of all channels as blocks, and flush output
+	 *
+	 * @throws IOException on write error
+	 */
+	public void flush() throws IOException
+	{
+		for (Map.Entry<Integer, PendingBlock> entry : pending.entrySet())
+		{
+			if (entry.getValue().count > 0)
+			{
+				writeBlock(entry.getKey(), entry.getValue());
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * write pending samples, index and trailer, and close output
+	 *
+	 * @throws IOException on write error
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed) return;
+		closed = true;
+		try
+		{
+			flush();
+
+			long indexOffset = position;
+			recordBytes.reset();
+			record.writeInt(channels.size());
+			for (ChannelLog.Channel channel : channels.values())
+			{
+				writeChannel(channel);
+			}
+			record.writeInt(blocks.size());
+			for (ChannelLog.Block block : blocks)
+			{
+				record.writeShort(block.channel);
+				record.writeInt(block.count);
+				record.writeLong(block.firstTime);
+				record.writeLong(block.lastTime);
+				record.writeDouble(block.min);
+				record.writeDouble(block.max);
+				record.writeLong(block.offset);
+			}
+			writeRecord(ChannelLog.REC_INDEX);
+
+			DataOutputStream trailer = new DataOutputStream(out);
+			trailer.writeLong(indexOffset);
+			trailer.writeInt(ChannelLog.TRAILER_MAGIC);
+			position += ChannelLog.TRAILER_SIZE;
+			trailer.flush();
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * write channel definition into record buffer
+	 */
+	private void writeChannel(ChannelLog.Channel channel) throws IOException
+	{
+		record.writeShort(channel.id);
+		record.writeUTF(channel.mnemonic);
+		record.writeUTF(channel.label);
+		record.writeUTF(channel.units);
+	}
+
+	/**
+	 * write samples of channel as compressed block
+	 *
+	 * @param channel channel id
+	 * @param block   pending samples (are cleared)
+	 * @throws IOException on write error
+	 */
+	private void writeBlock(int channel, PendingBlock block) throws IOException
+	{
+		int count = block.count;
+		block.count = 0;
+		// value summary
+		double min = Double.NaN;
+		double max = Double.NaN;
+		for (int i = 0; i < count; i++)
+		{
+			double value = block.values[i];
+			if (value < min || Double.isNaN(min)) min = value;
+			if (value > max || Double.isNaN(max)) max = value;
+		}
+		ChannelLog.Block info = new ChannelLog.Block(channel, count,
+		                                             block.times[0], block.times[count - 1],
+		                                             min, max, position);
+		recordBytes.reset();
+		record.writeShort(channel);
+		record.writeInt(count);
+		record.writeLong(info.firstTime);
+		record.writeLong(info.lastTime);
+		record.writeDouble(info.min);
+		record.writeDouble(info.max);
+
+		bits.reset();
+		ChannelLog.encodeTimes(block.times, count, bits);
+		bits.alignToByte();
+		int timeBytes = bits.length();
+		ChannelLog.encodeValues(block.values, count, bits);
+		bits.alignToByte();
+
+		record.writeInt(timeBytes);
+		record.write(bits.getBuffer(), 0, bits.length());
+		writeRecord(ChannelLog.REC_BLOCK);
+		blocks.add(info);
+	}
+
+	/**
+	 * write record from record buffer with framing and CRC
+	 *
+	 * @param type record type
+	 * @throws IOException on write error
+	 */
+	private void writeRecord(byte type) throws IOException
+	{
+		int length = recordBytes.size();
+		byte[] frame = new byte[5];
+		frame[0] = type;
+		frame[1] = (byte) (length >>> 24);
+		frame[2] = (byte) (length >>> 16);
+		frame[3] = (byte) (length >>> 8);
+		frame[4] = (byte) length;
+
+		crc.reset();
+		crc.update(frame, 0, frame.length);
+		byte[] body = recordBytes.toByteArray();
+		crc.update(body, 0, length);
+		int check = (int) crc.getValue();
+
+		out.write(frame);
+		out.write(body, 0, length);
+		out.write(new byte[]{(byte) (check >>> 24), (byte) (check >>> 16),
+		                     (byte) (check >>> 8), (byte) check});
+		position += ChannelLog.RECORD_OVERHEAD + length;
+	}
+}
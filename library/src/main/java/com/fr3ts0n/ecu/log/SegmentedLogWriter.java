@@ -0,0 +1,408 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+
+package com.fr3ts0n.ecu.log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Crash safe writer of channel logs, split into segment files
+ *
+ * Each segment is a complete channel log (@see ChannelLog), named after
+ * the base file with a segment number (e.g. trip-0000.rec, trip-0001.rec).
+ * A new segment is started when the current segment exceeds the max. size
+ * or time span, so a recording which was not closed loses at most the
+ * unsynced data of its last segment, and recovery only scans this segment.
+ *
+ * Every block record carries a CRC, which acts as commit marker.
+ * Pending samples are written and synced to the storage device at the
+ * configured sync interval (not per sample), when a segment is completed,
+ * and on close.
+ * Segments of a writer which was killed are repaired by #recover, which
+ * truncates the segment after the last valid block and writes the index.
+ *
+ * @author erwin
+ */
+public class SegmentedLogWriter
+	implements Closeable
+{
+	/** default max. size of a segment [bytes] */
+	public static final long DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	/** default interval of syncing data to storage [ms] */
+	public static final long DEFAULT_SYNC_INTERVAL = 5000;
+	/** write buffer size [bytes] */
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/** the logger */
+	private static final Logger log = Logger.getLogger("channel.log");
+
+	/**
+	 * Buffered output to a file, which is synced to storage on request and on close
+	 */
+	private static class SyncStream
+		extends BufferedOutputStream
+	{
+		private final FileOutputStream file;
+
+		SyncStream(FileOutputStream file)
+		{
+			super(file, BUFFER_SIZE);
+			this.file = file;
+		}
+
+		void sync() throws IOException
+		{
+			flush();
+			file.getFD().sync();
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				sync();
+			} finally
+			{
+				super.close();
+			}
+		}
+	}
+
+	/** base file of segment names */
+	private final File base;
+	/** max. number of samples per block */
+	private final int blockSamples;
+	/** defined channels by id (defined again in each segment) */
+	private final Map<Integer, ChannelLog.Channel> channels = new LinkedHashMap<>();
+	/** written segment files */
+	private final List<File> segments = new ArrayList<>();
+	/** max. size of a segment [bytes] */
+	private long maxSegmentSize = DEFAULT_SEGMENT_SIZE;
+	/** max. time span of a segment [sample time units] */
+	private long maxSegmentDuration = Long.MAX_VALUE;
+	/** interval of syncing data to storage [ms] */
+	private long syncInterval = DEFAULT_SYNC_INTERVAL;
+	/** current segment */
+	private ChannelLogWriter writer;
+	private SyncStream stream;
+	/** time of first sample in current segment */
+	private long segmentStart;
+	/** number of samples in current segment */
+	private long segmentSamples;
+	/** number of samples of all segments */
+	private long numSamples = 0;
+	/** time of last sync [ms] */
+	private long lastSync;
+	private boolean closed = false;
+
+	/**
+	 * Create segmented log with default block size,
+	 * and start first segment
+	 *
+	 * @param base base file of segment names
+	 * @throws IOException if segment can't be created
+	 */
+	public SegmentedLogWriter(File base) throws IOException
+	{
+		this(base, ChannelLog.BLOCK_SAMPLES);
+	}
+
+	/**
+	 * Create segmented log, and start first segment
+	 *
+	 * @param base         base file of segment names
+	 * @param blockSamples max. number of samples per block
+	 * @throws IOException if segment can't be created
+	 */
+	public SegmentedLogWriter(File base, int blockSamples) throws IOException
+	{
+		this.base = base;
+		this.blockSamples = blockSamples;
+		openSegment();
+	}
+
+	/**
+	 * set max. size of a segment
+	 * (checked when a sample is added, so a segment may exceed this
+	 * size by the pending blocks of all channels)
+	 *
+	 * @param maxSegmentSize max. size of a segment [bytes]
+	 */
+	public void setMaxSegmentSize(long maxSegmentSize)
+	{
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/**
+	 * set max. time span of a segment
+	 *
+	 * @param maxSegmentDuration max. time between first and last sample
+	 *                           of a segment [sample time units]
+	 */
+	public void setMaxSegmentDuration(long maxSegmentDuration)
+	{
+		this.maxSegmentDuration = maxSegmentDuration;
+	}
+
+	/**
+	 * set interval of syncing data to storage
+	 * (at most the samples of this interval are lost on a crash)
+	 *
+	 * @param syncInterval sync interval [ms]
+	 */
+	public void setSyncInterval(long syncInterval)
+	{
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * @return segment files written so far (incl. current segment)
+	 */
+	public List<File> getSegments()
+	{
+		return Collections.unmodifiableList(segments);
+	}
+
+	/**
+	 * @return number of samples added so far
+	 */
+	public long getNumSamples()
+	{
+		return numSamples;
+	}
+
+	/**
+	 * get file of a segment
+	 *
+	 * @param base   base file of segment names
+	 * @param number segment number
+	 * @return segment file (base name with segment number before extension)
+	 */
+	public static File getSegmentFile(File base, int number)
+	{
+		String name = base.getName();
+		int ext = name.lastIndexOf('.');
+		if (ext < 0) ext = name.length();
+		return new File(base.getParentFile(),
+		                String.format("%s-%04d%s", name.substring(0, ext), number, name.substring(ext)));
+	}
+
+	/**
+	 * define channel
+	 *
+	 * @param id       channel id [0..65535]
+	 * @param mnemonic mnemonic of channel
+	 * @param label    label of channel
+	 * @param units    units of channel
+	 * @throws IOException on write error, or if channel id is already defined
+	 */
+	public void addChannel(int id, String mnemonic, String label, String units)
+		throws IOException
+	{
+		writer.addChannel(id, mnemonic, label, units);
+		channels.put(id, new ChannelLog.Channel(id, mnemonic, label, units));
+	}
+
+	/**
+	 * add sample of a channel
+	 * (starts a new segment if current segment is complete)
+	 *
+	 * @param channel channel id
+	 * @param time    sample time
+	 * @param value   sample value
+	 * @throws IOException on write error, or if channel is not defined
+	 */
+	public void add(int channel, long time, double value) throws IOException
+	{
+		if (segmentSamples > 0
+		    && (writer.getPosition() >= maxSegmentSize
+		        || time - segmentStart >= maxSegmentDuration))
+		{
+			writer.close();
+			openSegment();
+		}
+		if (segmentSamples == 0) segmentStart = time;
+		writer.add(channel, time, value);
+		segmentSamples++;
+		numSamples++;
+		syncIfDue();
+	}
+
+	/**
+	 * write pending samples and sync them to storage if sync interval has elapsed
+	 *
+	 * @throws IOException on write error
+	 */
+	public void syncIfDue() throws IOException
+	{
+		if (System.currentTimeMillis() - lastSync >= syncInterval)
+		{
+			sync();
+		}
+	}
+
+	/**
+	 * write pending samples and sync them to storage
+	 *
+	 * @throws IOException on write error
+	 */
+	public void sync() throws IOException
+	{
+		writer.flush();
+		stream.sync();
+		lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * complete current segment
+	 *
+	 * @throws IOException on write error
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed) return;
+		closed = true;
+		writer.close();
+	}
+
+	/**
+	 * start new segment, and define all known channels
+	 *
+	 * @throws IOException if segment can't be created
+	 */
+	private void openSegment() throws IOException
+	{
+		File file = getSegmentFile(base, segments.size());
+		stream = new SyncStream(new FileOutputStream(file));
+		writer = new ChannelLogWriter(stream, blockSamples);
+		segments.add(file);
+		segmentSamples = 0;
+		lastSync = System.currentTimeMillis();
+		for (ChannelLog.Channel channel : channels.values())
+		{
+			writer.addChannel(channel.id, channel.mnemonic, channel.label, channel.units);
+		}
+	}
+
+	/**
+	 * list existing segments of a segmented log
+	 *
+	 * @param base base file of segment names
+	 * @return segment files in segment order
+	 */
+	public static List<File> listSegments(File base)
+	{
+		List<File> result = new ArrayList<>();
+		for (int i = 0; ; i++)
+		{
+			File segment = getSegmentFile(base, i);
+			if (!segment.exists()) break;
+			result.add(segment);
+		}
+		return result;
+	}
+
+	/**
+	 * recover log which was not closed
+	 * (log is truncated after the last valid record, and index is written)
+	 *
+	 * @param file log file (segment) to recover
+	 * @return true if log has been repaired or removed,
+	 *         false if log was complete
+	 * @throws IOException on read/write error, or if file is not a channel log
+	 */
+	public static boolean recover(File file) throws IOException
+	{
+		// killed before header was written
+		if (file.length() < ChannelLog.HEADER_SIZE)
+		{
+			if (!file.delete())
+			{
+				throw new IOException("Can't remove incomplete log: " + file);
+			}
+			log.info("Incomplete log removed: " + file);
+			return true;
+		}
+
+		List<ChannelLog.Channel> channels;
+		List<ChannelLog.Block> blocks;
+		long validLength;
+		try (ChannelLogReader reader = new ChannelLogReader(file))
+		{
+			if (reader.isIndexed()) return false;
+			// index of current version can't be appended to logs of previous
+			// versions, they are read by scanning the records
+			if (reader.getVersion() != ChannelLog.VERSION) return false;
+			channels = new ArrayList<>(reader.getChannels().values());
+			blocks = reader.getBlocks();
+			validLength = reader.getValidLength();
+		}
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(validLength);
+		}
+		new ChannelLogWriter(new SyncStream(new FileOutputStream(file, true)),
+		                     validLength, channels, blocks).close();
+		log.info(String.format("Log recovered: %s (%d blocks, %d bytes)",
+		                       file, blocks.size(), validLength));
+		return true;
+	}
+
+	/**
+	 * recover all logs within a directory which were not closed
+	 *
+	 * @param dir       directory of logs
+	 * @param extension file extension of logs
+	 * @return number of recovered logs
+	 */
+	public static int recoverAll(File dir, String extension)
+	{
+		int result = 0;
+		File[] files = dir.listFiles();
+		if (files == null) return result;
+		Arrays.sort(files);
+		for (File file : files)
+		{
+			if (!file.getName().endsWith(extension)) continue;
+			try
+			{
+				if (recover(file)) result++;
+			} catch (IOException e)
+			{
+				log.warning("Log not recovered: " + e.getMessage());
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Capabilities of an adapter firmware
+ *
+ * The adapter is identified by the firmware ID (ATZ/ATI response).
+ * The device description (AT@1), STN firmware (STI) and all commands
+ * which are rejected with '?' are learned once per firmware,
+ * so following connections only send commands the adapter understands.
+ * A command is considered rejected after it has been rejected on
+ * REJECT_COUNT connections, so a single garbled response does not
+ * disable a command for good. Any accepted command is probed again.
+ * (@see VehicleProfileCache)
+ *
+ * @author erwin
+ */
+public class AdapterCapabilities
+{
+	/** property keys */
+	static final String KEY_FIRMWARE = "firmware";
+	static final String KEY_DEVICE = "device";
+	static final String KEY_STN = "stn";
+	static final String KEY_REJECTED = "rejected";
+
+	/** device description command */
+	static final String CMD_DEVICE = "AT@1";
+	/** STN firmware ID command */
+	static final String CMD_STN_INFO = "STI";
+	/** number of connections a command has to be rejected on to be skipped */
+	static final int REJECT_COUNT = 2;
+
+	/**
+	 * min. ELM message timeout for clone adapters [ms]
+	 * (clones are known to miss responses at short timeouts)
+	 */
+	static final int CLONE_TIMEOUT_MIN = 32;
+	/** firmware version which is reported by clones only */
+	private static final int CLONE_VERSION = 15;
+	/** first ELM firmware version which supports response count suffix */
+	private static final int RESPONSE_COUNT_VERSION = 13;
+
+	/** pattern of firmware version within firmware ID */
+	private static final Pattern VERSION_PATTERN = Pattern.compile("[vV](\\d+)\\.(\\d)");
+
+	/** firmware ID (e.g. ELM327 v1.5) */
+	private final String firmware;
+	/** device description (null = unknown) */
+	private String device = null;
+	/** STN firmware ID (null = unknown) */
+	private String stnFirmware = null;
+	/** commands which have been rejected by the adapter, with number of rejections */
+	private final TreeMap<String, Integer> rejectedCommands = new TreeMap<>();
+	/** commands which have been rejected on current connection */
+	private final Set<String> rejectedNow = new HashSet<>();
+
+	/**
+	 * Create capabilities of unknown firmware
+	 *
+	 * @param firmware firmware ID
+	 */
+	public AdapterCapabilities(String firmware)
+	{
+		this.firmware = firmware.trim();
+	}
+
+	public String getFirmware()
+	{
+		return firmware;
+	}
+
+	public synchronized String getDevice()
+	{
+		return device;
+	}
+
+	public synchronized void setDevice(String device)
+	{
+		this.device = device.trim();
+	}
+
+	public synchronized String getStnFirmware()
+	{
+		return stnFirmware;
+	}
+
+	public synchronized void setStnFirmware(String stnFirmware)
+	{
+		this.stnFirmware = stnFirmware.trim();
+	}
+
+	/**
+	 * Is command rejected by adapter?
+	 *
+	 * @param command adapter command (e.g. ATAT1)
+	 * @return true if command has been rejected on REJECT_COUNT connections
+	 */
+	public synchronized boolean isRejected(String command)
+	{
+		Integer count = rejectedCommands.get(command);
+		return count != null && count >= REJECT_COUNT;
+	}
+
+	/**
+	 * remember command which has been rejected by adapter
+	 * (rejections are counted once per connection)
+	 *
+	 * @param command adapter command (e.g. ATAT1)
+	 */
+	public synchronized void addRejectedCommand(String command)
+	{
+		if (rejectedNow.add(command))
+		{
+			Integer count = rejectedCommands.get(command);
+			rejectedCommands.put(command, count == null ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Has command been rejected by adapter at least once?
+	 *
+	 * @param command adapter command (e.g. ATAT1)
+	 * @return true if command has been rejected on any connection
+	 */
+	private boolean wasRejected(String command)
+	{
+		return rejectedCommands.containsKey(command);
+	}
+
+	/**
+	 * forget rejections of command which has been accepted by adapter
+	 *
+	 * @param command adapter command (e.g. ATAT1)
+	 * @return true if command has been rejected before
+	 */
+	public synchronized boolean removeRejectedCommand(String command)
+	{
+		rejectedNow.remove(command);
+		return rejectedCommands.remove(command) != null;
+	}
+
+	/**
+	 * Is adapter completely identified?
+	 * (identification commands are sent until they are answered or rejected)
+	 *
+	 * @return true if device description and STN firmware are answered or rejected
+	 */
+	public synchronized boolean isIdentified()
+	{
+		return (device != null || isRejected(CMD_DEVICE))
+		       && (stnFirmware != null || isRejected(CMD_STN_INFO));
+	}
+
+	/**
+	 * Are device description and STN firmware answered or rejected at least once?
+	 *
+	 * @return true if adapter capabilities may be derived from identification
+	 */
+	private boolean isProbed()
+	{
+		return (device != null || wasRejected(CMD_DEVICE))
+		       && (stnFirmware != null || wasRejected(CMD_STN_INFO));
+	}
+
+	/**
+	 * get firmware version
+	 *
+	 * @return firmware version * 10 (e.g. 15 for v1.5), 0 if unknown
+	 */
+	int getVersion()
+	{
+		Matcher matcher = VERSION_PATTERN.matcher(firmware);
+		return matcher.find()
+		       ? Integer.parseInt(matcher.group(1)) * 10 + Integer.parseInt(matcher.group(2))
+		       : 0;
+	}
+
+	/**
+	 * Is this an STN based adapter?
+	 *
+	 * @return true if STN firmware is known
+	 */
+	public synchronized boolean isStn()
+	{
+		return stnFirmware != null;
+	}
+
+	/**
+	 * Is this a clone adapter?
+	 *
+	 * @return true if firmware reports a non existing version,
+	 *         or does not support the device description
+	 */
+	public synchronized boolean isClone()
+	{
+		return !isStn() && (getVersion() == CLONE_VERSION || (device == null && wasRejected(CMD_DEVICE)));
+	}
+
+	/**
+	 * Does adapter support response count suffix on OBD requests?
+	 * (adapter returns after expected number of responses w/o waiting for timeout)
+	 *
+	 * @return true if response count suffix is supported
+	 */
+	public synchronized boolean isResponseCountSupported()
+	{
+		return isProbed()
+		       && (isStn() || (!isClone() && getVersion() >= RESPONSE_COUNT_VERSION));
+	}
+
+	/**
+	 * get min. safe ELM message timeout
+	 *
+	 * @return min. message timeout [ms], 0 if not limited
+	 */
+	public synchronized int getMinTimeout()
+	{
+		return isClone() ? CLONE_TIMEOUT_MIN : 0;
+	}
+
+	/**
+	 * get capabilities as properties
+	 *
+	 * @return properties of capabilities
+	 */
+	public synchronized Properties toProperties()
+	{
+		Properties result = new Properties();
+		result.setProperty(KEY_FIRMWARE, firmware);
+		if (device != null) result.setProperty(KEY_DEVICE, device);
+		if (stnFirmware != null) result.setProperty(KEY_STN, stnFirmware);
+		StringBuilder rejected = new StringBuilder();
+		for (Map.Entry<String, Integer> cmd : rejectedCommands.entrySet())
+		{
+			if (rejected.length() > 0) rejected.append(',');
+			rejected.append(cmd.getKey()).append(':').append(cmd.getValue());
+		}
+		result.setProperty(KEY_REJECTED, rejected.toString());
+		return result;
+	}
+
+	/**
+	 * create capabilities from properties
+	 *
+	 * @param props properties of capabilities
+	 * @return adapter capabilities
+	 */
+	public static AdapterCapabilities fromProperties(Properties props)
+	{
+		AdapterCapabilities result = new AdapterCapabilities(props.getProperty(KEY_FIRMWARE, ""));
+		result.device = props.getProperty(KEY_DEVICE);
+		result.stnFirmware = props.getProperty(KEY_STN);
+		for (String cmd : props.getProperty(KEY_REJECTED, "").split(","))
+		{
+			if (cmd.isEmpty()) continue;
+			// command:number of rejections
+			int pos = cmd.lastIndexOf(':');
+			try
+			{
+				result.rejectedCommands.put(cmd.substring(0, pos),
+				                            Integer.parseInt(cmd.substring(pos + 1)));
+			}
+			catch (RuntimeException ex)
+			{
+				// invalid entry is probed again
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("%s (%s, STN=%s, rejected=%s)",
+		                     firmware, device, stnFirmware, rejectedCommands);
+	}
+}
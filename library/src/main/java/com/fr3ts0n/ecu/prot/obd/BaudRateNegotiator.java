@@ -0,0 +1,359 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.SerialLine;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Negotiate a higher baud rate with an ELM327/STN adapter
+ *
+ * The baud rate is switched with a verified handshake before the
+ * protocol is started:
+ * - ELM327 (AT BRD hh): The adapter confirms with OK at the old rate,
+ *   switches and sends its ID at the new rate. The host confirms with
+ *   a CR within AT BRT (75 ms), otherwise the adapter falls back.
+ * - STN (ST SBR baud): The adapter confirms with OK at the old rate,
+ *   switches and waits for a valid command (STI) at the new rate,
+ *   otherwise the adapter falls back.
+ *
+ * If the handshake fails, the local port falls back to the old rate and
+ * the next lower rate is tried. The effective throughput of the line is
+ * measured on all command exchanges.
+ *
+ * Since a full reset (ATZ) restores the default baud rate of the adapter,
+ * the protocol has to use warm starts after a switch
+ * (@see ElmProt#setBaudRateNegotiated).
+ *
+ * @author erwin
+ */
+public class BaudRateNegotiator
+{
+	/** candidate baud rates, highest first */
+	public static final int[] BAUD_RATES = {2000000, 1000000, 500000, 230400, 115200};
+
+	/** ELM327 baud rate divisor clock (AT BRD hh -> 4000000 / hh bps) */
+	static final int ELM_BRD_CLOCK = 4000000;
+	/** max. deviation of ELM divided baud rate from requested rate [%] */
+	static final int MAX_DEVIATION = 3;
+	/** adapter commands */
+	static final String CMD_INFO = "ATI";
+	static final String CMD_ELM_BAUD = "ATBRD";
+	static final String CMD_STN_BAUD = "STSBR";
+	/** response timeout of adapter commands [ms] */
+	static final int RESPONSE_TIMEOUT = 1000;
+	/** time to wait for handshake response at new baud rate [ms] */
+	static final int HANDSHAKE_TIMEOUT = 200;
+	/** time until adapter has fallen back to old baud rate [ms] */
+	static final int FALLBACK_DELAY = 200;
+	/** number of command exchanges for throughput measurement */
+	public static final int THROUGHPUT_ROUNDS = 10;
+
+	private static final Logger log = Logger.getLogger("com.fr3ts0n.prot");
+
+	/** result of a baud rate switch */
+	private enum Result
+	{
+		SWITCHED,   ///< handshake successful
+		FAILED,     ///< handshake failed, line is back at old rate
+		REJECTED    ///< adapter does not support switching
+	}
+
+	/** serial line to adapter */
+	private final SerialLine line;
+	/** receive buffer */
+	private final byte[] buffer = new byte[256];
+	/** firmware ID of adapter (null = not identified) */
+	private String firmware = null;
+	/** adapter runs STN firmware */
+	private boolean stn = false;
+	/** bytes transferred in command exchanges */
+	private long transferBytes = 0;
+	/** time spent in command exchanges [ns] */
+	private long transferTime = 0;
+
+	/**
+	 * Create negotiator on serial line to adapter
+	 *
+	 * @param line serial line to adapter
+	 */
+	public BaudRateNegotiator(SerialLine line)
+	{
+		this.line = line;
+	}
+
+	public String getFirmware()
+	{
+		return firmware;
+	}
+
+	public boolean isStn()
+	{
+		return stn;
+	}
+
+	/**
+	 * Switch adapter and local port to the highest working baud rate
+	 *
+	 * @param maxBaudRate max. baud rate to be tried [bps]
+	 * @return baud rate of line after negotiation [bps]
+	 * @throws IOException on communication error
+	 */
+	public int negotiate(int maxBaudRate) throws IOException
+	{
+		int baudRate = line.getBaudRate();
+		if (!identify())
+		{
+			log.warning("Baud rate negotiation: No adapter response");
+			return baudRate;
+		}
+
+		for (int candidate : BAUD_RATES)
+		{
+			if (candidate > maxBaudRate || candidate <= baudRate)
+			{
+				continue;
+			}
+			Result result = switchBaudRate(candidate);
+			if (result == Result.SWITCHED)
+			{
+				break;
+			}
+			// stop if adapter can't switch, or does not respond after fallback
+			if (result == Result.REJECTED || command(CMD_INFO) == null)
+			{
+				break;
+			}
+		}
+		log.info(String.format("Baud rate: %d -> %d bps", baudRate, line.getBaudRate()));
+		return line.getBaudRate();
+	}
+
+	/**
+	 * Identify adapter firmware
+	 *
+	 * @return true if adapter responded
+	 * @throws IOException on communication error
+	 */
+	private boolean identify() throws IOException
+	{
+		firmware = command(CMD_INFO);
+		if (firmware == null)
+		{
+			return false;
+		}
+		String stnFirmware = command(AdapterCapabilities.CMD_STN_INFO);
+		stn = stnFirmware != null && stnFirmware.contains("STN");
+		log.info(String.format("Adapter: %s (STN=%s)", firmware, stn ? stnFirmware : "-"));
+		return true;
+	}
+
+	/**
+	 * switch adapter and local port to new baud rate
+	 *
+	 * @param baudRate new baud rate [bps]
+	 * @return result of switch
+	 * @throws IOException on communication error
+	 */
+	private Result switchBaudRate(int baudRate) throws IOException
+	{
+		String cmd;
+		if (stn)
+		{
+			cmd = CMD_STN_BAUD + " " + baudRate;
+		}
+		else
+		{
+			int divisor = Math.round((float) ELM_BRD_CLOCK / baudRate);
+			int deviation = Math.abs(ELM_BRD_CLOCK / divisor - baudRate) * 100 / baudRate;
+			if (divisor > 0xFF || deviation > MAX_DEVIATION)
+			{
+				return Result.FAILED;
+			}
+			cmd = String.format("%s%02X", CMD_ELM_BAUD, divisor);
+		}
+
+		int oldBaudRate = line.getBaudRate();
+		write(cmd);
+		String response = receive(RESPONSE_TIMEOUT, "OK", "?");
+		if (response == null || !response.contains("OK"))
+		{
+			log.info(String.format("%s: rejected", cmd));
+			if (response == null || !response.contains(">"))
+			{
+				receive(RESPONSE_TIMEOUT, ">");
+			}
+			return Result.REJECTED;
+		}
+
+		try
+		{
+			line.setBaudRate(baudRate);
+			if (stn)
+			{
+				// valid command at new rate confirms the switch
+				write(AdapterCapabilities.CMD_STN_INFO);
+				response = receive(HANDSHAKE_TIMEOUT, ">");
+				response = (response != null && response.contains("STN")) ? response : null;
+			}
+			else
+			{
+				// adapter ID at new rate is confirmed with CR
+				response = receive(HANDSHAKE_TIMEOUT, firmware);
+				if (response != null)
+				{
+					write("");
+					response = receive(HANDSHAKE_TIMEOUT, ">");
+				}
+			}
+			if (response != null)
+			{
+				log.info(String.format("%s: switched to %d bps", cmd, baudRate));
+				return Result.SWITCHED;
+			}
+		} catch (IOException ex)
+		{
+			log.log(Level.WARNING, String.format("Local port can't switch to %d bps", baudRate), ex);
+		}
+
+		// fall back to old rate
+		log.info(String.format("%s: no handshake, falling back to %d bps", cmd, oldBaudRate));
+		line.setBaudRate(oldBaudRate);
+		receive(FALLBACK_DELAY, ">");
+		return Result.FAILED;
+	}
+
+	/**
+	 * Measure effective throughput of line with ATI command exchanges
+	 *
+	 * @param rounds number of command exchanges
+	 * @return effective throughput [bytes/s], 0 if adapter does not respond
+	 * @throws IOException on communication error
+	 */
+	public double measureThroughput(int rounds) throws IOException
+	{
+		transferBytes = 0;
+		transferTime = 0;
+		for (int i = 0; i < rounds; i++)
+		{
+			if (command(CMD_INFO) == null)
+			{
+				return 0;
+			}
+		}
+		double result = getThroughput();
+		log.info(String.format("Throughput at %d bps: %.0f bytes/s (%.0f%% of line rate)",
+		                       line.getBaudRate(), result,
+		                       result * 1000 / line.getBaudRate()));
+		return result;
+	}
+
+	/**
+	 * get effective throughput of command exchanges so far
+	 * (bytes sent and received per time from request to prompt)
+	 *
+	 * @return effective throughput [bytes/s]
+	 */
+	public double getThroughput()
+	{
+		return transferTime > 0 ? transferBytes * 1e9 / transferTime : 0;
+	}
+
+	/**
+	 * send command and receive response up to the prompt
+	 *
+	 * @param cmd command to send
+	 * @return response w/o echo and prompt, null on timeout
+	 * @throws IOException on communication error
+	 */
+	private String command(String cmd) throws IOException
+	{
+		long start = System.nanoTime();
+		write(cmd);
+		String response = receive(RESPONSE_TIMEOUT, ">");
+		if (response == null)
+		{
+			return null;
+		}
+		transferTime += System.nanoTime() - start;
+		transferBytes += cmd.length() + 1 + response.length();
+
+		StringBuilder result = new StringBuilder();
+		for (String part : response.replace(">", "").split("[\r\n]"))
+		{
+			part = part.trim();
+			// skip empty lines and command echo
+			if (part.isEmpty() || part.equals(cmd))
+			{
+				continue;
+			}
+			if (result.length() > 0)
+			{
+				result.append(' ');
+			}
+			result.append(part);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * write command terminated with CR
+	 *
+	 * @param cmd command to be written
+	 * @throws IOException on write error
+	 */
+	private void write(String cmd) throws IOException
+	{
+		line.write((cmd + "\r").getBytes());
+	}
+
+	/**
+	 * receive data until one of the expected strings is received
+	 *
+	 * @param timeout  max. time to wait [ms]
+	 * @param expected expected strings
+	 * @return received data, null on timeout
+	 * @throws IOException on read error
+	 */
+	private String receive(int timeout, String... expected) throws IOException
+	{
+		StringBuilder result = new StringBuilder();
+		long end = System.currentTimeMillis() + timeout;
+		int remaining;
+		while ((remaining = (int) (end - System.currentTimeMillis())) > 0)
+		{
+			int len = line.read(buffer, remaining);
+			for (int i = 0; i < len; i++)
+			{
+				result.append((char) (buffer[i] & 0xFF));
+			}
+			for (String str : expected)
+			{
+				if (result.indexOf(str) >= 0)
+				{
+					return result.toString();
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -89,6 +89,35 @@ public class ElmProt
 	 */
 	private final Vector<String> customInitCommands = new Vector<String>();
 	
+	/**
+	 * capabilities of connected adapter firmware
+	 */
+	private AdapterCapabilities adapter = new AdapterCapabilities("");
+	/**
+	 * key of connected adapter for vehicle profile cache (null = no caching)
+	 */
+	private String adapterKey = null;
+	/**
+	 * profile of connected vehicle
+	 */
+	private VehicleProfile vehicle = new VehicleProfile(null);
+	/**
+	 * vehicle profile was loaded from cache
+	 */
+	private boolean vehicleCached = false;
+	/**
+	 * vehicle profile is verified against detected ECUs
+	 */
+	private boolean vehicleVerified = false;
+	/**
+	 * detected protocol number (0 = unknown)
+	 */
+	private int detectedProtocol = 0;
+	/**
+	 * adapter baud rate has been negotiated (full reset would restore default rate)
+	 */
+	private boolean baudRateNegotiated = false;
+	
 	/**
 	 * ELM protocol ID's
 	 */
@@ -210,6 +239,7 @@ public class ElmProt
 		SETSPACES("S", 1, true), ///< enable/disable spaces
 		SETHEADER("H", 1, true), ///< enable/disable header response
 		GETPROT("DP", 0, true), ///< get protocol
+		GETPROTNUM("DPN", 0, true), ///< get protocol number
 		SETPROT("SP", 1, true), ///< set protocol
 		CANMONITOR("MA", 0, true), ///< monitor CAN messages
 		SETPROTAUTO("SPA", 1, true), ///< set protocol auto
@@ -303,6 +333,10 @@ public class ElmProt
 		 * minimum ELM timeout (learned from vehicle)
 		 */
 		int ELM_TIMEOUT_LRN_LOW = 12;
+		/**
+		 * minimum ELM timeout which is safe for connected adapter
+		 */
+		int adapterTimeoutMin = 0;
 		/**
 		 * ELM message timeout: defaults to approx 200 [ms]
 		 */
@@ -359,7 +393,7 @@ public class ElmProt
 			if (mode == AdaptTimingMode.SOFTWARE)
 			{
 				// ... reset learned minimum timeout ...
-				setElmTimeoutLrnLow(getElmTimeoutMin());
+				setElmTimeoutLrnLow(Math.max(getElmTimeoutMin(), adapterTimeoutMin));
 				// set default timeout
 				setElmMsgTimeout(ELM_TIMEOUT_DEFAULT);
 				// switch OFF ELM internal adaptive timing
@@ -371,6 +405,21 @@ public class ElmProt
 			}
 		}
 		
+		/**
+		 * Set min. ELM Message Timeout which is safe for connected adapter
+		 *
+		 * @param timeoutMin minimum timeout value [ms], 0 if not limited
+		 */
+		void setAdapterTimeoutMin(int timeoutMin)
+		{
+			adapterTimeoutMin = timeoutMin;
+			if (mode == AdaptTimingMode.SOFTWARE && getElmTimeoutLrnLow() < timeoutMin)
+			{
+				setElmTimeoutLrnLow(timeoutMin);
+				if (elmMsgTimeout < timeoutMin) { setElmMsgTimeout(timeoutMin); }
+			}
+		}
+		
 		/**
 		 * Adapt ELM message timeout
 		 *
@@ -510,6 +559,12 @@ public class ElmProt
 				String fmtString = "%0".concat(String.valueOf(cmdID.paramDigits)).concat("X");
 				cmd += String.format(fmtString, param);
 			}
+			// skip commands which were rejected by this adapter before
+			if (adapter.isRejected(cmd))
+			{
+				log.fine("ELM command skipped (rejected before): " + cmd);
+				cmd = null;
+			}
 		}
 		// return command String
 		return cmd;
@@ -545,6 +600,8 @@ public class ElmProt
 	{
 		log.fine(this.toString() + " TX:'" + String.valueOf(buffer) + "'");
 		lastCommand = buffer;
+		// responses received from now on belong to this command
+		lastRxMsg = "";
 		super.sendTelegram(buffer);
 	}
 	
@@ -583,11 +640,305 @@ public class ElmProt
 	{
 		// reset all learned protocol data
 		super.reset();
-		// either RESET or INFO command needs to be enabled
-		if (CMD.RESET.isEnabled())
-		{ sendCommand(CMD.RESET, 0); }
+		// load profile of previously connected vehicle
+		loadVehicleProfile();
+		// either RESET or INFO command needs to be enabled (and not suppressed)
+		String cmd = null;
+		if (vehicleCached || baudRateNegotiated)
+		{ cmd = createCommand(CMD.WARMSTART, 0); }
+		if (cmd == null)
+		{ cmd = createCommand(CMD.RESET, 0); }
+		if (cmd == null && CMD.INFO.isEnabled())
+		{ cmd = CMD.INFO.toString(); }
+		if (cmd != null)
+		{ sendTelegram(cmd.toCharArray()); }
+	}
+	
+	/**
+	 * Set if adapter baud rate has been negotiated
+	 * (adapter is reset with warm start to keep the baud rate)
+	 *
+	 * @param negotiated true if baud rate differs from adapter default
+	 * @see BaudRateNegotiator
+	 */
+	public void setBaudRateNegotiated(boolean negotiated)
+	{
+		baudRateNegotiated = negotiated;
+	}
+	
+	/**
+	 * Set key of connected adapter
+	 * (enables the vehicle profile cache for this adapter)
+	 *
+	 * @param key unique key of adapter (e.g. device address), null to disable caching
+	 */
+	public void setAdapterKey(String key)
+	{
+		adapterKey = key;
+	}
+	
+	/**
+	 * get profile of connected vehicle
+	 *
+	 * @return vehicle profile
+	 */
+	public VehicleProfile getVehicleProfile()
+	{
+		return vehicle;
+	}
+	
+	/**
+	 * load profile of vehicle which was connected to current adapter before
+	 */
+	private void loadVehicleProfile()
+	{
+		VehicleProfile cached = VehicleProfileCache.get(adapterKey);
+		vehicleCached = cached != null;
+		vehicleVerified = false;
+		vehicle = vehicleCached ? cached : new VehicleProfile(adapterKey);
+		log.info("Vehicle profile: " + (vehicleCached ? vehicle : "unknown"));
+	}
+	
+	/**
+	 * drop cached vehicle profile and start learning a new one
+	 */
+	private void dropVehicleProfile()
+	{
+		log.info("Vehicle profile mismatch, discovering: " + vehicle);
+		VehicleProfileCache.remove(adapterKey);
+		vehicle = new VehicleProfile(adapterKey);
+		vehicleCached = false;
+	}
+	
+	/**
+	 * verify vehicle profile against detected ECUs and protocol
+	 * (falls back to discovery on mismatch)
+	 */
+	private void verifyVehicleProfile()
+	{
+		if (vehicleCached)
+		{
+			if (vehicle.matches(ecuAddresses, detectedProtocol))
+			{
+				// known vehicle -> start with learned timeout
+				if (mAdaptiveTiming.getMode() == AdaptTimingMode.SOFTWARE
+				    && vehicle.getTimeout() > 0)
+				{
+					mAdaptiveTiming.setElmMsgTimeout(vehicle.getTimeout());
+				}
+			}
+			else
+			{
+				dropVehicleProfile();
+			}
+		}
+		vehicle.setEcuAddresses(ecuAddresses);
+		if (detectedProtocol > 0)
+		{
+			vehicle.setProtocol(detectedProtocol);
+		}
+		vehicleVerified = true;
+		VehicleProfileCache.put(vehicle);
+	}
+	
+	/**
+	 * set detected protocol from protocol number response (e.g. A6)
+	 *
+	 * @param response response to protocol number request
+	 */
+	private void setDetectedProtocol(String response)
+	{
+		// 'A' indicates automatic protocol selection
+		String number = response.startsWith("A") ? response.substring(1) : response;
+		detectedProtocol = (number.length() == 1) ? Character.digit(number.charAt(0), 16) : 0;
+		if (detectedProtocol < 0) detectedProtocol = 0;
+		log.fine("Detected protocol: " + detectedProtocol);
+	}
+	
+	/**
+	 * remember last adapter command as rejected
+	 */
+	private void rememberRejectedCommand()
+	{
+		if (lastCommand == null) return;
+		String cmd = String.valueOf(lastCommand);
+		// reset commands are never suppressed, adapter would not be initialized
+		if (cmd.equals(CMD.RESET.toString())
+		    || cmd.equals(CMD.WARMSTART.toString())
+		    || cmd.equals(CMD.INFO.toString()))
+		{
+			return;
+		}
+		if (cmd.startsWith(CMD.CMD_HEADER) || cmd.equals(AdapterCapabilities.CMD_STN_INFO))
+		{
+			log.info("ELM command rejected: " + cmd);
+			adapter.addRejectedCommand(cmd);
+			VehicleProfileCache.putCapabilities(adapter);
+			mAdaptiveTiming.setAdapterTimeoutMin(adapter.getMinTimeout());
+		}
+	}
+	
+	/**
+	 * forget rejections of last adapter command, since it was accepted now
+	 */
+	private void rememberAcceptedCommand()
+	{
+		if (lastCommand == null) return;
+		if (adapter.removeRejectedCommand(String.valueOf(lastCommand)))
+		{
+			VehicleProfileCache.putCapabilities(adapter);
+			mAdaptiveTiming.setAdapterTimeoutMin(adapter.getMinTimeout());
+		}
+	}
+	
+	/**
+	 * identify adapter by firmware ID
+	 * (capabilities of known firmware are taken from cache)
+	 *
+	 * @param firmware firmware ID (reset response)
+	 */
+	private void identifyAdapter(String firmware)
+	{
+		AdapterCapabilities cached = VehicleProfileCache.getCapabilities(firmware.trim());
+		adapter = (cached != null) ? cached : new AdapterCapabilities(firmware);
+		log.info("Adapter: " + adapter);
+	}
+	
+	/**
+	 * handle response to adapter identification commands
+	 *
+	 * @param cmd      command which was sent
+	 * @param response response of adapter
+	 * @return true if response was handled
+	 */
+	private boolean handleAdapterInfo(String cmd, String response)
+	{
+		if (cmd.equals(AdapterCapabilities.CMD_DEVICE))
+		{
+			adapter.setDevice(response);
+		}
+		else if (cmd.equals(AdapterCapabilities.CMD_STN_INFO))
+		{
+			adapter.setStnFirmware(response);
+		}
 		else
-		{ sendCommand(CMD.INFO, 0); }
+		{
+			return false;
+		}
+		VehicleProfileCache.putCapabilities(adapter);
+		mAdaptiveTiming.setAdapterTimeoutMin(adapter.getMinTimeout());
+		return true;
+	}
+	
+	/**
+	 * get capabilities of connected adapter
+	 *
+	 * @return adapter capabilities
+	 */
+	public AdapterCapabilities getAdapterCapabilities()
+	{
+		return adapter;
+	}
+	
+	/**
+	 * create OBD request telegram in adapter specific format
+	 */
+	@Override
+	protected char[] createTelegram(char[] payLoad, int type, Object id)
+	{
+		return formatRequest(super.createTelegram(payLoad, type, id), type);
+	}
+	
+	/**
+	 * format OBD request for adapter
+	 * with response count suffix if only one ECU will respond
+	 * (adapter returns immediately instead of waiting for further responses)
+	 *
+	 * @param request OBD request
+	 * @param obdService OBD service of request
+	 * @return request to be sent to adapter
+	 */
+	protected char[] formatRequest(char[] request, int obdService)
+	{
+		if (getExpectedResponses(obdService) > 0 && adapter.isResponseCountSupported())
+		{
+			request = Arrays.copyOf(request, request.length + 1);
+			request[request.length - 1] = '1';
+		}
+		return request;
+	}
+	
+	/**
+	 * get number of responses which are expected for a request
+	 *
+	 * @param obdService OBD service of request
+	 * @return number of expected responses, 0 if unknown
+	 */
+	protected int getExpectedResponses(int obdService)
+	{
+		return (obdService == OBD_SVC_DATA && ecuAddresses.size() == 1) ? 1 : 0;
+	}
+	
+	/**
+	 * get selected ECU address
+	 *
+	 * @return selected ECU address, 0 if none selected
+	 */
+	public int getSelectedEcuAddress()
+	{
+		return selectedEcuAddress;
+	}
+	
+	/**
+	 * remember discovered supported PIDs within vehicle profile
+	 */
+	@Override
+	protected void onSupportedPids(int obdService, int start, long bitmask)
+	{
+		if (!vehicleVerified
+		    || (obdService != OBD_SVC_DATA && obdService != OBD_SVC_VEH_INFO))
+		{
+			return;
+		}
+		vehicle.setPidBitmap(obdService, start, bitmask);
+		// last block received -> store profile
+		if ((bitmask & 1) == 0)
+		{
+			if (mAdaptiveTiming.getMode() == AdaptTimingMode.SOFTWARE)
+			{
+				vehicle.setTimeout(mAdaptiveTiming.elmMsgTimeout);
+			}
+			VehicleProfileCache.put(vehicle);
+		}
+	}
+	
+	/**
+	 * use supported PIDs of verified vehicle profile
+	 */
+	@Override
+	protected long[] getKnownPidBitmaps(int obdService)
+	{
+		return vehicleVerified ? vehicle.getPidBitmaps(obdService) : null;
+	}
+	
+	/**
+	 * check vehicle identification against vehicle profile
+	 */
+	@Override
+	protected void onVehicleIdentification(String vin)
+	{
+		if (!vehicleVerified || vin.equals(vehicle.getVin())) return;
+		if (vehicle.getVin() != null)
+		{
+			// different vehicle with same ECU layout -> forget learned PIDs
+			VehicleProfile newVehicle = new VehicleProfile(adapterKey);
+			newVehicle.setEcuAddresses(vehicle.getEcuAddresses());
+			newVehicle.setProtocol(vehicle.getProtocol());
+			dropVehicleProfile();
+			vehicle = newVehicle;
+		}
+		vehicle.setVin(vin);
+		VehicleProfileCache.put(vehicle);
 	}
 	
 	/**
@@ -603,6 +954,9 @@ public class ElmProt
 		ecuAddresses.clear();
 		// clear selected ECU
 		selectedEcuAddress = 0;
+		// finally get detected protocol
+		detectedProtocol = 0;
+		pushCommand(CMD.GETPROTNUM, 0);
 		// remember to disable headers again
 		pushCommand(CMD.SETHEADER, 0);
 		// request PIDs (from all devices)
@@ -620,11 +974,27 @@ public class ElmProt
 		cmdQueue.addAll(customInitCommands);
 		
 		// set to preferred protocol
-		pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
+		if (preferredProtocol == PROT.ELM_PROT_AUTO && vehicleCached && vehicle.getProtocol() > 0)
+		{
+			// try protocol of known vehicle first, search others if it fails
+			pushCommand(CMD.SETPROTAUTO, vehicle.getProtocol());
+		}
+		else
+		{
+			pushCommand(CMD.SETPROT, preferredProtocol.ordinal());
+		}
 		
 		// initialize adaptive timing handler
+		mAdaptiveTiming.setAdapterTimeoutMin(adapter.getMinTimeout());
 		mAdaptiveTiming.initialize();
 		
+		// identify unknown adapter firmware
+		if (!adapter.isIdentified())
+		{
+			cmdQueue.add(AdapterCapabilities.CMD_STN_INFO);
+			cmdQueue.add(AdapterCapabilities.CMD_DEVICE);
+		}
+		
 		// speed up protocol by removing spaces and line feeds from output
 		pushCommand(CMD.SETSPACES, 0);
 		pushCommand(CMD.SETLINEFEED, 0);
@@ -707,6 +1077,8 @@ public class ElmProt
 				break;
 
 			case MODEL:
+				lastRxMsg = bufferStr;
+				identifyAdapter(bufferStr);
 				initialize();
 				break;
 			
@@ -725,6 +1097,11 @@ public class ElmProt
 					case BUSBUSY:
 					case FBERROR:
 						setStatus(STAT.DISCONNECTED);
+						// known vehicle is not reachable -> full discovery
+						if (vehicleCached && !vehicleVerified)
+						{
+							dropVehicleProfile();
+						}
 						// re-queue last command
 						cmdQueue.add(String.valueOf(lastCommand));
 						// queue setting to preferred protocol
@@ -771,72 +1148,45 @@ public class ElmProt
 					case SEARCH:
 					case STOPPED:
 						// was already handled before prompt
+						result = handlePrompt();
+						break;
+					
 					case QMARK:
 						// last command stays ignored
+						rememberRejectedCommand();
+						result = handlePrompt();
+						break;
 					
 					case OK:
+						// command is accepted (again)
+						rememberAcceptedCommand();
+						result = handlePrompt();
+						break;
+					
 					default:
-						// if there is a pending data response, handle it now ...
-						if (responsePending)
-						{
-							result = handleDataMessage(lastRxMsg);
-						}
-						
-						// queued commands will be sent first
-						if (cmdQueue.size() > 0)
-						{
-							// get last command
-							String cmd = cmdQueue.lastElement();
-							// and remove it from list
-							cmdQueue.remove(cmd);
-							// send the command
-							sendTelegram(cmd.toCharArray());
-						}
-						else
-						{
-							// all queued commands are sent -> we are done initializing
-							if (status == STAT.INITIALIZING)
-							{
-								// set status to initialized
-								setStatus(STAT.INITIALIZED);
-								// initiate query of connected ECUs
-								queryEcus();
-								break;
-							}
-							
-							// all queued commands are sent -> we are done detecting ECUs
-							setStatus(status == STAT.ECU_DETECT ? STAT.ECU_DETECTED : status);
-							
-							switch (service)
-							{
-								case OBD_SVC_VEH_INFO:
-									// if all pid's have been read once ...
-									if (pidsWrapped)
-									{
-										// ... terminate service loop
-										break;
-									}
-									// no break here ...
-								case OBD_SVC_DATA:
-								case OBD_SVC_FREEZEFRAME:
-								{
-									// otherwise the next PID will be requested
-									writeTelegram(emptyBuffer, service, getNextSupportedPid());
-									// reduce OBD timeout towards minimum limit
-									mAdaptiveTiming.adapt(false);
-								}
-								break;
-								
-								case OBD_SVC_NONE:
-								default:
-									// do nothing
-							}
-						}
+						result = handlePrompt();
+						break;
 				}
 				break;
 			
 			// handle data response
 			default:
+				// response to protocol number request
+				if (lastCommand != null
+				    && CMD.GETPROTNUM.toString().equals(String.valueOf(lastCommand)))
+				{
+					// response is handled, nothing left for the prompt
+					lastRxMsg = "";
+					setDetectedProtocol(bufferStr);
+					return result;
+				}
+				// response to adapter identification
+				if (lastCommand != null && handleAdapterInfo(String.valueOf(lastCommand), bufferStr))
+				{
+					// response is handled, nothing left for the prompt
+					lastRxMsg = "";
+					return result;
+				}
 				// if we are still initializing check for address entries
 				switch (status)
 				{
@@ -992,6 +1342,79 @@ public class ElmProt
 		return (result);
 	}
 	
+	/**
+	 * handle PROMPT after the response to last command is evaluated
+	 * - handle pending data response
+	 * - send next queued command, or continue with current service
+	 *
+	 * @return number of bytes processed
+	 */
+	private int handlePrompt()
+	{
+		int result = 0;
+		// if there is a pending data response, handle it now ...
+		if (responsePending)
+		{
+			result = handleDataMessage(lastRxMsg);
+		}
+		
+		// queued commands will be sent first
+		if (cmdQueue.size() > 0)
+		{
+			// get last command
+			String cmd = cmdQueue.lastElement();
+			// and remove it from list
+			cmdQueue.remove(cmd);
+			// send the command
+			sendTelegram(cmd.toCharArray());
+		}
+		else
+		{
+			// all queued commands are sent -> we are done initializing
+			if (status == STAT.INITIALIZING)
+			{
+				// set status to initialized
+				setStatus(STAT.INITIALIZED);
+				// initiate query of connected ECUs
+				queryEcus();
+				return result;
+			}
+			
+			// all queued commands are sent -> we are done detecting ECUs
+			if (status == STAT.ECU_DETECT)
+			{
+				verifyVehicleProfile();
+			}
+			setStatus(status == STAT.ECU_DETECT ? STAT.ECU_DETECTED : status);
+			
+			switch (service)
+			{
+				case OBD_SVC_VEH_INFO:
+					// if all pid's have been read once ...
+					if (pidsWrapped)
+					{
+						// ... terminate service loop
+						break;
+					}
+					// no break here ...
+				case OBD_SVC_DATA:
+				case OBD_SVC_FREEZEFRAME:
+				{
+					// otherwise the next PID will be requested
+					writeTelegram(emptyBuffer, service, getNextSupportedPid());
+					// reduce OBD timeout towards minimum limit
+					mAdaptiveTiming.adapt(false);
+				}
+				break;
+				
+				case OBD_SVC_NONE:
+				default:
+					// do nothing
+			}
+		}
+		return result;
+	}
+	
 	/**
 	 * forward data message for further handling
 	 *
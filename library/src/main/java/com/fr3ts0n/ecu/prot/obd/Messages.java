@@ -9,6 +9,7 @@ public class Messages
 {
 	private static final String BUNDLE_NAME = "com.fr3ts0n.ecu.prot.obd.res.messages"; //$NON-NLS-1$
 	private static ResourceBundle RESOURCE_BUNDLE;
+	private static String resourceBundleName = BUNDLE_NAME;
 
 	public Messages()
 	{
@@ -23,6 +24,17 @@ public class Messages
 	public static void init(String bundleName)
 	{
         RESOURCE_BUNDLE = UTF8Bundle.getBundle(bundleName);
+        resourceBundleName = bundleName;
+	}
+
+    /**
+     * get name of current message bundle
+     *
+     * @return Name of message bundle
+     */
+	public static String getBundleName()
+	{
+		return resourceBundleName;
 	}
 
 	public static String getString(String key, String defaultString)
@@ -25,6 +25,7 @@ import com.fr3ts0n.ecu.EcuCodeList;
 import com.fr3ts0n.ecu.EcuConversions;
 import com.fr3ts0n.ecu.EcuDataItem;
 import com.fr3ts0n.ecu.EcuDataItems;
+import com.fr3ts0n.ecu.EcuDataProfiles;
 import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.ecu.ObdCodeItem;
 import com.fr3ts0n.ecu.ObdPid;
@@ -66,6 +67,13 @@ public class ObdProt extends ProtoHeader
     /** negative response ID */
     private static final int OBD_ID_NRC = 0x7F;
 
+    /** vehicle information PID of vehicle identification number */
+    static final int PID_VIN = 0x02;
+    /** mnemonic of vehicle identification number */
+    static final String MNEMONIC_VIN = "vehicle_identification_number";
+    /** length of a complete vehicle identification number */
+    static final int VIN_LENGTH = 17;
+
     /** perform immediate reset on NRC reception? */
     private boolean isResetOnNrc()
     {
@@ -177,6 +185,10 @@ public class ObdProt extends ProtoHeader
     static String lastTxMsg = "";
     /** content of last received message */
     public static String lastRxMsg = "";
+    /** monotonic transmit time of last request [ns] */
+    private long txTime = 0;
+    /** monotonic receive time of telegram in process [ns], 0 = not stamped by transport */
+    private long rxTime = 0;
     /** Holds value of property service. */
     int service = OBD_SVC_NONE;
     /** service of last incoming message */
@@ -257,6 +269,8 @@ public class ObdProt extends ProtoHeader
 
     /** new style data items */
     public static final EcuDataItems dataItems = new EcuDataItems();
+    /** customisation profiles of data items */
+    public static final EcuDataProfiles profiles = new EcuDataProfiles(dataItems);
 
     /** OBD data items */
     public static PvList PidPvs = new PvList();
@@ -272,6 +286,10 @@ public class ObdProt extends ProtoHeader
     private int freezeFrame_Id = 0;
     /** perform reset on NRC reception */
     private boolean resetOnNrc = false;
+    /** OBD service the process vars have been prepared for */
+    private int pvService = OBD_SVC_NONE;
+    /** version of data item definitions the process vars have been prepared for */
+    private int pvItemsVersion = 0;
 
     /** Creates a new instance of ObdProt */
     ObdProt()
@@ -409,12 +427,25 @@ public class ObdProt extends ProtoHeader
         // reset fixed PIDs
         resetFixedPid();
 
+        pvList.putAll(getPidPvs(obdService), PvChangeEvent.PV_ADDED, false);
+        pvService = obdService;
+    }
+
+    /**
+     * get process variables of all data items of supported PIDs
+     * (unknown PIDs get a dummy data item)
+     * @param obdService OBD service to get process vars for
+     * @return process vars by item key
+     */
+    private HashMap<String, EcuDataPv> getPidPvs(int obdService)
+    {
+        pvItemsVersion = dataItems.getVersion();
         HashMap<String, EcuDataPv> newList = new HashMap<String, EcuDataPv>();
         for (ObdPid currPid : pidSupported)
         {
             Vector<EcuDataItem> items = dataItems.getPidDataItems(obdService, currPid.intValue());
             // if no items defined, create dummy item
-            if (items == null)
+            if (items == null || items.isEmpty())
             {
                 log.warning(String.format("unknown PID %02X", currPid.intValue()));
 
@@ -435,11 +466,42 @@ public class ObdProt extends ProtoHeader
             {
                 if (pidPv != null)
                 {
-                    newList.put(pidPv.toString(), pidPv.pv);
+                    newList.put(pidPv.toString(), pidPv.getPv());
                 }
             }
         }
+        return newList;
+    }
+
+    /**
+     * update process vars after data item definitions have been swapped
+     * (process vars of unchanged data items are kept)
+     */
+    private void updateDataPvs()
+    {
+        if (dataItems.getVersion() == pvItemsVersion) return;
+
+        PvList pvList = getDataList(pvService);
+        if (pvList == null)
+        {
+            pvItemsVersion = dataItems.getVersion();
+            return;
+        }
+        HashMap<String, EcuDataPv> newList = getPidPvs(pvService);
+        // remove process vars of items which are not defined anymore
+        for (Object key : pvList.keySet().toArray())
+        {
+            if (pvList.get(key) != newList.get(key))
+            {
+                pvList.remove(key);
+            }
+        }
+        // add process vars of new items
+        newList.keySet().removeAll(pvList.keySet());
         pvList.putAll(newList, PvChangeEvent.PV_ADDED, false);
+        // item mnemonics may have changed
+        invalidateSubscribedPids();
+        log.info("Data items updated: " + pvList.size() + " items");
     }
 
     /**
@@ -458,6 +520,32 @@ public class ObdProt extends ProtoHeader
             pidSupported.clear();
         }
 
+        // supported PIDs change -> re-evaluate subscriptions
+        invalidateSubscribedPids();
+        addSupportedPids(start, bitmask);
+        // notify about discovered PIDs
+        onSupportedPids(obdService, start, bitmask);
+
+        // if next block may be requested
+        if ((bitmask & 1) != 0)
+        {
+            // request next block
+            cmdQueue.add(String.format("%02X%02X", obdService, start + 0x20));
+        }
+        else
+        {
+            // setup PID PVs
+            preparePidPvs(obdService, pvList);
+        }
+    }
+
+    /**
+     * add PIDs of a bitmask block to supported PIDs
+     * @param start Start PID (multiple of 0x20) to process bitmask for
+     * @param bitmask 32-Bit bitmask which indicates support for the next 32 PIDs
+     */
+    private static void addSupportedPids(int start, long bitmask)
+    {
         // loop through bits and mark corresponding PIDs as supported
         for (int i = 0; i < 0x1F; i++)
         {
@@ -470,17 +558,70 @@ public class ObdProt extends ProtoHeader
         log.fine(Long.toHexString(bitmask).toUpperCase()
                      + "(" + Long.toHexString(start) + "):"
                      + pidSupported);
+    }
 
-        // if next block may be requested
-        if ((bitmask & 1) != 0)
+    /**
+     * mark all PIDs of already known bitmasks as supported
+     * (without requesting the bitmasks from the vehicle)
+     * @param obdService OBD service to mark PIDs for
+     * @param bitmasks bitmasks of all PID blocks, starting with PID 0x00
+     */
+    private synchronized void applySupportedPids(int obdService, long[] bitmasks)
+    {
+        currSupportedPid = 0;
+        pidSupported.clear();
+        invalidateSubscribedPids();
+        for (int i = 0; i < bitmasks.length; i++)
         {
-            // request next block
-            cmdQueue.add(String.format("%02X%02X", obdService, start + 0x20));
+            addSupportedPids(i * 0x20, bitmasks[i]);
         }
-        else
+        // setup PID PVs
+        preparePidPvs(obdService, getDataList(obdService));
+    }
+
+    /**
+     * Handle a received block of supported PIDs
+     * (Hook for protocol implementations to remember discovered PIDs)
+     * @param obdService OBD service
+     * @param start Start PID (multiple of 0x20) of bitmask
+     * @param bitmask 32-Bit bitmask which indicates support for the next 32 PIDs
+     */
+    protected void onSupportedPids(int obdService, int start, long bitmask)
+    {
+    }
+
+    /**
+     * get already known supported PID bitmasks of connected vehicle
+     * (Hook for protocol implementations to skip PID discovery)
+     * @param obdService OBD service
+     * @return bitmasks of all PID blocks, starting with PID 0x00,
+     *         or null if PIDs shall be discovered
+     */
+    protected long[] getKnownPidBitmaps(int obdService)
+    {
+        return null;
+    }
+
+    /**
+     * Handle received vehicle identification number
+     * (Hook for protocol implementations to verify the connected vehicle)
+     * @param vin vehicle identification number
+     */
+    protected void onVehicleIdentification(String vin)
+    {
+    }
+
+    /**
+     * notify vehicle identification number, once it is completely received
+     */
+    private void notifyVehicleIdentification()
+    {
+        EcuDataItem itm = EcuDataItems.byMnemonic.get(MNEMONIC_VIN);
+        if (itm == null || !itm.hasPv()) return;
+        Object value = itm.getPv().get(EcuDataPv.FID_VALUE);
+        if (value != null && value.toString().trim().length() == VIN_LENGTH)
         {
-            // setup PID PVs
-            preparePidPvs(obdService, pvList);
+            onVehicleIdentification(value.toString().trim());
         }
     }
 
@@ -490,6 +631,15 @@ public class ObdProt extends ProtoHeader
     /** fixed PIDs to limit PID loop to single access */
     private static final Vector<ObdPid> fixedPids = new Vector<ObdPid>();
 
+    /** supported PIDs which are subscribed by any consumer */
+    private static final Vector<ObdPid> subscribedPids = new Vector<ObdPid>();
+    /** fastest subscribed update period [ms] by PID (-1 = not subscribed) */
+    private static final long[] subscribedPeriods = new long[0x100];
+    /** subscription version the subscribed PIDs are based on (-1 = invalid) */
+    private static int subscribedVersion = -1;
+    /** are there any subscriptions (supported or not)? */
+    private static boolean subscriptionsActive = false;
+
     /**
      * Set fixed PID for faster data update
      * @param pidCodes the fixedPid to set
@@ -510,15 +660,82 @@ public class ObdProt extends ProtoHeader
         fixedPids.clear();
     }
 
+    /**
+     * Invalidate list of subscribed PIDs
+     * (re-evaluated on next PID request)
+     */
+    private static synchronized void invalidateSubscribedPids()
+    {
+        subscribedVersion = -1;
+    }
+
+    /**
+     * Update list of subscribed PIDs from data item subscriptions
+     * - only supported PIDs of the specified service are considered
+     * - the fastest requested update period of all items of a PID is used
+     *
+     * @param obdService OBD service to evaluate subscriptions for
+     */
+    private static synchronized void updateSubscribedPids(int obdService)
+    {
+        int version = EcuDataItems.subscriptions.getVersion();
+        if (version == subscribedVersion) return;
+        subscribedVersion = version;
+
+        subscribedPids.clear();
+        Arrays.fill(subscribedPeriods, -1);
+        subscriptionsActive = !EcuDataItems.subscriptions.isEmpty();
+        // evaluate items of supported PIDs which are served by current service
+        for (ObdPid pid : pidSupported)
+        {
+            int pidId = pid.intValue();
+            if ((pidId & ~0xFF) != 0) continue;
+            for (EcuDataItem itm : dataItems.getItems(obdService, pidId))
+            {
+                long period = EcuDataItems.subscriptions.getPeriod(itm.getMnemonic());
+                if (period < 0) continue;
+                long currPeriod = subscribedPeriods[pidId];
+                subscribedPeriods[pidId] = currPeriod < 0 ? period : Math.min(currPeriod, period);
+            }
+            if (subscribedPeriods[pidId] >= 0)
+            {
+                subscribedPids.add(pid);
+            }
+        }
+        log.fine("Subscribed PIDs: " + subscribedPids);
+    }
+
+    /**
+     * get update period for a PID
+     *
+     * @param pid PID to get period for
+     * @param itemPeriod update period requested by data items
+     * @return subscribed update period if PID is subscribed, otherwise item update period
+     */
+    private static synchronized long getUpdatePeriod(int pid, long itemPeriod)
+    {
+        return (subscriptionsActive && (pid & ~0xFF) == 0 && subscribedPeriods[pid] >= 0)
+               ? subscribedPeriods[pid]
+               : itemPeriod;
+    }
+
     /**
      * get the next available supported PID
+     * - if there are subscriptions, only subscribed PIDs are polled.
+     *   If none of them is supported, only the PID support query (PID 0)
+     *   is requested.
      * @return next available supported PID
      */
     synchronized Integer getNextSupportedPid()
     {
         Integer result = 0;
+        /* follow swapped data item definitions */
+        updateDataPvs();
         /* get corresponding PID list */
-        Vector<ObdPid> pidsToCheck = (fixedPids.size() > 0) ? fixedPids : pidSupported;
+        updateSubscribedPids(service);
+        Vector<ObdPid> pidsToCheck = (fixedPids.size() > 0)
+                                     ? fixedPids
+                                     : subscriptionsActive ? subscribedPids : pidSupported;
         try
         {
             /* sort by next expected request */
@@ -539,6 +756,48 @@ public class ObdProt extends ProtoHeader
         return result;
     }
 
+    /**
+     * handle telegram with timestamps of transport
+     * @param buffer - telegram buffer
+     * @param rxTime - monotonic receive time of telegram [ns]
+     * @param txTime - monotonic transmit time of last request [ns], 0 = unknown
+     * @return number of listeners notified
+     */
+    @Override
+    public synchronized int handleTelegram(char[] buffer, long rxTime, long txTime)
+    {
+        this.rxTime = rxTime;
+        // transport knows when the request actually was sent
+        if (txTime != 0) this.txTime = txTime;
+        try
+        {
+            return handleTelegram(buffer);
+        }
+        finally
+        {
+            this.rxTime = 0;
+        }
+    }
+
+    /**
+     * get receive time of telegram in process
+     * @return monotonic receive time [ns], current time if not stamped by transport
+     */
+    protected long getRxTime()
+    {
+        return rxTime != 0 ? rxTime : System.nanoTime();
+    }
+
+    /**
+     * get round trip time of last request
+     * @param rxTime monotonic receive time of response [ns]
+     * @return round trip time [ns], 0 if unknown
+     */
+    protected long getRoundTripTime(long rxTime)
+    {
+        return (txTime != 0 && rxTime > txTime) ? rxTime - txTime : 0;
+    }
+
     /**
      * handle OBD response telegram
      * @param buffer - telegram buffer
@@ -639,11 +898,15 @@ public class ObdProt extends ProtoHeader
                                 setNumCodes(Long.valueOf(msgPayload).intValue());
                                 // no break here ...
                             default:
+                                long dataRxTime = getRxTime();
                                 long updatePeriod =
                                     dataItems.updateDataItems(msgService,
                                                             msgPid,
                                                             hexToBytes(String.valueOf(
-                                                                    getPayLoad(buffer))));
+                                                                    getPayLoad(buffer))),
+                                                            dataRxTime,
+                                                            getRoundTripTime(dataRxTime));
+                                updatePeriod = getUpdatePeriod(msgPid, updatePeriod);
                                 /* Update expected request timestamp for PID */
                                 for( ObdPid pid : pidSupported)
                                 {
@@ -677,11 +940,19 @@ public class ObdProt extends ProtoHeader
                                 break;
 
                             default:
+                                long dataRxTime = getRxTime();
                                 long updatePeriod =
                                     dataItems.updateDataItems(msgService,
                                                                 msgPid,
                                                                 hexToBytes(String.valueOf(
-                                                                        getPayLoad(buffer))));
+                                                                        getPayLoad(buffer))),
+                                                                dataRxTime,
+                                                                getRoundTripTime(dataRxTime));
+                                if (msgService == OBD_SVC_VEH_INFO && msgPid == PID_VIN)
+                                {
+                                    notifyVehicleIdentification();
+                                }
+                                updatePeriod = getUpdatePeriod(msgPid, updatePeriod);
                                 /* Update expected request timestamp for PID */
                                 for( ObdPid pid : pidSupported)
                                 {
@@ -772,6 +1043,7 @@ public class ObdProt extends ProtoHeader
     {
         // remember last sent message
         lastTxMsg = new String(buffer);
+        txTime = System.nanoTime();
         super.sendTelegram(buffer);
     }
 
@@ -820,10 +1092,74 @@ public class ObdProt extends ProtoHeader
         pidSupported.clear();
         // reset fixed PIDs
         resetFixedPid();
+        invalidateSubscribedPids();
         // Clear data items
         PidPvs.clear();
         tCodes.clear();
         VidPvs.clear();
+        releaseDataPvs(OBD_SVC_DATA);
+        releaseDataPvs(OBD_SVC_VEH_INFO);
+        pvService = OBD_SVC_NONE;
+    }
+
+    /**
+     * get list of process vars which is served by OBD service
+     * @param obdService OBD service
+     * @return list of process vars, or null if service has no data items
+     */
+    private static PvList getDataList(int obdService)
+    {
+        switch (obdService)
+        {
+            case OBD_SVC_DATA:
+            case OBD_SVC_FREEZEFRAME:
+                return PidPvs;
+
+            case OBD_SVC_VEH_INFO:
+            case OBD_SVC_CTRL_MODE:
+                return VidPvs;
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * release process vars of data items which are served by the same data list
+     * @param obdService OBD service to release process vars for
+     */
+    private void releaseDataPvs(int obdService)
+    {
+        switch (obdService)
+        {
+            case OBD_SVC_DATA:
+            case OBD_SVC_FREEZEFRAME:
+                dataItems.releasePvs(OBD_SVC_DATA);
+                dataItems.releasePvs(OBD_SVC_FREEZEFRAME);
+                break;
+
+            case OBD_SVC_VEH_INFO:
+            case OBD_SVC_CTRL_MODE:
+                dataItems.releasePvs(OBD_SVC_VEH_INFO);
+                dataItems.releasePvs(OBD_SVC_CTRL_MODE);
+                break;
+        }
+    }
+
+    /**
+     * release process vars of previous service if they are not
+     * served by the data list of the new service
+     * @param obdService new OBD service
+     */
+    private void releasePreviousDataPvs(int obdService)
+    {
+        PvList prevList = getDataList(pvService);
+        if (prevList != null && prevList != getDataList(obdService))
+        {
+            prevList.clear();
+            releaseDataPvs(pvService);
+            pvService = OBD_SVC_NONE;
+        }
     }
 
     /**
@@ -840,6 +1176,7 @@ public class ObdProt extends ProtoHeader
                 // Clear data items
                 pidSupported.clear();
                 PidPvs.clear();
+                releaseDataPvs(obdService);
                 break;
 
             case OBD_SVC_READ_CODES:
@@ -853,6 +1190,7 @@ public class ObdProt extends ProtoHeader
                 // Clear data items
                 pidSupported.clear();
                 VidPvs.clear();
+                releaseDataPvs(obdService);
                 break;
         }
     }
@@ -867,10 +1205,13 @@ public class ObdProt extends ProtoHeader
     {
         this.service = obdService;
         pidsWrapped = false;
+        // subscribed PIDs depend on service
+        invalidateSubscribedPids();
         // if lists shall be cleared
         if (clearLists)
         {
             // then do it
+            releasePreviousDataPvs(obdService);
             clearDataLists(obdService);
         }
 
@@ -886,8 +1227,18 @@ public class ObdProt extends ProtoHeader
             case OBD_SVC_CTRL_MODE:
             case OBD_SVC_VEH_INFO:
                 // read vehicle information
-                // request for PID/TID's supported
-                writeTelegram(emptyBuffer, obdService, 0);
+                long[] knownPids = getKnownPidBitmaps(obdService);
+                if (knownPids != null)
+                {
+                    // supported PIDs are known already, start with data requests
+                    applySupportedPids(obdService, knownPids);
+                    writeTelegram(emptyBuffer, obdService, getNextSupportedPid());
+                }
+                else
+                {
+                    // request for PID/TID's supported
+                    writeTelegram(emptyBuffer, obdService, 0);
+                }
                 break;
 
             case OBD_SVC_READ_CODES:
@@ -0,0 +1,114 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+/**
+ * Communication protocol to talk to a STN11xx/STN21xx (OBDLink) OBD interface
+ *
+ * STN adapters are ELM327 compatible, so the ELM protocol is used unless
+ * the STN firmware is detected (@see AdapterCapabilities#isStn).
+ * On STN adapters:
+ * - OBD requests carry the expected response count, so the adapter
+ *   returns without waiting for the message timeout. The short ELM request
+ *   format is used (e.g. 010C1), since STPX requests take longer to
+ *   transfer.
+ * - adapted timeouts are set with ATST only when they change. This timeout
+ *   stays active for all following requests, while the timeout of an STPX
+ *   request would only apply to this single request.
+ * - CAN monitoring uses STN pass filters for the selected ECU
+ *
+ * @author erwin
+ */
+public class StnProt
+	extends ElmProt
+{
+	/** STN commands */
+	static final String CMD_CLEAR_PASS_FILTERS = "STFCP";
+	static final String CMD_ADD_PASS_FILTER = "STFAP";
+	static final String CMD_MONITOR = "STM";
+	static final String CMD_MONITOR_ALL = "STMA";
+
+	/** max. 11 bit CAN identifier */
+	private static final int CAN_ID_11BIT_MAX = 0x7FF;
+	/** filter mask for 29 bit CAN identifiers */
+	private static final int CAN_ID_29BIT_MASK = 0x1FFFFFFF;
+
+	/**
+	 * Creates a new instance of StnProtocol
+	 */
+	public StnProt()
+	{
+	}
+
+	/**
+	 * Is STN command set available?
+	 *
+	 * @return true if connected adapter runs STN firmware
+	 */
+	public boolean isStnActive()
+	{
+		return getAdapterCapabilities().isStn();
+	}
+
+	/**
+	 * Setter for property service.
+	 * (CAN monitoring uses STN filters on STN adapters)
+	 *
+	 * @param service    New value of property service.
+	 * @param clearLists clear data list for this service
+	 */
+	@Override
+	public void setService(int service, boolean clearLists)
+	{
+		if (service == OBD_SVC_CAN_MONITOR
+		    && service != this.service
+		    && isStnActive())
+		{
+			log.info("OBD Service: " + this.service + "->" + service);
+			this.service = service;
+			startMonitor(getSelectedEcuAddress());
+		}
+		else
+		{
+			super.setService(service, clearLists);
+		}
+	}
+
+	/**
+	 * start CAN monitoring
+	 *
+	 * @param ecuAddress address of ECU to monitor, 0 to monitor all messages
+	 */
+	private void startMonitor(int ecuAddress)
+	{
+		if (ecuAddress == 0)
+		{
+			sendTelegram(CMD_MONITOR_ALL.toCharArray());
+			return;
+		}
+		// queue bottom is sent last, so any other command won't stop monitoring
+		cmdQueue.add(0, String.format("%s %X,%X",
+		                              CMD_ADD_PASS_FILTER,
+		                              ecuAddress,
+		                              ecuAddress > CAN_ID_11BIT_MAX ? CAN_ID_29BIT_MASK
+		                                                            : CAN_ID_11BIT_MAX));
+		cmdQueue.add(0, CMD_MONITOR);
+		sendTelegram(CMD_CLEAR_PASS_FILTERS.toCharArray());
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Discovery results of a vehicle connected via a specific adapter
+ *
+ * The profile holds everything which is learned during connection setup
+ * (protocol, ECU addresses, supported PIDs, timeout),
+ * so a reconnect to the same vehicle may skip the discovery sequence.
+ * (@see VehicleProfileCache)
+ *
+ * @author erwin
+ */
+public class VehicleProfile
+{
+	/** property keys */
+	static final String KEY_ADAPTER = "adapter";
+	static final String KEY_VIN = "vin";
+	static final String KEY_PROTOCOL = "protocol";
+	static final String KEY_ECUS = "ecus";
+	static final String KEY_PIDS = "pids.";
+	static final String KEY_TIMEOUT = "timeout";
+
+	/** key of adapter the vehicle is connected with */
+	private final String adapterKey;
+	/** vehicle identification number (null = unknown) */
+	private String vin = null;
+	/** ELM protocol number (0 = unknown) */
+	private int protocol = 0;
+	/** addresses of detected ECUs */
+	private final TreeSet<Integer> ecuAddresses = new TreeSet<>();
+	/** supported PID bitmasks by service and start PID */
+	private final TreeMap<Integer, TreeMap<Integer, Long>> pidBitmaps = new TreeMap<>();
+	/** learned message timeout [ms] (0 = unknown) */
+	private int timeout = 0;
+
+	/**
+	 * Create empty vehicle profile
+	 *
+	 * @param adapterKey key of adapter the vehicle is connected with
+	 */
+	public VehicleProfile(String adapterKey)
+	{
+		this.adapterKey = adapterKey;
+	}
+
+	public String getAdapterKey()
+	{
+		return adapterKey;
+	}
+
+	public synchronized String getVin()
+	{
+		return vin;
+	}
+
+	public synchronized void setVin(String vin)
+	{
+		this.vin = vin;
+	}
+
+	public synchronized int getProtocol()
+	{
+		return protocol;
+	}
+
+	public synchronized void setProtocol(int protocol)
+	{
+		this.protocol = protocol;
+	}
+
+	public synchronized Set<Integer> getEcuAddresses()
+	{
+		return Collections.unmodifiableSet(new TreeSet<>(ecuAddresses));
+	}
+
+	public synchronized void setEcuAddresses(Set<Integer> addresses)
+	{
+		ecuAddresses.clear();
+		ecuAddresses.addAll(addresses);
+	}
+
+	public synchronized int getTimeout()
+	{
+		return timeout;
+	}
+
+	public synchronized void setTimeout(int timeout)
+	{
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Set supported PID bitmask of a PID block
+	 *
+	 * @param service OBD service
+	 * @param start   start PID of block (multiple of 0x20)
+	 * @param bitmask 32-Bit bitmask of supported PIDs
+	 */
+	public synchronized void setPidBitmap(int service, int start, long bitmask)
+	{
+		TreeMap<Integer, Long> blocks = pidBitmaps.get(service);
+		if (blocks == null || start == 0)
+		{
+			// initial block starts a new sequence
+			blocks = new TreeMap<>();
+			pidBitmaps.put(service, blocks);
+		}
+		blocks.put(start, bitmask);
+	}
+
+	/**
+	 * get supported PID bitmasks of a service
+	 *
+	 * @param service OBD service
+	 * @return bitmasks of all PID blocks (starting with PID 0x00),
+	 *         or null if sequence of blocks is not complete
+	 */
+	public synchronized long[] getPidBitmaps(int service)
+	{
+		TreeMap<Integer, Long> blocks = pidBitmaps.get(service);
+		if (blocks == null) return null;
+
+		long[] result = new long[blocks.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Long> block : blocks.entrySet())
+		{
+			// blocks must be contiguous
+			if (block.getKey() != i * 0x20) return null;
+			result[i++] = block.getValue();
+		}
+		// last block must not indicate further blocks
+		return (result.length > 0 && (result[result.length - 1] & 1) == 0) ? result : null;
+	}
+
+	/**
+	 * Does profile match detected vehicle?
+	 *
+	 * @param addresses detected ECU addresses
+	 * @param protocol  detected protocol (0 = unknown)
+	 * @return true if profile is consistent with detection results
+	 */
+	public synchronized boolean matches(Set<Integer> addresses, int protocol)
+	{
+		return ecuAddresses.equals(addresses)
+		       && (protocol == 0 || this.protocol == 0 || protocol == this.protocol);
+	}
+
+	/**
+	 * get profile as properties
+	 *
+	 * @return properties of profile
+	 */
+	public synchronized Properties toProperties()
+	{
+		Properties result = new Properties();
+		result.setProperty(KEY_ADAPTER, adapterKey);
+		if (vin != null) result.setProperty(KEY_VIN, vin);
+		result.setProperty(KEY_PROTOCOL, Integer.toString(protocol));
+		result.setProperty(KEY_TIMEOUT, Integer.toString(timeout));
+		StringBuilder ecus = new StringBuilder();
+		for (Integer address : ecuAddresses)
+		{
+			if (ecus.length() > 0) ecus.append(',');
+			ecus.append(Integer.toHexString(address));
+		}
+		result.setProperty(KEY_ECUS, ecus.toString());
+		for (Integer service : pidBitmaps.keySet())
+		{
+			long[] bitmaps = getPidBitmaps(service);
+			if (bitmaps == null) continue;
+			StringBuilder pids = new StringBuilder();
+			for (long bitmap : bitmaps)
+			{
+				if (pids.length() > 0) pids.append(',');
+				pids.append(String.format("%08X", bitmap));
+			}
+			result.setProperty(String.format("%s%02X", KEY_PIDS, service), pids.toString());
+		}
+		return result;
+	}
+
+	/**
+	 * create profile from properties
+	 *
+	 * @param props properties of profile
+	 * @return vehicle profile
+	 * @throws NumberFormatException on invalid numeric content
+	 */
+	public static VehicleProfile fromProperties(Properties props)
+	{
+		VehicleProfile result = new VehicleProfile(props.getProperty(KEY_ADAPTER, ""));
+		result.vin = props.getProperty(KEY_VIN);
+		result.protocol = Integer.parseInt(props.getProperty(KEY_PROTOCOL, "0"));
+		result.timeout = Integer.parseInt(props.getProperty(KEY_TIMEOUT, "0"));
+		for (String address : props.getProperty(KEY_ECUS, "").split(","))
+		{
+			if (!address.isEmpty()) result.ecuAddresses.add(Integer.parseInt(address, 16));
+		}
+		for (String key : props.stringPropertyNames())
+		{
+			if (!key.startsWith(KEY_PIDS)) continue;
+			int service = Integer.parseInt(key.substring(KEY_PIDS.length()), 16);
+			String[] bitmaps = props.getProperty(key).split(",");
+			for (int i = 0; i < bitmaps.length; i++)
+			{
+				result.setPidBitmap(service, i * 0x20, Long.parseLong(bitmaps[i], 16));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("%s: VIN=%s, protocol=%d, ECUs=%s", adapterKey, vin, protocol, ecuAddresses);
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.ecu.prot.obd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of vehicle profiles by adapter key
+ * and adapter capabilities by firmware ID
+ *
+ * Each entry is stored as a properties file within the cache directory.
+ * Caching is disabled until a cache directory is set.
+ *
+ * @author erwin
+ */
+public class VehicleProfileCache
+{
+	/** file name prefix of profile files */
+	static final String PREFIX = "vehicle-";
+	/** file name prefix of capability files */
+	static final String PREFIX_ADAPTER = "adapter-";
+	static final String SUFFIX = ".properties";
+
+	/** the logger */
+	private static final Logger log = Logger.getLogger("data.cache");
+
+	/** cache directory, null = caching disabled */
+	private static File cacheDir = null;
+
+	/**
+	 * Set cache directory
+	 *
+	 * @param dir directory to store profiles, null to disable caching
+	 */
+	public static synchronized void setCacheDir(File dir)
+	{
+		cacheDir = dir;
+	}
+
+	/**
+	 * get cache file for key
+	 *
+	 * @param prefix file name prefix
+	 * @param key    key of cache entry
+	 * @return cache file, or null if caching is disabled
+	 */
+	private static synchronized File getFile(String prefix, String key)
+	{
+		if (cacheDir == null || key == null) return null;
+		CRC32 crc = new CRC32();
+		crc.update(key.getBytes());
+		return new File(cacheDir, prefix + Long.toHexString(crc.getValue()) + SUFFIX);
+	}
+
+	/**
+	 * load properties from cache file
+	 *
+	 * @param file cache file
+	 * @return loaded properties, or null if file is not available
+	 */
+	private static Properties load(File file)
+	{
+		if (file == null || !file.exists()) return null;
+
+		Properties props = new Properties();
+		try (InputStream in = new FileInputStream(file))
+		{
+			props.load(in);
+			return props;
+		}
+		catch (IOException | RuntimeException ex)
+		{
+			log.warning("Cache entry invalid: " + file + " " + ex);
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * store properties to cache file
+	 *
+	 * @param file  cache file
+	 * @param props properties to be stored
+	 * @return true if stored successfully
+	 */
+	private static boolean store(File file, Properties props)
+	{
+		// write to temporary file and rename to avoid partial entries
+		File tmpFile = new File(file.getPath() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmpFile))
+		{
+			props.store(out, "AndrOBD cache entry");
+		}
+		catch (IOException ex)
+		{
+			log.warning("Cache entry not stored: " + file + " " + ex);
+			tmpFile.delete();
+			return false;
+		}
+		file.delete();
+		if (tmpFile.renameTo(file))
+		{
+			return true;
+		}
+		tmpFile.delete();
+		return false;
+	}
+
+	/**
+	 * get cached profile of adapter
+	 *
+	 * @param adapterKey key of adapter
+	 * @return cached profile, or null if no valid profile is available
+	 */
+	public static VehicleProfile get(String adapterKey)
+	{
+		File file = getFile(PREFIX, adapterKey);
+		Properties props = load(file);
+		if (props == null) return null;
+
+		try
+		{
+			VehicleProfile result = VehicleProfile.fromProperties(props);
+			// different adapter with same hash value
+			if (!adapterKey.equals(result.getAdapterKey())) return null;
+			log.fine("Vehicle profile loaded: " + result);
+			return result;
+		}
+		catch (RuntimeException ex)
+		{
+			log.warning("Vehicle profile invalid: " + file + " " + ex);
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * store profile in cache
+	 *
+	 * @param profile profile to be stored
+	 */
+	public static void put(VehicleProfile profile)
+	{
+		File file = getFile(PREFIX, profile.getAdapterKey());
+		if (file != null && store(file, profile.toProperties()))
+		{
+			log.fine("Vehicle profile stored: " + profile);
+		}
+	}
+
+	/**
+	 * remove profile of adapter from cache
+	 *
+	 * @param adapterKey key of adapter
+	 */
+	public static void remove(String adapterKey)
+	{
+		File file = getFile(PREFIX, adapterKey);
+		if (file != null && file.delete())
+		{
+			log.fine("Vehicle profile removed: " + adapterKey);
+		}
+	}
+
+	/**
+	 * get cached capabilities of adapter firmware
+	 *
+	 * @param firmware firmware ID of adapter
+	 * @return cached capabilities, or null if firmware is not known yet
+	 */
+	public static AdapterCapabilities getCapabilities(String firmware)
+	{
+		Properties props = load(getFile(PREFIX_ADAPTER, firmware));
+		if (props == null) return null;
+		AdapterCapabilities result = AdapterCapabilities.fromProperties(props);
+		// different firmware with same hash value
+		if (!firmware.equals(result.getFirmware())) return null;
+		log.fine("Adapter capabilities loaded: " + result);
+		return result;
+	}
+
+	/**
+	 * store capabilities of adapter firmware in cache
+	 *
+	 * @param capabilities capabilities to be stored
+	 */
+	public static void putCapabilities(AdapterCapabilities capabilities)
+	{
+		File file = getFile(PREFIX_ADAPTER, capabilities.getFirmware());
+		if (file != null && store(file, capabilities.toProperties()))
+		{
+			log.fine("Adapter capabilities stored: " + capabilities);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.prot;
+
+import java.io.IOException;
+
+/**
+ * SerialLine
+ * Interface to raw serial line with switchable baud rate
+ * (used before protocol handling is started, e.g. to negotiate the baud rate)
+ */
+public interface SerialLine
+{
+	/**
+	 * get current baud rate of local port
+	 *
+	 * @return baud rate [bps]
+	 */
+	int getBaudRate();
+
+	/**
+	 * switch baud rate of local port
+	 *
+	 * @param baudRate new baud rate [bps]
+	 * @throws IOException if baud rate can't be set
+	 */
+	void setBaudRate(int baudRate) throws IOException;
+
+	/**
+	 * write data to serial line
+	 *
+	 * @param data data to be written
+	 * @throws IOException on write error
+	 */
+	void write(byte[] data) throws IOException;
+
+	/**
+	 * read available data from serial line
+	 *
+	 * @param buffer  buffer to receive data
+	 * @param timeout max. time to wait for data [ms]
+	 * @return number of bytes read, 0 on timeout
+	 * @throws IOException on read error
+	 */
+	int read(byte[] buffer, int timeout) throws IOException;
+}
@@ -44,6 +44,10 @@ public class StreamHandler implements TelegramWriter, Runnable
 	private TelegramListener messageHandler;
 	// current receive message
 	private String message = "";
+	// monotonic receive time of current message [ns]
+	private long rxTime = 0;
+	// monotonic transmit time of last message [ns]
+	private volatile long txTime = 0;
 	
 	public StreamHandler()
 	{
@@ -107,6 +111,7 @@ public class StreamHandler implements TelegramWriter, Runnable
 					
 					out.write(msg.toCharArray());
 					out.flush();
+					txTime = System.nanoTime();
 				}
 				catch (Exception ex)
 				{
@@ -139,6 +144,8 @@ public class StreamHandler implements TelegramWriter, Runnable
 			
 			// trigger message handling for new request
 			case '>':
+				if (message.isEmpty())
+				{ rxTime = System.nanoTime(); }
 				message += (char) chr;
 				// trigger message handling
 			case 10:
@@ -146,7 +153,7 @@ public class StreamHandler implements TelegramWriter, Runnable
 				try
 				{
 					if (messageHandler != null && !message.isEmpty())
-					{ messageHandler.handleTelegram(message.toCharArray()); }
+					{ messageHandler.handleTelegram(message.toCharArray(), rxTime, txTime); }
 				}
 				catch (Exception ex)
 				{
@@ -156,6 +163,9 @@ public class StreamHandler implements TelegramWriter, Runnable
 				break;
 			
 			default:
+				// first character stamps receive time of message
+				if (message.isEmpty())
+				{ rxTime = System.nanoTime(); }
 				message += (char) chr;
 		}
 	}
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2015 by fr3ts0n <erwin.scheuch-heilig@gmx.at>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston,
+ * MA 02111-1307 USA
+ */
+
+package com.fr3ts0n.prot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serial line on top of input/output streams of a serial device
+ * (e.g. a tty device file)
+ *
+ * Reading with timeout relies on available() of the input stream.
+ * Switching the baud rate is device specific and has to be implemented
+ * by subclasses.
+ *
+ * @author erwin
+ */
+public abstract class StreamSerialLine
+	implements SerialLine
+{
+	/** poll interval while waiting for data [ms] */
+	private static final int POLL_INTERVAL = 1;
+
+	private final InputStream in;
+	private final OutputStream out;
+	/** current baud rate */
+	protected int baudRate;
+
+	/**
+	 * Create serial line on streams of serial device
+	 *
+	 * @param in       input stream of device
+	 * @param out      output stream of device
+	 * @param baudRate current baud rate of device
+	 */
+	protected StreamSerialLine(InputStream in, OutputStream out, int baudRate)
+	{
+		this.in = in;
+		this.out = out;
+		this.baudRate = baudRate;
+	}
+
+	@Override
+	public int getBaudRate()
+	{
+		return baudRate;
+	}
+
+	@Override
+	public void write(byte[] data) throws IOException
+	{
+		out.write(data);
+		out.flush();
+	}
+
+	@Override
+	public int read(byte[] buffer, int timeout) throws IOException
+	{
+		long end = System.currentTimeMillis() + timeout;
+		int available;
+		while ((available = in.available()) <= 0)
+		{
+			if (System.currentTimeMillis() >= end)
+			{
+				return 0;
+			}
+			try
+			{
+				Thread.sleep(POLL_INTERVAL);
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return 0;
+			}
+		}
+		return in.read(buffer, 0, Math.min(available, buffer.length));
+	}
+}
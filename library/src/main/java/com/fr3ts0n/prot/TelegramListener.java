@@ -33,4 +33,18 @@ public interface TelegramListener extends EventListener
 	 * @return number of listeners notified
 	 */
 	int handleTelegram(char[] buffer);
+
+	/**
+	 * handle incoming protocol telegram with transport timestamps
+	 * (default implementation ignores timestamps)
+	 *
+	 * @param buffer - telegram buffer
+	 * @param rxTime - monotonic receive time of telegram [ns] (@see System#nanoTime)
+	 * @param txTime - monotonic transmit time of last request [ns], 0 = unknown
+	 * @return number of listeners notified
+	 */
+	default int handleTelegram(char[] buffer, long rxTime, long txTime)
+	{
+		return handleTelegram(buffer);
+	}
 }
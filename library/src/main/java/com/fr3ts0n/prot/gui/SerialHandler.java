@@ -18,7 +18,9 @@
 
 package com.fr3ts0n.prot.gui;
 
+import com.fr3ts0n.ecu.prot.obd.BaudRateNegotiator;
 import com.fr3ts0n.prot.SerialExt;
+import com.fr3ts0n.prot.StreamSerialLine;
 import com.fr3ts0n.prot.TelegramListener;
 import com.fr3ts0n.prot.TelegramWriter;
 
@@ -26,6 +28,8 @@ import java.awt.Color;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Field;
@@ -46,6 +50,8 @@ public class SerialHandler extends Thread
 	private ProtStatus protStat = ProtStatus.UNKNOWN;
 	/** file descriptor of serial device */
 	private long serialDeviceDescriptor = -1;
+	/** monotonic transmit time of last message [ns] */
+	private volatile long txTime = 0;
 	// the logger object
 	static Logger log = Logger.getLogger("com.fr3ts0n.prot.ser");
 
@@ -191,6 +197,34 @@ public class SerialHandler extends Thread
 		SerialExt.serialPortDescriptor = (int) serialDeviceDescriptor;
 	}
 
+	/**
+	 * negotiate highest possible baud rate with ELM327/STN adapter
+	 * (needs to be done before the handler thread is started)
+	 *
+	 * @param maxBaudRate max. baud rate to be used
+	 * @return baud rate after negotiation
+	 * @throws IOException on communication error
+	 */
+	public int negotiateBaudRate(int maxBaudRate)
+		throws IOException
+	{
+		StreamSerialLine line = new StreamSerialLine(new FileInputStream(wrtr.getFD()),
+		                                             new FileOutputStream(wrtr.getFD()),
+		                                             SerialExt.getCustomBaudrate())
+		{
+			@Override
+			public void setBaudRate(int baudRate) throws IOException
+			{
+				SerialExt.setCustomBaudrate(baudRate);
+				this.baudRate = baudRate;
+			}
+		};
+		BaudRateNegotiator negotiator = new BaudRateNegotiator(line);
+		int result = negotiator.negotiate(maxBaudRate);
+		negotiator.measureThroughput(BaudRateNegotiator.THROUGHPUT_ROUNDS);
+		return result;
+	}
+
 	/**
 	 * get the numeric system file descriptor/handle
 	 *
@@ -233,10 +267,14 @@ public class SerialHandler extends Thread
 	public void run()
 	{
 		int chr;
+		long rxTime = 0;
 		try
 		{
 			while ((chr = rdr.read()) >= 0)
 			{
+				// first character stamps receive time of message
+				if (message.isEmpty())
+					rxTime = System.nanoTime();
 				switch (chr)
 				{
 					// ignore special characters
@@ -250,7 +288,7 @@ public class SerialHandler extends Thread
 						// trigger message handling
 					case 10:
 						if (messageHandler != null)
-							messageHandler.handleTelegram(message.toCharArray());
+							messageHandler.handleTelegram(message.toCharArray(), rxTime, txTime);
 						message = "";
 						break;
 
@@ -291,6 +329,7 @@ public class SerialHandler extends Thread
 			String msg = new String(buffer);
 			msg += "\n";
 			wrtr.write(msg.getBytes());
+			txTime = System.nanoTime();
 			result = buffer.length;
 		} catch (Exception ex)
 		{
@@ -56,6 +56,26 @@ public abstract class IndexedProcessVar extends ProcessVar
 		put(getFields()[fieldID], newValue);
 	}
 
+	/** indexed put for specified field id with specified change action */
+	public void put(int fieldID, Object newValue, int action)
+	{
+		put(getFields()[fieldID], newValue, action);
+	}
+
+	/**
+	 * indexed put for specified field id with time of acquisition
+	 *
+	 * @param fieldID       field id
+	 * @param newValue      new value of field
+	 * @param action        type of action event @see PvChangeEvent
+	 * @param nanoTime      monotonic time of acquisition [ns] (@see System#nanoTime), 0 = now
+	 * @param roundTripTime round trip time of request which delivered the value [ns], 0 = unknown
+	 */
+	public void put(int fieldID, Object newValue, int action, long nanoTime, long roundTripTime)
+	{
+		put(getFields()[fieldID], newValue, action, nanoTime, roundTripTime);
+	}
+
 	/**
 	 * get attribute of selected key
 	 * overridden method to allow synchronized access
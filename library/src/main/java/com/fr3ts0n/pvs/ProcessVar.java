@@ -145,10 +145,15 @@ public class ProcessVar
 	public synchronized void pvChanged(PvChangeEvent event)
 	{
 		log.finer(toString() + ":Child PvChange:" + event.toString());
-		firePvChanged(new PvChangeEvent(this,
+		PvChangeEvent childEvent = new PvChangeEvent(this,
 			((ProcessVar) event.getSource()).getKeyValue(),
 			event.getSource(),
-			event.getType() | PvChangeEvent.PV_CHILDCHANGE));
+			event.getType() | PvChangeEvent.PV_CHILDCHANGE);
+		// keep time of original change
+		childEvent.setNanoTime(event.getNanoTime());
+		childEvent.setTime(event.getTime());
+		childEvent.setRoundTripTime(event.getRoundTripTime());
+		firePvChanged(childEvent);
 	}
 
 	/** return String representation */
@@ -167,8 +172,25 @@ public class ProcessVar
 	 * @param action type of action event @see PvChangeEvent
 	 * @return previous value of attribute
 	 */
-	@SuppressWarnings("unchecked")
 	public synchronized Object put(Object key, Object value, int action)
+	{
+		return put(key, value, action, 0, 0);
+	}
+
+	/**
+	 * set attribute of selected key to selected value with time of acquisition
+	 * overridden method to allow notification of process var changes
+	 *
+	 * @param key           key of attribute
+	 * @param value         value of attribute
+	 * @param action        type of action event @see PvChangeEvent
+	 * @param nanoTime      monotonic time of acquisition [ns] (@see System#nanoTime), 0 = now
+	 * @param roundTripTime round trip time of request which delivered the value [ns], 0 = unknown
+	 * @return previous value of attribute
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized Object put(Object key, Object value, int action,
+	                               long nanoTime, long roundTripTime)
 	{
 		Object oldvalue;
 
@@ -221,7 +243,13 @@ public class ProcessVar
 			}
 		}
 
-		firePvChanged(new PvChangeEvent(this, key, value, action));
+		PvChangeEvent event = new PvChangeEvent(this, key, value, action);
+		if (nanoTime != 0)
+		{
+			event.setNanoTime(nanoTime);
+		}
+		event.setRoundTripTime(roundTripTime);
+		firePvChanged(event);
 
 		// .. and return
 		return (oldvalue);
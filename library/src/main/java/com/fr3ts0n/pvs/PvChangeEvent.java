@@ -48,6 +48,14 @@ public class PvChangeEvent extends EventObject
 	private Object key = ProcessVar.DEF_KEYNAME;
 	private Object value = ProcessVar.DEF_KEYNAME;
 	private long time = System.currentTimeMillis();
+	/** monotonic time of change [ns] (@see System#nanoTime) */
+	private long nanoTime = System.nanoTime();
+	/** round trip time of request which delivered the change [ns], 0 = unknown */
+	private long roundTripTime = 0;
+
+	/** reference point to convert monotonic times into wall clock times */
+	private static final long NANO_BASE = System.nanoTime();
+	private static final long MILLIS_BASE = System.currentTimeMillis();
 
 	public PvChangeEvent(Object source, Object Key, Object Value, int Type)
 	{
@@ -108,4 +116,53 @@ public class PvChangeEvent extends EventObject
 	{
 		this.time = time;
 	}
+
+	public long getNanoTime()
+	{
+		return nanoTime;
+	}
+
+	/**
+	 * set monotonic time of change
+	 * (wall clock time of change is adjusted accordingly)
+	 *
+	 * @param nanoTime monotonic time of change [ns] (@see System#nanoTime)
+	 */
+	public void setNanoTime(long nanoTime)
+	{
+		this.nanoTime = nanoTime;
+		this.time = toMillis(nanoTime);
+	}
+
+	public long getRoundTripTime()
+	{
+		return roundTripTime;
+	}
+
+	public void setRoundTripTime(long roundTripTime)
+	{
+		this.roundTripTime = roundTripTime;
+	}
+
+	/**
+	 * convert monotonic time into wall clock time
+	 *
+	 * @param nanoTime monotonic time [ns] (@see System#nanoTime)
+	 * @return wall clock time [ms] (@see System#currentTimeMillis)
+	 */
+	public static long toMillis(long nanoTime)
+	{
+		return MILLIS_BASE + (nanoTime - NANO_BASE) / 1000000;
+	}
+
+	/**
+	 * convert monotonic time into wall clock time with microsecond resolution
+	 *
+	 * @param nanoTime monotonic time [ns] (@see System#nanoTime)
+	 * @return wall clock time [us since epoch]
+	 */
+	public static long toMicros(long nanoTime)
+	{
+		return MILLIS_BASE * 1000 + (nanoTime - NANO_BASE) / 1000;
+	}
 }
@@ -0,0 +1,75 @@
+package com.fr3ts0n.common;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Micro benchmark for resource loading
+ * - properties resource bundles
+ * - binary resource database
+ * Both variants load the code bundle and switch through several locales.
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class ResourceDbBenchmark
+{
+	static final String CODES = "com.fr3ts0n.ecu.prot.obd.res.codes";
+	static final Locale[] LOCALES = {Locale.ENGLISH, Locale.GERMAN, Locale.FRENCH, new Locale("pt", "BR")};
+	static final int ROUNDS = 10;
+
+	@Test
+	void loadCost() throws Exception
+	{
+		File srcRoot = new File(ResourceDbBenchmark.class.getResource("/com/fr3ts0n/ecu/prot/obd/res/codes.properties").toURI());
+		for (int i = 0; i < 7; i++) srcRoot = srcRoot.getParentFile();
+		ResourceDbCompiler compiler = new ResourceDbCompiler();
+		compiler.addBundle(srcRoot, CODES);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compiler.write(out);
+		byte[] dbContent = out.toByteArray();
+
+		long bundles = 0, db = 0;
+		// warm up + measure
+		for (int run = 0; run < 3; run++)
+		{
+			long start = System.nanoTime();
+			int found = 0;
+			for (int r = 0; r < ROUNDS; r++)
+			{
+				ResourceBundle.clearCache();
+				for (Locale locale : LOCALES)
+				{
+					found += ResourceBundle.getBundle(CODES, locale, new UTF8Control()).getString("P0001").length();
+				}
+			}
+			bundles = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int foundDb = 0;
+			for (int r = 0; r < ROUNDS; r++)
+			{
+				ResourceDb resDb = ResourceDb.read(new ByteArrayInputStream(dbContent));
+				for (Locale locale : LOCALES)
+				{
+					foundDb += resDb.getBundle(CODES, locale).getString("P0001").length();
+				}
+			}
+			db = System.nanoTime() - start;
+
+			assertEquals(found, foundDb);
+		}
+		System.out.printf("Load %d locales: ResourceBundle %.2f ms, resource database %.2f ms%n",
+		                  LOCALES.length,
+		                  (double) bundles / ROUNDS / 1e6,
+		                  (double) db / ROUNDS / 1e6);
+	}
+}
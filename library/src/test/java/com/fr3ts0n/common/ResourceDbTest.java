@@ -0,0 +1,116 @@
+package com.fr3ts0n.common;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for binary resource database
+ * - database content matches properties resource bundles
+ * - database is read with known, unknown and wrong stream length
+ */
+class ResourceDbTest
+{
+	static final String CODES = "com.fr3ts0n.ecu.prot.obd.res.codes";
+	static final String MESSAGES = "com.fr3ts0n.ecu.prot.obd.res.messages";
+	static final Locale[] LOCALES =
+		{
+			Locale.ROOT,
+			Locale.GERMAN,
+			Locale.FRENCH,
+			new Locale("pt", "BR"),
+			new Locale("es", "US"),
+			new Locale("ru"),
+		};
+
+	static byte[] content;
+	static ResourceDb db;
+
+	@BeforeAll
+	static void compile() throws IOException, URISyntaxException
+	{
+		// source root is 6 levels above resource directory
+		File srcRoot = new File(ResourceDbTest.class.getResource("/com/fr3ts0n/ecu/prot/obd/res/codes.properties").toURI());
+		for (int i = 0; i < 7; i++) srcRoot = srcRoot.getParentFile();
+
+		ResourceDbCompiler compiler = new ResourceDbCompiler();
+		compiler.addBundle(srcRoot, CODES);
+		compiler.addBundle(srcRoot, MESSAGES);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		compiler.write(out);
+		content = out.toByteArray();
+		db = ResourceDb.read(new ByteArrayInputStream(content));
+	}
+
+	/**
+	 * Compare all keys and values with ResourceBundle for all test locales
+	 */
+	@Test
+	void matchesResourceBundles()
+	{
+		for (String bundleName : new String[]{CODES, MESSAGES})
+		{
+			assertTrue(db.contains(bundleName));
+			for (Locale locale : LOCALES)
+			{
+				ResourceBundle expected = ResourceBundle.getBundle(bundleName, locale, new UTF8Control());
+				ResourceBundle actual = db.getBundle(bundleName, locale);
+				assertEquals(expected.keySet(), actual.keySet(), bundleName + "/" + locale);
+				for (String key : expected.keySet())
+				{
+					assertEquals(expected.getString(key), actual.getString(key), bundleName + "/" + locale + ":" + key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test fallback to parent locale and unknown entries
+	 */
+	@Test
+	void fallback()
+	{
+		ResourceBundle german = db.getBundle(CODES, new Locale("de", "AT"));
+		assertEquals("Kraftstoffmengenregulierung Kontrollschaltkreis offen", german.getString("P0001"));
+		assertThrows(java.util.MissingResourceException.class, () -> german.getString("X9999"));
+		assertFalse(db.contains("com.fr3ts0n.unknown"));
+		assertNull(db.getBundle("com.fr3ts0n.unknown", Locale.ROOT));
+	}
+
+	/**
+	 * Test rejection of invalid database content
+	 */
+	@Test
+	void invalidContent()
+	{
+		assertThrows(IOException.class, () -> new ResourceDb(ByteBuffer.wrap(new byte[16])));
+	}
+
+	/**
+	 * Test reading database with known and wrong stream length
+	 */
+	@Test
+	void readWithLength() throws IOException
+	{
+		for (long length : new long[]{content.length, -1, 0, content.length / 3})
+		{
+			ResourceDb read = ResourceDb.read(new ByteArrayInputStream(content), length);
+			assertEquals(db.getBundle(CODES, Locale.GERMAN).getString("P0001"),
+			             read.getBundle(CODES, Locale.GERMAN).getString("P0001"), "length " + length);
+		}
+	}
+}
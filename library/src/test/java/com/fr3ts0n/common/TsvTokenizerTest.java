@@ -0,0 +1,48 @@
+package com.fr3ts0n.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test class for tab separated CSV tokenizer
+ */
+class TsvTokenizerTest
+{
+	/**
+	 * Test tokenizing matches quote removal and split of lines
+	 */
+	@Test
+	void next()
+	{
+		String content = "a\t\"b\"\tc\r\n\n\td\t\t\n\"\"\t\t\nlast";
+		TsvTokenizer tokenizer = new TsvTokenizer(content);
+		assertArrayEquals("a\tb\tc".split("\t"), tokenizer.next());
+		assertEquals(1, tokenizer.getLineNumber());
+		assertArrayEquals("\td\t\t".split("\t"), tokenizer.next());
+		assertEquals(3, tokenizer.getLineNumber());
+		assertArrayEquals(new String[]{"last"}, tokenizer.next());
+		assertNull(tokenizer.next());
+	}
+
+	/**
+	 * Test parsing of numeric fields
+	 */
+	@Test
+	void parse()
+	{
+		assertEquals(15000, TsvTokenizer.parseLong("15000", 0));
+		assertEquals(0x7F, TsvTokenizer.parseInt("0x7F", 0));
+		assertEquals(-12, TsvTokenizer.parseInt("-12", 0));
+		assertEquals(3, TsvTokenizer.parseInt("", 3));
+		assertEquals(3, TsvTokenizer.parseInt("0x", 3));
+		assertEquals(3, TsvTokenizer.parseInt("1a", 3));
+		assertEquals(-40.5f, TsvTokenizer.parseFloat("-40.5"));
+		assertEquals(1e3f, TsvTokenizer.parseFloat("1e3"));
+		assertNull(TsvTokenizer.parseFloat(""));
+		assertNull(TsvTokenizer.parseFloat("n/a"));
+		assertNull(TsvTokenizer.parseFloat("1.2.3"));
+	}
+}
@@ -0,0 +1,110 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for CSV export of multiple channels
+ */
+class CsvExporterTest
+{
+	/**
+	 * export fast channel (every 100 ms) and slow channel (every 250 ms)
+	 *
+	 * @param alignment alignment of values
+	 * @return exported CSV
+	 */
+	private static String export(Resampler.Alignment alignment) throws IOException
+	{
+		TimeSeriesBuffer fast = new TimeSeriesBuffer("fast");
+		TimeSeriesBuffer slow = new TimeSeriesBuffer("slow");
+		for (int i = 0; i <= 5; i++)
+		{
+			fast.add(i * 100L, i);
+		}
+		slow.add(50, 10);
+		slow.add(300, 20);
+
+		CsvExporter exporter = new CsvExporter();
+		exporter.addChannel(fast.getTitle(), fast.iterator());
+		exporter.addChannel(slow.getTitle(), slow.iterator());
+		exporter.setAlignment(alignment);
+		exporter.setFieldDelimiter(";");
+		StringWriter out = new StringWriter();
+		assertEquals(7, exporter.export(out, 0));
+		return out.toString();
+	}
+
+	/**
+	 * Test rows are created for samples of all channels, with aligned values
+	 */
+	@Test
+	void export_Alignment() throws IOException
+	{
+		assertEquals("Time;fast;slow\n"
+		             + "0;0;\n"
+		             + "50;0;10\n"
+		             + "100;1;10\n"
+		             + "200;2;10\n"
+		             + "300;3;20\n"
+		             + "400;4;20\n"
+		             + "500;5;20\n",
+		             export(Resampler.Alignment.SAMPLE_AND_HOLD));
+
+		assertEquals("Time;fast;slow\n"
+		             + "0;0;10\n"
+		             + "50;0;10\n"
+		             + "100;1;10\n"
+		             + "200;2;20\n"
+		             + "300;3;20\n"
+		             + "400;4;20\n"
+		             + "500;5;20\n",
+		             export(Resampler.Alignment.NEAREST));
+
+		assertEquals("Time;fast;slow\n"
+		             + "0;0;\n"
+		             + "50;0.5;10\n"
+		             + "100;1;12\n"
+		             + "200;2;16\n"
+		             + "300;3;20\n"
+		             + "400;4;\n"
+		             + "500;5;\n",
+		             export(Resampler.Alignment.INTERPOLATE));
+	}
+
+	/**
+	 * Test progress and cancellation of export
+	 */
+	@Test
+	void export_Cancel() throws IOException
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("series");
+		for (int i = 0; i < 10000; i++)
+		{
+			series.add(i, i);
+		}
+
+		final CsvExporter exporter = new CsvExporter();
+		exporter.addChannel(series.getTitle(), series.iterator());
+		// samples appended after start of export are not exported
+		series.add(20000, 0);
+		exporter.setProgressListener(progress ->
+		{
+			if (progress >= CsvExporter.PROGRESS_MAX / 2) exporter.cancel();
+		});
+		long rows = exporter.export(new StringWriter(), 9999);
+		assertTrue(exporter.isCancelled());
+		assertEquals(5000, rows, 1);
+
+		CsvExporter complete = new CsvExporter();
+		complete.addChannel(series.getTitle(), series.iterator());
+		assertEquals(10001, complete.export(new StringWriter(), 0));
+		assertFalse(complete.isCancelled());
+	}
+}
@@ -0,0 +1,106 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.Messages;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test class for binary snapshots of parsed CSV tables
+ */
+class CsvSnapshotCacheTest
+{
+	@TempDir
+	File cacheDir;
+
+	@AfterEach
+	void disableCache()
+	{
+		CsvSnapshotCache.setCacheDir(null, "");
+	}
+
+	/**
+	 * Test store and load of snapshot
+	 */
+	@Test
+	void storeAndLoad()
+	{
+		CsvSnapshotCache.setCacheDir(cacheDir, "1");
+		byte[] content = "h1\th2\na\tb\n\"c\"\t\td\n".getBytes();
+		long key = CsvSnapshotCache.getKey(content, "en");
+		assertNull(CsvSnapshotCache.load(key));
+
+		List<String[]> rows = EcuConversions.parseRows(new String(content));
+		assertEquals(2, rows.size());
+		assertArrayEquals(new String[]{"c", "", "d"}, rows.get(1));
+		CsvSnapshotCache.store(key, rows);
+
+		List<String[]> loaded = CsvSnapshotCache.load(key);
+		assertEquals(rows.size(), loaded.size());
+		for (int i = 0; i < rows.size(); i++)
+		{
+			assertArrayEquals(rows.get(i), loaded.get(i));
+		}
+		// other locale and application version result in other snapshots
+		assertNotEquals(key, CsvSnapshotCache.getKey(content, "de"));
+		CsvSnapshotCache.setCacheDir(cacheDir, "2");
+		assertNotEquals(key, CsvSnapshotCache.getKey(content, "en"));
+	}
+
+	/**
+	 * Test data items created from snapshot match items from CSV
+	 */
+	@Test
+	void dataItemsFromSnapshot()
+	{
+		EcuDataItems fromCsv = new EcuDataItems();
+		CsvSnapshotCache.setCacheDir(cacheDir, "1");
+		// first load stores snapshots, second load uses them
+		new EcuDataItems();
+		assertEquals(2, cacheDir.list().length, Arrays.toString(cacheDir.list()));
+		EcuDataItems fromSnapshot = new EcuDataItems();
+
+		for (int pid = 0; pid < 0x100; pid++)
+		{
+			EcuDataItem[] expected = fromCsv.getItems(0x01, pid);
+			EcuDataItem[] actual = fromSnapshot.getItems(0x01, pid);
+			assertEquals(expected.length, actual.length);
+			for (int i = 0; i < expected.length; i++)
+			{
+				assertEquals(expected[i].toString(), actual[i].toString());
+				assertEquals(expected[i].getPv().get(EcuDataPv.FID_DESCRIPT), actual[i].getPv().get(EcuDataPv.FID_DESCRIPT));
+			}
+		}
+	}
+
+	/**
+	 * Test data items translated with other message bundle use other snapshot
+	 */
+	@Test
+	void messageBundle()
+	{
+		CsvSnapshotCache.setCacheDir(cacheDir, "1");
+		byte[] content = "h1\th2\n".getBytes();
+		long key = EcuDataItems.getSnapshotKey(content);
+		try
+		{
+			Messages.init("com.fr3ts0n.ecu.prot.obd.res.codes");
+			assertNotEquals(key, EcuDataItems.getSnapshotKey(content));
+		}
+		finally
+		{
+			Messages.init("com.fr3ts0n.ecu.prot.obd.res.messages");
+		}
+		assertEquals(key, EcuDataItems.getSnapshotKey(content));
+	}
+}
@@ -0,0 +1,144 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.log.ChannelLog;
+import com.fr3ts0n.ecu.log.ChannelLogReader;
+import com.fr3ts0n.ecu.log.SegmentedLogWriter;
+import com.fr3ts0n.pvs.PvList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for background data recorder
+ */
+class DataRecorderTest
+{
+	static final EcuDataItems items = new EcuDataItems();
+
+	@TempDir
+	File dir;
+
+	/**
+	 * get list of data item process vars for PIDs 0x0C (RPM) and 0x0D (speed)
+	 */
+	private static PvList getPvs()
+	{
+		PvList result = new PvList();
+		for (int pid : new int[]{0x0C, 0x0D})
+		{
+			EcuDataPv pv = items.getPidDataItems(0x01, pid).get(0).getPv();
+			result.put(pv.toString(), pv);
+		}
+		return result;
+	}
+
+	/**
+	 * read all samples of recording
+	 *
+	 * @return samples by mnemonic, each sample as {time, value}
+	 */
+	private static Map<String, List<double[]>> read(File file) throws IOException
+	{
+		Map<String, List<double[]>> result = new HashMap<>();
+		for (File segment : SegmentedLogWriter.listSegments(file))
+		{
+			try (ChannelLogReader reader = new ChannelLogReader(segment))
+			{
+				for (ChannelLog.Channel channel : reader.getChannels().values())
+				{
+					List<double[]> samples = result.get(channel.mnemonic);
+					if (samples == null)
+					{
+						samples = new ArrayList<>();
+						result.put(channel.mnemonic, samples);
+					}
+					SampleIterator it = reader.iterator(channel.id);
+					while (it.next())
+					{
+						samples.add(new double[]{it.getTime(), it.getValue()});
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test every received value is recorded with its reception time
+	 */
+	@Test
+	void record_AllItems() throws IOException
+	{
+		File file = new File(dir, "all" + DataRecorder.EXTENSION);
+		DataRecorder recorder = new DataRecorder(file);
+		recorder.start(getPvs(), null);
+
+		long start = System.currentTimeMillis() * 1000;
+		for (int i = 1; i <= 100; i++)
+		{
+			items.updateDataItems(0x01, 0x0C, new char[]{(char) (i >> 2), (char) (i << 6 & 0xFF)});
+			items.updateDataItems(0x01, 0x0D, new char[]{(char) i});
+		}
+		// paused -> not recorded
+		recorder.setPaused(true);
+		items.updateDataItems(0x01, 0x0D, new char[]{0});
+		recorder.stop();
+		long end = System.currentTimeMillis() * 1000;
+		assertTrue(recorder.awaitStopped(5000));
+
+		assertEquals(200, recorder.getNumSamples());
+		Map<String, List<double[]>> samples = read(file);
+		assertEquals(2, samples.size());
+		List<double[]> rpm = samples.get("engine_speed");
+		List<double[]> speed = samples.get("vehicle_speed");
+		assertEquals(100, rpm.size());
+		assertEquals(100, speed.size());
+		for (int i = 0; i < 100; i++)
+		{
+			assertEquals((i + 1) * 16, rpm.get(i)[1], 0.001);
+			assertEquals(i + 1, speed.get(i)[1], 0.001);
+			assertTrue(rpm.get(i)[0] >= start - 1000 && rpm.get(i)[0] <= end + 1000);
+			assertTrue(speed.get(i)[0] >= rpm.get(i)[0]);
+		}
+
+		// statistics are saved with recording
+		TripStatistics stats = TripStatistics.read(recorder.getStatisticsFile());
+		assertEquals(100, stats.get("vehicle_speed").getCount());
+		assertEquals(50.5, stats.get("vehicle_speed").getMean(), 0.001);
+		assertEquals(1600, stats.get("engine_speed").getMax(), 0.001);
+	}
+
+	/**
+	 * Test only subscribed items are recorded, and subscriptions are released
+	 */
+	@Test
+	void record_SubscribedItems() throws IOException
+	{
+		File file = new File(dir, "subscribed" + DataRecorder.EXTENSION);
+		DataRecorder recorder = new DataRecorder(file);
+		recorder.start(getPvs(), Collections.singleton("vehicle_speed"));
+		assertEquals(1, EcuDataItems.subscriptions.getRefCount("vehicle_speed"));
+
+		items.updateDataItems(0x01, 0x0C, new char[]{0x10, 0x00});
+		items.updateDataItems(0x01, 0x0D, new char[]{50});
+		recorder.stop();
+		assertEquals(0, EcuDataItems.subscriptions.getRefCount("vehicle_speed"));
+		assertTrue(recorder.awaitStopped(5000));
+
+		Map<String, List<double[]>> samples = read(file);
+		assertEquals(1, samples.size());
+		assertEquals(1, samples.get("vehicle_speed").size());
+		assertEquals(50, samples.get("vehicle_speed").get(0)[1], 0.001);
+	}
+}
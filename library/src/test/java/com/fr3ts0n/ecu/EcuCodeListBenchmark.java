@@ -0,0 +1,82 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.common.UTF8Bundle;
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Micro benchmark for fault code lookup
+ * - ResourceBundle lookup by code string
+ * - integer keyed code index
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class EcuCodeListBenchmark
+{
+	/** number of codes within one simulated DTC read */
+	static final int CODES = 500;
+	static final int ROUNDS = 2_000;
+	/** protocol environment (code formatting, messages) */
+	static final ElmProt prot = new ElmProt();
+
+	/**
+	 * Look up codes of a simulated multi-ECU DTC read
+	 */
+	@Test
+	void lookupCost()
+	{
+		ObdCodeList codes = new ObdCodeList();
+		ResourceBundle bundle = UTF8Bundle.getBundle("com.fr3ts0n.ecu.prot.obd.res.codes");
+		// spread codes across P/C/B/U ranges, including unknown ones
+		int[] dtcs = new int[CODES];
+		for (int i = 0; i < CODES; i++) dtcs[i] = ((i & 3) << 14) | (i * 7);
+
+		long legacy = 0, indexed = 0;
+		// warm up + measure
+		for (int run = 0; run < 3; run++)
+		{
+			long start = System.nanoTime();
+			int found = 0;
+			for (int r = 0; r < ROUNDS; r++)
+			{
+				for (int dtc : dtcs)
+				{
+					String key = codes.getCode(dtc);
+					EcuCodeItem item;
+					try
+					{
+						item = new EcuCodeItem(key, bundle.getString(key));
+					}
+					catch (MissingResourceException e)
+					{
+						item = new EcuCodeItem(key, "");
+					}
+					found += item.size();
+				}
+			}
+			legacy = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int foundIdx = 0;
+			for (int r = 0; r < ROUNDS; r++)
+			{
+				for (int dtc : dtcs) foundIdx += codes.get(dtc).size();
+			}
+			indexed = System.nanoTime() - start;
+
+			assertEquals(found, foundIdx);
+		}
+		System.out.printf("DTC read of %d codes: ResourceBundle %.1f us, code index %.1f us%n",
+		                  CODES,
+		                  (double) legacy / ROUNDS / 1000,
+		                  (double) indexed / ROUNDS / 1000);
+	}
+}
@@ -0,0 +1,95 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.ElmProt;
+import com.fr3ts0n.ecu.prot.obd.Messages;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for fault code lists
+ */
+class EcuCodeListTest
+{
+	/** protocol environment (code formatting, messages) */
+	static final ElmProt prot = new ElmProt();
+	static final Locale defaultLocale = Locale.getDefault();
+
+	@AfterEach
+	void restoreLocale()
+	{
+		Locale.setDefault(defaultLocale);
+	}
+
+	/**
+	 * Test lookup of OBD codes
+	 */
+	@Test
+	void getObdCode()
+	{
+		Locale.setDefault(Locale.ENGLISH);
+		ObdCodeList codes = new ObdCodeList();
+
+		EcuCodeItem item = codes.get(0x0001);
+		assertEquals("P0001", item.get(EcuCodeItem.FID_CODE));
+		assertEquals("Fuel Volume Regulator Control Circuit/Open", item.get(EcuCodeItem.FID_DESCRIPT));
+		// status of one lookup does not leak into other lookups
+		item.put(EcuCodeItem.FID_STATUS, (Object) 0x03);
+		EcuCodeItem other = codes.get(0x0001);
+		assertNotSame(item, other);
+		assertNull(other.get(EcuCodeItem.FID_STATUS));
+		// descriptions are shared
+		assertSame(item.get(EcuCodeItem.FID_DESCRIPT), other.get(EcuCodeItem.FID_DESCRIPT));
+
+		// U-code
+		assertEquals("U0100", codes.get(0xC100).get(EcuCodeItem.FID_CODE));
+
+		// unknown codes get a generic description
+		EcuCodeItem unknown = codes.get(0x3FFF);
+		assertEquals("P3FFF", unknown.get(EcuCodeItem.FID_CODE));
+		assertNotSame(unknown, codes.get(0x3FFF));
+
+		assertTrue(codes.values().contains("Fuel Volume Regulator Control Circuit/Open"));
+	}
+
+	/**
+	 * Test codes with numeric radix
+	 */
+	@Test
+	void getRadixCode()
+	{
+		EcuCodeList codes = new EcuCodeList("com.fr3ts0n.ecu.prot.obd.res.codes", 16);
+		assertEquals("1f", codes.getCode(0x1F));
+		assertEquals(0x1F, codes.getNumericCode("1F"));
+		// P-code keys are not valid numeric codes
+		assertEquals(Messages.getString("customer.specific.trouble.code.see.manual"),
+		             codes.get(0x1F).get(EcuCodeItem.FID_DESCRIPT));
+		assertTrue(codes.values().isEmpty());
+	}
+
+	/**
+	 * Test re-build of index on change of locale
+	 */
+	@Test
+	void localeChange()
+	{
+		Locale.setDefault(Locale.ENGLISH);
+		ObdCodeList codes = new ObdCodeList();
+		Object english = codes.get(0x0001).get(EcuCodeItem.FID_DESCRIPT);
+		Locale.setDefault(Locale.GERMAN);
+		Object german = codes.get(0x0001).get(EcuCodeItem.FID_DESCRIPT);
+		Locale.setDefault(Locale.ENGLISH);
+
+		assertNotEquals(english, german);
+		assertEquals(english, codes.get(0x0001).get(EcuCodeItem.FID_DESCRIPT));
+	}
+}
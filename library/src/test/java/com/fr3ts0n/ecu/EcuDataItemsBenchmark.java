@@ -0,0 +1,59 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Micro benchmark for data item lookup
+ * - nested HashMap/Vector lookup (getPidDataItems)
+ * - dense index lookup (getItems)
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class EcuDataItemsBenchmark
+{
+	static final EcuDataItems items = new EcuDataItems();
+	static final int ROUNDS = 2_000_000;
+
+	/**
+	 * Lookup all PIDs of service 1 with both lookup variants
+	 */
+	@Test
+	void lookupCost()
+	{
+		long legacy = 0, dense = 0;
+		// warm up + measure
+		for (int run = 0; run < 3; run++)
+		{
+			long start = System.nanoTime();
+			int found = 0;
+			for (int i = 0; i < ROUNDS; i++)
+			{
+				Vector<EcuDataItem> currItms = items.getPidDataItems(0x01, i & 0xFF);
+				if (currItms != null)
+				{
+					for (EcuDataItem itm : currItms) found += itm.ofs;
+				}
+			}
+			legacy = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int foundIdx = 0;
+			for (int i = 0; i < ROUNDS; i++)
+			{
+				for (EcuDataItem itm : items.getItems(0x01, i & 0xFF)) foundIdx += itm.ofs;
+			}
+			dense = System.nanoTime() - start;
+
+			assertEquals(found, foundIdx);
+		}
+		System.out.printf("EcuDataItems lookup: HashMap/Vector %.1f ns/op, dense index %.1f ns/op%n",
+		                  (double) legacy / ROUNDS,
+		                  (double) dense / ROUNDS);
+	}
+}
@@ -0,0 +1,78 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Heap benchmark for data item definitions
+ * - definitions only (process vars created on demand)
+ * - definitions with process vars of all items (as created eagerly before)
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class EcuDataItemsHeapBenchmark
+{
+	static final int INSTANCES = 20;
+
+	/**
+	 * get used heap after garbage collection
+	 */
+	static long usedHeap()
+	{
+		Runtime rt = Runtime.getRuntime();
+		long result = Long.MAX_VALUE;
+		// take lowest of several runs to reduce GC noise
+		for (int i = 0; i < 5; i++)
+		{
+			System.gc();
+			try { Thread.sleep(20); } catch (InterruptedException ignored) { }
+			result = Math.min(result, rt.totalMemory() - rt.freeMemory());
+		}
+		return result;
+	}
+
+	/**
+	 * get all distinct data items
+	 */
+	static Set<EcuDataItem> allItems(EcuDataItems items)
+	{
+		Set<EcuDataItem> result = new HashSet<>();
+		for (Integer service : items.keySet())
+		{
+			result.addAll(items.getSvcDataItems(service));
+		}
+		return result;
+	}
+
+	@Test
+	void heapUsage()
+	{
+		new EcuDataItems();
+		EcuDataItems[] instances = new EcuDataItems[INSTANCES];
+
+		long base = usedHeap();
+		for (int i = 0; i < INSTANCES; i++) instances[i] = new EcuDataItems();
+		long lazy = usedHeap();
+
+		int numItems = 0;
+		for (EcuDataItems items : instances)
+		{
+			for (EcuDataItem item : allItems(items))
+			{
+				item.getPv();
+				numItems++;
+			}
+		}
+		long eager = usedHeap();
+
+		System.out.printf("EcuDataItems (%d items): definitions %d kB, with all PVs %d kB (%.0f bytes/PV)%n",
+		                  numItems / INSTANCES,
+		                  (lazy - base) / INSTANCES / 1024,
+		                  (eager - base) / INSTANCES / 1024,
+		                  (double) (eager - lazy) / numItems);
+	}
+}
@@ -0,0 +1,112 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.ecu.prot.obd.Messages;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Micro benchmark for data item startup
+ * - legacy parsing (regex quote removal, split, translation per row)
+ * - single pass tokenizer (translation per row)
+ * - binary snapshot load
+ * - complete construction of data items without/with snapshot cache
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class EcuDataItemsStartupBenchmark
+{
+	static final int ROUNDS = 50;
+
+	@TempDir
+	File cacheDir;
+
+	/**
+	 * legacy parsing of CSV content as done before tokenizer/snapshots
+	 */
+	static List<String[]> parseLegacy(String content) throws IOException
+	{
+		List<String[]> result = new ArrayList<>();
+		BufferedReader rdr = new BufferedReader(new StringReader(content));
+		String currLine;
+		int line = 0;
+		while ((currLine = rdr.readLine()) != null)
+		{
+			if (++line == 1 || currLine.startsWith("#")) continue;
+			currLine = currLine.replaceAll("\"", "");
+			String[] params = currLine.split("\t");
+			params[EcuDataItems.FLD.LABEL.ordinal()] =
+				Messages.getString(params[EcuDataItems.FLD.MNEMONIC.ordinal()],
+				                   params[EcuDataItems.FLD.LABEL.ordinal()]);
+			result.add(params);
+		}
+		return result;
+	}
+
+	@Test
+	void startupCost() throws IOException
+	{
+		new EcuDataItems();
+		byte[] content = CsvSnapshotCache.readAll(
+			EcuDataItems.class.getResource("prot/obd/res/pids.csv").openStream());
+		String text = new String(content);
+		CsvSnapshotCache.setCacheDir(cacheDir, "benchmark");
+		long key = EcuDataItems.getSnapshotKey(content);
+		CsvSnapshotCache.store(key, EcuDataItems.parseRows(text));
+
+		long legacy = 0, tokenizer = 0, snapshot = 0, itemsNoCache = 0, itemsCache = 0;
+		try
+		{
+			// warm up + measure
+			for (int run = 0; run < 3; run++)
+			{
+				long start = System.nanoTime();
+				int rows = 0;
+				for (int i = 0; i < ROUNDS; i++) rows += parseLegacy(text).size();
+				legacy = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				int rowsTok = 0;
+				for (int i = 0; i < ROUNDS; i++) rowsTok += EcuDataItems.parseRows(text).size();
+				tokenizer = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				int rowsSnap = 0;
+				for (int i = 0; i < ROUNDS; i++) rowsSnap += CsvSnapshotCache.load(key).size();
+				snapshot = System.nanoTime() - start;
+
+				assertEquals(rows, rowsTok);
+				assertEquals(rows, rowsSnap);
+
+				CsvSnapshotCache.setCacheDir(null, "");
+				start = System.nanoTime();
+				for (int i = 0; i < ROUNDS; i++) new EcuDataItems();
+				itemsNoCache = System.nanoTime() - start;
+
+				CsvSnapshotCache.setCacheDir(cacheDir, "benchmark");
+				start = System.nanoTime();
+				for (int i = 0; i < ROUNDS; i++) new EcuDataItems();
+				itemsCache = System.nanoTime() - start;
+			}
+		}
+		finally
+		{
+			CsvSnapshotCache.setCacheDir(null, "");
+		}
+		System.out.printf("pids.csv rows: legacy parse %.2f ms, tokenizer %.2f ms, snapshot %.2f ms%n",
+		                  legacy / 1e6 / ROUNDS, tokenizer / 1e6 / ROUNDS, snapshot / 1e6 / ROUNDS);
+		System.out.printf("EcuDataItems: no cache %.2f ms, snapshot cache %.2f ms%n",
+		                  itemsNoCache / 1e6 / ROUNDS, itemsCache / 1e6 / ROUNDS);
+	}
+}
@@ -6,7 +6,11 @@ import com.fr3ts0n.pvs.PvChangeListener;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Vector;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 /**
  * Test class for dynamic conversion ranges via PID 0x4F
@@ -29,7 +33,7 @@ class EcuDataItemsTest
 	@Test
 	void updateDataItems_Lambda()
 	{
-		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(0).pv;
+		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(0).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Dynamic factor undefined: Static conversion factor
@@ -56,7 +60,7 @@ class EcuDataItemsTest
 	@Test
 	void updateDataItems_O2Voltage()
 	{
-		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(1).pv;
+		ProcessVar pv = items.getPidDataItems(0x01, 0x24).get(1).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Dynamic factor undefined: Static conversion factor
@@ -83,7 +87,7 @@ class EcuDataItemsTest
 	@Test
 	void updateDataItems_O2Current()
 	{
-		ProcessVar pv = items.getPidDataItems(0x01, 0x34).get(1).pv;
+		ProcessVar pv = items.getPidDataItems(0x01, 0x34).get(1).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Dynamic factor undefined: Static conversion factor
@@ -110,7 +114,7 @@ class EcuDataItemsTest
 	@Test
 	void TestConversionSystem()
 	{
-		EcuDataPv pv = items.getPidDataItems(0x01, 0x05).get(0).pv;
+		EcuDataPv pv = items.getPidDataItems(0x01, 0x05).get(0).getPv();
 		pv.addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
 
 		// Check metric conversion + Units
@@ -128,6 +132,80 @@ class EcuDataItemsTest
 		pv.removePvChangeListener(this);
 	}
 
+	/**
+	 * Test deadband and heartbeat filtering of value changes
+	 */
+	@Test
+	void TestChangeFilter() throws InterruptedException
+	{
+		EcuDataItem itm = items.getPidDataItems(0x01, 0x05).get(0);
+		itm.getPv().addPvChangeListener(this, PvChangeEvent.PV_MODIFIED);
+		EcuDataItem.cnvSystem = EcuDataItem.SYSTEM_METRIC;
+
+		// absolute deadband 2°C, no heartbeat
+		EcuDataItems.applyOptions(itm, "deadband=2");
+		items.updateDataItems(0x01,0x05, new char[]{0x50});
+		assertEquals(40.0, resultValue.doubleValue(),0.01);
+		// change within deadband is suppressed
+		items.updateDataItems(0x01,0x05, new char[]{0x52});
+		assertEquals(40.0, resultValue.doubleValue(),0.01);
+		// change exceeding deadband is published
+		items.updateDataItems(0x01,0x05, new char[]{0x53});
+		assertEquals(43.0, resultValue.doubleValue(),0.01);
+
+		// deadband 10% of range (-40..215) -> 25.5°C
+		EcuDataItems.applyOptions(itm, "deadband=10%;max_silence_ms=50");
+		items.updateDataItems(0x01,0x05, new char[]{0x60});
+		assertEquals(56.0, resultValue.doubleValue(),0.01);
+		items.updateDataItems(0x01,0x05, new char[]{0x70});
+		assertEquals(56.0, resultValue.doubleValue(),0.01);
+		// heartbeat publishes value after max silence
+		Thread.sleep(60);
+		resultValue = 0;
+		items.updateDataItems(0x01,0x05, new char[]{0x70});
+		assertEquals(72.0, resultValue.doubleValue(),0.01);
+		// heartbeat value is stored in VALUE field
+		assertEquals(72.0, ((Number) itm.getPv().get(EcuDataPv.FID_VALUE)).doubleValue(), 0.01);
+		assertFalse(itm.getPv().containsKey(EcuDataPv.FID_VALUE));
+
+		// unfiltered
+		EcuDataItems.applyOptions(itm, "");
+		items.updateDataItems(0x01,0x05, new char[]{0x71});
+		assertEquals(73.0, resultValue.doubleValue(),0.01);
+
+		itm.getPv().removePvChangeListener(this);
+	}
+
+	/**
+	 * Test dense item index matches service/PID map
+	 * and is updated when items are appended
+	 */
+	@Test
+	void TestItemIndex()
+	{
+		for (int pid = 0; pid < 0x100; pid++)
+		{
+			Vector<EcuDataItem> currVec = items.getPidDataItems(0x01, pid);
+			EcuDataItem[] currItms = items.getItems(0x01, pid);
+			assertEquals(currVec == null ? 0 : currVec.size(), currItms.length);
+			for (int i = 0; i < currItms.length; i++)
+			{
+				assertSame(currVec.get(i), currItms[i]);
+			}
+		}
+		assertEquals(0, items.getItems(0x01, 0x1234).length);
+
+		// append item to unused service
+		EcuDataItem newItem = new EcuDataItem(0x42, 0, 1, 0, 8, 0xFF,
+		                                      items.getItems(0x01, 0x05)[0].cnv,
+		                                      "%.0f", null, null, 0,
+		                                      "Test", "TEST_42");
+		items.appendItemToService(0x0F, newItem);
+		assertEquals(1, items.getItems(0x0F, 0x42).length);
+		assertSame(newItem, items.getItems(0x0F, 0x42)[0]);
+		assertEquals(1, items.getSvcDataItems(0x0F).size());
+	}
+
 	/**
 	 * Handle PV change event
 	 * - store changed value to test result
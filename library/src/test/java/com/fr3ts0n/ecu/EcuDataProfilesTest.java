@@ -0,0 +1,187 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for customisation profiles
+ * - load + validate
+ * - diff against active profile
+ * - atomic swap of data items and conversions
+ */
+class EcuDataProfilesTest
+{
+	static final String CNV_HEADER = "CONVERSION_ID\tTYPE\tVARIANT\tSYSTEM\tFACT\tDIV\tOFFS\tPhOf\tUNIT\tRemark\tParameters\n";
+	static final String PID_HEADER = "svc\tpid\tofs\tlen\tbit_ofs\tbit_len\tbit_mask\tformula\tformat\tmin\tmax\tupdate_cycle_ms\tmnemonic\tlabel\n";
+
+	static InputStream csv(String header, String... rows)
+	{
+		StringBuilder result = new StringBuilder(header);
+		for (String row : rows) result.append(row).append('\n');
+		return new ByteArrayInputStream(result.toString().getBytes());
+	}
+
+	static String pidRow(int pid, String formula, String mnemonic)
+	{
+		return String.format("0x01,0x02\t0x%02X\t0\t1\t0\t8\t0xFF\t%s\t%%.1f\t\t\t\t%s\t%s", pid, formula, mnemonic, mnemonic);
+	}
+
+	@Test
+	void activateAndSwap() throws IOException
+	{
+		EcuDataItems items = new EcuDataItems();
+		EcuDataProfiles profiles = new EcuDataProfiles(items);
+		int baseCount = items.getItems(0x01, 0x5F).length;
+		int base60 = items.getItems(0x01, 0x60).length;
+		int base61 = items.getItems(0x01, 0x61).length;
+
+		// first profile: custom conversion + 2 items
+		EcuDataProfiles.Profile first = profiles.load("first",
+			csv(CNV_HEADER, "CUST_TEST\tLINEAR\t0\tMETRIC\t1\t2\t0\t0\tx"),
+			csv(PID_HEADER, pidRow(0x5F, "CUST_TEST", "cust_a"), pidRow(0x60, "CUST_TEST", "cust_b")));
+		assertTrue(first.isValid(), first.getErrors().toString());
+		// loading does not change current items
+		assertEquals(baseCount, items.getItems(0x01, 0x5F).length);
+
+		EcuDataProfiles.Diff diff = profiles.activate(first);
+		assertEquals(Arrays.asList("cust_a", "cust_b"), diff.added);
+		assertSame(first, profiles.getActive());
+		assertEquals(baseCount + 1, items.getItems(0x01, 0x5F).length);
+		assertEquals(base60 + 1, items.getItems(0x01, 0x60).length);
+		EcuDataItem itmB = EcuDataItems.byMnemonic.get("cust_b");
+		assertEquals(50f, itmB.physVal(100).floatValue(), 0.001f);
+		assertTrue(EcuDataItems.cnv.containsKey("CUST_TEST"));
+
+		// second profile: cust_a changed, cust_b removed, cust_c added
+		EcuDataProfiles.Profile second = profiles.load("second", null,
+			csv(PID_HEADER, pidRow(0x5F, "DEFAULT", "cust_a"), pidRow(0x61, "DEFAULT", "cust_c")));
+		assertTrue(second.isValid(), second.getErrors().toString());
+		diff = profiles.diff(second);
+		assertEquals(Collections.singletonList("cust_c"), diff.added);
+		assertEquals(Collections.singletonList("cust_b"), diff.removed);
+		assertEquals(Collections.singletonList("cust_a"), diff.changed);
+
+		int version = items.getVersion();
+		itmB.getPv();
+		profiles.activate(second);
+		assertTrue(items.getVersion() > version);
+		assertEquals(base60, items.getItems(0x01, 0x60).length);
+		assertEquals(baseCount + 1, items.getItems(0x01, 0x5F).length);
+		assertNull(EcuDataItems.byMnemonic.get("cust_b"));
+		assertFalse(itmB.hasPv());
+		// conversion of first profile is removed again
+		assertFalse(EcuDataItems.cnv.containsKey("CUST_TEST"));
+
+		// deactivate
+		diff = profiles.activate(null);
+		assertEquals(Arrays.asList("cust_a", "cust_c"), diff.removed);
+		assertEquals(baseCount, items.getItems(0x01, 0x5F).length);
+		assertEquals(base61, items.getItems(0x01, 0x61).length);
+	}
+
+	/**
+	 * Test polling on another thread sees either the old or the new items
+	 * while profiles are swapped
+	 */
+	@Test
+	void swap_WhilePolling() throws Exception
+	{
+		EcuDataItems items = new EcuDataItems();
+		EcuDataProfiles profiles = new EcuDataProfiles(items);
+		final int base5F = items.getItems(0x01, 0x5F).length;
+		final int baseSvc = items.getSvcDataItems(0x01).size();
+		final int base0C = items.getPidDataItems(0x01, 0x0C).size();
+
+		// items for new PIDs (PID maps grow on every swap)
+		final int added = 0x20;
+		String[] rows = new String[added];
+		rows[0] = pidRow(0x5F, "DEFAULT", "cust_a");
+		for (int i = 1; i < added; i++)
+		{
+			rows[i] = pidRow(0xC0 + i, "DEFAULT", "cust_" + i);
+		}
+		EcuDataProfiles.Profile profile = profiles.load("polled", null, csv(PID_HEADER, rows));
+		assertTrue(profile.isValid(), profile.getErrors().toString());
+
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final AtomicInteger polls = new AtomicInteger();
+		Thread poller = new Thread(() ->
+		{
+			char[] buffer = "4100".toCharArray();
+			try
+			{
+				while (running.get())
+				{
+					// one lookup sees a complete set of items
+					int svcItems = items.getSvcDataItems(0x01).size();
+					assertTrue(svcItems == baseSvc || svcItems == baseSvc + added, String.valueOf(svcItems));
+					int pidItems = items.getItems(0x01, 0x5F).length;
+					assertTrue(pidItems == base5F || pidItems == base5F + 1, String.valueOf(pidItems));
+					// unchanged PIDs are always found
+					Vector<EcuDataItem> vec = items.getPidDataItems(0x01, 0x0C);
+					assertEquals(base0C, vec.size());
+					vec = items.getPidDataItems(0x02, 0x0C);
+					assertEquals(base0C, vec.size());
+					EcuDataItem itmA = EcuDataItems.byMnemonic.get("cust_a");
+					assertTrue(itmA == null || itmA.pid == 0x5F);
+					items.updateDataItems(0x01, 0x5F, buffer);
+					polls.incrementAndGet();
+				}
+			}
+			catch (Throwable ex)
+			{
+				failure.set(ex);
+			}
+		});
+		poller.start();
+		for (int i = 0; i < 500 && failure.get() == null; i++)
+		{
+			profiles.activate(profile);
+			profiles.activate(null);
+		}
+		running.set(false);
+		poller.join(5000);
+		if (failure.get() != null) throw new AssertionError(failure.get());
+		assertTrue(polls.get() > 0);
+		assertEquals(base5F, items.getItems(0x01, 0x5F).length);
+		assertNull(EcuDataItems.byMnemonic.get("cust_a"));
+	}
+
+	@Test
+	void invalidProfile() throws IOException
+	{
+		EcuDataItems items = new EcuDataItems();
+		EcuDataProfiles profiles = new EcuDataProfiles(items);
+
+		EcuDataProfiles.Profile profile = profiles.load("invalid", null,
+			csv(PID_HEADER,
+			    pidRow(0x5F, "UNKNOWN_CNV", "cust_a"),
+			    pidRow(0x60, "DEFAULT", "cust_b"),
+			    pidRow(0x61, "DEFAULT", "cust_b"),
+			    "0x01\tnoPid\t0\t1\t0\t8\t0xFF\tDEFAULT\t%.1f\t\t\t\tcust_d\tcust_d"));
+		assertFalse(profile.isValid());
+		assertEquals(3, profile.getErrors().size(), profile.getErrors().toString());
+
+		int version = items.getVersion();
+		assertThrows(IllegalArgumentException.class, () -> profiles.activate(profile));
+		assertEquals(version, items.getVersion());
+		assertNull(profiles.getActive());
+	}
+}
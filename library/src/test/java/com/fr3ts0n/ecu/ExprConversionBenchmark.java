@@ -0,0 +1,54 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Micro benchmark for numeric conversions
+ * - linear conversion
+ * - compiled formula expression with same result
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class ExprConversionBenchmark
+{
+	static final int ROUNDS = 5_000_000;
+
+	/**
+	 * Convert engine speed with both conversion variants
+	 */
+	@Test
+	void conversionCost()
+	{
+		NumericConversion linear = new LinearConversion(1, 4, 0, 0, "rpm");
+		NumericConversion expr = new ExprConversion("(A*256+B)/4", "rpm");
+		long linearTime = 0, exprTime = 0;
+		// warm up + measure
+		for (int run = 0; run < 3; run++)
+		{
+			long start = System.nanoTime();
+			double sumLinear = 0;
+			for (int i = 0; i < ROUNDS; i++)
+			{
+				sumLinear += linear.memToPhys(i & 0xFFFF).doubleValue();
+			}
+			linearTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			double sumExpr = 0;
+			for (int i = 0; i < ROUNDS; i++)
+			{
+				sumExpr += expr.memToPhys(i & 0xFFFF).doubleValue();
+			}
+			exprTime = System.nanoTime() - start;
+
+			assertEquals(sumLinear, sumExpr, Math.abs(sumLinear) * 1e-6);
+		}
+		System.out.printf("Conversion: linear %.1f ns/op, expression %.1f ns/op%n",
+		                  (double) linearTime / ROUNDS,
+		                  (double) exprTime / ROUNDS);
+	}
+}
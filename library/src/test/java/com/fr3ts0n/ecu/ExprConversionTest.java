@@ -0,0 +1,117 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for formula expression conversions
+ */
+class ExprConversionTest
+{
+	/**
+	 * Test operators, precedence and byte operands
+	 */
+	@Test
+	void memToPhys()
+	{
+		// engine speed (A*256+B)/4
+		assertEquals(1726.0, new ExprConversion("(A*256+B)/4", "rpm").memToPhys(0x1AF8, 2).doubleValue(), 0.001);
+		// precedence and unary minus
+		assertEquals(-40.0, new ExprConversion("X - 40", "°C").memToPhys(0).doubleValue(), 0.001);
+		assertEquals(7.0, new ExprConversion("1+2*3", "").memToPhys(0).doubleValue(), 0.001);
+		assertEquals(-9.0, new ExprConversion("-3^2", "").memToPhys(0).doubleValue(), 0.001);
+		assertEquals(512.0, new ExprConversion("2^3^2", "").memToPhys(0).doubleValue(), 0.001);
+		// bytes bound to data length, A is first data byte
+		assertEquals(0x12 / 200.0, new ExprConversion("A/200", "").memToPhys(0x1234, 2).doubleValue(), 0.001);
+		assertEquals(0x56, new ExprConversion("C", "").memToPhys(0x123456, 3).intValue());
+		assertEquals(0x34, new ExprConversion("C", "").memToPhys(0x123456, 4).intValue());
+		assertEquals(0x34, new ExprConversion("B+C*0", "").memToPhys(0x123456, 3).intValue());
+		// bytes beyond data length are 0
+		assertEquals(0, new ExprConversion("C", "").memToPhys(0x1234, 2).intValue());
+		// unknown data length: raw value is 4 data bytes, independent of bytes referenced
+		assertEquals(0x12, new ExprConversion("A", "").memToPhys(0x12345678L).intValue());
+		assertEquals(0x56, new ExprConversion("C", "").memToPhys(0x12345678L).intValue());
+		assertEquals(0x56, new ExprConversion("B*0+C", "").memToPhys(0x12345678L).intValue());
+		assertEquals(new ExprConversion("A+B", "").memToPhys(0x1234, ExprConversion.DEFAULT_LENGTH),
+		             new ExprConversion("A+B", "").memToPhys(0x1234));
+		// bit operations and functions
+		assertEquals(0x0F, new ExprConversion("X & 0x0F", "").memToPhys(0xFF).intValue());
+		assertEquals(0xF0, new ExprConversion("X >> 4 << 4 | 0", "").memToPhys(0xFF).intValue());
+		assertEquals(1, new ExprConversion("bit(X,7)", "").memToPhys(0x80).intValue());
+		assertEquals(-1.0, new ExprConversion("s16(X)/100", "").memToPhys(0xFF9C).doubleValue(), 0.001);
+		assertEquals(-128, new ExprConversion("s8(X)", "").memToPhys(0x80).intValue());
+		assertEquals(5.0, new ExprConversion("max(min(X, 5), 0)", "").memToPhys(10).doubleValue(), 0.001);
+	}
+
+	/**
+	 * Test constant folding of formula
+	 */
+	@Test
+	void constantFolding()
+	{
+		assertTrue(new ExprConversion("(1+2)*abs(-4)/sqrt(16)", "").isConstant());
+		assertEquals(3.0, new ExprConversion("(1+2)*abs(-4)/sqrt(16)", "").memToPhys(99).doubleValue(), 0.001);
+		assertTrue(!new ExprConversion("X*(100/255)", "%").isConstant());
+	}
+
+	/**
+	 * Test inverse conversion of monotonic formulas
+	 */
+	@Test
+	void physToMem()
+	{
+		assertEquals(0x1AF8, new ExprConversion("(A*256+B)/4", "rpm").physToMem(1726, 2).longValue());
+		assertEquals(80, new ExprConversion("B-40", "°C").physToMem(40, 2).longValue());
+		assertEquals(10, new ExprConversion("100-B", "").physToMem(90, 2).longValue());
+		assertEquals(0x5000, new ExprConversion("A-40", "°C").physToMem(40, 2).longValue());
+		// unknown data length: raw value is 4 data bytes
+		assertEquals(80, new ExprConversion("D-40", "°C").physToMem(40).longValue());
+		assertEquals(0x1AF8, new ExprConversion("(C*256+D)/4", "rpm").physToMem(1726).longValue());
+	}
+
+	/**
+	 * Test byte operands are bound to data length of data item
+	 */
+	@Test
+	void itemDataLength()
+	{
+		ExprConversion cnv = new ExprConversion("A/200", "V");
+		EcuDataItem itm = new EcuDataItem(0x14, 0, 2, 0, 16, 0xFFFF,
+		                                  new Conversion[]{cnv, cnv}, "%.3f",
+		                                  null, null, 0, "O2 voltage", "TEST_O2");
+		assertEquals(0x12 / 200.0, itm.physVal(0x1234).doubleValue(), 0.001);
+		assertEquals(0x5000, itm.rawVal(0x50 / 200.0));
+	}
+
+	/**
+	 * Test reference to other data item values
+	 */
+	@Test
+	void itemReference()
+	{
+		EcuDataItems items = new EcuDataItems();
+		EcuDataItem itm = items.getPidDataItems(0x01, 0x05).get(0);
+		EcuDataItem.cnvSystem = EcuDataItem.SYSTEM_METRIC;
+		items.updateDataItems(0x01, 0x05, new char[]{0x50});
+		ExprConversion cnv = new ExprConversion("X + [" + itm.getMnemonic() + "]", "");
+		assertEquals(42.0, cnv.memToPhys(2).doubleValue(), 0.001);
+		assertTrue(Double.isNaN(new ExprConversion("[UNKNOWN_ITEM]", "").memToPhys(0).doubleValue()));
+	}
+
+	/**
+	 * Test rejection of invalid formulas
+	 */
+	@Test
+	void invalidFormula()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new ExprConversion("(A*256", ""));
+		assertThrows(IllegalArgumentException.class, () -> new ExprConversion("A+", ""));
+		assertThrows(IllegalArgumentException.class, () -> new ExprConversion("foo(X)", ""));
+		assertThrows(IllegalArgumentException.class, () -> new ExprConversion("min(X)", ""));
+		assertThrows(IllegalArgumentException.class, () -> new ExprConversion("abs(X,1)", ""));
+		assertThrows(IllegalArgumentException.class, () -> new ExprConversion("X $ 2", ""));
+	}
+}
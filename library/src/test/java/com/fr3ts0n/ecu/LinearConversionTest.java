@@ -0,0 +1,69 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvChangeEvent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for linear conversions with dynamic factor
+ */
+class LinearConversionTest
+{
+	/**
+	 * create 1 byte data item
+	 *
+	 * @param pid        PID of item
+	 * @param conversion conversion of item (all systems)
+	 * @param mnemonic   mnemonic of item
+	 */
+	private static EcuDataItem createItem(int pid, Conversion conversion, String mnemonic)
+	{
+		return new EcuDataItem(pid, 0, 1, 0, 8, 0xFF,
+		                       new Conversion[]{conversion, conversion},
+		                       "%.1f", null, null, 0, mnemonic, mnemonic);
+	}
+
+	/**
+	 * Test factor item updates are pushed to bound conversion,
+	 * and limits of dependent items follow factor changes only
+	 */
+	@Test
+	void dynamicFactor_Binding()
+	{
+		LinearConversion factorCnv = new LinearConversion(1, 1, 0, 0, "");
+		LinearConversion cnv = new LinearConversion(1, 10, 0, 0, "x", "test_factor");
+		EcuDataItem factor = createItem(0x4F, factorCnv, "test_factor");
+		EcuDataItem item = createItem(0x24, cnv, "test_value");
+		factor.addFactorBinding(cnv);
+		cnv.addUser(item);
+
+		EcuDataPv pv = item.getPv();
+		final int[] limitUpdates = {0};
+		pv.addPvChangeListener(event ->
+		{
+			if (EcuDataPv.FID_MAX.equals(event.getKey())) limitUpdates[0]++;
+		}, PvChangeEvent.PV_MODIFIED);
+
+		// static factor
+		item.updatePvFomBuffer(new char[]{100});
+		assertEquals(10.0, ((Number) pv.get(EcuDataPv.FID_VALUE)).doubleValue(), 0.001);
+		assertEquals(25.5, ((Number) pv.get(EcuDataPv.FID_MAX)).doubleValue(), 0.001);
+
+		// factor update changes result and limits
+		factor.updatePvFomBuffer(new char[]{3});
+		assertEquals(1, limitUpdates[0]);
+		assertEquals(76.5, ((Number) pv.get(EcuDataPv.FID_MAX)).doubleValue(), 0.001);
+		assertEquals(0.0, ((Number) pv.get(EcuDataPv.FID_MIN)).doubleValue(), 0.001);
+		item.updatePvFomBuffer(new char[]{100});
+		assertEquals(30.0, ((Number) pv.get(EcuDataPv.FID_VALUE)).doubleValue(), 0.001);
+
+		// unchanged factor (and invalid factor 0) don't notify dependent items
+		factor.updatePvFomBuffer(new char[]{3});
+		factor.updatePvFomBuffer(new char[]{0});
+		assertEquals(1, limitUpdates[0]);
+		item.updatePvFomBuffer(new char[]{100});
+		assertEquals(30.0, ((Number) pv.get(EcuDataPv.FID_VALUE)).doubleValue(), 0.001);
+	}
+}
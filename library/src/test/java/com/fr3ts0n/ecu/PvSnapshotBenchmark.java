@@ -0,0 +1,83 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvList;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Micro benchmark for snapshot save/load of data item lists
+ * - Java serialization of PvList
+ * - binary snapshot
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class PvSnapshotBenchmark
+{
+	static final int ROUNDS = 1000;
+
+	@Test
+	void loadCost() throws IOException, ClassNotFoundException
+	{
+		PvList pids = PvSnapshotTest.createPidPvs();
+		PvList codes = new PvList();
+		for (int i = 1; i < 50; i++) codes.put(i, new ObdCodeItem(i, "Code " + i));
+
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized))
+		{
+			out.writeInt(1);
+			out.writeObject(pids);
+			out.writeObject(codes);
+		}
+		byte[] snapshot = PvSnapshotTest.write(pids, codes);
+
+		long legacy = 0, binary = 0;
+		// warm up + measure
+		for (int run = 0; run < 3; run++)
+		{
+			long start = System.nanoTime();
+			int loaded = 0;
+			for (int r = 0; r < ROUNDS; r++)
+			{
+				try (ObjectInputStream in = new ObjectInputStream(
+					new ByteArrayInputStream(serialized.toByteArray())))
+				{
+					in.readInt();
+					loaded += ((PvList) in.readObject()).size();
+					loaded += ((PvList) in.readObject()).size();
+				}
+			}
+			legacy = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int loadedBin = 0;
+			for (int r = 0; r < ROUNDS; r++)
+			{
+				try (PvSnapshotReader reader = new PvSnapshotReader(new ByteArrayInputStream(snapshot)))
+				{
+					while (reader.next())
+					{
+						if (reader.getType() == PvSnapshot.SEC_LIST) loadedBin += reader.getList().size();
+					}
+				}
+			}
+			binary = System.nanoTime() - start;
+
+			assertEquals(loaded, loadedBin);
+		}
+		System.out.printf("Load of %d PVs: serialized %.2f ms (%d bytes), snapshot %.2f ms (%d bytes)%n",
+		                  pids.size() + codes.size(),
+		                  (double) legacy / ROUNDS / 1000000, serialized.size(),
+		                  (double) binary / ROUNDS / 1000000, snapshot.length);
+	}
+}
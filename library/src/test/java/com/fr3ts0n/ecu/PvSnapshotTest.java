@@ -0,0 +1,205 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.ProcessVar;
+import com.fr3ts0n.pvs.PvList;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for binary process var snapshots
+ */
+class PvSnapshotTest
+{
+	static final EcuDataItems items = new EcuDataItems();
+	/** OBD service of current data */
+	static final int SVC_DATA = 1;
+
+	/**
+	 * create list of data item process vars of OBD service 01 with values
+	 */
+	static PvList createPidPvs()
+	{
+		PvList result = new PvList();
+		int i = 0;
+		for (EcuDataItem item : items.getSvcDataItems(SVC_DATA))
+		{
+			EcuDataPv pv = item.getPv();
+			pv.put(EcuDataPv.FID_VALUE, Float.valueOf(i++ * 0.5f));
+			result.put(item.toString(), pv);
+		}
+		// item which is not defined (any more)
+		EcuDataPv unknown = new EcuDataPv();
+		unknown.put(EcuDataPv.FID_PID, Integer.valueOf(0xFE));
+		unknown.put(EcuDataPv.FID_DESCRIPT, "Removed item");
+		unknown.put(EcuDataPv.FID_MNEMONIC, "REMOVED_ITEM");
+		unknown.put(EcuDataPv.FID_VALUE, "text");
+		result.put("FE.0.0", unknown);
+		return result;
+	}
+
+	static byte[] write(PvList pids, PvList codes) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (PvSnapshotWriter writer = new PvSnapshotWriter(bytes))
+		{
+			writer.putProperty(PvSnapshot.PROP_SERVICE, 1);
+			writer.putList(PvSnapshot.LIST_PID_PVS, pids);
+			writer.putList(PvSnapshot.LIST_CODES, codes);
+			writer.putSeries("history", "0C.0.0", new long[]{1000, 2000, 3000},
+			                 new double[]{800, 850.5, 900}, 2);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Test lists, properties and series are restored,
+	 * and data items are restored with current definitions
+	 */
+	@Test
+	void roundTrip() throws IOException
+	{
+		PvList pids = createPidPvs();
+		PvList codes = new PvList();
+		ObdCodeItem code = new ObdCodeItem(0x0301, "Cylinder 1 misfire");
+		code.put(EcuCodeItem.FID_STATUS, Integer.valueOf(3));
+		codes.put(0x0301, code);
+		byte[] data = write(pids, codes);
+		// values change after snapshot was taken
+		Map<Object, Object> values = new HashMap<>();
+		for (Object key : pids.keySet())
+		{
+			EcuDataPv pv = (EcuDataPv) pids.get(key);
+			values.put(key, pv.get(EcuDataPv.FID_VALUE));
+			pv.put(EcuDataPv.FID_VALUE, Float.valueOf(-1));
+		}
+
+		PvList pidsRead = null;
+		PvList codesRead = null;
+		PvSnapshotReader.Series series = null;
+		try (PvSnapshotReader reader = new PvSnapshotReader(new ByteArrayInputStream(data)))
+		{
+			assertTrue(reader.next());
+			assertEquals(PvSnapshot.SEC_PROPERTY, reader.getType());
+			assertEquals(1, reader.getProperty());
+			while (reader.next())
+			{
+				if (reader.getType() == PvSnapshot.SEC_SERIES) series = reader.getSeries();
+				else if (PvSnapshot.LIST_PID_PVS.equals(reader.getName())) pidsRead = reader.getList();
+				else if (PvSnapshot.LIST_CODES.equals(reader.getName())) codesRead = reader.getList();
+			}
+			assertFalse(reader.next());
+		}
+
+		assertEquals(pids.size(), pidsRead.size());
+		for (Object key : pids.keySet())
+		{
+			EcuDataPv pv = (EcuDataPv) pids.get(key);
+			EcuDataPv read = (EcuDataPv) pidsRead.get(key);
+			assertEquals(values.get(key), read.get(EcuDataPv.FID_VALUE));
+			assertEquals(pv.get(EcuDataPv.FID_MNEMONIC), read.get(EcuDataPv.FID_MNEMONIC));
+			assertEquals(pv.getKeyValue(), read.getKeyValue());
+			// conversions are taken from current definition
+			assertSame(pv.get(EcuDataPv.FID_CNVID), read.get(EcuDataPv.FID_CNVID));
+		}
+		// known items are restored into process var of current item
+		EcuDataItem item = EcuDataItems.byMnemonic.get("engine_speed");
+		assertSame(item.getPv(), pidsRead.get(item.toString()));
+		EcuDataPv unknown = (EcuDataPv) pidsRead.get("FE.0.0");
+		assertEquals("Removed item", unknown.get(EcuDataPv.FID_DESCRIPT));
+		assertEquals("text", unknown.get(EcuDataPv.FID_VALUE));
+		assertNull(unknown.get(EcuDataPv.FID_CNVID));
+
+		ObdCodeItem codeRead = (ObdCodeItem) codesRead.get(0x0301);
+		assertEquals(code.get(EcuCodeItem.FID_CODE), codeRead.get(EcuCodeItem.FID_CODE));
+		assertEquals(3, codeRead.get(EcuCodeItem.FID_STATUS));
+
+		assertEquals("0C.0.0", series.key);
+		assertEquals(2, series.count);
+		assertArrayEquals(new long[]{1000, 2000}, series.times);
+		assertArrayEquals(new double[]{800, 850.5}, series.values);
+	}
+
+	/**
+	 * Test process vars are created by factory
+	 */
+	@Test
+	void factory() throws IOException
+	{
+		byte[] data = write(createPidPvs(), new PvList());
+		try (PvSnapshotReader reader = new PvSnapshotReader(new ByteArrayInputStream(data)))
+		{
+			reader.setPvFactory((list, kind) -> PvSnapshot.LIST_CODES.equals(list) ? null : new ProcessVar());
+			while (reader.next())
+			{
+				if (PvSnapshot.LIST_PID_PVS.equals(reader.getName()))
+				{
+					ProcessVar pv = (ProcessVar) reader.getList().get("0C.0.0");
+					assertFalse(pv instanceof EcuDataPv);
+					// definition is applied to created process var
+					assertTrue(pv.get(EcuDataPv.FID_CNVID) instanceof Conversion[]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test unknown sections are skipped, and invalid/newer snapshots are rejected
+	 */
+	@Test
+	void compatibility() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(PvSnapshot.MAGIC);
+		out.writeShort(PvSnapshot.VERSION);
+		// section of a future release
+		out.writeByte(42);
+		out.writeUTF("future");
+		out.writeInt(3);
+		out.write(new byte[]{1, 2, 3});
+		out.writeByte(PvSnapshot.SEC_PROPERTY);
+		out.writeUTF("page");
+		out.writeInt(5);
+		out.writeByte(PvSnapshot.T_INT);
+		out.writeInt(2);
+		out.writeByte(PvSnapshot.SEC_END);
+
+		InputStream in = new ByteArrayInputStream(bytes.toByteArray());
+		assertTrue(PvSnapshotReader.isSnapshot(in));
+		try (PvSnapshotReader reader = new PvSnapshotReader(in))
+		{
+			assertTrue(reader.next());
+			assertEquals("future", reader.getName());
+			assertThrows(IOException.class, reader::getList);
+			assertTrue(reader.next());
+			assertEquals("page", reader.getName());
+			assertEquals(2, reader.getProperty());
+			assertFalse(reader.next());
+		}
+
+		// newer version
+		byte[] data = bytes.toByteArray();
+		data[5] = PvSnapshot.VERSION + 1;
+		assertThrows(IOException.class, () -> new PvSnapshotReader(new ByteArrayInputStream(data)));
+		// Java serialized data
+		in = new ByteArrayInputStream(new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5});
+		assertFalse(PvSnapshotReader.isSnapshot(in));
+		assertEquals(0xAC, in.read());
+	}
+}
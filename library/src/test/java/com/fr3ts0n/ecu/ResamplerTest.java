@@ -0,0 +1,183 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for resampling of multiple channels
+ */
+class ResamplerTest
+{
+	/**
+	 * generated samples, value = time / 10
+	 *
+	 * @param start    time of first sample [ms]
+	 * @param interval sample interval [ms]
+	 * @param count    number of samples
+	 * @return sample iterator
+	 */
+	private static SampleIterator linear(final long start, final long interval, final long count)
+	{
+		return new SampleIterator()
+		{
+			long index = -1;
+
+			@Override
+			public boolean next()
+			{
+				return ++index < count;
+			}
+
+			@Override
+			public long getTime()
+			{
+				return start + index * interval;
+			}
+
+			@Override
+			public double getValue()
+			{
+				return getTime() / 10.0;
+			}
+		};
+	}
+
+	/**
+	 * Test jittery channels are aligned to fixed timebase
+	 */
+	@Test
+	void fixedRate_Interpolate()
+	{
+		TimeSeriesBuffer fast = new TimeSeriesBuffer("fast");
+		for (long t : new long[]{3, 95, 210, 305, 398})
+		{
+			fast.add(t, t / 10.0);
+		}
+		TimeSeriesBuffer slow = new TimeSeriesBuffer("slow");
+		slow.add(40, 1);
+		slow.add(260, 2);
+
+		Resampler resampler = new Resampler();
+		assertEquals(0, resampler.addChannel(fast.iterator()));
+		assertEquals(1, resampler.addChannel(slow.iterator()));
+		resampler.setInterval(100);
+		resampler.setAlignment(Resampler.Alignment.INTERPOLATE);
+
+		// rows at multiples of interval within sample times
+		for (long t = 100; t <= 300; t += 100)
+		{
+			assertTrue(resampler.next());
+			assertEquals(t, resampler.getTime());
+			assertEquals(t / 10.0, resampler.getValue(0), 1e-9);
+		}
+		assertFalse(resampler.next());
+
+		resampler = new Resampler();
+		resampler.addChannel(fast.iterator());
+		resampler.addChannel(slow.iterator());
+		resampler.setInterval(100);
+		resampler.setAlignment(Resampler.Alignment.INTERPOLATE);
+		assertTrue(resampler.next());
+		assertEquals(1 + 60.0 / 220, resampler.getValue(1), 1e-9);
+		assertTrue(resampler.next());
+		assertEquals(1 + 160.0 / 220, resampler.getValue(1), 1e-9);
+		assertTrue(resampler.next());
+		// no sample after 260 -> no interpolation
+		assertTrue(Double.isNaN(resampler.getValue(1)));
+	}
+
+	/**
+	 * Test values are not carried over gaps, and rows without values are skipped
+	 */
+	@Test
+	void fixedRate_Gap()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("series");
+		for (int i = 0; i <= 10; i++)
+		{
+			series.add(i * 100L, i);
+		}
+		for (int i = 0; i <= 10; i++)
+		{
+			series.add(10000 + i * 50L, 100 + i);
+		}
+
+		Resampler resampler = new Resampler();
+		resampler.addChannel(series.iterator());
+		resampler.setInterval(100);
+		resampler.setMaxGap(500);
+		List<Long> times = new ArrayList<>();
+		List<Double> values = new ArrayList<>();
+		while (resampler.next())
+		{
+			times.add(resampler.getTime());
+			values.add(resampler.getValue(0));
+		}
+
+		// 0..1500 (held for max. gap), 9500..10500
+		assertEquals(27, times.size());
+		assertEquals(1500L, (long) times.get(15));
+		assertEquals(10.0, values.get(15), 0);
+		assertEquals(9500L, (long) times.get(16));
+		assertTrue(Double.isNaN(values.get(16)));
+		assertEquals(10000L, (long) times.get(21));
+		assertEquals(100.0, values.get(21), 0);
+		assertEquals(10500L, (long) times.get(26));
+		assertEquals(110.0, values.get(26), 0);
+	}
+
+	/**
+	 * Test rows at union of sample times, nearest value within max. gap
+	 */
+	@Test
+	void union_Nearest()
+	{
+		Resampler resampler = new Resampler();
+		resampler.addChannel(linear(0, 100, 3));
+		resampler.addChannel(linear(1000, 1000, 2));
+		resampler.setAlignment(Resampler.Alignment.NEAREST);
+		resampler.setMaxGap(300);
+
+		long[] times = {0, 100, 200, 1000, 2000};
+		double[][] values = {{0, Double.NaN}, {10, Double.NaN}, {20, Double.NaN},
+		                     {Double.NaN, 100}, {Double.NaN, 200}};
+		for (int i = 0; i < times.length; i++)
+		{
+			assertTrue(resampler.next());
+			assertEquals(times[i], resampler.getTime());
+			assertEquals(values[i][0], resampler.getValue(0), 0);
+			assertEquals(values[i][1], resampler.getValue(1), 0);
+		}
+		assertFalse(resampler.next());
+	}
+
+	/**
+	 * Test long recordings are resampled without buffering of samples
+	 */
+	@Test
+	void streaming()
+	{
+		Resampler resampler = new Resampler();
+		resampler.addChannel(linear(0, 7, 1000000));
+		resampler.addChannel(linear(5, 13, 1000000));
+		resampler.setInterval(10);
+		resampler.setAlignment(Resampler.Alignment.INTERPOLATE);
+		long rows = 0;
+		while (resampler.next())
+		{
+			if (resampler.getTime() <= 7 * 999999L)
+			{
+				assertEquals(resampler.getTime() / 10.0, resampler.getValue(0), 1e-6);
+			}
+			rows++;
+		}
+		// rows until last sample of longest channel
+		assertEquals((5 + 13 * 999999L) / 10 + 1, rows);
+	}
+}
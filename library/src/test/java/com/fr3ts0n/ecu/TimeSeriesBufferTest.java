@@ -0,0 +1,228 @@
+package com.fr3ts0n.ecu;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for bounded time series
+ */
+class TimeSeriesBufferTest
+{
+	/**
+	 * Test oldest samples are overwritten if capacity is exhausted
+	 */
+	@Test
+	void add_CapacityExhausted()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 100, 0);
+		for (int i = 0; i < 250; i++)
+		{
+			series.add(i * 10L, i);
+		}
+		assertEquals(100, series.size());
+		assertEquals(1500, series.getMinTime());
+		assertEquals(2490, series.getMaxTime());
+		for (int i = 0; i < series.size(); i++)
+		{
+			assertEquals(150 + i, series.getValue(i), 0.0);
+		}
+		// value range is updated after extreme values are removed
+		assertEquals(150, series.getMinValue(), 0.0);
+		assertEquals(249, series.getMaxValue(), 0.0);
+	}
+
+	/**
+	 * Test samples out of max. duration are removed
+	 */
+	@Test
+	void add_DurationExceeded()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 1000, 1000);
+		series.add(0, 100);
+		series.add(500, -100);
+		series.add(1000, 1);
+		assertEquals(3, series.size());
+		series.add(1600, 2);
+		assertEquals(2, series.size());
+		assertEquals(1000, series.getMinTime());
+		assertEquals(1, series.getMinValue(), 0.0);
+		assertEquals(2, series.getMaxValue(), 0.0);
+
+		// older samples keep time order
+		series.add(1200, 3);
+		assertEquals(1600, series.getTime(2));
+	}
+
+	/**
+	 * Test range queries on wrapped buffer
+	 */
+	@Test
+	void getRange()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 10, 0);
+		for (int i = 0; i < 15; i++)
+		{
+			series.add(i * 100L, i);
+		}
+		assertEquals(0, series.ceilingIndex(0));
+		assertEquals(1, series.ceilingIndex(550));
+		assertEquals(10, series.ceilingIndex(5000));
+		assertEquals(-1, series.floorIndex(400));
+		assertEquals(0, series.floorIndex(599));
+		assertEquals(9, series.floorIndex(Long.MAX_VALUE));
+
+		assertTrue(Double.isNaN(series.getValueAt(0)));
+		assertEquals(7, series.getValueAt(750), 0.0);
+
+		long[] times = new long[10];
+		double[] values = new double[10];
+		assertEquals(3, series.getRange(650, 900, times, values));
+		assertArrayEquals(new long[]{700, 800, 900}, Arrays.copyOf(times, 3));
+		assertArrayEquals(new double[]{7, 8, 9}, Arrays.copyOf(values, 3), 0.0);
+		assertEquals(0, series.getRange(2000, 3000, times, values));
+	}
+
+	/**
+	 * Test buffer arrays grow on demand while buffer is wrapped
+	 */
+	@Test
+	void add_Grow()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 1000, 1000);
+		// samples out of duration are removed, so the buffer wraps
+		for (int i = 0; i < 100; i++)
+		{
+			series.add(i * 100L, i);
+		}
+		assertEquals(11, series.size());
+		// faster samples: buffer grows
+		for (int i = 1; i <= 500; i++)
+		{
+			series.add(9900L + i, 100 + i);
+		}
+		assertEquals(1000, series.getCapacity());
+		assertEquals(506, series.size());
+		assertEquals(9400, series.getMinTime());
+		assertEquals(94, series.getValue(0), 0.0);
+		assertEquals(99, series.getValue(5), 0.0);
+		assertEquals(101, series.getValue(6), 0.0);
+		assertEquals(600, series.getValue(505), 0.0);
+		assertEquals(94, series.getMinValue(), 0.0);
+		assertEquals(600, series.getMaxValue(), 0.0);
+	}
+
+	/**
+	 * Test samples are aggregated into rollup tiers
+	 */
+	@Test
+	void tiers()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 100, 0,
+		                                               new long[]{1000, 10000}, 5);
+		// 10 samples per second for 60 s
+		for (int i = 0; i < 600; i++)
+		{
+			series.add(i * 100L, i % 10);
+		}
+		TimeSeriesTier tier = series.getTiers()[0];
+		assertEquals(5, tier.size());
+		assertEquals(55000, tier.getTime(0));
+		assertEquals(0, tier.getMin(0), 0.0);
+		assertEquals(9, tier.getMax(0), 0.0);
+		assertEquals(4.5, tier.getAverage(0), 0.001);
+		assertEquals(10, tier.getCount(0));
+
+		tier = series.getTiers()[1];
+		assertEquals(6, 60000 / tier.getWidth());
+		assertEquals(5, tier.size());
+		assertEquals(100, tier.getCount(0));
+		assertEquals(0, series.getStartTime(), 10000);
+	}
+
+	/**
+	 * Test decimation of short and long time ranges
+	 */
+	@Test
+	void decimate()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 1000, 0);
+		long[] times = new long[100];
+		double[] values = new double[100];
+
+		// few samples: returned unchanged
+		for (int i = 0; i < 50; i++)
+		{
+			series.add(i * 100L, i);
+		}
+		assertEquals(50, series.decimate(0, 10000, 100, times, values));
+		assertEquals(4900, times[49]);
+
+		// raw samples reduced, peak and end points kept
+		series.clear();
+		for (int i = 0; i < 300; i++)
+		{
+			series.add(i * 100L, i == 150 ? 1000 : 0);
+		}
+		assertEquals(100, series.decimate(0, 100000, 100, times, values));
+		assertEquals(0, times[0]);
+		assertEquals(29900, times[99]);
+		boolean peak = false;
+		for (double value : values) peak |= value == 1000;
+		assertTrue(peak);
+
+		// 10 hours at 10 Hz: raw samples are gone, served from 1 min tier
+		series.clear();
+		for (long t = 0; t < 36000000; t += 100)
+		{
+			series.add(t, (t / 60000) % 2);
+		}
+		assertTrue(series.getCompleteSince() > 0);
+		int count = series.decimate(0, 36000000, 100, times, values);
+		assertEquals(100, count);
+		assertEquals(0, times[0]);
+		assertTrue(times[count - 1] > 35900000);
+		// min/max of 1 min buckets are kept
+		for (int i = 0; i < count; i++)
+		{
+			assertEquals(times[i] / 60000 % 2, values[i], 0.0);
+		}
+	}
+
+	/**
+	 * Test iteration over chunks while samples are appended and removed
+	 */
+	@Test
+	void iterator()
+	{
+		TimeSeriesBuffer series = new TimeSeriesBuffer("test", 3000, 0);
+		for (int i = 0; i < 4000; i++)
+		{
+			series.add(i, i);
+		}
+		SampleIterator it = series.iterator();
+		assertTrue(it.next());
+		assertEquals(1000, it.getTime());
+		// remove first chunk while iterating
+		for (int i = 4000; i < 4000 + TimeSeriesBuffer.ITERATOR_CHUNK + 100; i++)
+		{
+			series.add(i, i);
+		}
+		int count = 1;
+		long last = it.getTime();
+		while (it.next())
+		{
+			assertTrue(it.getTime() > last);
+			assertEquals(it.getTime(), it.getValue(), 0.0);
+			last = it.getTime();
+			count++;
+		}
+		// samples of iterator creation only
+		assertEquals(3999, last);
+		assertTrue(count < 3000);
+	}
+}
@@ -0,0 +1,160 @@
+package com.fr3ts0n.ecu;
+
+import com.fr3ts0n.pvs.PvList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for incremental trip statistics
+ */
+class TripStatisticsTest
+{
+	static final EcuDataItems items = new EcuDataItems();
+
+	@TempDir
+	File dir;
+
+	/**
+	 * Test moments and percentiles against exact values
+	 */
+	@Test
+	void channel_Moments()
+	{
+		Random random = new Random(4711);
+		double[] values = new double[10000];
+		ChannelStatistics stats = new ChannelStatistics("test", "");
+		for (int i = 0; i < values.length; i++)
+		{
+			// large offset to check numeric stability
+			values[i] = 1e6 + random.nextGaussian() * 10;
+			stats.add(i * 1000L, values[i]);
+		}
+		// NaN is not counted
+		stats.add(values.length * 1000L, Double.NaN);
+
+		double mean = Arrays.stream(values).average().getAsDouble();
+		double variance = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum()
+		                  / (values.length - 1);
+		assertEquals(values.length, stats.getCount());
+		assertEquals(mean, stats.getMean(), 1e-6);
+		assertEquals(variance, stats.getVariance(), 1e-6);
+		assertEquals(Arrays.stream(values).min().getAsDouble(), stats.getMin(), 0);
+		assertEquals(Arrays.stream(values).max().getAsDouble(), stats.getMax(), 0);
+
+		Arrays.sort(values);
+		for (double p : new double[]{1, 25, 50, 75, 99})
+		{
+			double exact = values[(int) (p / 100 * (values.length - 1))];
+			assertEquals(exact, stats.getPercentile(p), Math.abs(exact) * QuantileSketch.ACCURACY);
+		}
+	}
+
+	/**
+	 * Test percentiles of values with different signs
+	 */
+	@Test
+	void sketch_Signs()
+	{
+		QuantileSketch sketch = new QuantileSketch();
+		assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+		for (int i = -100; i <= 100; i++)
+		{
+			sketch.add(i);
+		}
+		assertEquals(201, sketch.getCount());
+		assertEquals(-100, sketch.getQuantile(0), 100 * QuantileSketch.ACCURACY);
+		assertEquals(-50, sketch.getQuantile(0.25), 50 * QuantileSketch.ACCURACY);
+		assertEquals(0, sketch.getQuantile(0.5), 0);
+		assertEquals(50, sketch.getQuantile(0.75), 50 * QuantileSketch.ACCURACY);
+		assertEquals(100, sketch.getQuantile(1), 100 * QuantileSketch.ACCURACY);
+	}
+
+	/**
+	 * Test time integrals and derived trip values
+	 */
+	@Test
+	void trip_Integrals()
+	{
+		TripStatistics trip = new TripStatistics();
+		assertTrue(Double.isNaN(trip.getDistance()));
+		assertTrue(Double.isNaN(trip.getFuelUsed()));
+
+		// 36 km/h for 100 s, sampled every 0.5 s
+		for (int i = 0; i <= 200; i++)
+		{
+			trip.add(TripStatistics.MNEMONIC_SPEED, "km/h", i * 500000L, 36);
+		}
+		// gap of 1 min is not integrated, then 72 km/h for 50 s
+		for (int i = 0; i <= 50; i++)
+		{
+			trip.add(TripStatistics.MNEMONIC_SPEED, "km/h", 160000000L + i * 1000000L, 72);
+		}
+		assertEquals(2.0, trip.getDistance(), 1e-9);
+		assertEquals(150000000L, trip.get(TripStatistics.MNEMONIC_SPEED).getIntegratedTime());
+		assertEquals(48, trip.get(TripStatistics.MNEMONIC_SPEED).getTimeWeightedMean(), 1e-9);
+		assertEquals(210000000L, trip.getDuration());
+
+		// 10 g/s air flow for 100 s
+		for (int i = 0; i <= 100; i++)
+		{
+			trip.add(TripStatistics.MNEMONIC_AIRFLOW, "g/s", i * 1000000L, 10);
+		}
+		assertEquals(1000 / TripStatistics.AIR_FUEL_RATIO / TripStatistics.FUEL_DENSITY,
+		             trip.getFuelUsed(), 1e-9);
+		// fuel rate is preferred over air flow
+		trip.add(TripStatistics.MNEMONIC_FUEL_RATE, "l/h", 0, 7.2);
+		trip.add(TripStatistics.MNEMONIC_FUEL_RATE, "l/h", 1000000L, 7.2);
+		assertEquals(0.002, trip.getFuelUsed(), 1e-9);
+	}
+
+	/**
+	 * Test statistics follow data item values, and are saved and loaded
+	 */
+	@Test
+	void trip_LiveAndPersisted() throws IOException
+	{
+		PvList pvs = new PvList();
+		EcuDataPv pv = items.getPidDataItems(0x01, 0x0D).get(0).getPv();
+		pvs.put(pv.toString(), pv);
+
+		TripStatistics trip = new TripStatistics();
+		trip.start(pvs);
+		for (int i = 1; i <= 100; i++)
+		{
+			items.updateDataItems(0x01, 0x0D, new char[]{(char) i});
+		}
+		trip.stop();
+		// not observed after stop
+		items.updateDataItems(0x01, 0x0D, new char[]{200});
+
+		ChannelStatistics speed = trip.get(TripStatistics.MNEMONIC_SPEED);
+		assertEquals(100, speed.getCount());
+		assertEquals(1, speed.getMin(), 0);
+		assertEquals(100, speed.getMax(), 0);
+		assertEquals("km/h", speed.getUnits());
+		assertNull(trip.get("engine_speed"));
+
+		File file = TripStatistics.getFile(new File(dir, "trip" + DataRecorder.EXTENSION));
+		assertEquals("trip" + TripStatistics.EXTENSION, file.getName());
+		trip.write(file);
+		TripStatistics loaded = TripStatistics.read(file);
+		ChannelStatistics loadedSpeed = loaded.get(TripStatistics.MNEMONIC_SPEED);
+		assertEquals(speed.getCount(), loadedSpeed.getCount());
+		assertEquals(speed.getMean(), loadedSpeed.getMean(), 0);
+		assertEquals(speed.getVariance(), loadedSpeed.getVariance(), 0);
+		assertEquals(speed.getIntegral(), loadedSpeed.getIntegral(), 0);
+		assertEquals(speed.getPercentile(90), loadedSpeed.getPercentile(90), 0);
+		assertEquals(trip.getStartTime(), loaded.getStartTime());
+		assertEquals(trip.getEndTime(), loaded.getEndTime());
+	}
+}
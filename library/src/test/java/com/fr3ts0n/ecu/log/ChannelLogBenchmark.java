@@ -0,0 +1,131 @@
+package com.fr3ts0n.ecu.log;
+
+import com.fr3ts0n.ecu.SampleIterator;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark for compressed channel logs
+ * - encode/decode throughput
+ * - compression ratio on simulated drive data
+ *
+ * Simulated drive: 8 PIDs polled round robin at ~10 Hz each for 4 hours,
+ * with polling jitter and values quantized like their OBD conversions.
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class ChannelLogBenchmark
+{
+	static final int CHANNELS = 8;
+	static final long DURATION = 4 * 3600 * 1000L;
+	/** polling period of one PID [ms] */
+	static final int PERIOD = 100;
+
+	@TempDir
+	File dir;
+
+	/**
+	 * simulated value of a channel
+	 *
+	 * @param channel channel number
+	 * @param t       time since start [ms]
+	 * @param random  noise source
+	 * @return quantized value
+	 */
+	private static double simulate(int channel, long t, Random random)
+	{
+		double s = t / 1000.0;
+		double speed = Math.max(0, 60 + 50 * Math.sin(s / 300) + 10 * Math.sin(s / 17));
+		switch (channel)
+		{
+			case 0: // engine speed: 0.25 /min
+				return Math.round((800 + speed * 35 + random.nextGaussian() * 20) * 4) / 4.0;
+			case 1: // vehicle speed: 1 km/h
+				return Math.round(speed);
+			case 2: // coolant temperature: 1 degC
+				return Math.min(90, 20 + Math.round(s / 20));
+			case 3: // throttle position: 100/255 %
+				return Math.round((15 + speed / 4 + random.nextGaussian() * 2) * 2.55) / 2.55;
+			case 4: // mass air flow: 0.01 g/s
+				return Math.round((2 + speed / 5 + random.nextGaussian()) * 100) / 100.0;
+			case 5: // engine load: 100/255 %
+				return Math.round((20 + speed / 3 + random.nextGaussian() * 3) * 2.55) / 2.55;
+			case 6: // intake air temperature: 1 degC
+				return 25 + Math.round(Math.sin(s / 600) * 3);
+			default: // short term fuel trim: 100/128 %
+				return Math.round(random.nextGaussian() * 4 * 1.28) / 1.28;
+		}
+	}
+
+	@Test
+	void throughput() throws IOException
+	{
+		File file = new File(dir, "drive.log");
+		Random random = new Random(1);
+		long start = System.nanoTime();
+		long samples = 0;
+		try (ChannelLogWriter writer = new ChannelLogWriter(
+			new BufferedOutputStream(new FileOutputStream(file), 65536)))
+		{
+			for (int ch = 0; ch < CHANNELS; ch++)
+			{
+				writer.addChannel(ch, "ch" + ch, "Channel " + ch, "");
+			}
+			for (long t = 0; t < DURATION; t += PERIOD)
+			{
+				for (int ch = 0; ch < CHANNELS; ch++)
+				{
+					long time = t + ch * PERIOD / CHANNELS + random.nextInt(5);
+					writer.add(ch, time, simulate(ch, time, random));
+					samples++;
+				}
+			}
+		}
+		long encode = System.nanoTime() - start;
+
+		long decoded = 0;
+		double checksum = 0;
+		// warm up + measure
+		long decode = 0;
+		for (int run = 0; run < 3; run++)
+		{
+			start = System.nanoTime();
+			decoded = 0;
+			try (ChannelLogReader reader = new ChannelLogReader(file))
+			{
+				for (int ch : reader.getChannels().keySet())
+				{
+					SampleIterator it = reader.iterator(ch);
+					while (it.next())
+					{
+						checksum += it.getValue();
+						decoded++;
+					}
+				}
+			}
+			decode = System.nanoTime() - start;
+		}
+		assertEquals(samples, decoded);
+
+		System.out.printf("ChannelLog: %d samples, %.2f MB (%.2f bytes/sample, ratio %.1f:1)%n",
+		                  samples,
+		                  file.length() / 1e6,
+		                  (double) file.length() / samples,
+		                  16.0 * samples / file.length());
+		System.out.printf("ChannelLog: encode %.1f M samples/s, decode %.1f M samples/s (%s)%n",
+		                  samples * 1e3 / encode,
+		                  samples * 1e3 / decode,
+		                  checksum != 0 ? "ok" : "-");
+	}
+}
@@ -0,0 +1,345 @@
+package com.fr3ts0n.ecu.log;
+
+import com.fr3ts0n.ecu.SampleIterator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for compressed channel logs
+ */
+class ChannelLogTest
+{
+	static final int SAMPLES = 5000;
+
+	@TempDir
+	File dir;
+
+	/** sample times of channel 0 (irregular) */
+	static final long[] times = new long[SAMPLES];
+	/** sample values of channel 0 (incl. special values) */
+	static final double[] values = new double[SAMPLES];
+
+	static
+	{
+		Random random = new Random(4711);
+		long time = 1700000000000L;
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			// regular rate with jitter, gaps and a time jump
+			time += (i == 3000) ? 1L << 40 : (i % 500 == 0) ? 60000 : 100 + random.nextInt(21) - 10;
+			times[i] = time;
+			values[i] = (i % 1000 == 1) ? Double.NaN
+			            : (i % 1000 == 2) ? Double.NEGATIVE_INFINITY
+			            : (i % 7 == 0) ? random.nextGaussian()
+			            : Math.round(800 + 10 * Math.sin(i / 50.0)) / 4.0;
+		}
+	}
+
+	/**
+	 * write log with channel 0 (test data) and channel 1 (constant)
+	 *
+	 * @param file  file to write
+	 * @param close close writer (write index)
+	 * @return writer
+	 */
+	private static ChannelLogWriter write(File file, boolean close) throws IOException
+	{
+		ChannelLogWriter writer = new ChannelLogWriter(new FileOutputStream(file), 1000);
+		writer.addChannel(0, "engine_speed", "Engine RPM", "/min");
+		writer.addChannel(1, "constant", "Constant", "");
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			writer.add(0, times[i], values[i]);
+			if (i % 2 == 0) writer.add(1, times[i], 42);
+		}
+		if (close) writer.close();
+		else writer.flush();
+		return writer;
+	}
+
+	private static void assertChannel0(ChannelLogReader reader, int expected)
+	{
+		SampleIterator it = reader.iterator(0);
+		int i = 0;
+		while (it.next())
+		{
+			assertEquals(times[i], it.getTime());
+			assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(it.getValue()));
+			i++;
+		}
+		assertEquals(expected, i);
+	}
+
+	/**
+	 * Test all samples are restored bit exact via index
+	 */
+	@Test
+	void roundTrip() throws IOException
+	{
+		File file = new File(dir, "test.log");
+		ChannelLogWriter writer = write(file, true);
+		assertEquals(file.length(), writer.getPosition());
+		assertEquals(SAMPLES + SAMPLES / 2, writer.getNumSamples());
+
+		try (ChannelLogReader reader = new ChannelLogReader(file))
+		{
+			assertTrue(reader.isIndexed());
+			assertEquals(2, reader.getChannels().size());
+			assertEquals("/min", reader.getChannels().get(0).units);
+			assertEquals(5 + 3, reader.getBlocks().size());
+			assertChannel0(reader, SAMPLES);
+
+			SampleIterator it = reader.iterator(1);
+			int count = 0;
+			while (it.next())
+			{
+				assertEquals(42, it.getValue(), 0.0);
+				count++;
+			}
+			assertEquals(SAMPLES / 2, count);
+		}
+		// less than 1/4 of raw size (time and value: 16 bytes)
+		assertTrue(file.length() < (SAMPLES + SAMPLES / 2) * 16 / 4, "size: " + file.length());
+	}
+
+	/**
+	 * Test log without index is recovered up to the first corrupted record
+	 */
+	@Test
+	void recovery() throws IOException
+	{
+		File file = new File(dir, "test.log");
+		write(file, false);
+
+		// incomplete last record
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.setLength(raf.length() - 3);
+		}
+		try (ChannelLogReader reader = new ChannelLogReader(file))
+		{
+			assertFalse(reader.isIndexed());
+			assertEquals(2, reader.getChannels().size());
+			// last flushed block of channel 1 is lost
+			assertEquals(5 + 2, reader.getBlocks().size());
+			assertChannel0(reader, SAMPLES);
+		}
+
+		// corrupted second block of channel 0
+		long offset;
+		try (ChannelLogReader reader = new ChannelLogReader(file))
+		{
+			offset = reader.getBlocks().get(2).offset;
+			assertEquals(0, reader.getBlocks().get(2).channel);
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+		{
+			raf.seek(offset + 40);
+			int b = raf.read();
+			raf.seek(offset + 40);
+			raf.write(b ^ 0x10);
+		}
+		try (ChannelLogReader reader = new ChannelLogReader(file))
+		{
+			assertEquals(offset, reader.getValidLength());
+			assertChannel0(reader, 1000);
+		}
+	}
+
+	/**
+	 * Test queries by time range, channel and block summary
+	 */
+	@Test
+	void query() throws IOException
+	{
+		File file = new File(dir, "test.log");
+		write(file, true);
+
+		try (ChannelLogReader reader = new ChannelLogReader(file))
+		{
+			assertEquals(times[0], reader.getStartTime());
+			assertEquals(times[SAMPLES - 1], reader.getEndTime());
+
+			// block summaries
+			ChannelLog.Block first = reader.findBlocks(0, times[0], times[0]).get(0);
+			assertEquals(Double.NEGATIVE_INFINITY, first.min, 0.0);
+			assertTrue(first.max >= 202.5);
+			ChannelLog.Block constant = reader.findBlocks(1, times[0], times[0]).get(0);
+			assertEquals(42, constant.min, 0.0);
+			assertEquals(42, constant.max, 0.0);
+
+			// time range within 2nd and 3rd block of channel 0
+			long from = times[1500];
+			long to = times[2200];
+			List<ChannelLog.Block> found = reader.findBlocks(0, from, to);
+			assertEquals(2, found.size());
+			assertEquals(times[1000], found.get(0).firstTime);
+			SampleIterator it = reader.iterator(0, from, to);
+			int i = 1500;
+			while (it.next())
+			{
+				assertEquals(times[i], it.getTime());
+				i++;
+			}
+			assertEquals(2201, i);
+
+			// range in gap between samples
+			it = reader.iterator(0, times[10] + 1, times[11] - 1);
+			assertFalse(it.next());
+			assertTrue(reader.findBlocks(0, times[SAMPLES - 1] + 1, Long.MAX_VALUE).isEmpty());
+
+			// channel subset
+			found = reader.findBlocks(from, to, Collections.singleton(1), null);
+			assertEquals(2, found.size());
+			assertEquals(1, found.get(0).channel);
+			assertEquals(1, found.get(1).channel);
+
+			// all channels, filtered by summary
+			found = reader.findBlocks(Long.MIN_VALUE, Long.MAX_VALUE, null,
+			                          block -> block.max > 100);
+			assertEquals(5, found.size());
+			for (int j = 0; j < found.size(); j++)
+			{
+				assertEquals(0, found.get(j).channel);
+				if (j > 0) assertTrue(found.get(j).offset > found.get(j - 1).offset);
+			}
+		}
+	}
+
+	/**
+	 * convert log to VERSION_1 format (blocks and index without value summary)
+	 *
+	 * @param src   log of current version
+	 * @param dst   file to write
+	 * @param index write index and trailer
+	 */
+	private static void toVersion1(File src, File dst, boolean index) throws IOException
+	{
+		try (RandomAccessFile in = new RandomAccessFile(src, "r");
+		     DataOutputStream out = new DataOutputStream(new FileOutputStream(dst)))
+		{
+			ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+			DataOutputStream idx = new DataOutputStream(indexBytes);
+			ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+			int numChannels = 0;
+			int numBlocks = 0;
+			long position = ChannelLog.HEADER_SIZE;
+
+			out.writeInt(ChannelLog.MAGIC);
+			out.writeShort(ChannelLog.VERSION_1);
+			in.seek(ChannelLog.HEADER_SIZE);
+			while (true)
+			{
+				byte type = in.readByte();
+				byte[] body = new byte[in.readInt()];
+				in.readFully(body);
+				in.readInt();
+				if (type == ChannelLog.REC_INDEX) break;
+				if (type == ChannelLog.REC_CHANNEL)
+				{
+					channelBytes.write(body);
+					numChannels++;
+				}
+				else
+				{
+					// drop min./max. value after channel, count and times
+					byte[] v1 = new byte[body.length - 16];
+					System.arraycopy(body, 0, v1, 0, 22);
+					System.arraycopy(body, 38, v1, 22, body.length - 38);
+					body = v1;
+					idx.write(body, 0, 22);
+					idx.writeLong(position);
+					numBlocks++;
+				}
+				writeRecord(out, type, body);
+				position += ChannelLog.RECORD_OVERHEAD + body.length;
+			}
+			if (index)
+			{
+				ByteArrayOutputStream record = new ByteArrayOutputStream();
+				DataOutputStream rec = new DataOutputStream(record);
+				rec.writeInt(numChannels);
+				rec.write(channelBytes.toByteArray());
+				rec.writeInt(numBlocks);
+				rec.write(indexBytes.toByteArray());
+				writeRecord(out, ChannelLog.REC_INDEX, record.toByteArray());
+				out.writeLong(position);
+				out.writeInt(ChannelLog.TRAILER_MAGIC);
+			}
+		}
+	}
+
+	private static void writeRecord(DataOutputStream out, byte type, byte[] body) throws IOException
+	{
+		byte[] frame = {type, (byte) (body.length >>> 24), (byte) (body.length >>> 16),
+		                (byte) (body.length >>> 8), (byte) body.length};
+		CRC32 crc = new CRC32();
+		crc.update(frame, 0, frame.length);
+		crc.update(body, 0, body.length);
+		out.write(frame);
+		out.write(body);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Test logs of VERSION_1 are still readable (with and without index)
+	 */
+	@Test
+	void version1() throws IOException
+	{
+		File file = new File(dir, "test.log");
+		write(file, true);
+		for (boolean index : new boolean[]{true, false})
+		{
+			File v1 = new File(dir, "v1.log");
+			toVersion1(file, v1, index);
+			try (ChannelLogReader reader = new ChannelLogReader(v1))
+			{
+				assertEquals(ChannelLog.VERSION_1, reader.getVersion());
+				assertEquals(index, reader.isIndexed());
+				assertEquals(2, reader.getChannels().size());
+				assertEquals(5 + 3, reader.getBlocks().size());
+				assertChannel0(reader, SAMPLES);
+				// blocks without value summary match any value range
+				ChannelLog.Block block = reader.getBlocks().get(0);
+				assertEquals(Double.NEGATIVE_INFINITY, block.min, 0.0);
+				assertEquals(Double.POSITIVE_INFINITY, block.max, 0.0);
+			}
+			// logs of previous version are not modified by recovery
+			long length = v1.length();
+			assertFalse(SegmentedLogWriter.recover(v1));
+			assertEquals(length, v1.length());
+		}
+	}
+
+	/**
+	 * Test non-log file is rejected
+	 */
+	@Test
+	void invalidFile() throws IOException
+	{
+		File file = new File(dir, "test.csv");
+		try (FileOutputStream out = new FileOutputStream(file))
+		{
+			out.write("Time,Value\n".getBytes());
+		}
+		assertThrows(IOException.class, () -> new ChannelLogReader(file));
+	}
+}
@@ -0,0 +1,193 @@
+package com.fr3ts0n.ecu.log;
+
+import com.fr3ts0n.ecu.SampleIterator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for crash safe segmented channel logs
+ */
+class SegmentedLogWriterTest
+{
+	static final int SAMPLES = 10000;
+	/** samples between syncs of killed writer */
+	static final int SYNC_SAMPLES = 137;
+
+	@TempDir
+	File dir;
+
+	private static double value(int i)
+	{
+		return Math.round(1000 * Math.sin(i / 100.0)) / 8.0;
+	}
+
+	/**
+	 * write test data: channel 0 every 10 time units, channel 1 every 3rd sample
+	 */
+	private static void write(SegmentedLogWriter writer, int from, int to) throws IOException
+	{
+		for (int i = from; i < to; i++)
+		{
+			writer.add(0, i * 10L, value(i));
+			if (i % 3 == 0) writer.add(1, i * 10L, i);
+		}
+	}
+
+	/**
+	 * read times of channel 0 from all segments, and check values
+	 */
+	private static List<Long> readChannel0(List<File> segments) throws IOException
+	{
+		List<Long> result = new ArrayList<>();
+		for (File segment : segments)
+		{
+			try (ChannelLogReader reader = new ChannelLogReader(segment))
+			{
+				assertTrue(reader.isIndexed(), segment.getName());
+				assertEquals(2, reader.getChannels().size());
+				SampleIterator it = reader.iterator(0);
+				while (it.next())
+				{
+					int i = (int) (it.getTime() / 10);
+					assertEquals(value(i), it.getValue(), 0.0);
+					result.add(it.getTime());
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Test segments are rotated by size and time, and contain all samples
+	 */
+	@Test
+	void rotation() throws IOException
+	{
+		File base = new File(dir, "trip.rec");
+		assertEquals(new File(dir, "trip-0002.rec"), SegmentedLogWriter.getSegmentFile(base, 2));
+
+		// by size
+		SegmentedLogWriter writer = new SegmentedLogWriter(base, 100);
+		writer.setMaxSegmentSize(2000);
+		writer.addChannel(0, "speed", "Speed", "km/h");
+		writer.addChannel(1, "counter", "Counter", "");
+		write(writer, 0, SAMPLES);
+		writer.close();
+		List<File> segments = SegmentedLogWriter.listSegments(base);
+		assertEquals(writer.getSegments(), segments);
+		assertTrue(segments.size() > 3, "segments: " + segments.size());
+		for (File segment : segments.subList(0, segments.size() - 1))
+		{
+			// + pending blocks of both channels and index
+			assertTrue(segment.length() < 2 * 2000, "size: " + segment.length());
+		}
+		List<Long> times = readChannel0(segments);
+		assertEquals(SAMPLES, times.size());
+		for (int i = 0; i < SAMPLES; i++)
+		{
+			assertEquals(i * 10L, (long) times.get(i));
+		}
+
+		// by time
+		base = new File(dir, "timed.rec");
+		writer = new SegmentedLogWriter(base, 100);
+		writer.setMaxSegmentDuration(25000);
+		writer.addChannel(0, "speed", "Speed", "km/h");
+		writer.addChannel(1, "counter", "Counter", "");
+		write(writer, 0, SAMPLES);
+		writer.close();
+		segments = SegmentedLogWriter.listSegments(base);
+		assertEquals(4, segments.size());
+		for (File segment : segments)
+		{
+			try (ChannelLogReader reader = new ChannelLogReader(segment))
+			{
+				assertTrue(reader.getEndTime() - reader.getStartTime() < 25000);
+			}
+		}
+		assertEquals(SAMPLES, readChannel0(segments).size());
+	}
+
+	/**
+	 * Test recovery of writer which was killed at random points:
+	 * log is truncated to the last valid block, all synced samples are kept,
+	 * and no sample is corrupted
+	 */
+	@Test
+	void recovery_KilledAtRandomPoints() throws IOException
+	{
+		File base = new File(dir, "trip.rec");
+		SegmentedLogWriter writer = new SegmentedLogWriter(base, 100);
+		writer.setSyncInterval(Long.MAX_VALUE);
+		writer.addChannel(0, "speed", "Speed", "km/h");
+		writer.addChannel(1, "counter", "Counter", "");
+		File segment = writer.getSegments().get(0);
+
+		// synced file length, and number of channel 0 samples synced with it
+		List<long[]> syncs = new ArrayList<>();
+		for (int i = 0; i < SAMPLES; i += SYNC_SAMPLES)
+		{
+			write(writer, i, Math.min(i + SYNC_SAMPLES, SAMPLES));
+			writer.sync();
+			syncs.add(new long[]{segment.length(), Math.min(i + SYNC_SAMPLES, SAMPLES)});
+		}
+		writer.close();
+		byte[] data = Files.readAllBytes(segment.toPath());
+		assertFalse(SegmentedLogWriter.recover(segment));
+
+		Random random = new Random(4711);
+		for (int run = 0; run < 50; run++)
+		{
+			// kill point, with unsynced garbage behind it on every 2nd run
+			int length = (run == 0) ? 3 : random.nextInt(data.length);
+			File killed = new File(dir, String.format("killed-%02d.rec", run));
+			try (FileOutputStream out = new FileOutputStream(killed))
+			{
+				out.write(data, 0, length);
+				if (run % 2 != 0)
+				{
+					byte[] garbage = new byte[random.nextInt(500)];
+					random.nextBytes(garbage);
+					out.write(garbage);
+				}
+			}
+
+			assertTrue(SegmentedLogWriter.recover(killed), "run " + run);
+			if (length < ChannelLog.HEADER_SIZE)
+			{
+				assertFalse(killed.exists());
+				continue;
+			}
+			assertFalse(SegmentedLogWriter.recover(killed));
+
+			long synced = 0;
+			for (long[] sync : syncs)
+			{
+				if (sync[0] <= length) synced = sync[1];
+			}
+			List<Long> times = readChannel0(Arrays.asList(killed));
+			assertTrue(times.size() >= synced, "run " + run + ": " + times.size() + " < " + synced);
+			for (int i = 0; i < times.size(); i++)
+			{
+				assertEquals(i * 10L, (long) times.get(i));
+			}
+		}
+
+		// recovery of all logs in directory (all complete now)
+		assertEquals(0, SegmentedLogWriter.recoverAll(dir, ".rec"));
+	}
+}
@@ -0,0 +1,205 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for adapter capability fingerprinting
+ */
+class AdapterCapabilitiesTest
+{
+	static final ElmProt prot = new ElmProt();
+
+	@TempDir
+	File cacheDir;
+
+	@AfterEach
+	void disableCache()
+	{
+		VehicleProfileCache.setCacheDir(null);
+		prot.setService(ObdProt.OBD_SVC_NONE);
+	}
+
+	/**
+	 * Test capabilities derived from identification
+	 */
+	@Test
+	void capabilities()
+	{
+		AdapterCapabilities clone = new AdapterCapabilities("ELM327 v1.5");
+		assertFalse(clone.isIdentified());
+		clone = rejectOnConnections(clone, AdapterCapabilities.CMD_DEVICE, AdapterCapabilities.CMD_STN_INFO);
+		assertTrue(clone.isIdentified());
+		assertTrue(clone.isClone());
+		assertFalse(clone.isResponseCountSupported());
+		assertEquals(AdapterCapabilities.CLONE_TIMEOUT_MIN, clone.getMinTimeout());
+
+		AdapterCapabilities elm = new AdapterCapabilities("ELM327 v1.4b");
+		elm.setDevice("OBDII to RS232 Interpreter");
+		assertFalse(elm.isResponseCountSupported());
+		elm = rejectOnConnections(elm, AdapterCapabilities.CMD_STN_INFO);
+		assertFalse(elm.isClone());
+		assertTrue(elm.isResponseCountSupported());
+		assertEquals(0, elm.getMinTimeout());
+
+		AdapterCapabilities stn = new AdapterCapabilities("ELM327 v1.5");
+		stn.setDevice("OBDLink MX");
+		stn.setStnFirmware("STN1155 v4.3.0");
+		assertTrue(stn.isStn());
+		assertFalse(stn.isClone());
+		assertTrue(stn.isResponseCountSupported());
+	}
+
+	/**
+	 * reject commands on REJECT_COUNT connections
+	 * (each connection loads the capabilities from the cache)
+	 *
+	 * @param adapter  capabilities of adapter
+	 * @param commands commands to be rejected
+	 * @return capabilities after last connection
+	 */
+	private static AdapterCapabilities rejectOnConnections(AdapterCapabilities adapter, String... commands)
+	{
+		for (int i = 0; i < AdapterCapabilities.REJECT_COUNT; i++)
+		{
+			adapter = AdapterCapabilities.fromProperties(adapter.toProperties());
+			for (String cmd : commands)
+			{
+				assertFalse(adapter.isRejected(cmd));
+				adapter.addRejectedCommand(cmd);
+			}
+		}
+		return adapter;
+	}
+
+	/**
+	 * Test single rejection does not disable a command,
+	 * and commands which are accepted again are probed again
+	 */
+	@Test
+	void rejection_Repeated()
+	{
+		AdapterCapabilities adapter = new AdapterCapabilities("ELM327 v1.4b");
+		// repeated rejections on same connection count once
+		adapter.addRejectedCommand("ATAT1");
+		adapter.addRejectedCommand("ATAT1");
+		assertFalse(adapter.isRejected("ATAT1"));
+
+		adapter = AdapterCapabilities.fromProperties(adapter.toProperties());
+		assertFalse(adapter.isRejected("ATAT1"));
+		adapter.addRejectedCommand("ATAT1");
+		assertTrue(adapter.isRejected("ATAT1"));
+		assertTrue(AdapterCapabilities.fromProperties(adapter.toProperties()).isRejected("ATAT1"));
+
+		assertTrue(adapter.removeRejectedCommand("ATAT1"));
+		assertFalse(adapter.isRejected("ATAT1"));
+		assertFalse(adapter.removeRejectedCommand("ATAT1"));
+	}
+
+	/**
+	 * Test known adapter firmware is not identified again,
+	 * and rejected commands are not sent again
+	 */
+	@Test
+	void fingerprint_MinimalInit()
+	{
+		VehicleProfileCache.setCacheDir(cacheDir);
+		Map<String, String> responses = new HashMap<>();
+		responses.put("0100", "7E8064100BE3EB810");
+		responses.put(AdapterCapabilities.CMD_DEVICE, "?");
+		responses.put(AdapterCapabilities.CMD_STN_INFO, "?");
+		responses.put("ATDPN", "?");
+
+		List<String> sent = VehicleProfileTest.connect(prot, "ELM327 v1.5", responses);
+		assertTrue(sent.contains(AdapterCapabilities.CMD_DEVICE));
+		assertTrue(sent.contains(AdapterCapabilities.CMD_STN_INFO));
+		assertTrue(sent.contains("ATDPN"));
+		assertTrue(prot.getAdapterCapabilities().isClone());
+
+		// a single rejection is probed again on next connection
+		sent = VehicleProfileTest.connect(prot, "ELM327 v1.5", responses);
+		assertTrue(sent.contains(AdapterCapabilities.CMD_DEVICE));
+		assertTrue(sent.contains(AdapterCapabilities.CMD_STN_INFO));
+		assertTrue(sent.contains("ATDPN"));
+
+		sent = VehicleProfileTest.connect(prot, "ELM327 v1.5", responses);
+		assertFalse(sent.contains(AdapterCapabilities.CMD_DEVICE));
+		assertFalse(sent.contains(AdapterCapabilities.CMD_STN_INFO));
+		assertFalse(sent.contains("ATDPN"));
+		assertTrue(sent.contains("0100"));
+		assertTrue(prot.getAdapterCapabilities().isClone());
+	}
+
+	/**
+	 * Test rejections of a clone are not charged to the reset command,
+	 * so it is still sent after several reconnects
+	 */
+	@Test
+	void reconnect_RejectingClone()
+	{
+		VehicleProfileCache.setCacheDir(cacheDir);
+		Map<String, String> responses = new HashMap<>();
+		responses.put("0100", "7E8064100BE3EB810");
+		responses.put(AdapterCapabilities.CMD_DEVICE, "?");
+		responses.put(AdapterCapabilities.CMD_STN_INFO, "?");
+		responses.put("ATDPN", "?");
+
+		for (int i = 0; i < 2 * AdapterCapabilities.REJECT_COUNT; i++)
+		{
+			// connection ends with a rejected command
+			prot.handleTelegram("?".toCharArray());
+			List<String> sent = VehicleProfileTest.connect(prot, "ELM327 v1.5", responses);
+			assertEquals("ATZ", sent.get(0));
+			assertFalse(prot.getAdapterCapabilities().isRejected("ATZ"));
+		}
+		assertTrue(prot.getAdapterCapabilities().isRejected(AdapterCapabilities.CMD_DEVICE));
+	}
+
+	/**
+	 * Test reset falls back to adapter info if reset command is suppressed
+	 * (e.g. by capabilities which were cached before)
+	 */
+	@Test
+	void reset_Suppressed()
+	{
+		VehicleProfileCache.setCacheDir(cacheDir);
+		Map<String, String> responses = new HashMap<>();
+		responses.put("0100", "7E8064100BE3EB810");
+
+		AdapterCapabilities cached = rejectOnConnections(new AdapterCapabilities("ELM327 v1.5"), "ATZ");
+		VehicleProfileCache.putCapabilities(cached);
+		// first connection identifies adapter from cache
+		VehicleProfileTest.connect(prot, "ELM327 v1.5", responses);
+		assertTrue(prot.getAdapterCapabilities().isRejected("ATZ"));
+
+		List<String> sent = VehicleProfileTest.connect(prot, "ELM327 v1.5", responses);
+		assertEquals("ATI", sent.get(0));
+	}
+
+	/**
+	 * Test response count suffix on capable adapter with single ECU
+	 */
+	@Test
+	void responseCount_SingleEcu()
+	{
+		Map<String, String> responses = new HashMap<>();
+		responses.put("0100", "7E8064100BE3EB810");
+		responses.put(AdapterCapabilities.CMD_DEVICE, "OBDII to RS232 Interpreter");
+		responses.put(AdapterCapabilities.CMD_STN_INFO, "?");
+
+		VehicleProfileTest.connect(prot, "ELM327 v1.4b", responses);
+		assertTrue(prot.getAdapterCapabilities().isResponseCountSupported());
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		assertEquals("01001", ObdProt.lastTxMsg);
+	}
+}
@@ -0,0 +1,221 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.TelegramWriter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Simulated OBD adapter with one CAN ECU for protocol tests
+ *
+ * Commands sent by the protocol are answered like an ELM327 (or STN)
+ * adapter would do. Instead of waiting, the time the adapter needs
+ * (serial transfer, ECU response, message timeout) is accumulated
+ * on a simulated clock, so results are deterministic.
+ */
+class AdapterSimulator
+	implements TelegramWriter
+{
+	/** serial transfer time per character at 115200 baud [us] */
+	static final long CHAR_TIME_US = 87;
+	/** command processing time of adapter [us] */
+	static final long CMD_TIME_US = 1000;
+	/** response time of ECU [us] */
+	static final long ECU_LATENCY_US = 10000;
+	/** address of simulated ECU */
+	static final String ECU_ADDRESS = "7E8";
+	/** supported PIDs of simulated ECU */
+	static final long PIDS_SUPPORTED = 0xBE3EB810L;
+
+	private final ElmProt prot;
+	private final String firmware;
+	private final String device;
+	private final String stnFirmware;
+
+	/** commands sent by protocol, not answered yet */
+	private final Deque<String> pending = new ArrayDeque<>();
+	/** all commands sent by protocol */
+	final List<String> sent = new ArrayList<>();
+	/** simulated time [us] */
+	long time = 0;
+	/** number of OBD requests answered with data */
+	int obdResponses = 0;
+	/** message timeouts the OBD requests were processed with [ms] */
+	final List<Integer> requestTimeouts = new ArrayList<>();
+	/** current message timeout [ms] */
+	private int timeout = 200;
+	/** headers enabled? */
+	private boolean headers = false;
+
+	/**
+	 * Create simulated adapter
+	 *
+	 * @param prot        protocol to be connected
+	 * @param firmware    firmware ID (ATZ/ATI response)
+	 * @param device      device description (AT@1 response), null = not supported
+	 * @param stnFirmware STN firmware ID (STI response), null = no STN adapter
+	 */
+	AdapterSimulator(ElmProt prot, String firmware, String device, String stnFirmware)
+	{
+		this.prot = prot;
+		this.firmware = firmware;
+		this.device = device;
+		this.stnFirmware = stnFirmware;
+		prot.addTelegramWriter(this);
+	}
+
+	/**
+	 * disconnect simulator from protocol
+	 */
+	void close()
+	{
+		prot.removeTelegramWriter(this);
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer)
+	{
+		String cmd = new String(buffer);
+		sent.add(cmd);
+		pending.add(cmd);
+		return buffer.length;
+	}
+
+	@Override
+	public int writeTelegram(char[] buffer, int type, Object id)
+	{
+		return writeTelegram(buffer);
+	}
+
+	/**
+	 * answer commands until protocol stops sending or max. number is reached
+	 *
+	 * @param maxCommands max. number of commands to answer
+	 */
+	void run(int maxCommands)
+	{
+		for (int i = 0; i < maxCommands && !pending.isEmpty(); i++)
+		{
+			String cmd = pending.poll();
+			time += (cmd.length() + 1) * CHAR_TIME_US + CMD_TIME_US;
+			for (String line : respond(cmd.replace(" ", "").toUpperCase()))
+			{
+				time += (line.length() + 1) * CHAR_TIME_US;
+				prot.handleTelegram(line.toCharArray());
+			}
+			time += CHAR_TIME_US;
+			prot.handleTelegram(">".toCharArray());
+		}
+	}
+
+	/**
+	 * connect protocol to simulated vehicle
+	 *
+	 * @return true if ECU was detected
+	 */
+	boolean connect()
+	{
+		prot.reset();
+		for (int i = 0; i < 100 && prot.getStatus() != ElmProt.STAT.ECU_DETECTED; i++)
+		{
+			run(1);
+		}
+		return prot.getStatus() == ElmProt.STAT.ECU_DETECTED;
+	}
+
+	/**
+	 * get response lines to a command
+	 *
+	 * @param cmd command (upper case, without spaces)
+	 * @return response lines
+	 */
+	private List<String> respond(String cmd)
+	{
+		List<String> result = new ArrayList<>();
+		if (cmd.startsWith("AT"))
+		{
+			result.add(respondAt(cmd.substring(2)));
+		}
+		else if (cmd.equals("STI"))
+		{
+			result.add(stnFirmware != null ? stnFirmware : "?");
+		}
+		else if (cmd.startsWith("ST"))
+		{
+			if (stnFirmware == null)
+			{
+				result.add("?");
+			}
+			else
+			{
+				result.add("OK");
+			}
+		}
+		else
+		{
+			// OBD request with optional response count (010C1)
+			int responses = (cmd.length() % 2 != 0) ? Character.digit(cmd.charAt(cmd.length() - 1), 16) : 0;
+			respondObd(responses > 0 ? cmd.substring(0, cmd.length() - 1) : cmd, responses, timeout, result);
+		}
+		return result;
+	}
+
+	/**
+	 * get response to AT command
+	 *
+	 * @param cmd AT command without AT prefix
+	 * @return response
+	 */
+	private String respondAt(String cmd)
+	{
+		if (cmd.equals("Z") || cmd.equals("WS") || cmd.equals("I"))
+		{
+			timeout = 200;
+			headers = false;
+			return firmware;
+		}
+		if (cmd.equals("@1")) return device != null ? device : "?";
+		if (cmd.equals("DPN")) return "A6";
+		if (cmd.startsWith("ST")) timeout = Integer.parseInt(cmd.substring(2), 16) * 4;
+		else if (cmd.startsWith("H")) headers = cmd.equals("H1");
+		return "OK";
+	}
+
+	/**
+	 * answer OBD request of service 01
+	 *
+	 * @param request   OBD request
+	 * @param responses number of expected responses (0 = wait for timeout)
+	 * @param reqTimeout message timeout of request [ms]
+	 * @param result    response lines
+	 */
+	private void respondObd(String request, int responses, int reqTimeout, List<String> result)
+	{
+		requestTimeouts.add(reqTimeout);
+		if (reqTimeout * 1000L < ECU_LATENCY_US)
+		{
+			// ECU too slow for timeout
+			time += reqTimeout * 1000L;
+			result.add("NO DATA");
+			return;
+		}
+		time += ECU_LATENCY_US;
+		// without response count the adapter waits for further responses
+		if (responses == 0) time += reqTimeout * 1000L;
+
+		int pid = Integer.parseInt(request.substring(2, 4), 16);
+		String data;
+		if (pid == 0x00)
+		{
+			data = String.format("4100%08X", PIDS_SUPPORTED);
+		}
+		else
+		{
+			data = String.format("41%02X%02X%02X%02X%02X", pid, pid, pid, pid, pid);
+		}
+		obdResponses++;
+		result.add(headers ? String.format("%s%02X%s", ECU_ADDRESS, data.length() / 2, data) : data);
+	}
+}
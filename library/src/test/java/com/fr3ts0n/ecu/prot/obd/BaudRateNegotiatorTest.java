@@ -0,0 +1,157 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import com.fr3ts0n.prot.StreamSerialLine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Test class for baud rate negotiation against a
+ * pseudo-terminal backed adapter simulator (Linux, python3 and stty required)
+ */
+class BaudRateNegotiatorTest
+{
+	/** default baud rate of simulated adapters */
+	static final int DEFAULT_BAUD = 38400;
+
+	private Process simulator;
+	private RandomAccessFile device;
+
+	@BeforeAll
+	static void checkEnvironment()
+	{
+		assumeTrue(new File("/dev/ptmx").exists(), "pseudo terminals not available");
+		assumeTrue(execute("python3", "--version") && execute("stty", "--version"),
+		           "python3/stty not available");
+	}
+
+	@AfterEach
+	void closeSimulator() throws IOException
+	{
+		if (device != null) device.close();
+		if (simulator != null) simulator.destroy();
+	}
+
+	/**
+	 * execute command
+	 *
+	 * @param command command line
+	 * @return true if command succeeded
+	 */
+	private static boolean execute(String... command)
+	{
+		try
+		{
+			return new ProcessBuilder(command).redirectErrorStream(true)
+			                                  .redirectOutput(new File("/dev/null"))
+			                                  .start().waitFor() == 0;
+		} catch (IOException | InterruptedException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * serial line on pty device, baud rate is set with stty
+	 */
+	private static class PtyLine extends StreamSerialLine
+	{
+		private final String deviceName;
+
+		PtyLine(RandomAccessFile device, String deviceName) throws IOException
+		{
+			super(new FileInputStream(device.getFD()),
+			      new FileOutputStream(device.getFD()),
+			      DEFAULT_BAUD);
+			this.deviceName = deviceName;
+		}
+
+		@Override
+		public void setBaudRate(int baudRate) throws IOException
+		{
+			if (!execute("stty", "-F", deviceName, String.valueOf(baudRate)))
+			{
+				throw new IOException("stty " + baudRate);
+			}
+			this.baudRate = baudRate;
+		}
+	}
+
+	/**
+	 * start simulated adapter and open serial line to it
+	 *
+	 * @param firmware    firmware ID
+	 * @param stnFirmware STN firmware ID, null = no STN adapter
+	 * @param maxBaudRate max. baud rate which works on the simulated line
+	 * @return serial line to simulator
+	 */
+	private PtyLine connect(String firmware, String stnFirmware, int maxBaudRate) throws IOException
+	{
+		File script = new File(getClass().getResource("elm_pty_sim.py").getFile());
+		simulator = new ProcessBuilder("python3", script.getPath(),
+		                               firmware,
+		                               stnFirmware != null ? stnFirmware : "-",
+		                               String.valueOf(DEFAULT_BAUD),
+		                               String.valueOf(maxBaudRate))
+			.redirectError(ProcessBuilder.Redirect.INHERIT)
+			.start();
+		String deviceName = new BufferedReader(new InputStreamReader(simulator.getInputStream())).readLine();
+		device = new RandomAccessFile(deviceName, "rw");
+		return new PtyLine(device, deviceName);
+	}
+
+	/**
+	 * Test ELM adapter upgrade with fallback from rates the line can't do
+	 */
+	@Test
+	void upgrade_ElmFallback() throws IOException
+	{
+		PtyLine line = connect("ELM327 v1.4b", null, 500000);
+		BaudRateNegotiator negotiator = new BaudRateNegotiator(line);
+		assertEquals(500000, negotiator.negotiate(2000000));
+		assertFalse(negotiator.isStn());
+		assertEquals(500000, line.getBaudRate());
+		// adapter is still responding at new rate
+		assertTrue(negotiator.measureThroughput(BaudRateNegotiator.THROUGHPUT_ROUNDS) > 0);
+	}
+
+	/**
+	 * Test STN adapter upgrade to max. rate
+	 */
+	@Test
+	void upgrade_Stn() throws IOException
+	{
+		PtyLine line = connect("ELM327 v1.3a", "STN1110 v4.0.1", 2000000);
+		BaudRateNegotiator negotiator = new BaudRateNegotiator(line);
+		assertEquals(2000000, negotiator.negotiate(2000000));
+		assertTrue(negotiator.isStn());
+		assertTrue(negotiator.measureThroughput(BaudRateNegotiator.THROUGHPUT_ROUNDS) > 0);
+	}
+
+	/**
+	 * Test adapter w/o baud rate switching stays at default rate
+	 */
+	@Test
+	void unsupported_StaysAtDefault() throws IOException
+	{
+		PtyLine line = connect("ELM327 v1.0", null, 2000000);
+		BaudRateNegotiator negotiator = new BaudRateNegotiator(line);
+		assertEquals(DEFAULT_BAUD, negotiator.negotiate(2000000));
+		assertEquals("ELM327 v1.0", negotiator.getFirmware());
+		assertTrue(negotiator.measureThroughput(1) > 0);
+	}
+}
@@ -1,12 +1,24 @@
 package com.fr3ts0n.ecu.prot.obd;
 
 import com.fr3ts0n.ecu.EcuDataItem;
+import com.fr3ts0n.ecu.EcuDataItems;
+import com.fr3ts0n.ecu.EcuDataProfiles;
+import com.fr3ts0n.ecu.EcuDataPv;
 import com.fr3ts0n.pvs.PvChangeEvent;
 import com.fr3ts0n.pvs.PvChangeListener;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ElmProtTest
 	implements PvChangeListener
@@ -56,9 +68,9 @@ class ElmProtTest
 	void handleTelegram_Vin_ISO_Multiline()
 	{
 		EcuDataItem itm = prot.dataItems.getPidDataItems(0x09, 0x02).get(1);
-		itm.pv.addPvChangeListener(this);
-
 		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		// process var is released on service change, so listen afterwards
+		itm.getPv().addPvChangeListener(this);
 
 		prot.sendTelegram("0902".toCharArray());
 		// PID message without optional message counter
@@ -71,7 +83,7 @@ class ElmProtTest
 		// VIN should match expected one ...
 		assertEquals("WAUZZZ8P46A005544", result[0].toString());
 
-		itm.pv.removePvChangeListener(this);
+		itm.getPv().removePvChangeListener(this);
 	}
 
 	/**
@@ -82,9 +94,9 @@ class ElmProtTest
 	void handleTelegram_Vin_Multiline()
 	{
 		EcuDataItem itm = prot.dataItems.getPidDataItems(0x09, 0x02).get(1);
-		itm.pv.addPvChangeListener(this);
-
 		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		// process var is released on service change, so listen afterwards
+		itm.getPv().addPvChangeListener(this);
 
 		// PID message without optional message counter
 		// send VIN "0123456789ABCDEFG"
@@ -96,7 +108,7 @@ class ElmProtTest
 		// VIN should match expected one ...
 		assertEquals("0123456789ABCDEFG", result[0].toString());
 
-		itm.pv.removePvChangeListener(this);
+		itm.getPv().removePvChangeListener(this);
 	}
 
 	/**
@@ -107,9 +119,9 @@ class ElmProtTest
 	void handleTelegram_CalId_Multiline()
 	{
 		EcuDataItem itm = prot.dataItems.getPidDataItems(0x09, 0x04).get(1);
-		itm.pv.addPvChangeListener(this);
-
 		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		// process var is released on service change, so listen afterwards
+		itm.getPv().addPvChangeListener(this);
 
 		// PID message without optional message counter
 		// send CAL-IDs "GSPA..." without length id
@@ -121,7 +133,7 @@ class ElmProtTest
 		// VIN should match expected one ...
 		assertEquals("GSPA-12345678900", result[0].toString());
 
-		itm.pv.removePvChangeListener(this);
+		itm.getPv().removePvChangeListener(this);
 	}
 
 	/**
@@ -196,4 +208,153 @@ class ElmProtTest
 		assertEquals(true, ObdProt.tCodes.containsKey(0x0456));
 		assertEquals(true, ObdProt.tCodes.containsKey(0x0789));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Demand driven polling: only subscribed PIDs are requested
+	 */
+	@Test
+	void getNextSupportedPid_Subscriptions() throws InterruptedException
+	{
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		// PIDs 0x05, 0x0C, 0x0D supported
+		prot.handleTelegram("410008180000".toCharArray());
+
+		// no subscriptions -> all supported PIDs are polled
+		Set<Integer> pids = pollPids(6);
+		assertEquals(3, pids.size());
+
+		// subscribe engine speed (twice) + vehicle speed
+		EcuDataItems.subscriptions.subscribe(this, "engine_speed", 0);
+		EcuDataItems.subscriptions.subscribe(this, "engine_speed", 500);
+		Object other = new Object();
+		EcuDataItems.subscriptions.subscribe(other, "vehicle_speed", 0);
+		assertEquals(2, EcuDataItems.subscriptions.getRefCount("engine_speed"));
+		assertEquals(0, EcuDataItems.subscriptions.getPeriod("engine_speed"));
+		pids = pollPids(6);
+		assertEquals(2, pids.size());
+		assertEquals(true, pids.contains(0x0C));
+		assertEquals(true, pids.contains(0x0D));
+
+		// release one owner -> only remaining subscription is polled
+		EcuDataItems.subscriptions.unsubscribe(other);
+		assertEquals(Collections.singleton(0x0C), pollPids(3));
+
+		// only unsupported PID subscribed -> only PID support query is polled
+		EcuDataItems.subscriptions.unsubscribe(this);
+		EcuDataItems.subscriptions.subscribe(this, "mass_airflow", 0);
+		assertEquals(Collections.singleton(0x00), pollPids(3));
+
+		// release all -> all supported PIDs are polled again
+		EcuDataItems.subscriptions.unsubscribe(this);
+		pids = pollPids(6);
+		assertEquals(3, pids.size());
+	}
+
+	/**
+	 * Process vars are only created for supported PIDs
+	 * and released on service change
+	 */
+	@Test
+	void preparePidPvs_SupportedOnly()
+	{
+		// service change releases process vars of data service
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		for (EcuDataItem itm : prot.dataItems.getSvcDataItems(ObdProt.OBD_SVC_DATA))
+		{
+			assertFalse(itm.hasPv(), itm.toString());
+		}
+
+		// PIDs 0x05, 0x0C, 0x0D supported
+		prot.handleTelegram("410008180000".toCharArray());
+		EcuDataItem supported = prot.dataItems.getPidDataItems(0x01, 0x05).get(0);
+		EcuDataItem unsupported = prot.dataItems.getPidDataItems(0x01, 0x10).get(0);
+		assertTrue(supported.hasPv());
+		assertFalse(unsupported.hasPv());
+		assertTrue(ObdProt.PidPvs.containsValue(supported.getPv()));
+
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		assertFalse(supported.hasPv());
+	}
+
+	/**
+	 * Swapping a customisation profile updates data PVs while polling
+	 */
+	@Test
+	void updateDataPvs_ProfileSwap() throws IOException
+	{
+		prot.setService(ObdProt.OBD_SVC_VEH_INFO);
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		// PIDs 0x05, 0x0C, 0x0D supported
+		prot.handleTelegram("410008180000".toCharArray());
+		EcuDataItem supported = prot.dataItems.getPidDataItems(0x01, 0x05).get(0);
+		EcuDataPv supportedPv = supported.getPv();
+
+		String pids = "svc\tpid\tofs\tlen\tbit_ofs\tbit_len\tbit_mask\tformula\tformat\tmin\tmax\tupdate_cycle_ms\tmnemonic\tlabel\n"
+		              + "0x01\t0x0C\t1\t1\t4\t4\t0x0F\tDEFAULT\t%.0f\t\t\t\tcust_nibble\tCustom nibble\n";
+		EcuDataProfiles.Profile profile = ObdProt.profiles.load("test", null,
+			new ByteArrayInputStream(pids.getBytes()));
+		ObdProt.profiles.activate(profile);
+		prot.getNextSupportedPid();
+		assertTrue(ObdProt.PidPvs.containsKey("0C.1.4"));
+		// PVs of unchanged items are kept
+		assertSame(supportedPv, ObdProt.PidPvs.get(supported.toString()));
+
+		ObdProt.profiles.activate(null);
+		prot.getNextSupportedPid();
+		assertFalse(ObdProt.PidPvs.containsKey("0C.1.4"));
+		assertSame(supportedPv, ObdProt.PidPvs.get(supported.toString()));
+	}
+
+	/**
+	 * Data values carry receive time and round trip time of transport
+	 */
+	@Test
+	void handleTelegram_Timestamps()
+	{
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		// PIDs 0x05, 0x0C, 0x0D supported
+		prot.handleTelegram("410008180000".toCharArray());
+		EcuDataItem itm = prot.dataItems.getPidDataItems(0x01, 0x0C).get(0);
+		final PvChangeEvent[] events = new PvChangeEvent[1];
+		PvChangeListener listener = new PvChangeListener()
+		{
+			@Override
+			public void pvChanged(PvChangeEvent event)
+			{
+				if (EcuDataPv.FIELDS[EcuDataPv.FID_VALUE].equals(event.getKey()))
+				{
+					events[0] = event;
+				}
+			}
+		};
+		itm.getPv().addPvChangeListener(listener);
+
+		long txTime = System.nanoTime();
+		long rxTime = txTime + 25000000L;
+		prot.handleTelegram("410C1AF8".toCharArray(), rxTime, txTime);
+
+		assertEquals(rxTime, events[0].getNanoTime());
+		assertEquals(25000000L, events[0].getRoundTripTime());
+		assertEquals(PvChangeEvent.toMillis(rxTime), events[0].getTime());
+		itm.getPv().removePvChangeListener(listener);
+	}
+
+	/**
+	 * Poll next supported PIDs
+	 * (with a short delay to get distinct request timestamps)
+	 *
+	 * @param count number of PIDs to poll
+	 * @return set of polled PIDs
+	 */
+	private Set<Integer> pollPids(int count) throws InterruptedException
+	{
+		Set<Integer> result = new HashSet<>();
+		for (int i = 0; i < count; i++)
+		{
+			result.add(prot.getNextSupportedPid());
+			Thread.sleep(2);
+		}
+		return result;
+	}
+}
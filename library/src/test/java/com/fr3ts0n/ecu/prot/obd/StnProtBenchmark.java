@@ -0,0 +1,64 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Benchmark of PID polling on the same simulated vehicle
+ * - ElmProt on clone adapter (no response count)
+ * - ElmProt on genuine ELM327 (response count suffix)
+ * - StnProt on STN adapter (response count suffix)
+ * Times are simulated adapter/bus times at 115200 baud, so results
+ * are deterministic.
+ *
+ * Run with: gradlew :library:benchmark
+ */
+@Tag("benchmark")
+class StnProtBenchmark
+{
+	static final int RESPONSES = 1000;
+
+	/**
+	 * poll PIDs and report simulated time per response
+	 *
+	 * @return simulated time per OBD response [us]
+	 */
+	static long poll(String name, ElmProt prot, AdapterSimulator sim)
+	{
+		prot.mAdaptiveTiming.setMode(ElmProt.AdaptTimingMode.SOFTWARE);
+		assertTrue(sim.connect());
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		long startTime = sim.time;
+		int startCmds = sim.sent.size();
+		int startResponses = sim.obdResponses;
+		while (sim.obdResponses - startResponses < RESPONSES)
+		{
+			sim.run(1);
+		}
+		long perResponse = (sim.time - startTime) / RESPONSES;
+		System.out.printf("%-24s %6.2f ms/PID, %.2f commands/PID%n",
+		                  name,
+		                  perResponse / 1000.0,
+		                  (double) (sim.sent.size() - startCmds) / RESPONSES);
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		prot.mAdaptiveTiming.setMode(ElmProt.AdaptTimingMode.OFF);
+		sim.close();
+		return perResponse;
+	}
+
+	@Test
+	void polling()
+	{
+		ElmProt elm = new ElmProt();
+		long clone = poll("ElmProt (clone)", elm,
+		                  new AdapterSimulator(elm, "ELM327 v1.5", null, null));
+		long genuine = poll("ElmProt (ELM327 v1.4b)", elm,
+		                    new AdapterSimulator(elm, "ELM327 v1.4b", "OBDII to RS232 Interpreter", null));
+		StnProt stnProt = new StnProt();
+		long stn = poll("StnProt (STN1110)", stnProt,
+		                new AdapterSimulator(stnProt, "ELM327 v1.4b", "OBDLink SX", "STN1110 v4.2.0"));
+		assertTrue(stn <= genuine && genuine < clone);
+	}
+}
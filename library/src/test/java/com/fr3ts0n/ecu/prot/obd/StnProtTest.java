@@ -0,0 +1,113 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for STN protocol extensions against simulated adapter
+ */
+class StnProtTest
+{
+	static final StnProt prot = new StnProt();
+	AdapterSimulator sim;
+
+	@AfterEach
+	void disconnect()
+	{
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		sim.close();
+	}
+
+	/**
+	 * Test polling with software adaptive timing
+	 * (timeout changes are set with ATST, requests use the short format)
+	 */
+	@Test
+	void polling_AdaptedTimeout()
+	{
+		prot.mAdaptiveTiming.setMode(ElmProt.AdaptTimingMode.SOFTWARE);
+		sim = new AdapterSimulator(prot, "ELM327 v1.4b", "OBDLink SX", "STN1110 v4.2.0");
+		assertTrue(sim.connect());
+		assertTrue(prot.isStnActive());
+
+		int start = sim.sent.size();
+		int startRequests = sim.requestTimeouts.size();
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		sim.run(100);
+		List<String> polled = sim.sent.subList(start, sim.sent.size());
+		assertEquals("01001", polled.get(0));
+		int timeout = 200;
+		int timeoutCmds = 0;
+		Iterator<Integer> usedTimeouts =
+			sim.requestTimeouts.subList(startRequests, sim.requestTimeouts.size()).iterator();
+		for (String cmd : polled)
+		{
+			if (cmd.startsWith("ATST"))
+			{
+				timeout = Integer.parseInt(cmd.substring(4), 16) * 4;
+				timeoutCmds++;
+			}
+			else if (usedTimeouts.hasNext())
+			{
+				// short requests with response count
+				assertTrue(cmd.startsWith("01") && cmd.endsWith("1") && cmd.length() == 5, cmd);
+				// every request is processed with the adapted timeout
+				assertEquals(timeout, (int) usedTimeouts.next(), cmd);
+			}
+		}
+		assertTrue(timeoutCmds > 0);
+		assertEquals(timeout, prot.mAdaptiveTiming.elmMsgTimeout);
+		assertTrue(timeout < 200, String.valueOf(timeout));
+		prot.mAdaptiveTiming.setMode(ElmProt.AdaptTimingMode.OFF);
+	}
+
+	/**
+	 * Test CAN monitoring with pass filter of selected ECU
+	 */
+	@Test
+	void monitor_PassFilter()
+	{
+		sim = new AdapterSimulator(prot, "ELM327 v1.4b", "OBDLink SX", "STN1110 v4.2.0");
+		assertTrue(sim.connect());
+		prot.setEcuAddress(0x7E8);
+
+		int start = sim.sent.size();
+		prot.setService(ElmProt.OBD_SVC_CAN_MONITOR);
+		sim.run(10);
+		List<String> sent = sim.sent.subList(start, sim.sent.size());
+		assertEquals("STFCP", sent.get(0));
+		// monitoring is started after all other commands
+		assertEquals(Arrays.asList("STFAP 7E8,7FF", "STM"),
+		             sent.subList(sent.size() - 2, sent.size()));
+		prot.setEcuAddress(0);
+		sim.run(10);
+	}
+
+	/**
+	 * Test plain ELM adapter is handled by ELM protocol
+	 */
+	@Test
+	void elmAdapter_NoStnCommands()
+	{
+		sim = new AdapterSimulator(prot, "ELM327 v1.5", null, null);
+		assertTrue(sim.connect());
+		assertFalse(prot.isStnActive());
+
+		int start = sim.sent.size();
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		sim.run(20);
+		for (String cmd : sim.sent.subList(start, sim.sent.size()))
+		{
+			assertFalse(cmd.startsWith("ST"), cmd);
+		}
+		assertEquals("0100", sim.sent.get(start));
+	}
+}
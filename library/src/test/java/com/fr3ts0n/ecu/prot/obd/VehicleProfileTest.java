@@ -0,0 +1,167 @@
+package com.fr3ts0n.ecu.prot.obd;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for cached vehicle profiles
+ */
+class VehicleProfileTest
+{
+	static final ElmProt prot = new ElmProt();
+
+	@TempDir
+	File cacheDir;
+
+	@AfterEach
+	void disableCache()
+	{
+		VehicleProfileCache.setCacheDir(null);
+		prot.setAdapterKey(null);
+		prot.setService(ObdProt.OBD_SVC_NONE);
+	}
+
+	/**
+	 * Test store and load of vehicle profile
+	 */
+	@Test
+	void storeAndLoad()
+	{
+		VehicleProfileCache.setCacheDir(cacheDir);
+		assertNull(VehicleProfileCache.get("adapter"));
+
+		VehicleProfile profile = new VehicleProfile("adapter");
+		profile.setVin("WAUZZZ8P46A005544");
+		profile.setProtocol(6);
+		profile.setEcuAddresses(new TreeSet<>(Arrays.asList(0x7E8, 0x7E9)));
+		profile.setTimeout(48);
+		profile.setPidBitmap(ObdProt.OBD_SVC_DATA, 0x00, 0xBE3EB811L);
+		profile.setPidBitmap(ObdProt.OBD_SVC_DATA, 0x20, 0x80000000L);
+		// incomplete sequence of blocks is not stored
+		profile.setPidBitmap(ObdProt.OBD_SVC_VEH_INFO, 0x00, 0x55400001L);
+		VehicleProfileCache.put(profile);
+
+		VehicleProfile loaded = VehicleProfileCache.get("adapter");
+		assertEquals("WAUZZZ8P46A005544", loaded.getVin());
+		assertEquals(6, loaded.getProtocol());
+		assertEquals(profile.getEcuAddresses(), loaded.getEcuAddresses());
+		assertEquals(48, loaded.getTimeout());
+		assertArrayEquals(new long[]{0xBE3EB811L, 0x80000000L},
+		                  loaded.getPidBitmaps(ObdProt.OBD_SVC_DATA));
+		assertNull(loaded.getPidBitmaps(ObdProt.OBD_SVC_VEH_INFO));
+		// other adapters are not affected
+		assertNull(VehicleProfileCache.get("other"));
+
+		VehicleProfileCache.remove("adapter");
+		assertNull(VehicleProfileCache.get("adapter"));
+	}
+
+	/**
+	 * Test profiles without adapter key are not cached
+	 */
+	@Test
+	void noAdapterKey()
+	{
+		VehicleProfileCache.setCacheDir(cacheDir);
+		VehicleProfile profile = new VehicleProfile(null);
+		profile.setProtocol(6);
+		VehicleProfileCache.put(profile);
+		assertEquals(0, cacheDir.list().length);
+		assertNull(VehicleProfileCache.get(null));
+		VehicleProfileCache.remove(null);
+	}
+
+	/**
+	 * connect to vehicle and answer all adapter requests
+	 *
+	 * @param prot      protocol to connect
+	 * @param firmware  firmware ID of adapter
+	 * @param responses responses to commands (all others are answered with OK)
+	 * @return commands which have been sent until ECU detection is done
+	 */
+	static List<String> connect(ElmProt prot, String firmware, Map<String, String> responses)
+	{
+		List<String> sent = new ArrayList<>();
+		prot.reset();
+		sent.add(ObdProt.lastTxMsg);
+		prot.handleTelegram(firmware.toCharArray());
+		prot.handleTelegram(">".toCharArray());
+		for (int i = 0; i < 50 && prot.getStatus() != ElmProt.STAT.ECU_DETECTED; i++)
+		{
+			String cmd = ObdProt.lastTxMsg;
+			sent.add(cmd);
+			String response = responses.get(cmd);
+			prot.handleTelegram((response != null ? response : "OK").toCharArray());
+			prot.handleTelegram(">".toCharArray());
+		}
+		assertEquals(ElmProt.STAT.ECU_DETECTED, prot.getStatus());
+		return sent;
+	}
+
+	/**
+	 * connect to vehicle via clone adapter
+	 *
+	 * @param ecuResponse response of ECU to PID request 0100 (with header)
+	 * @return commands which have been sent until ECU detection is done
+	 */
+	private static List<String> connect(String ecuResponse)
+	{
+		Map<String, String> responses = new HashMap<>();
+		responses.put("0100", ecuResponse);
+		responses.put("ATDPN", "A6");
+		return connect(prot, "ELM327 v1.5", responses);
+	}
+
+	/**
+	 * Test reconnect to known vehicle skips PID discovery,
+	 * and a different vehicle falls back to discovery
+	 */
+	@Test
+	void reconnect_KnownVehicle()
+	{
+		VehicleProfileCache.setCacheDir(cacheDir);
+		prot.setAdapterKey("test");
+
+		// unknown vehicle -> full discovery
+		List<String> sent = connect("7E8064100BE3EB810");
+		assertEquals("ATZ", sent.get(0));
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		assertEquals("0100", ObdProt.lastTxMsg);
+		prot.handleTelegram("4100BE3EB810".toCharArray());
+		VehicleProfile cached = VehicleProfileCache.get("test");
+		assertEquals(Collections.singleton(0x7E8), cached.getEcuAddresses());
+		assertEquals(6, cached.getProtocol());
+		assertArrayEquals(new long[]{0xBE3EB810L}, cached.getPidBitmaps(ObdProt.OBD_SVC_DATA));
+
+		// known vehicle -> known protocol, no PID discovery
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		sent = connect("7E8064100BE3EB810");
+		assertEquals("ATWS", sent.get(0));
+		assertTrue(sent.contains("ATSPA6"));
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		assertEquals("0101", ObdProt.lastTxMsg);
+
+		// other ECU responds -> discovery again
+		prot.setService(ObdProt.OBD_SVC_NONE);
+		connect("7E9064100BE3EB810");
+		prot.setService(ObdProt.OBD_SVC_DATA);
+		assertEquals("0100", ObdProt.lastTxMsg);
+		assertEquals(Collections.singleton(0x7E9),
+		             VehicleProfileCache.get("test").getEcuAddresses());
+	}
+}
@@ -0,0 +1,122 @@
+#!/usr/bin/env python3
+"""
+Pseudo-terminal backed ELM327/STN adapter simulator for baud rate tests
+
+usage: elm_pty_sim.py <firmware> <stn firmware|-> <default baud> <max baud>
+
+Prints the name of the pty device to be opened by the test and simulates
+an adapter on it (echo on). The host sets the line rate of the pty (stty);
+data is only transferred if host and adapter rates match, otherwise garbage
+is exchanged like on a real serial line. Rates above <max baud> never work.
+Exits when the host closes the device.
+"""
+import os
+import pty
+import select
+import sys
+import termios
+import time
+import tty
+
+BRD_CLOCK = 4000000
+BRT_TIMEOUT = 0.075     # AT BRT default
+SBR_TIMEOUT = 0.2       # time to wait for STI after ST SBR
+SWITCH_DELAY = 0.02     # time from OK until adapter sends at new rate
+GARBAGE = 0xFE
+
+firmware, stn, default_baud, max_baud = sys.argv[1], sys.argv[2], int(sys.argv[3]), int(sys.argv[4])
+stn = None if stn == '-' else stn
+
+master, slave = pty.openpty()
+tty.setraw(slave)
+speed = getattr(termios, 'B%d' % default_baud)
+attrs = termios.tcgetattr(slave)
+attrs[4] = attrs[5] = speed
+termios.tcsetattr(slave, termios.TCSANOW, attrs)
+SPEEDS = {getattr(termios, name): int(name[1:]) for name in dir(termios)
+          if name.startswith('B') and name[1:].isdigit()}
+print(os.ttyname(slave), flush=True)
+
+rate = default_baud
+
+
+def host_rate():
+    return SPEEDS.get(termios.tcgetattr(slave)[5], 0)
+
+
+def line_ok():
+    return host_rate() == rate and rate <= max_baud
+
+
+def send(text):
+    data = text.encode()
+    os.write(master, data if line_ok() else bytes([GARBAGE] * len(data)))
+
+
+def receive_line(timeout=None):
+    """receive CR terminated line, None on timeout or host closed"""
+    line = b''
+    end = None if timeout is None else time.time() + timeout
+    while True:
+        wait = None if end is None else max(0, end - time.time())
+        if not select.select([master], [], [], wait)[0]:
+            return None
+        try:
+            data = os.read(master, 256)
+        except OSError:
+            sys.exit(0)
+        if not line_ok():
+            data = bytes([GARBAGE] * len(data))
+        for b in data:
+            if b == 13:
+                return line.decode('latin-1')
+            line += bytes([b])
+
+
+def respond(cmd):
+    global rate
+    if cmd in ('ATZ', 'ATI', 'ATWS'):
+        if cmd == 'ATZ':
+            rate = default_baud
+        return firmware
+    if cmd == 'STI':
+        return stn or '?'
+    if cmd.startswith('ATBRD'):
+        if stn is None and firmware < 'ELM327 v1.2':
+            return '?'
+        switch(BRD_CLOCK // int(cmd[5:], 16), BRT_TIMEOUT, lambda line: line == '',
+               lambda: firmware + '\r')
+        return None
+    if cmd.startswith('STSBR'):
+        if stn is None:
+            return '?'
+        switch(int(cmd[5:]), SBR_TIMEOUT, lambda line: line == 'STI', lambda: '')
+        return None
+    return 'OK'
+
+
+def switch(new_rate, timeout, confirmed, greeting):
+    """OK at old rate, switch and wait for confirmation, fall back if missing"""
+    global rate
+    old_rate = rate
+    send('OK\r')
+    time.sleep(SWITCH_DELAY)
+    rate = new_rate
+    send(greeting())
+    line = receive_line(timeout)
+    if line is not None and confirmed(line.replace(' ', '').upper()):
+        send((stn + '\r\r' if stn and line else '') + '>')
+    else:
+        rate = old_rate
+        send('\r>')
+
+
+while True:
+    line = receive_line()
+    if line is None:
+        break
+    # echo
+    send(line + '\r')
+    response = respond(line.replace(' ', '').upper())
+    if response is not None:
+        send(response + '\r\r>')